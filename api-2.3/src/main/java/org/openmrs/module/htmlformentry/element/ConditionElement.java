@@ -8,9 +8,11 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Set;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -27,6 +29,7 @@ import org.openmrs.module.htmlformentry.FormEntryContext;
 import org.openmrs.module.htmlformentry.FormEntryContext.Mode;
 import org.openmrs.module.htmlformentry.FormEntrySession;
 import org.openmrs.module.htmlformentry.FormSubmissionError;
+import org.openmrs.module.htmlformentry.HtmlFormEntryGlobalProperties;
 import org.openmrs.module.htmlformentry.HtmlFormEntryUtil;
 import org.openmrs.module.htmlformentry.action.FormSubmissionControllerAction;
 import org.openmrs.module.htmlformentry.widget.ConceptSearchAutocompleteWidget;
@@ -71,6 +74,8 @@ public class ConditionElement implements HtmlGeneratorElement, FormSubmissionCon
 	
 	private String endDatePickerWrapperId;
 	
+	private static volatile ConditionListClasses conditionListClasses;
+	
 	@Override
 	public void handleSubmission(FormEntrySession session, HttpServletRequest submission) {
 		FormEntryContext context = session.getContext();
@@ -187,46 +192,38 @@ public class ConditionElement implements HtmlGeneratorElement, FormSubmissionCon
 		this.existingCondition = null;
 		final Encounter encounter = context.getExistingEncounter();
 		if (encounter != null) {
-			this.existingCondition = Optional.of(encounter.getConditions()).orElse(Collections.emptySet()).stream()
-			        .filter(c -> StringUtils.equals(getControlId(c), getTagControlId()))
-			        .collect(Collectors.reducing((c1, c2) -> {
-				        throw new IllegalStateException(
-				                "Mutliple conditions are matching the control id '" + controlId + "'.");
-			        })).orElse(null);
+			// the conditions of the encounter are kept with the context, rather than looked through by each tag
+			ExistingConditions existingConditions = context.getSnapshot(ExistingConditions.class);
+			if (existingConditions == null || existingConditions.encounter != encounter) {
+				existingConditions = new ExistingConditions(encounter);
+				context.setSnapshot(ExistingConditions.class, existingConditions);
+			}
+			if (existingConditions.duplicatedControlIds.contains(getTagControlId())) {
+				throw new IllegalStateException("Mutliple conditions are matching the control id '" + controlId + "'.");
+			}
+			this.existingCondition = existingConditions.conditionsByControlId.get(getTagControlId());
+		}
+	}
+	
+	/**
+	 * Returns the concept classes conditions may be chosen from, which are looked up again only when
+	 * the value of GP 'coreapps.conditionListClasses' changes
+	 */
+	private static List<ConceptClass> getConditionListClasses() {
+		String conditionClassNames = HtmlFormEntryGlobalProperties.getGlobalProperty(GLOBAL_PROPERTY_CONDITIONS_CRITERIA);
+		ConditionListClasses cached = conditionListClasses;
+		if (cached == null || !StringUtils.equals(cached.classNames, conditionClassNames)) {
+			cached = new ConditionListClasses(conditionClassNames);
+			conditionListClasses = cached;
 		}
+		return cached.conceptClasses;
 	}
 	
 	// public visibility for testing purposes only
 	public String htmlForConditionSearchWidget(FormEntryContext context) {
 		String freeTextVal = null;
 		String conditionLabel = mss.getMessage("htmlformentry.conditionui.condition.label");
-		// use value set for GP 'coreapps.conditionListClasses' as concept source
-		// a comma delimited list of concept class names or uuids is the expected value
-		String conditionClassNames = Context.getAdministrationService()
-		        .getGlobalProperty(GLOBAL_PROPERTY_CONDITIONS_CRITERIA);
-		List<ConceptClass> allowedConceptClasses = new ArrayList<>();
-		if (StringUtils.isNotBlank(conditionClassNames)) {
-			for (String className : conditionClassNames.split(",")) {
-				if (StringUtils.isNotBlank(className)) {
-					// lookup by name
-					ConceptClass conceptClass = Context.getConceptService().getConceptClassByName(className);
-					if (conceptClass == null) {
-						// lookup by uuid
-						conceptClass = Context.getConceptService().getConceptClassByUuid(className);
-					}
-					if (conceptClass == null) {
-						throw new IllegalArgumentException("Could not find ConceptClass identified by: " + className);
-					}
-					allowedConceptClasses.add(conceptClass);
-				}
-			}
-		} else {
-			// if no value was found for GP 'coreapps.conditionListClasses', use the concept class 'Diagnosis'
-			ConceptClass conceptClass = Context.getConceptService()
-			        .getConceptClassByName(DEFAULT_CONDITION_LIST_CONCEPT_CLASS_NAME);
-			allowedConceptClasses.add(conceptClass);
-		}
-		conceptSearchWidget = new ConceptSearchAutocompleteWidget(null, allowedConceptClasses);
+		conceptSearchWidget = new ConceptSearchAutocompleteWidget(null, getConditionListClasses());
 		String conditionNameTextInputId = context.registerWidget(conceptSearchWidget);
 		conditionSearchErrorWidget = new ErrorWidget();
 		
@@ -500,4 +497,65 @@ public class ConditionElement implements HtmlGeneratorElement, FormSubmissionCon
 		this.mss = mms;
 	}
 	
+	/**
+	 * The concept classes named by a value of GP 'coreapps.conditionListClasses'
+	 */
+	private static class ConditionListClasses {
+		
+		private final String classNames;
+		
+		private final List<ConceptClass> conceptClasses;
+		
+		public ConditionListClasses(String classNames) {
+			this.classNames = classNames;
+			// a comma delimited list of concept class names or uuids is the expected value
+			List<ConceptClass> allowedConceptClasses = new ArrayList<>();
+			if (StringUtils.isNotBlank(classNames)) {
+				for (String className : classNames.split(",")) {
+					if (StringUtils.isNotBlank(className)) {
+						// lookup by name
+						ConceptClass conceptClass = Context.getConceptService().getConceptClassByName(className);
+						if (conceptClass == null) {
+							// lookup by uuid
+							conceptClass = Context.getConceptService().getConceptClassByUuid(className);
+						}
+						if (conceptClass == null) {
+							throw new IllegalArgumentException("Could not find ConceptClass identified by: " + className);
+						}
+						allowedConceptClasses.add(conceptClass);
+					}
+				}
+			} else {
+				// if no value was found for GP 'coreapps.conditionListClasses', use the concept class 'Diagnosis'
+				ConceptClass conceptClass = Context.getConceptService()
+				        .getConceptClassByName(DEFAULT_CONDITION_LIST_CONCEPT_CLASS_NAME);
+				allowedConceptClasses.add(conceptClass);
+			}
+			this.conceptClasses = Collections.unmodifiableList(allowedConceptClasses);
+		}
+	}
+	
+	/**
+	 * The conditions of an encounter by the control id of the tag that recorded them
+	 */
+	private static class ExistingConditions {
+		
+		private final Encounter encounter;
+		
+		private final Map<String, Condition> conditionsByControlId = new HashMap<>();
+		
+		private final Set<String> duplicatedControlIds = new HashSet<>();
+		
+		public ExistingConditions(Encounter encounter) {
+			this.encounter = encounter;
+			if (encounter.getConditions() != null) {
+				for (Condition condition : encounter.getConditions()) {
+					String conditionControlId = getControlId(condition);
+					if (conditionControlId != null && conditionsByControlId.put(conditionControlId, condition) != null) {
+						duplicatedControlIds.add(conditionControlId);
+					}
+				}
+			}
+		}
+	}
 }
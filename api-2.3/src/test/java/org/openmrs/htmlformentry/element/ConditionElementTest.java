@@ -42,6 +42,7 @@ import org.openmrs.module.htmlformentry.FormEntryContext;
 import org.openmrs.module.htmlformentry.FormEntryContext.Mode;
 import org.openmrs.module.htmlformentry.FormEntrySession;
 import org.openmrs.module.htmlformentry.FormSubmissionError;
+import org.openmrs.module.htmlformentry.HtmlFormEntryGlobalProperties;
 import org.openmrs.module.htmlformentry.element.ConditionElement;
 import org.openmrs.module.htmlformentry.widget.ConceptSearchAutocompleteWidget;
 import org.openmrs.module.htmlformentry.widget.DateWidget;
@@ -98,6 +99,7 @@ public class ConditionElementTest {
 		when(Context.getMessageSourceService()).thenReturn(messageSourceService);
 		when(Context.getConceptService()).thenReturn(conceptService);
 		when(Context.getAdministrationService()).thenReturn(adminService);
+		HtmlFormEntryGlobalProperties.clearSnapshot();
 		
 		doAnswer(new Answer<Concept>() {
 			
@@ -311,6 +313,25 @@ public class ConditionElementTest {
 		
 	}
 	
+	@Test
+	public void htmlForConditionSearchWidget_shouldLookUpConceptSourceClassesOnceForAGivenGPValue() {
+		// setup
+		element.setMessageSourceService(messageSourceService);
+		when(adminService.getGlobalProperty(ConditionElement.GLOBAL_PROPERTY_CONDITIONS_CRITERIA))
+		        .thenReturn("Diagnosis,Symptom");
+		ConditionElement otherElement = new ConditionElement();
+		otherElement.setMessageSourceService(messageSourceService);
+		otherElement.setTagControlId("my_other_condition_tag");
+		
+		// replay
+		element.htmlForConditionSearchWidget(context);
+		String html = otherElement.htmlForConditionSearchWidget(context);
+		
+		// verify
+		Assert.assertTrue(html.contains("setupAutocomplete(this, 'conceptSearch.form','null','Diagnosis,Symptom','null')"));
+		verify(conceptService, times(1)).getConceptClassByName("Symptom");
+	}
+	
 	@Test
 	public void generateHtml_shouldThrowWhenMultipleConditionsWithSameControlId() {
 		// setup
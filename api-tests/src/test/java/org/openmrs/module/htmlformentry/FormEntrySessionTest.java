@@ -13,12 +13,18 @@
  */
 package org.openmrs.module.htmlformentry;
 
+import java.util.List;
+
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.openmrs.Form;
+import org.openmrs.GlobalProperty;
 import org.openmrs.Patient;
 import org.openmrs.api.context.Context;
+import org.openmrs.module.htmlformentry.metrics.FormMetricsSummary;
+import org.openmrs.module.htmlformentry.metrics.FormTimings.Phase;
+import org.openmrs.module.htmlformentry.metrics.JmxFormEntryMetrics;
 import org.openmrs.test.Verifies;
 
 public class FormEntrySessionTest extends BaseHtmlFormEntryTest {
@@ -104,4 +110,31 @@ public class FormEntrySessionTest extends BaseHtmlFormEntryTest {
 		
 		Assert.assertEquals("MyForm.1.0/my_condition_tag-0", formPath);
 	}
+	
+	/**
+	 * @see {@link FormEntrySession#createForm(String)}
+	 */
+	@Test
+	@Verifies(value = "should record the database work of rendering when query counts are on", method = "createForm(String)")
+	public void createForm_shouldRecordTheDatabaseWorkOfRenderingWhenQueryCountsAreOn() throws Exception {
+		Context.getAdministrationService()
+		        .saveGlobalProperty(new GlobalProperty(HtmlFormEntryConstants.GP_RECORD_QUERY_COUNTS, "true"));
+		HtmlFormEntryGlobalProperties.clearSnapshot();
+		// as the global property listener does when the property is saved
+		HtmlFormEntryUtil.getService().setQueryCountsEnabled(true);
+		JmxFormEntryMetrics metrics = Context.getRegisteredComponents(JmxFormEntryMetrics.class).get(0);
+		metrics.reset();
+		try {
+			new FormEntrySession(patient, "<htmlform><encounterLocation/></htmlform>", null).getHtmlToDisplay();
+			
+			List<FormMetricsSummary> summaries = metrics.getFormSummaries(Phase.RENDER);
+			Assert.assertEquals(1, summaries.size());
+			Assert.assertEquals(1, summaries.get(0).getQueryCountedCount());
+			Assert.assertTrue(summaries.get(0).getAverageStatements() > 0);
+		}
+		finally {
+			HtmlFormEntryUtil.getService().setQueryCountsEnabled(false);
+			HtmlFormEntryGlobalProperties.clearSnapshot();
+		}
+	}
 }
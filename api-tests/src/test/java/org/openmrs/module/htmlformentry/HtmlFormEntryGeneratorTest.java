@@ -272,6 +272,33 @@ public class HtmlFormEntryGeneratorTest extends BaseHtmlFormEntryTest {
 		Assert.assertEquals("<htmlform><h1>Testing&#160;Replacement</h1></htmlform>", returnedXml);
 	}
 	
+	/**
+	 * @see {@link HtmlFormEntryGenerator#applyPreParseSubstitutions(String)}
+	 */
+	@Test
+	@Verifies(value = "should give the same result as the separate substitution methods", method = "applyPreParseSubstitutions(String)")
+	public void applyPreParseSubstitutions_shouldGiveTheSameResultAsTheSeparateSubstitutionMethods() throws Exception {
+		String[] forms = {
+		        "<htmlform><section><!--<repeat><template></template><render/></repeat>--><repeat><template></template><render/></repeat></section></htmlform>",
+		        "<htmlform><section><!--some comment that should not be displayed--></section></htmlform>",
+		        "<htmlform><h1>Testing&nbsp;Replacement</h1></htmlform>",
+		        "<htmlform><excludeIf velocityTest=\"$patient.gender == 'F'\">This shows a logic test for a woman</excludeIf></htmlform>",
+		        "<htmlform><includeIf velocityTest=\"true && true && 1 < 2 && 2 > 1 || false\">included</includeIf></htmlform>",
+		        "<htmlform><includeIf velocityTest=\"true &amp;&amp; true &amp;&amp; 1 &lt; 2\">included</includeIf></htmlform>",
+		        "<htmlform><includeIf velocityTest=\"1 &&& 2 && <!-- c -->3 > &nbsp;\">x</includeIf></htmlform>",
+		        "<htmlform><! -- spaced comment -- >\n<!-- not\n a comment --><p>&nbsp;&&nbsp;</p></htmlform>",
+		        "<htmlform><includeIf velocity<!---->Test=\"1 < 2\">joined by a comment</includeIf></htmlform>",
+		        "<htmlform><!---><!----><includeIf velocityTest=\"unterminated < 2 && </htmlform>" };
+		
+		HtmlFormEntryGenerator generator = new HtmlFormEntryGenerator();
+		for (String xml : forms) {
+			String expected = generator.substituteCharacterCodesWithAsciiCodes(xml);
+			expected = generator.stripComments(expected);
+			expected = generator.convertSpecialCharactersWithinLogicAndVelocityTests(expected);
+			Assert.assertEquals(expected, generator.applyPreParseSubstitutions(xml));
+		}
+	}
+	
 	@Test
 	@Verifies(value = "should close br tags", method = "doStartTag(FormEntrySession,PrintWriter,Node,Node)")
 	public void doStartTag_shouldCloseBrTags() throws Exception {
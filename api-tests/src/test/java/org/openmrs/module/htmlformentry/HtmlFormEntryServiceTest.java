@@ -1,17 +1,37 @@
 package org.openmrs.module.htmlformentry;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
+import org.apache.commons.lang.reflect.FieldUtils;
+import org.hibernate.Cache;
+import org.hibernate.Hibernate;
+import org.hibernate.SessionFactory;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.openmrs.Concept;
+import org.openmrs.Form;
 import org.openmrs.Patient;
+import org.openmrs.Person;
+import org.openmrs.PersonName;
+import org.openmrs.Program;
 import org.openmrs.Role;
 import org.openmrs.User;
 import org.openmrs.api.EncounterService;
+import org.openmrs.api.FormService;
+import org.openmrs.api.ProgramWorkflowService;
 import org.openmrs.api.context.Context;
+import org.openmrs.module.htmlformentry.advice.HtmlFormSummaryAdvice;
+import org.openmrs.module.htmlformentry.advice.ProgramMetadataAdvice;
+import org.openmrs.module.htmlformentry.compiler.CompiledForm;
+import org.openmrs.module.htmlformentry.element.PersonSearchResult;
 import org.openmrs.module.htmlformentry.element.PersonStub;
+import org.openmrs.module.htmlformentry.metrics.QueryCounts;
 import org.openmrs.test.Verifies;
 import org.openmrs.util.OpenmrsClassLoader;
 
@@ -24,6 +44,8 @@ public class HtmlFormEntryServiceTest extends BaseHtmlFormEntryTest {
 		executeVersionedDataSet("org/openmrs/module/htmlformentry/data/HtmlFormEntryService-data-openmrs-2.1.xml");
 		service = Context.getService(HtmlFormEntryService.class);
 		service.clearConceptMappingCache();
+		service.clearHtmlFormSummaryCache();
+		service.clearProgramMetadataCache();
 	}
 	
 	/**
@@ -35,6 +57,81 @@ public class HtmlFormEntryServiceTest extends BaseHtmlFormEntryTest {
 		Assert.assertEquals(2, service.getAllHtmlForms().size());
 	}
 	
+	/**
+	 * @see {@link HtmlFormEntryService#getAllHtmlFormSummaries()}
+	 */
+	@Test
+	@Verifies(value = "should return summaries of all html forms ordered by name", method = "getAllHtmlFormSummaries()")
+	public void getAllHtmlFormSummaries_shouldReturnSummariesOfAllHtmlFormsOrderedByName() throws Exception {
+		List<HtmlFormSummary> summaries = service.getAllHtmlFormSummaries();
+		Assert.assertEquals(2, summaries.size());
+		Assert.assertEquals("Form two", summaries.get(0).getName());
+		Assert.assertEquals(Integer.valueOf(2), summaries.get(0).getId());
+		Assert.assertEquals("16914264-e162-11df-9195-001e378eb67e", summaries.get(0).getUuid());
+		Assert.assertEquals(Integer.valueOf(2), summaries.get(0).getFormId());
+		Assert.assertEquals(Integer.valueOf(1), summaries.get(0).getEncounterTypeId());
+		Assert.assertTrue(summaries.get(0).isPublished());
+		Assert.assertEquals("Test form", summaries.get(1).getName());
+	}
+	
+	/**
+	 * @see {@link HtmlFormEntryService#getAllHtmlFormSummaries()}
+	 */
+	@Test
+	@Verifies(value = "should refresh summaries when an html form is saved", method = "getAllHtmlFormSummaries()")
+	public void getAllHtmlFormSummaries_shouldRefreshSummariesWhenAnHtmlFormIsSaved() throws Exception {
+		Assert.assertEquals(2, service.getAllHtmlFormSummaries().size());
+		
+		HtmlForm htmlForm = service.getHtmlForm(1);
+		htmlForm.getForm().setName("Renamed form");
+		service.saveHtmlForm(htmlForm);
+		
+		List<HtmlFormSummary> summaries = service.getAllHtmlFormSummaries();
+		Assert.assertEquals("Renamed form", summaries.get(1).getName());
+	}
+	
+	/**
+	 * @see {@link HtmlFormSummaryAdvice}
+	 */
+	@Test
+	@Verifies(value = "should refresh summaries when a form is retired", method = "getAllHtmlFormSummaries()")
+	public void getAllHtmlFormSummaries_shouldRefreshSummariesWhenAFormIsRetired() throws Exception {
+		Form form = service.getHtmlForm(1).getForm();
+		Assert.assertFalse(getSummaryOfForm(form).isRetired());
+		
+		Context.getFormService().retireForm(form, "test");
+		new HtmlFormSummaryAdvice().afterReturning(null,
+		    FormService.class.getMethod("retireForm", Form.class, String.class), new Object[] { form, "test" }, null);
+		Assert.assertTrue(getSummaryOfForm(form).isRetired());
+	}
+	
+	private HtmlFormSummary getSummaryOfForm(Form form) {
+		for (HtmlFormSummary summary : service.getAllHtmlFormSummaries()) {
+			if (summary.getFormId().equals(form.getFormId())) {
+				return summary;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * @see {@link HtmlFormEntryService#getFormsWithHtmlForms(boolean)}
+	 */
+	@Test
+	@Verifies(value = "should only return published forms unless asked otherwise", method = "getFormsWithHtmlForms(boolean)")
+	public void getFormsWithHtmlForms_shouldOnlyReturnPublishedFormsUnlessAskedOtherwise() throws Exception {
+		Form form = Context.getFormService().getForm(1);
+		form.setPublished(false);
+		Context.getFormService().saveForm(form);
+		service.clearHtmlFormSummaryCache();
+		
+		List<Form> published = service.getFormsWithHtmlForms(false);
+		Assert.assertEquals(1, published.size());
+		Assert.assertEquals(Integer.valueOf(2), published.get(0).getFormId());
+		
+		Assert.assertEquals(2, service.getFormsWithHtmlForms(true).size());
+	}
+	
 	/**
 	 * @see {@link HtmlFormEntryService#getHtmlFormByUuid(String)}
 	 */
@@ -117,4 +214,189 @@ public class HtmlFormEntryServiceTest extends BaseHtmlFormEntryTest {
 		concept = service.getConceptByMapping("XYZ123:HT");
 		Assert.assertNull(concept);
 	}
+	
+	@Test
+	public void getWorkflowById_shouldReturnTheWorkflowWithTheMatchingId() throws Exception {
+		Assert.assertEquals("84f0effa-dd73-46cb-b931-7cd6be6c5f81", service.getWorkflowById(1).getUuid());
+		Assert.assertNull(service.getWorkflowById(9999));
+	}
+	
+	@Test
+	public void getStateById_shouldReturnTheStateWithTheMatchingId() throws Exception {
+		Assert.assertEquals("92584cdc-6a20-4c84-a659-e035e45d36b0", service.getStateById(1).getUuid());
+		Assert.assertNull(service.getStateById(9999));
+	}
+	
+	@Test
+	public void getWorkflowByConcept_shouldFindAWorkflowAddedAfterTheIndexWasBuiltOnceProgramsAreSaved() throws Exception {
+		Assert.assertNotNull(service.getWorkflowById(1));
+		
+		executeVersionedDataSet("org/openmrs/module/htmlformentry/data/RegressionTest-data-openmrs-2.1.xml");
+		Concept concept = HtmlFormEntryUtil.getConcept("SNOMED CT: Test Workflow Code");
+		// the programs were not changed through the ProgramWorkflowService, so the index has not been cleared
+		Assert.assertNull(service.getWorkflowByConcept(concept));
+		
+		new ProgramMetadataAdvice().afterReturning(null,
+		    ProgramWorkflowService.class.getMethod("saveProgram", Program.class), new Object[] { null }, null);
+		Assert.assertEquals("7c3e071a-53a7-11e1-8cb6-00248140a5eb", service.getWorkflowByConcept(concept).getUuid());
+	}
+	
+	@Test
+	public void searchPersonIds_shouldFindPeopleByTheStartOfEachName() throws Exception {
+		Assert.assertTrue(service.searchPersonIds("Hornblower", null, null, null, null, null).contains(2));
+		Assert.assertTrue(service.searchPersonIds("hora horn", null, null, null, null, null).contains(2));
+		Assert.assertFalse(service.searchPersonIds("Horatio Smith", null, null, null, null, null).contains(2));
+		Assert.assertTrue(service.searchPersonIds(" ", null, null, null, null, null).isEmpty());
+	}
+	
+	@Test
+	public void searchPersonIds_shouldApplyTheAttributeAndProgramFilters() throws Exception {
+		executeVersionedDataSet("org/openmrs/module/htmlformentry/data/HtmlFormEntryTest-data-openmrs-2.1.xml");
+		List<Program> programs = Collections.singletonList(Context.getProgramWorkflowService().getProgram(1));
+		
+		Assert.assertTrue(service.searchPersonIds("Hornblower", null, null, programs, null, null).contains(2));
+		Assert.assertTrue(service.searchPersonIds("Hornblower", Collections.singletonList("No such attribute"),
+		    null, null, null, null).isEmpty());
+	}
+	
+	@Test
+	public void searchPersonIds_shouldReturnOnePageOfDistinctResults() throws Exception {
+		List<Integer> all = service.searchPersonIds("h", null, null, null, null, null);
+		Assert.assertEquals(new HashSet<Integer>(all).size(), all.size());
+		
+		List<Integer> page = service.searchPersonIds("h", null, null, null, 1, 1);
+		Assert.assertTrue(page.size() <= 1);
+		if (all.size() > 1) {
+			Assert.assertEquals(all.get(1), page.get(0));
+		}
+	}
+	
+	@Test
+	public void getPersonSearchResults_shouldReadThePeopleInTheOrderOfTheirIdsWithOneStatement() throws Exception {
+		service.startCountingQueries();
+		try {
+			Context.clearSession();
+			QueryCounts before = service.getQueryCounts();
+			List<PersonSearchResult> results = service.getPersonSearchResults(Arrays.asList(2, 999999, 1));
+			Assert.assertEquals(1, service.getQueryCounts().minus(before).getStatements());
+			
+			Assert.assertEquals(2, results.size());
+			Assert.assertEquals(Integer.valueOf(2), results.get(0).getPersonId());
+			Assert.assertEquals("Hornblower", results.get(0).getFamilyName());
+			Assert.assertEquals(Context.getPatientService().getPatient(2).getPatientIdentifier().getIdentifier(),
+			    results.get(0).getIdentifier());
+			Assert.assertEquals(Integer.valueOf(1), results.get(1).getPersonId());
+		}
+		finally {
+			service.stopCountingQueries();
+		}
+	}
+	
+	@Test
+	public void getPeopleAsPersonStubs_shouldReturnStubsOfPeopleEnrolledInThePrograms() throws Exception {
+		executeVersionedDataSet("org/openmrs/module/htmlformentry/data/HtmlFormEntryTest-data-openmrs-2.1.xml");
+		List<String> programIds = Collections.singletonList("1");
+		
+		PersonStub found = null;
+		for (PersonStub stub : service.getPeopleAsPersonStubs(null, null, programIds, null)) {
+			if (stub.getId().equals(2)) {
+				found = stub;
+			}
+		}
+		Assert.assertNotNull(found);
+		Assert.assertEquals("Horatio", found.getGivenName());
+		Assert.assertEquals("Hornblower", found.getFamilyName());
+		
+		List<Person> personsToExclude = Collections.singletonList(Context.getPersonService().getPerson(2));
+		for (PersonStub stub : service.getPeopleAsPersonStubs(null, null, programIds, personsToExclude)) {
+			Assert.assertFalse(stub.getId().equals(2));
+		}
+		Assert.assertTrue(service.getPeopleAsPersonStubs(null, null, programIds, null, 0).isEmpty());
+	}
+	
+	@Test
+	public void getPeopleAsPersonStubs_shouldLimitThePeopleRatherThanTheirNames() throws Exception {
+		executeVersionedDataSet("org/openmrs/module/htmlformentry/data/HtmlFormEntryTest-data-openmrs-2.1.xml");
+		List<String> programIds = Collections.singletonList("1");
+		Person person = Context.getPersonService().getPerson(2);
+		person.addName(new PersonName("Aaron", null, "Aardvark"));
+		Context.getPersonService().savePerson(person);
+		Context.flushSession();
+		// a person with no preferred name used to have a row for each of their names
+		Context.getAdministrationService().executeSQL("update person_name set preferred = false where person_id = 2",
+		    false);
+		Context.clearSession();
+		
+		List<PersonStub> all = service.getPeopleAsPersonStubs(null, null, programIds, null);
+		Set<Integer> ids = new HashSet<Integer>();
+		for (PersonStub stub : all) {
+			ids.add(stub.getId());
+		}
+		Assert.assertTrue(ids.contains(2));
+		Assert.assertEquals(ids.size(), all.size());
+		Assert.assertEquals(Math.min(2, all.size()), service.getPeopleAsPersonStubs(null, null, programIds, null, 2).size());
+	}
+	
+	@Test
+	public void getPeopleAsPersonStubs_shouldReturnNobodyIfNoFilterMatches() throws Exception {
+		Assert.assertTrue(service.getPeopleAsPersonStubs(null, null, null, null).isEmpty());
+		Assert.assertTrue(service.getPeopleAsPersonStubs(null, null, Collections.singletonList("No such program"), null)
+		        .isEmpty());
+		Assert.assertTrue(service.getPeopleAsPersonStubs(Collections.singletonList("No such attribute"), null, null, null)
+		        .isEmpty());
+	}
+	
+	@Test
+	public void preloadFormData_shouldLoadTheConceptsOfAFormWithTheirNamesAndAnswers() throws Exception {
+		CompiledForm form = CompiledForm.compile("<htmlform><obs conceptId=\"5089\"/></htmlform>", service.getHandlers(),
+		    new HtmlFormEntryGenerator());
+		Context.clearSession();
+		
+		service.preloadFormData(form.getDataDependencies());
+		
+		Concept weight = Context.getConceptService().getConcept(5089);
+		Assert.assertTrue(Hibernate.isInitialized(FieldUtils.readField(weight, "names", true)));
+		Assert.assertTrue(Hibernate.isInitialized(FieldUtils.readField(weight, "answers", true)));
+	}
+	
+	@Test
+	public void preloadFormData_shouldTakeFewerStatementsThanTheTagsLookingUpTheirOwnConcepts() throws Exception {
+		CompiledForm form = CompiledForm.compile(
+		    "<htmlform><obs conceptId=\"5089\"/><obs conceptId=\"5497\"/><obs conceptId=\"18\"/></htmlform>",
+		    service.getHandlers(), new HtmlFormEntryGenerator());
+		service.startCountingQueries();
+		try {
+			clearCaches();
+			QueryCounts before = service.getQueryCounts();
+			getConcepts(5089, 5497, 18);
+			long withoutPreload = service.getQueryCounts().minus(before).getStatements();
+			
+			clearCaches();
+			before = service.getQueryCounts();
+			service.preloadFormData(form.getDataDependencies());
+			getConcepts(5089, 5497, 18);
+			long withPreload = service.getQueryCounts().minus(before).getStatements();
+			
+			Assert.assertTrue(withPreload + " statements with the preload, " + withoutPreload + " without",
+			    withPreload < withoutPreload);
+		}
+		finally {
+			service.stopCountingQueries();
+		}
+	}
+	
+	private void clearCaches() {
+		Context.clearSession();
+		Cache cache = Context.getRegisteredComponent("sessionFactory", SessionFactory.class).getCache();
+		cache.evictEntityRegions();
+		cache.evictCollectionRegions();
+	}
+	
+	private void getConcepts(Integer... ids) {
+		for (Integer id : ids) {
+			Concept concept = Context.getConceptService().getConcept(id);
+			concept.getNames().size();
+			concept.getAnswers().size();
+		}
+	}
 }
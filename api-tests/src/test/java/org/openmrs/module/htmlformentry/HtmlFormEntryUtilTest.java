@@ -7,10 +7,13 @@ import static org.junit.Assert.assertThat;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 import java.util.UUID;
+import java.util.Vector;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -1145,6 +1148,44 @@ public class HtmlFormEntryUtilTest extends BaseHtmlFormEntryTest {
 		HtmlFormEntryUtil.evaluateStaticConstant("xxx.yyy.ZZZ");
 	}
 	
+	@Test
+	public void removeEmptyObs_shouldRemoveObsWithoutValuesAndKeepTheOrderOfTheRest() throws Exception {
+		Concept numeric = conceptWithDatatype(1, "NM");
+		Concept text = conceptWithDatatype(2, "ST");
+		Concept grouping = conceptWithDatatype(3, "ZZ");
+		
+		Obs emptyNumeric = new Obs();
+		emptyNumeric.setConcept(numeric);
+		Obs weight = new Obs();
+		weight.setConcept(numeric);
+		weight.setValueNumeric(70d);
+		Obs emptyText = new Obs();
+		emptyText.setConcept(text);
+		emptyText.setValueText("");
+		Obs note = new Obs();
+		note.setConcept(text);
+		note.setValueText("note");
+		Obs group = new Obs();
+		group.setConcept(grouping);
+		Obs emptyMember = new Obs();
+		emptyMember.setConcept(numeric);
+		group.addGroupMember(emptyMember);
+		
+		List<Obs> obsList = new Vector<Obs>(Arrays.asList(emptyNumeric, weight, emptyText, note, group));
+		HtmlFormEntryUtil.removeEmptyObs(obsList);
+		
+		Assert.assertEquals(Arrays.asList(weight, note), obsList);
+		Assert.assertNull(emptyMember.getObsGroup());
+	}
+	
+	private Concept conceptWithDatatype(Integer conceptId, String hl7Abbreviation) {
+		ConceptDatatype datatype = new ConceptDatatype();
+		datatype.setHl7Abbreviation(hl7Abbreviation);
+		Concept concept = new Concept(conceptId);
+		concept.setDatatype(datatype);
+		return concept;
+	}
+	
 	protected void checkBooleanObsValue(Obs obs, boolean expected) {
 		if (OpenmrsConstants.OPENMRS_VERSION_SHORT.equals("1.6")) {
 			Double expectedValue = expected ? 1.0 : 0.0;
@@ -3,11 +3,15 @@ package org.openmrs.module.htmlformentry;
 import java.text.ParseException;
 import java.util.Date;
 
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.openmrs.Concept;
 import org.openmrs.Encounter;
+import org.openmrs.Obs;
 import org.openmrs.Patient;
 import org.openmrs.api.context.Context;
+import org.openmrs.module.htmlformentry.metrics.QueryCounts;
 
 public class ObsReferenceTagTest extends BaseHtmlFormEntryTest {
 	
@@ -691,4 +695,76 @@ public class ObsReferenceTagTest extends BaseHtmlFormEntryTest {
 		}.run();
 	}
 	
+	@Test
+	public void viewMultipleReferenceObsShouldShowTheObsOfEachConceptFromSameDate() throws Exception {
+		new RegressionTestHelper() {
+			
+			@Override
+			public String getFormName() {
+				return "multipleObsReferenceForm";
+			}
+			
+			@Override
+			public Patient getPatientToView() {
+				return patient;
+			}
+			
+			@Override
+			public Encounter getEncounterToView() throws Exception {
+				Encounter e = new Encounter();
+				e.setPatient(getPatient());
+				Date date = Context.getDateFormat().parse("01/02/2003");
+				e.setDateCreated(new Date());
+				e.setEncounterDatetime(date);
+				e.setLocation(Context.getLocationService().getLocation(2));
+				e.addProvider(Context.getEncounterService().getEncounterRole(1),
+				    Context.getProviderService().getProvider(1));
+				return e;
+			}
+			
+			@Override
+			public void testViewingEncounter(Encounter encounter, String html) {
+				// the obs of all three concepts are loaded together, and weight is still the latest of the two
+				TestUtil.assertFuzzyContains("Weight:75", html);
+				TestUtil.assertFuzzyContains("Coded: PENICILLIN", html);
+				TestUtil.assertFuzzyContains("Text: Penicillin", html);
+			}
+		}.run();
+	}
+	
+	@Test
+	public void getReferenceObsShouldLoadTheObsOfEveryRegisteredConceptWithOneQuery() throws Exception {
+		Date date = Context.getDateFormat().parse("01/02/2003");
+		Concept weight = Context.getConceptService().getConcept(5089);
+		Concept coded = Context.getConceptService().getConcept(1000);
+		Concept text = Context.getConceptService().getConcept(80000);
+		ObsReferenceSnapshot snapshot = new ObsReferenceSnapshot();
+		snapshot.register(patient, date, weight);
+		snapshot.register(patient, date, coded);
+		snapshot.register(patient, date, text);
+		
+		HtmlFormEntryService service = HtmlFormEntryUtil.getService();
+		QueryCounts before, first, rest;
+		Obs weightObs, codedObs, textObs;
+		service.startCountingQueries();
+		try {
+			before = service.getQueryCounts();
+			weightObs = snapshot.getReferenceObs(patient, date, weight, null);
+			first = service.getQueryCounts();
+			codedObs = snapshot.getReferenceObs(patient, date, coded, null);
+			textObs = snapshot.getReferenceObs(patient, date, text, null);
+			rest = service.getQueryCounts();
+		}
+		finally {
+			service.stopCountingQueries();
+		}
+		
+		// there are two weight obs that day, of which the latest is 75kg
+		Assert.assertEquals(75d, weightObs.getValueNumeric(), 0);
+		Assert.assertEquals("PENICILLIN", codedObs.getValueCoded().getName().getName());
+		Assert.assertEquals("Penicillin", textObs.getValueText());
+		// one query for all three concepts, and none for the lookups after it
+		Assert.assertEquals(1, first.minus(before).getQueries());
+		Assert.assertEquals(0, rest.minus(first).getStatements());
+	}
 }
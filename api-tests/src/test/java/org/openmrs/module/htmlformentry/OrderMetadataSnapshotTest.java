@@ -0,0 +1,72 @@
+package org.openmrs.module.htmlformentry;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.CareSetting;
+import org.openmrs.OrderFrequency;
+import org.openmrs.api.OrderService;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.htmlformentry.advice.OrderMetadataAdvice;
+import org.openmrs.module.htmlformentry.widget.Option;
+
+public class OrderMetadataSnapshotTest extends BaseHtmlFormEntryTest {
+	
+	private OrderService os;
+	
+	@Before
+	public void setupDatabase() throws Exception {
+		executeVersionedDataSet("org/openmrs/module/htmlformentry/data/RegressionTest-data-openmrs-2.1.xml");
+		executeVersionedDataSet("org/openmrs/module/htmlformentry/data/drugOrderElement.xml");
+		os = Context.getOrderService();
+	}
+	
+	@Test
+	public void getCareSettingOptions_shouldMatchTheCareSettings() throws Exception {
+		OrderMetadataSnapshot snapshot = new OrderMetadataSnapshot();
+		List<CareSetting> careSettings = os.getCareSettings(false);
+		List<Option> options = snapshot.getCareSettingOptions(false);
+		Assert.assertEquals(careSettings.size(), options.size());
+		for (int i = 0; i < careSettings.size(); i++) {
+			Assert.assertEquals(careSettings.get(i).getName(), options.get(i).getLabel());
+			Assert.assertEquals(careSettings.get(i).getId().toString(), options.get(i).getValue());
+		}
+		for (Option option : snapshot.getCareSettingOptions(true)) {
+			CareSetting careSetting = os.getCareSetting(Integer.valueOf(option.getValue()));
+			Assert.assertEquals(CareSetting.CareSettingType.INPATIENT, careSetting.getCareSettingType());
+		}
+	}
+	
+	@Test
+	public void getOrderFrequencyOptions_shouldReturnACopyOfTheSharedOptions() throws Exception {
+		List<OrderFrequency> frequencies = os.getOrderFrequencies(false);
+		List<Option> options = new OrderMetadataSnapshot().getOrderFrequencyOptions();
+		Assert.assertEquals(frequencies.size(), options.size());
+		
+		options.get(0).setLabel("changed");
+		options.get(0).setSelected(true);
+		Option other = new OrderMetadataSnapshot().getOrderFrequencyOptions().get(0);
+		Assert.assertEquals(frequencies.get(0).getConcept().getName().getName(), other.getLabel());
+		Assert.assertFalse(other.isSelected());
+	}
+	
+	@Test
+	public void getDrugOrderType_shouldReturnTheDrugOrderType() throws Exception {
+		Assert.assertEquals(os.getOrderTypeByUuid("131168f4-15f5-102d-96e4-000c29c2a5d7"),
+		    new OrderMetadataSnapshot().getDrugOrderType());
+	}
+	
+	@Test
+	public void orderMetadataAdvice_shouldClearTheSharedOptionsWhenAnOrderFrequencyIsRetired() throws Exception {
+		List<OrderFrequency> frequencies = os.getOrderFrequencies(false);
+		Assert.assertEquals(frequencies.size(), new OrderMetadataSnapshot().getOrderFrequencyOptions().size());
+		
+		Object[] args = { frequencies.get(0), "test" };
+		os.retireOrderFrequency(frequencies.get(0), "test");
+		new OrderMetadataAdvice().afterReturning(null,
+		    OrderService.class.getMethod("retireOrderFrequency", OrderFrequency.class, String.class), args, os);
+		Assert.assertEquals(frequencies.size() - 1, new OrderMetadataSnapshot().getOrderFrequencyOptions().size());
+	}
+}
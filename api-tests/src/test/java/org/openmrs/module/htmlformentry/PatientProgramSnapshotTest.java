@@ -0,0 +1,97 @@
+package org.openmrs.module.htmlformentry;
+
+import java.util.Calendar;
+import java.util.Date;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Patient;
+import org.openmrs.PatientProgram;
+import org.openmrs.Program;
+import org.openmrs.api.ProgramWorkflowService;
+import org.openmrs.api.context.Context;
+
+public class PatientProgramSnapshotTest extends BaseHtmlFormEntryTest {
+	
+	private ProgramWorkflowService pws;
+	
+	private PatientProgramSnapshot snapshot;
+	
+	@Before
+	public void setupDatabase() throws Exception {
+		executeVersionedDataSet("org/openmrs/module/htmlformentry/data/HtmlFormEntryTest-data-openmrs-2.1.xml");
+		pws = Context.getProgramWorkflowService();
+		snapshot = new PatientProgramSnapshot();
+	}
+	
+	@Test
+	public void isEnrolledInProgramOnDate_shouldMatchTheDatabaseLookup() throws Exception {
+		Program program = pws.getProgram(1);
+		Date now = new Date();
+		
+		Patient enrolled = Context.getPatientService().getPatient(2);
+		Assert.assertTrue(snapshot.isEnrolledInProgramOnDate(enrolled, program, now));
+		Assert.assertEquals(HtmlFormEntryUtil.isEnrolledInProgramOnDate(enrolled, program, now),
+		    snapshot.isEnrolledInProgramOnDate(enrolled, program, now));
+		
+		Patient notEnrolled = Context.getPatientService().getPatient(6);
+		Assert.assertFalse(snapshot.isEnrolledInProgramOnDate(notEnrolled, program, now));
+	}
+	
+	@Test
+	public void isEnrolledInProgramOnDate_shouldReturnFalseIfTheDateIsBeforeTheEnrollmentDate() throws Exception {
+		Patient patient = Context.getPatientService().getPatient(2);
+		Calendar cal = Calendar.getInstance();
+		cal.set(2008, 6, 31);
+		
+		Assert.assertFalse(snapshot.isEnrolledInProgramOnDate(patient, pws.getProgram(1), cal.getTime()));
+	}
+	
+	@Test
+	public void getClosestFutureProgramEnrollment_shouldReturnTheEarliestLaterEnrollment() throws Exception {
+		executeVersionedDataSet("org/openmrs/module/htmlformentry/data/RegressionTest-data-openmrs-2.1.xml");
+		Patient patient = Context.getPatientService().getPatient(2);
+		Program program = pws.getProgram(1);
+		
+		Calendar cal = Calendar.getInstance();
+		cal.set(2001, 6, 31);
+		Assert.assertEquals("32296060-03aa-102d-b0e3-001ec94a0cc5",
+		    snapshot.getClosestFutureProgramEnrollment(patient, program, cal.getTime()).getUuid());
+		
+		cal.set(2000, 6, 31);
+		Assert.assertEquals("32596060-03aa-102d-b0e3-001ec94a0cc5",
+		    snapshot.getClosestFutureProgramEnrollment(patient, program, cal.getTime()).getUuid());
+		
+		Assert.assertNull(snapshot.getClosestFutureProgramEnrollment(patient, program, new Date()));
+	}
+	
+	@Test
+	public void getPatientPrograms_shouldSeeChangesMadeToLoadedEnrollments() throws Exception {
+		Patient patient = Context.getPatientService().getPatient(2);
+		Program program = pws.getProgram(1);
+		Assert.assertTrue(snapshot.isEnrolledInProgramOnDate(patient, program, new Date()));
+		
+		PatientProgram pp = pws.getPatientProgram(1);
+		Assert.assertTrue(snapshot.getPatientPrograms(patient).contains(pp));
+		pp.setDateCompleted(new Date(System.currentTimeMillis() - 1000));
+		
+		Assert.assertFalse(snapshot.isEnrolledInProgramOnDate(patient, program, new Date()));
+	}
+	
+	@Test
+	public void clear_shouldLoadTheEnrollmentsAgain() throws Exception {
+		Patient patient = Context.getPatientService().getPatient(2);
+		int count = snapshot.getPatientPrograms(patient).size();
+		
+		PatientProgram pp = new PatientProgram();
+		pp.setPatient(patient);
+		pp.setProgram(pws.getProgram(2));
+		pp.setDateEnrolled(new Date());
+		pws.savePatientProgram(pp);
+		Assert.assertEquals(count, snapshot.getPatientPrograms(patient).size());
+		
+		snapshot.clear();
+		Assert.assertEquals(count + 1, snapshot.getPatientPrograms(patient).size());
+	}
+}
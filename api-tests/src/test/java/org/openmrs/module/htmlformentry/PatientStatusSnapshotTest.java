@@ -0,0 +1,43 @@
+package org.openmrs.module.htmlformentry;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.GlobalProperty;
+import org.openmrs.Obs;
+import org.openmrs.Patient;
+import org.openmrs.api.context.Context;
+
+public class PatientStatusSnapshotTest extends BaseHtmlFormEntryTest {
+	
+	private Patient patient;
+	
+	@Before
+	public void setup() throws Exception {
+		// weight, of which patient 7 has obs in the standard test data
+		Context.getAdministrationService()
+		        .saveGlobalProperty(new GlobalProperty(PatientStatusSnapshot.GP_CAUSE_OF_DEATH, "5089"));
+		patient = Context.getPatientService().getPatient(7);
+	}
+	
+	@Test
+	public void getCauseOfDeathObs_shouldLoadTheObsOnce() throws Exception {
+		PatientStatusSnapshot snapshot = new PatientStatusSnapshot();
+		List<Obs> obs = snapshot.getCauseOfDeathObs(patient);
+		Assert.assertEquals(Context.getObsService().getObservationsByPersonAndConcept(patient,
+		    Context.getConceptService().getConcept(5089)).size(), obs.size());
+		Assert.assertFalse(obs.isEmpty());
+		Assert.assertSame(obs, snapshot.getCauseOfDeathObs(patient));
+	}
+	
+	@Test
+	public void clear_shouldLoadTheObsAgain() throws Exception {
+		PatientStatusSnapshot snapshot = new PatientStatusSnapshot();
+		List<Obs> obs = snapshot.getCauseOfDeathObs(patient);
+		snapshot.clear();
+		Assert.assertNotSame(obs, snapshot.getCauseOfDeathObs(patient));
+		Assert.assertEquals(obs.size(), snapshot.getCauseOfDeathObs(patient).size());
+	}
+}
@@ -91,6 +91,29 @@ public class RegressionTest extends BaseHtmlFormEntryTest {
 		}.run();
 	}
 	
+	@Test
+	public void testStatementsDoNotGrowWithTheNumberOfObsTags() throws Exception {
+		// The counts are measured in this run, for forms that differ only in their number of obs, rather
+		// than fixed, so that they catch a tag that queries once per obs whatever the data set and core.
+		StatementCountingHelper noObs = new StatementCountingHelper("simplestForm", 0);
+		noObs.run();
+		StatementCountingHelper oneObs = new StatementCountingHelper("repeatedObsForm", 1);
+		oneObs.run();
+		StatementCountingHelper tenObs = new StatementCountingHelper("repeatedObsForm", 10);
+		tenObs.run();
+		
+		// ten obs tags may take a few statements to load their concept, but fewer than one each
+		long renderMargin = 10;
+		Assert.assertTrue("Opening a form with ten obs took " + tenObs.getRenderStatements() + " statements, "
+		        + noObs.getRenderStatements() + " without them",
+		    tenObs.getRenderStatements() < noObs.getRenderStatements() + renderMargin);
+		// each of the nine more obs is saved with an insert, and fewer than one other statement each
+		long submitMargin = 2 * 9;
+		Assert.assertTrue("Submitting ten obs took " + tenObs.getSubmitStatements() + " statements, one took "
+		        + oneObs.getSubmitStatements(),
+		    tenObs.getSubmitStatements() < oneObs.getSubmitStatements() + submitMargin);
+	}
+	
 	@Test
 	public void testSimplestFormSuccessNoLocationAndNoProvider() throws Exception {
 		final Date date = new Date();
@@ -2628,4 +2651,66 @@ public class RegressionTest extends BaseHtmlFormEntryTest {
 		
 		return image;
 	}
+	
+	/**
+	 * Counts the statements of opening and submitting a form, filling in the first few of its weights,
+	 * without a limit on them
+	 */
+	private class StatementCountingHelper extends RegressionTestHelper {
+		
+		private final String formName;
+		
+		private final int weights;
+		
+		private final Date date = new Date();
+		
+		public StatementCountingHelper(String formName, int weights) {
+			this.formName = formName;
+			this.weights = weights;
+		}
+		
+		@Override
+		public String getFormName() {
+			return formName;
+		}
+		
+		@Override
+		public Integer getRenderStatementBudget() {
+			return Integer.MAX_VALUE;
+		}
+		
+		@Override
+		public Integer getSubmitStatementBudget() {
+			return Integer.MAX_VALUE;
+		}
+		
+		@Override
+		public String[] widgetLabels() {
+			String[] labels = new String[3 + weights];
+			labels[0] = "Date:";
+			labels[1] = "Location:";
+			labels[2] = "Provider:";
+			for (int i = 1; i <= weights; i++) {
+				labels[2 + i] = "Weight " + i + ":";
+			}
+			return labels;
+		}
+		
+		@Override
+		public void setupRequest(MockHttpServletRequest request, Map<String, String> widgets) {
+			request.addParameter(widgets.get("Date:"), dateAsString(date));
+			request.addParameter(widgets.get("Location:"), "2");
+			request.addParameter(widgets.get("Provider:"), "502");
+			for (int i = 1; i <= weights; i++) {
+				request.addParameter(widgets.get("Weight " + i + ":"), String.valueOf(60 + i));
+			}
+		}
+		
+		@Override
+		public void testResults(SubmissionResults results) {
+			results.assertNoErrors();
+			results.assertEncounterCreated();
+			results.assertObsCreatedCount(weights);
+		}
+	}
 }
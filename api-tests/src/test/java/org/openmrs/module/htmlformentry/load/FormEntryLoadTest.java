@@ -0,0 +1,50 @@
+package org.openmrs.module.htmlformentry.load;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.htmlformentry.BaseHtmlFormEntryTest;
+
+/**
+ * Simulates users entering, viewing and editing forms at the same time against the in-memory test
+ * database, to find thread-safety problems in the state they share and to see how form entry scales.
+ * It is only run by the load-test profile, and is configured with system properties:
+ * <ul>
+ * <li>load.users: the number of simulated users, 8 by default</li>
+ * <li>load.warmupSeconds: how long to run before measuring, 10 by default</li>
+ * <li>load.durationSeconds: how long to measure for, 60 by default</li>
+ * <li>load.mix: the weighted scenarios to run, {@value LoadScenarios#DEFAULT_MIX} by default</li>
+ * <li>load.churnMillis: how often to invalidate the shared caches, 500 by default, 0 for never</li>
+ * </ul>
+ * e.g. {@code mvn test -P load-test -pl api-tests -Dload.users=16 -Dload.mix=editObs}
+ */
+public class FormEntryLoadTest extends BaseHtmlFormEntryTest {
+	
+	@Before
+	public void setupDatabase() throws Exception {
+		executeVersionedDataSet("org/openmrs/module/htmlformentry/data/RegressionTest-data-openmrs-2.1.xml");
+		// the simulated users have their own sessions and transactions, so they only see committed data
+		getConnection().commit();
+		Context.clearSession();
+	}
+	
+	@Test
+	public void formEntry_shouldHaveNoErrorsUnderConcurrentLoad() throws Exception {
+		List<LoadScenario> mix = LoadScenarios.parseMix(System.getProperty("load.mix", LoadScenarios.DEFAULT_MIX));
+		int users = Integer.getInteger("load.users", 8);
+		long warmupMillis = TimeUnit.SECONDS.toMillis(Integer.getInteger("load.warmupSeconds", 10));
+		long durationMillis = TimeUnit.SECONDS.toMillis(Integer.getInteger("load.durationSeconds", 60));
+		LoadHarness harness = new LoadHarness(mix, users, warmupMillis, durationMillis);
+		harness.setChurnIntervalMillis(Integer.getInteger("load.churnMillis", 500));
+		
+		LoadReport report = harness.run();
+		System.out.println(report);
+		
+		Assert.assertTrue("No flows completed while measuring", report.getFlowCount() > 0);
+		Assert.assertEquals("Flows failed under load, see the report", 0, report.getErrorCount());
+	}
+}
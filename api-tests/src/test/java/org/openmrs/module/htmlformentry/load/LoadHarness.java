@@ -0,0 +1,222 @@
+package org.openmrs.module.htmlformentry.load;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.htmlformentry.HtmlFormEntryGlobalProperties;
+import org.openmrs.module.htmlformentry.HtmlFormEntryService;
+import org.openmrs.module.htmlformentry.HtmlFormEntryUtil;
+import org.openmrs.module.htmlformentry.OrderMetadataSnapshot;
+import org.openmrs.module.htmlformentry.handler.TagHandler;
+
+/**
+ * Runs form flows for a number of simulated users at once. Each user is a thread with its own
+ * OpenMRS context session, like a web request, that runs scenarios picked at random from a mix until
+ * the time is up. Flows that start during the warm-up are not measured.
+ * <p/>
+ * While the users run, a churn thread can keep invalidating the state that all users share: the
+ * global property snapshot, the order metadata cache, and the tag handler registry, which also
+ * invalidates the compiled forms.
+ */
+public class LoadHarness {
+	
+	private static final String USERNAME = "admin";
+	
+	private static final String PASSWORD = "test";
+	
+	private final Log log = LogFactory.getLog(getClass());
+	
+	private final List<LoadScenario> mix;
+	
+	private final int users;
+	
+	private final long warmupMillis;
+	
+	private final long durationMillis;
+	
+	private long churnIntervalMillis;
+	
+	/**
+	 * @param mix the scenarios for users to pick from, as returned by
+	 *            {@link LoadScenarios#parseMix(String)}
+	 * @param users the number of simulated users
+	 * @param warmupMillis how long to run before measuring
+	 * @param durationMillis how long to measure for
+	 */
+	public LoadHarness(List<LoadScenario> mix, int users, long warmupMillis, long durationMillis) {
+		this.mix = mix;
+		this.users = users;
+		this.warmupMillis = warmupMillis;
+		this.durationMillis = durationMillis;
+	}
+	
+	/**
+	 * @param churnIntervalMillis how often to invalidate the shared state, or 0 to leave it alone
+	 */
+	public void setChurnIntervalMillis(long churnIntervalMillis) {
+		this.churnIntervalMillis = churnIntervalMillis;
+	}
+	
+	public LoadReport run() throws Exception {
+		long measureFrom = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(warmupMillis);
+		long measureUntil = measureFrom + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+		
+		ExecutorService executor = Executors.newFixedThreadPool(users);
+		Churn churn = null;
+		try {
+			List<Future<UserResults>> futures = new ArrayList<Future<UserResults>>();
+			for (int i = 0; i < users; ++i) {
+				futures.add(executor.submit(new User(i, measureFrom, measureUntil)));
+			}
+			if (churnIntervalMillis > 0) {
+				churn = new Churn();
+				churn.start();
+			}
+			
+			LoadReport report = new LoadReport(users, warmupMillis, durationMillis);
+			for (Future<UserResults> future : futures) {
+				UserResults results = future.get();
+				report.add(results.flows, results.allocatedBytes);
+			}
+			return report;
+		}
+		finally {
+			if (churn != null) {
+				churn.interrupt();
+				churn.join();
+			}
+			executor.shutdownNow();
+		}
+	}
+	
+	private static class UserResults {
+		
+		private final List<LoadReport.Flow> flows = new ArrayList<LoadReport.Flow>();
+		
+		private long allocatedBytes = -1;
+	}
+	
+	/**
+	 * A simulated user
+	 */
+	private class User implements Callable<UserResults> {
+		
+		private final Random random;
+		
+		private final long measureFrom;
+		
+		private final long measureUntil;
+		
+		User(int number, long measureFrom, long measureUntil) {
+			this.random = new Random(number);
+			this.measureFrom = measureFrom;
+			this.measureUntil = measureUntil;
+		}
+		
+		@Override
+		public UserResults call() throws Exception {
+			UserResults results = new UserResults();
+			long allocatedAtStart = -1;
+			Context.openSession();
+			try {
+				Context.authenticate(USERNAME, PASSWORD);
+				for (long start = System.nanoTime(); start < measureUntil; start = System.nanoTime()) {
+					boolean measured = start >= measureFrom;
+					if (measured && allocatedAtStart < 0) {
+						allocatedAtStart = allocatedBytes();
+					}
+					
+					LoadScenario scenario = mix.get(random.nextInt(mix.size()));
+					Throwable error = null;
+					try {
+						scenario.newFlow().run();
+					}
+					catch (Throwable t) {
+						error = t;
+						log.warn("Error running " + scenario, t);
+					}
+					finally {
+						// like a web request, each flow starts with an empty Hibernate session
+						Context.clearSession();
+					}
+					
+					if (measured) {
+						results.flows.add(new LoadReport.Flow(scenario.getName(), System.nanoTime() - start, error));
+					}
+				}
+				if (allocatedAtStart >= 0) {
+					results.allocatedBytes = allocatedBytes() - allocatedAtStart;
+				}
+			}
+			finally {
+				Context.logout();
+				Context.closeSession();
+			}
+			return results;
+		}
+	}
+	
+	/**
+	 * @return the bytes allocated by the current thread so far, or -1 if the JVM can't tell
+	 */
+	private static long allocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+			if (sunThreads.isThreadAllocatedMemorySupported() && sunThreads.isThreadAllocatedMemoryEnabled()) {
+				return sunThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Keeps invalidating the state that all users share, as saving a global property or starting a
+	 * module that adds tags does
+	 */
+	private class Churn extends Thread {
+		
+		Churn() {
+			super("load-test-churn");
+			setDaemon(true);
+		}
+		
+		@Override
+		public void run() {
+			Context.openSession();
+			try {
+				Context.authenticate(USERNAME, PASSWORD);
+				HtmlFormEntryService service = HtmlFormEntryUtil.getService();
+				while (!isInterrupted()) {
+					Thread.sleep(churnIntervalMillis);
+					HtmlFormEntryGlobalProperties.clearSnapshot();
+					OrderMetadataSnapshot.clearCache();
+					// re-registering a handler publishes a new handler map, so every compiled form is out of date
+					TagHandler obsHandler = service.getHandlerByTagName("obs");
+					service.addHandler("obs", obsHandler);
+				}
+			}
+			catch (InterruptedException e) {
+				// the users are done
+			}
+			catch (Exception e) {
+				log.warn("Error invalidating the shared state", e);
+			}
+			finally {
+				Context.logout();
+				Context.closeSession();
+			}
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package org.openmrs.module.htmlformentry.load;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The throughput, latency percentiles, allocation rate and errors of a run of the {@link LoadHarness}
+ */
+public class LoadReport {
+	
+	private static final int ERRORS_TO_SHOW = 5;
+	
+	private final int users;
+	
+	private final long warmupMillis;
+	
+	private final long durationMillis;
+	
+	private final Map<String, List<Flow>> flowsByScenario = new TreeMap<String, List<Flow>>();
+	
+	private final List<Flow> allFlows = new ArrayList<Flow>();
+	
+	private long allocatedBytes;
+	
+	private boolean allocationMeasured = true;
+	
+	public LoadReport(int users, long warmupMillis, long durationMillis) {
+		this.users = users;
+		this.warmupMillis = warmupMillis;
+		this.durationMillis = durationMillis;
+	}
+	
+	/**
+	 * Adds the measured flows of one user
+	 *
+	 * @param flows the flows
+	 * @param allocatedBytes the bytes the user allocated while measured, or -1 if unknown
+	 */
+	public void add(List<Flow> flows, long allocatedBytes) {
+		for (Flow flow : flows) {
+			List<Flow> scenarioFlows = flowsByScenario.get(flow.scenario);
+			if (scenarioFlows == null) {
+				scenarioFlows = new ArrayList<Flow>();
+				flowsByScenario.put(flow.scenario, scenarioFlows);
+			}
+			scenarioFlows.add(flow);
+			allFlows.add(flow);
+		}
+		if (allocatedBytes < 0) {
+			allocationMeasured = false;
+		} else {
+			this.allocatedBytes += allocatedBytes;
+		}
+	}
+	
+	public int getFlowCount() {
+		return allFlows.size();
+	}
+	
+	public int getErrorCount() {
+		return errors(allFlows).size();
+	}
+	
+	@Override
+	public String toString() {
+		StringWriter sw = new StringWriter();
+		PrintWriter out = new PrintWriter(sw);
+		out.printf("Form entry load test: %d users, measured for %d s after a %d s warm-up%n", users,
+		    TimeUnit.MILLISECONDS.toSeconds(durationMillis), TimeUnit.MILLISECONDS.toSeconds(warmupMillis));
+		out.printf("%-12s %8s %8s %10s %10s %10s %10s %10s%n", "scenario", "flows", "errors", "flows/s", "p50 ms",
+		    "p90 ms", "p99 ms", "max ms");
+		for (Map.Entry<String, List<Flow>> e : flowsByScenario.entrySet()) {
+			printRow(out, e.getKey(), e.getValue());
+		}
+		printRow(out, "all", allFlows);
+		
+		double seconds = durationMillis / 1000d;
+		if (allocationMeasured) {
+			out.printf("Allocation rate: %.1f MB/s%n", allocatedBytes / seconds / (1024 * 1024));
+		} else {
+			out.println("Allocation rate: not supported by this JVM");
+		}
+		
+		List<Flow> errors = errors(allFlows);
+		for (Flow flow : errors.subList(0, Math.min(ERRORS_TO_SHOW, errors.size()))) {
+			out.println();
+			out.println("Error in " + flow.scenario + ":");
+			flow.error.printStackTrace(out);
+		}
+		out.flush();
+		return sw.toString();
+	}
+	
+	private void printRow(PrintWriter out, String name, List<Flow> flows) {
+		long[] latencies = new long[flows.size()];
+		for (int i = 0; i < latencies.length; ++i) {
+			latencies[i] = flows.get(i).nanos;
+		}
+		Arrays.sort(latencies);
+		out.printf("%-12s %8d %8d %10.1f %10.1f %10.1f %10.1f %10.1f%n", name, flows.size(), errors(flows).size(),
+		    flows.size() / (durationMillis / 1000d), millis(percentile(latencies, 50)), millis(percentile(latencies, 90)),
+		    millis(percentile(latencies, 99)), millis(percentile(latencies, 100)));
+	}
+	
+	/**
+	 * @return the nearest-rank percentile of sorted latencies, or 0 if there are none
+	 */
+	private static long percentile(long[] sorted, int percentile) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		int rank = (int) Math.ceil(percentile / 100d * sorted.length);
+		return sorted[Math.max(rank, 1) - 1];
+	}
+	
+	private static double millis(long nanos) {
+		return nanos / 1000000d;
+	}
+	
+	private static List<Flow> errors(List<Flow> flows) {
+		List<Flow> ret = new ArrayList<Flow>();
+		for (Flow flow : flows) {
+			if (flow.error != null) {
+				ret.add(flow);
+			}
+		}
+		return ret;
+	}
+	
+	/**
+	 * One measured run of a scenario
+	 */
+	public static class Flow {
+		
+		private final String scenario;
+		
+		private final long nanos;
+		
+		private final Throwable error;
+		
+		public Flow(String scenario, long nanos, Throwable error) {
+			this.scenario = scenario;
+			this.nanos = nanos;
+			this.error = error;
+		}
+	}
+}
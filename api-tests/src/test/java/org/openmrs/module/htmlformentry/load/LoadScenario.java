@@ -0,0 +1,30 @@
+package org.openmrs.module.htmlformentry.load;
+
+import org.openmrs.module.htmlformentry.RegressionTestHelper;
+
+/**
+ * One thing a simulated user of the load test does: a full form flow, run with a
+ * {@link RegressionTestHelper}
+ */
+public abstract class LoadScenario {
+	
+	private final String name;
+	
+	protected LoadScenario(String name) {
+		this.name = name;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * @return a new flow for one run of the scenario, as a helper may keep state between its steps
+	 */
+	public abstract RegressionTestHelper newFlow();
+	
+	@Override
+	public String toString() {
+		return name;
+	}
+}
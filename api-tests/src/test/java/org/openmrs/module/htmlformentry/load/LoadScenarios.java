@@ -0,0 +1,197 @@
+package org.openmrs.module.htmlformentry.load;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.openmrs.module.htmlformentry.RegressionTestHelper;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+/**
+ * The scenarios the load test can mix, keyed by the names used in the load.mix system property
+ */
+public class LoadScenarios {
+	
+	public static final String DEFAULT_MIX = "enter:2,editObs:2,obsGroup:1";
+	
+	private static final Map<String, LoadScenario> SCENARIOS = new LinkedHashMap<String, LoadScenario>();
+	
+	static {
+		// enters an encounter and views it
+		add(new LoadScenario("enter") {
+			
+			@Override
+			public RegressionTestHelper newFlow() {
+				return new Flow("simplestForm", "Date:", "Location:", "Provider:") {
+					
+					@Override
+					public boolean doViewEncounter() {
+						return true;
+					}
+				};
+			}
+		});
+		
+		// enters an obs, views it, and edits it
+		add(new LoadScenario("editObs") {
+			
+			@Override
+			public RegressionTestHelper newFlow() {
+				return new Flow("singleObsForm", "Date:", "Location:", "Provider:", "Weight:") {
+					
+					@Override
+					public void setupRequest(MockHttpServletRequest request, Map<String, String> widgets) {
+						super.setupRequest(request, widgets);
+						request.addParameter(widgets.get("Weight:"), "70");
+					}
+					
+					@Override
+					public void testResults(SubmissionResults results) {
+						super.testResults(results);
+						results.assertObsCreated(5089, 70d);
+					}
+					
+					@Override
+					public boolean doViewEncounter() {
+						return true;
+					}
+					
+					@Override
+					public boolean doEditEncounter() {
+						return true;
+					}
+					
+					@Override
+					public String[] widgetLabelsForEdit() {
+						return new String[] { "Weight:" };
+					}
+					
+					@Override
+					public void setupEditRequest(MockHttpServletRequest request, Map<String, String> widgets) {
+						request.setParameter(widgets.get("Weight:"), "75");
+					}
+					
+					@Override
+					public void testEditedResults(SubmissionResults results) {
+						results.assertNoErrors();
+						results.assertObsCreated(5089, 75d);
+						results.assertObsVoided(5089, 70d);
+					}
+				};
+			}
+		});
+		
+		// enters an obs group, and saves it again unchanged from the edit page
+		add(new LoadScenario("obsGroup") {
+			
+			@Override
+			public RegressionTestHelper newFlow() {
+				return new Flow("singleObsGroupForm", "Date:", "Location:", "Provider:", "Weight:", "Allergy:",
+				        "Allergy Date:") {
+					
+					@Override
+					public void setupRequest(MockHttpServletRequest request, Map<String, String> widgets) {
+						super.setupRequest(request, widgets);
+						request.addParameter(widgets.get("Weight:"), "70");
+						request.addParameter(widgets.get("Allergy:"), "Bee stings");
+						request.addParameter(widgets.get("Allergy Date:"), dateAsString(getDate()));
+					}
+					
+					@Override
+					public void testResults(SubmissionResults results) {
+						super.testResults(results);
+						results.assertObsGroupCreatedCount(1);
+					}
+					
+					@Override
+					public boolean doEditEncounter() {
+						return true;
+					}
+					
+					@Override
+					public void testEditedResults(SubmissionResults results) {
+						results.assertNoErrors();
+					}
+				};
+			}
+		});
+	}
+	
+	private static void add(LoadScenario scenario) {
+		SCENARIOS.put(scenario.getName(), scenario);
+	}
+	
+	/**
+	 * @param mix comma separated scenario names, each optionally followed by a colon and a weight,
+	 *            e.g. "enter:2,editObs:1"
+	 * @return the scenarios, each repeated as many times as its weight, for users to pick from at
+	 *         random
+	 */
+	public static List<LoadScenario> parseMix(String mix) {
+		List<LoadScenario> ret = new ArrayList<LoadScenario>();
+		for (String entry : StringUtils.split(mix, ',')) {
+			String name = StringUtils.substringBefore(entry, ":").trim();
+			LoadScenario scenario = SCENARIOS.get(name);
+			if (scenario == null) {
+				throw new IllegalArgumentException("Unknown load scenario '" + name + "', expected one of "
+				        + SCENARIOS.keySet());
+			}
+			String weight = StringUtils.substringAfter(entry, ":").trim();
+			for (int i = StringUtils.isEmpty(weight) ? 1 : Integer.parseInt(weight); i > 0; --i) {
+				ret.add(scenario);
+			}
+		}
+		if (ret.isEmpty()) {
+			throw new IllegalArgumentException("The load mix '" + mix + "' has no scenarios");
+		}
+		return ret;
+	}
+	
+	/**
+	 * A flow that fills in the encounter date, location and provider of a form, and expects an
+	 * encounter to be created
+	 */
+	private static abstract class Flow extends RegressionTestHelper {
+		
+		private final String formName;
+		
+		private final String[] widgetLabels;
+		
+		private final Date date = new Date();
+		
+		Flow(String formName, String... widgetLabels) {
+			this.formName = formName;
+			this.widgetLabels = widgetLabels;
+		}
+		
+		@Override
+		public String getFormName() {
+			return formName;
+		}
+		
+		@Override
+		public String[] widgetLabels() {
+			return widgetLabels;
+		}
+		
+		Date getDate() {
+			return date;
+		}
+		
+		@Override
+		public void setupRequest(MockHttpServletRequest request, Map<String, String> widgets) {
+			request.addParameter(widgets.get("Date:"), dateAsString(date));
+			request.addParameter(widgets.get("Location:"), "2");
+			request.addParameter(widgets.get("Provider:"), "502");
+		}
+		
+		@Override
+		public void testResults(SubmissionResults results) {
+			results.assertNoErrors();
+			results.assertEncounterCreated();
+		}
+	}
+}
@@ -14,6 +14,8 @@ import org.openmrs.Patient;
 import org.openmrs.Visit;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.htmlformentry.matching.ObsGroupEntity;
+import org.openmrs.module.htmlformentry.metrics.FormTimings;
+import org.openmrs.module.htmlformentry.metrics.FormTimingsPublisher;
 import org.openmrs.module.htmlformentry.schema.HtmlFormField;
 import org.openmrs.module.htmlformentry.schema.HtmlFormSchema;
 import org.openmrs.module.htmlformentry.schema.HtmlFormSection;
@@ -32,6 +34,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -85,7 +88,9 @@ public class FormEntryContext {
 	
 	private Encounter existingEncounter;
 	
-	private Map<Concept, List<Obs>> existingObs;
+	private Map<Concept, Set<Obs>> existingObs;
+	
+	private Map<ExistingObsKey, Set<Obs>> existingObsByAnswer;
 	
 	private Map<Concept, List<Order>> existingOrders;
 	
@@ -115,6 +120,18 @@ public class FormEntryContext {
 	
 	private Stack<Object> stack = new Stack<Object>();
 	
+	private PatientProgramSnapshot patientProgramSnapshot = new PatientProgramSnapshot();
+	
+	private OrderMetadataSnapshot orderMetadataSnapshot = new OrderMetadataSnapshot();
+	
+	private PatientStatusSnapshot patientStatusSnapshot = new PatientStatusSnapshot();
+	
+	private ObsReferenceSnapshot obsReferenceSnapshot = new ObsReferenceSnapshot();
+	
+	private Map<Class<?>, Object> otherSnapshots = new HashMap<Class<?>, Object>();
+	
+	private FormTimings timings;
+	
 	// TODO once Html Form Entry no longer supports older core versions that don't have visits, we should:
 	// TODO 1) change the type of this variable to visit
 	// TODO 2) change HtmlFormEntryController so that it correctly populates the context with the relevant visit (if available)
@@ -421,16 +438,15 @@ public class FormEntryContext {
 	 */
 	public void setupExistingData(Encounter encounter) {
 		existingEncounter = encounter;
-		existingObs = new HashMap<Concept, List<Obs>>();
+		existingObs = new HashMap<Concept, Set<Obs>>();
+		existingObsByAnswer = new HashMap<ExistingObsKey, Set<Obs>>();
 		existingOrders = new HashMap<Concept, List<Order>>();
 		if (encounter != null) {
 			for (Obs obs : encounter.getObsAtTopLevel(false)) {
-				List<Obs> list = existingObs.get(obs.getConcept());
-				if (list == null) {
-					list = new LinkedList<Obs>();
-					existingObs.put(obs.getConcept(), list);
+				addToIndex(existingObs, obs.getConcept(), obs);
+				for (ExistingObsKey key : ExistingObsKey.forObs(obs)) {
+					addToIndex(existingObsByAnswer, key, obs);
 				}
-				list.add(obs);
 			}
 			for (Order order : encounter.getOrders()) {
 				if (BooleanUtils.isNotTrue(order.getVoided())) {
@@ -472,19 +488,11 @@ public class FormEntryContext {
 	 * @return
 	 */
 	public Obs removeExistingObs(Concept question, Drug answer) {
-		List<Obs> list = existingObs.get(question);
-		if (list != null) {
-			for (Iterator<Obs> iter = list.iterator(); iter.hasNext();) {
-				Obs test = iter.next();
-				if (answer == null || equalDrug(answer, test.getValueDrug())) {
-					iter.remove();
-					if (list.size() == 0)
-						existingObs.remove(question);
-					return test;
-				}
-			}
+		if (answer == null) {
+			return removeFirstExistingObs(existingObs.get(question));
 		}
-		return null;
+		return removeFirstExistingObs(
+		    existingObsByAnswer.get(new ExistingObsKey(question.getConceptId(), Drug.class, answer.getDrugId())));
 	}
 	
 	/**
@@ -496,19 +504,11 @@ public class FormEntryContext {
 	 * @return
 	 */
 	public Obs removeExistingObs(Concept question, Concept answer) {
-		List<Obs> list = existingObs.get(question);
-		if (list != null) {
-			for (Iterator<Obs> iter = list.iterator(); iter.hasNext();) {
-				Obs test = iter.next();
-				if (answer == null || equalConcepts(answer, test.getValueCoded())) {
-					iter.remove();
-					if (list.size() == 0)
-						existingObs.remove(question);
-					return test;
-				}
-			}
+		if (answer == null) {
+			return removeFirstExistingObs(existingObs.get(question));
 		}
-		return null;
+		return removeFirstExistingObs(
+		    existingObsByAnswer.get(new ExistingObsKey(question.getConceptId(), Concept.class, answer.getConceptId())));
 	}
 	
 	/**
@@ -538,22 +538,9 @@ public class FormEntryContext {
 	 */
 	public Obs removeExistingObs(Concept question, String numericAns) {
 		
-		Number numVal = Double.valueOf(numericAns);
-		List<Obs> list = existingObs.get(question);
-		if (list != null) {
-			for (Iterator<Obs> iter = list.iterator(); iter.hasNext();) {
-				Obs test = iter.next();
-				if (test.getValueNumeric().equals(numVal)) {
-					iter.remove();
-					if (list.size() == 0) {
-						existingObs.remove(question);
-					}
-					return test;
-				}
-			}
-		}
-		
-		return null;
+		Double numVal = Double.valueOf(numericAns);
+		return removeFirstExistingObs(
+		    existingObsByAnswer.get(new ExistingObsKey(question.getConceptId(), Double.class, numVal)));
 	}
 	
 	/**
@@ -565,8 +552,14 @@ public class FormEntryContext {
 	 * @return the list of obs associated with it
 	 */
 	public List<Obs> removeExistingObs(Concept question) {
-		List<Obs> list = existingObs.get(question);
-		existingObs.remove(question);
+		Set<Obs> set = existingObs.get(question);
+		if (set == null) {
+			return null;
+		}
+		List<Obs> list = new ArrayList<Obs>(set);
+		for (Obs obs : list) {
+			removeFromExistingObs(obs);
+		}
 		return list;
 	}
 	
@@ -662,18 +655,15 @@ public class FormEntryContext {
 	 * @return
 	 */
 	public Obs removeExistingObs(Concept question, Boolean answer) {
-		List<Obs> list = existingObs.get(question);
-		if (list != null) {
-			for (Iterator<Obs> iter = list.iterator(); iter.hasNext();) {
-				Obs test = iter.next();
+		Set<Obs> set = existingObs.get(question);
+		if (set != null) {
+			for (Obs test : set) {
 				if (test.getValueAsBoolean() == null) {
 					throw new RuntimeException(
 					        "Invalid boolean value for concept " + question + "; possibly caused by TRUNK-3150");
 				}
 				if (answer == test.getValueAsBoolean()) {
-					iter.remove();
-					if (list.size() == 0)
-						existingObs.remove(question);
+					removeFromExistingObs(test);
 					return test;
 				}
 			}
@@ -681,6 +671,48 @@ public class FormEntryContext {
 		return null;
 	}
 	
+	/**
+	 * Removes the first of the given existing obs, which are kept in the order of the encounter's obs,
+	 * from existingObs and the index of their answers
+	 *
+	 * @param candidates the existing obs to choose from (may be null)
+	 * @return the removed obs, or null if there were none
+	 */
+	private Obs removeFirstExistingObs(Set<Obs> candidates) {
+		if (candidates == null || candidates.isEmpty()) {
+			return null;
+		}
+		Obs obs = candidates.iterator().next();
+		removeFromExistingObs(obs);
+		return obs;
+	}
+	
+	private void removeFromExistingObs(Obs obs) {
+		removeFromIndex(existingObs, obs.getConcept(), obs);
+		for (ExistingObsKey key : ExistingObsKey.forObs(obs)) {
+			removeFromIndex(existingObsByAnswer, key, obs);
+		}
+	}
+	
+	private static <K> void addToIndex(Map<K, Set<Obs>> index, K key, Obs obs) {
+		Set<Obs> set = index.get(key);
+		if (set == null) {
+			set = new LinkedHashSet<Obs>();
+			index.put(key, set);
+		}
+		set.add(obs);
+	}
+	
+	private static <K> void removeFromIndex(Map<K, Set<Obs>> index, K key, Obs obs) {
+		Set<Obs> set = index.get(key);
+		if (set != null) {
+			set.remove(obs);
+			if (set.isEmpty()) {
+				index.remove(key);
+			}
+		}
+	}
+	
 	public Obs getNextUnmatchedObsGroup(String path) {
 		Obs ret = null;
 		int unmatchedContenterCount = 0;
@@ -781,6 +813,91 @@ public class FormEntryContext {
 		return existingPatient;
 	}
 	
+	/**
+	 * Returns the program enrollments loaded for this form entry session. Tags should use it, rather
+	 * than the equivalent methods of {@link HtmlFormEntryUtil}, to avoid querying them over and over.
+	 */
+	public PatientProgramSnapshot getPatientProgramSnapshot() {
+		return patientProgramSnapshot;
+	}
+	
+	/**
+	 * Returns the order metadata loaded for this form entry session, which drug order tags share
+	 */
+	public OrderMetadataSnapshot getOrderMetadataSnapshot() {
+		return orderMetadataSnapshot;
+	}
+	
+	/**
+	 * Returns the exit from care and death obs loaded for this form entry session
+	 */
+	public PatientStatusSnapshot getPatientStatusSnapshot() {
+		return patientStatusSnapshot;
+	}
+	
+	/**
+	 * Returns the same-day obs loaded for the obs reference tags of this form entry session
+	 */
+	public ObsReferenceSnapshot getObsReferenceSnapshot() {
+		return obsReferenceSnapshot;
+	}
+	
+	/**
+	 * Returns data of some other kind loaded for this form entry session, for tags whose types this
+	 * class can't refer to, such as those built against newer versions of core
+	 *
+	 * @param type the type of the snapshot
+	 * @return the snapshot stored with {@link #setSnapshot(Class, Object)}, or null if there is none
+	 */
+	public <T> T getSnapshot(Class<T> type) {
+		return type.cast(otherSnapshots.get(type));
+	}
+	
+	/**
+	 * @param type the type of the snapshot
+	 * @param snapshot the data to keep for the rest of this form entry session
+	 * @see #getSnapshot(Class)
+	 */
+	public <T> void setSnapshot(Class<T> type, T snapshot) {
+		otherSnapshots.put(type, snapshot);
+	}
+	
+	/**
+	 * Starts timing a phase of this form entry session, discarding the timings of an earlier phase
+	 * that were not published
+	 *
+	 * @param phase the phase that is starting
+	 * @return the timings of the phase
+	 */
+	public FormTimings startTimings(FormTimings.Phase phase) {
+		timings = new FormTimings(phase, schema.getName(), mode);
+		if (HtmlFormEntryGlobalProperties.RECORD_QUERY_COUNTS()) {
+			timings.startQueryCounts(HtmlFormEntryUtil.getService().getQueryCounts());
+		}
+		return timings;
+	}
+	
+	/**
+	 * @param phase the phase that is under way
+	 * @return the timings of the phase, which are started if they were not already
+	 */
+	public FormTimings getTimings(FormTimings.Phase phase) {
+		if (timings == null || timings.getPhase() != phase) {
+			return startTimings(phase);
+		}
+		return timings;
+	}
+	
+	/**
+	 * Ends the phase that is being timed, and passes its timings to the form entry metrics
+	 */
+	public void publishTimings() {
+		if (timings != null) {
+			FormTimingsPublisher.publish(timings);
+			timings = null;
+		}
+	}
+	
 	/**
 	 * Returns the encounter currently associated with the context
 	 */
@@ -848,8 +965,18 @@ public class FormEntryContext {
 		return fieldNames;
 	}
 	
+	/**
+	 * @return a copy of the existing obs that have not been matched to a tag yet, by concept
+	 */
 	public Map<Concept, List<Obs>> getExistingObs() {
-		return existingObs;
+		if (existingObs == null) {
+			return null;
+		}
+		Map<Concept, List<Obs>> ret = new HashMap<Concept, List<Obs>>();
+		for (Map.Entry<Concept, Set<Obs>> e : existingObs.entrySet()) {
+			ret.put(e.getKey(), new ArrayList<Obs>(e.getValue()));
+		}
+		return ret;
 	}
 	
 	public Map<Obs, Set<Obs>> getExistingObsInGroups() {
@@ -1009,4 +1136,54 @@ public class FormEntryContext {
 	public void setDefaultEncounterDate(Date defaultEncounterDate) {
 		this.defaultEncounterDate = defaultEncounterDate;
 	}
+	
+	/**
+	 * Identifies the existing obs of a question that have a particular coded, drug or numeric answer,
+	 * so that removing the first obs with an answer is a lookup rather than a scan of every obs of the
+	 * question. Coded and drug answers are compared by id, the way equalConcepts and equalDrug do.
+	 */
+	private static class ExistingObsKey {
+		
+		private final Integer questionId;
+		
+		private final Class<?> answerType;
+		
+		private final Object answer;
+		
+		public ExistingObsKey(Integer questionId, Class<?> answerType, Object answer) {
+			this.questionId = questionId;
+			this.answerType = answerType;
+			this.answer = answer;
+		}
+		
+		public static List<ExistingObsKey> forObs(Obs obs) {
+			Integer questionId = obs.getConcept().getConceptId();
+			List<ExistingObsKey> keys = new ArrayList<ExistingObsKey>(3);
+			keys.add(new ExistingObsKey(questionId, Concept.class,
+			        obs.getValueCoded() == null ? null : obs.getValueCoded().getConceptId()));
+			keys.add(new ExistingObsKey(questionId, Drug.class,
+			        obs.getValueDrug() == null ? null : obs.getValueDrug().getDrugId()));
+			if (obs.getValueNumeric() != null) {
+				keys.add(new ExistingObsKey(questionId, Double.class, obs.getValueNumeric()));
+			}
+			return keys;
+		}
+		
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof ExistingObsKey)) {
+				return false;
+			}
+			ExistingObsKey other = (ExistingObsKey) o;
+			return OpenmrsUtil.nullSafeEquals(questionId, other.questionId) && answerType.equals(other.answerType)
+			        && OpenmrsUtil.nullSafeEquals(answer, other.answer);
+		}
+		
+		@Override
+		public int hashCode() {
+			int hash = questionId == null ? 0 : questionId.hashCode();
+			hash = 31 * hash + answerType.hashCode();
+			return 31 * hash + (answer == null ? 0 : answer.hashCode());
+		}
+	}
 }
@@ -4,15 +4,16 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.velocity.VelocityContext;
 import org.apache.velocity.app.VelocityEngine;
 import org.apache.velocity.runtime.RuntimeConstants;
 import org.apache.velocity.runtime.log.CommonsLogLogChute;
@@ -31,7 +32,15 @@ import org.openmrs.Relationship;
 import org.openmrs.api.ObsService;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.htmlformentry.FormEntryContext.Mode;
+import org.openmrs.module.htmlformentry.compiler.CompiledForm;
+import org.openmrs.module.htmlformentry.compiler.FormDataDependencies;
+import org.openmrs.module.htmlformentry.element.ObsReferenceSubmissionElement;
+import org.openmrs.module.htmlformentry.metrics.FormTimings;
+import org.openmrs.module.htmlformentry.metrics.FormTimings.Phase;
+import org.openmrs.module.htmlformentry.metrics.FormTimings.Stage;
 import org.openmrs.module.htmlformentry.property.ExitFromCareProperty;
+import org.openmrs.module.htmlformentry.util.ComplexObsUpload;
+import org.openmrs.module.htmlformentry.velocity.LazyVelocityContext;
 import org.openmrs.module.htmlformentry.velocity.VelocityContextContentProvider;
 import org.openmrs.module.htmlformentry.widget.AutocompleteWidget;
 import org.openmrs.module.htmlformentry.widget.ConceptSearchAutocompleteWidget;
@@ -111,7 +120,10 @@ public class FormEntrySession {
 	
 	private VelocityEngine velocityEngine;
 	
-	private VelocityContext velocityContext;
+	private LazyVelocityContext velocityContext;
+	
+	// loaded on first use by the relationshipList and relationshipMap velocity variables
+	private List<Relationship> relationships;
 	
 	private boolean voidEncounter = false;
 	
@@ -161,7 +173,7 @@ public class FormEntrySession {
 		catch (Exception e) {
 			log.error("Error initializing Velocity engine", e);
 		}
-		velocityContext = new VelocityContext();
+		velocityContext = new LazyVelocityContext();
 		velocityContext.put("locale", Context.getLocale());
 		velocityContext.put("patient", patient);
 		velocityContext.put("fn", new VelocityFunctions(this));
@@ -169,63 +181,18 @@ public class FormEntrySession {
 		velocityContext.put("session", this);
 		velocityContext.put("context", context);
 		velocityContext.put("formGeneratedDatetime", new Date());
-		velocityContext.put("visit", context.getVisit());
-		
-		{
-			Map<String, List<String>> identifiers = new HashMap<String, List<String>>();
-			if (patient != null) {
-				for (PatientIdentifier id : patient.getActiveIdentifiers()) {
-					String idType = id.getIdentifierType().getName();
-					List<String> list = identifiers.get(idType);
-					if (list == null) {
-						list = new ArrayList<String>();
-						identifiers.put(idType, list);
-					}
-					list.add(id.getIdentifier());
-				}
-			}
-			velocityContext.put("patientIdentifiers", identifiers);
-		}
 		
-		{
-			Map<String, Object> attributes = new HashMap<String, Object>();
-			if (patient != null) {
-				for (PersonAttribute att : patient.getActiveAttributes()) {
-					String attName = att.getAttributeType().getName();
-					if (att.getValue() != null) {
-						attributes.put(attName.replaceAll("'", ""), att.getHydratedObject());
-					}
-				}
-			}
-			velocityContext.put("personAttributes", attributes);
-		}
+		// these are only computed the first time a template refers to them, since most forms never do
+		velocityContext.putLazy("visit", () -> context.getVisit());
+		velocityContext.putLazy("patientIdentifiers", () -> buildPatientIdentifiers());
+		velocityContext.putLazy("personAttributes", () -> buildPersonAttributes());
 		
 		// the relationship query only makes sense in the context of saved patients, so only call it if this patient
 		// has already been persisted (i.e., assigned an id and uuid)
 		if (patient != null && patient.getId() != null && patient.getUuid() != null
 		        && !("testing-html-form-entry".equals(patient.getUuid()))) {
-			List<Relationship> rels = Context.getPersonService().getRelationshipsByPerson(patient);
-			// TODO put this is core in relationship service
-			Map<String, List<Person>> relMap = new HashMap<String, List<Person>>();
-			for (Relationship rel : rels) {
-				if (rel.getPersonA().getPersonId().equals(patient.getPersonId())) {
-					List<Person> list = relMap.get(rel.getRelationshipType().getbIsToA());
-					if (list == null) {
-						list = new ArrayList<Person>();
-						relMap.put(rel.getRelationshipType().getbIsToA(), list);
-					}
-					list.add(rel.getPersonB());
-				} else {
-					List<Person> list = relMap.get(rel.getRelationshipType().getaIsToB());
-					if (list == null) {
-						list = new ArrayList<Person>();
-						relMap.put(rel.getRelationshipType().getaIsToB(), list);
-					}
-					list.add(rel.getPersonA());
-				}
-			}
-			velocityContext.put("relationshipList", rels);
-			velocityContext.put("relationshipMap", relMap);
+			velocityContext.putLazy("relationshipList", () -> getRelationships());
+			velocityContext.putLazy("relationshipMap", () -> buildRelationshipMap());
 		}
 		
 		// finally allow modules to provide content to the velocity context
@@ -237,6 +204,74 @@ public class FormEntrySession {
 		htmlGenerator = new HtmlFormEntryGenerator();
 	}
 	
+	/**
+	 * @return the patient's active identifiers, keyed by identifier type name
+	 */
+	private Map<String, List<String>> buildPatientIdentifiers() {
+		Map<String, List<String>> identifiers = new HashMap<String, List<String>>();
+		if (patient != null) {
+			for (PatientIdentifier id : patient.getActiveIdentifiers()) {
+				String idType = id.getIdentifierType().getName();
+				List<String> list = identifiers.get(idType);
+				if (list == null) {
+					list = new ArrayList<String>();
+					identifiers.put(idType, list);
+				}
+				list.add(id.getIdentifier());
+			}
+		}
+		return identifiers;
+	}
+	
+	/**
+	 * @return the hydrated values of the patient's active attributes, keyed by attribute type name
+	 */
+	private Map<String, Object> buildPersonAttributes() {
+		Map<String, Object> attributes = new HashMap<String, Object>();
+		if (patient != null) {
+			for (PersonAttribute att : patient.getActiveAttributes()) {
+				String attName = att.getAttributeType().getName();
+				if (att.getValue() != null) {
+					attributes.put(attName.replaceAll("'", ""), att.getHydratedObject());
+				}
+			}
+		}
+		return attributes;
+	}
+	
+	private List<Relationship> getRelationships() {
+		if (relationships == null) {
+			relationships = Context.getPersonService().getRelationshipsByPerson(patient);
+		}
+		return relationships;
+	}
+	
+	/**
+	 * @return the people related to the patient, keyed by the name of the role they play
+	 */
+	private Map<String, List<Person>> buildRelationshipMap() {
+		// TODO put this is core in relationship service
+		Map<String, List<Person>> relMap = new HashMap<String, List<Person>>();
+		for (Relationship rel : getRelationships()) {
+			if (rel.getPersonA().getPersonId().equals(patient.getPersonId())) {
+				List<Person> list = relMap.get(rel.getRelationshipType().getbIsToA());
+				if (list == null) {
+					list = new ArrayList<Person>();
+					relMap.put(rel.getRelationshipType().getbIsToA(), list);
+				}
+				list.add(rel.getPersonB());
+			} else {
+				List<Person> list = relMap.get(rel.getRelationshipType().getaIsToB());
+				if (list == null) {
+					list = new ArrayList<Person>();
+					relMap.put(rel.getRelationshipType().getaIsToB(), list);
+				}
+				list.add(rel.getPersonA());
+			}
+		}
+		return relMap;
+	}
+	
 	/**
 	 * Creates a new HTML Form Entry session (in "Enter" mode) for the specified Patient, using the
 	 * specified xml string to create the HTML Form object
@@ -411,24 +446,53 @@ public class FormEntrySession {
 			context.getSchema().setName(htmlForm.getName());
 			context.setUnmatchedMode(false);
 		}
-		xml = htmlGenerator.substituteCharacterCodesWithAsciiCodes(xml);
-		xml = htmlGenerator.stripComments(xml);
-		xml = htmlGenerator.convertSpecialCharactersWithinLogicAndVelocityTests(xml);
+		FormTimings timings = context.startTimings(Phase.RENDER);
+		long start = System.nanoTime();
+		xml = htmlGenerator.applyPreParseSubstitutions(xml);
+		start = timings.addStageTime(Stage.PRE_PARSE_SUBSTITUTIONS, start);
 		xml = htmlGenerator.applyRoleRestrictions(xml);
+		start = timings.addStageTime(Stage.ROLE_RESTRICTIONS, start);
 		xml = htmlGenerator.applyMacros(this, xml);
+		start = timings.addStageTime(Stage.MACROS, start);
 		xml = htmlGenerator.processPages(this, xml);
+		start = timings.addStageTime(Stage.PAGES, start);
 		xml = htmlGenerator.applyRepeats(xml);
+		start = timings.addStageTime(Stage.REPEATS, start);
 		xml = htmlGenerator.applyTranslations(xml, context);
-		xml = htmlGenerator.applyTags(this, xml);
+		start = timings.addStageTime(Stage.TRANSLATIONS, start);
 		
-		if (context.hasUnmatchedObsGroupEntities() && (context.getMode() == Mode.EDIT || context.getMode() == Mode.VIEW)) {
-			if (context.getUnmatchedObsGroupEntities().size() > 1 && context.getExistingObsInGroupsCount() > 0)
-				context.setGuessingInd(true);
-			context.setUnmatchedMode(true);
-			xml = htmlGenerator.applyUnmatchedTags(this, xml);
+		// the unmatched obs groups refer to nodes of the compiled form, so it is only released once they are applied
+		CompiledForm compiledForm = htmlGenerator.borrowCompiledForm(xml);
+		start = timings.addStageTime(Stage.COMPILE, start);
+		try {
+			// load the metadata the tags refer to up front, rather than one item at a time as each tag is applied
+			FormDataDependencies dependencies = compiledForm.getDataDependencies();
+			HtmlFormEntryUtil.getService().preloadFormData(dependencies);
+			// so that the first obsreference tag to be rendered loads the obs of all of them together
+			Date referenceDate = ObsReferenceSubmissionElement.getReferenceDate(context);
+			for (String conceptId : dependencies.getObsReferenceConcepts()) {
+				context.getObsReferenceSnapshot().register(context.getExistingPatient(), referenceDate,
+				    HtmlFormEntryUtil.getConcept(conceptId));
+			}
+			start = timings.addStageTime(Stage.PRELOAD, start);
+			xml = htmlGenerator.applyTags(this, compiledForm);
+			start = timings.addStageTime(Stage.TAGS, start);
+			
+			if (context.hasUnmatchedObsGroupEntities()
+			        && (context.getMode() == Mode.EDIT || context.getMode() == Mode.VIEW)) {
+				if (context.getUnmatchedObsGroupEntities().size() > 1 && context.getExistingObsInGroupsCount() > 0)
+					context.setGuessingInd(true);
+				context.setUnmatchedMode(true);
+				xml = htmlGenerator.applyUnmatchedTags(this, xml);
+				timings.addStageTime(Stage.UNMATCHED_TAGS, start);
+			}
+		}
+		finally {
+			htmlGenerator.releaseCompiledForm(compiledForm);
 		}
 		
 		xml = htmlGenerator.wrapInDiv(xml);
+		context.publishTimings();
 		return xml;
 	}
 	
@@ -441,6 +505,10 @@ public class FormEntrySession {
 		
 		submissionActions = new FormSubmissionActions();
 		
+		// enrollments may have changed since the form was rendered
+		context.getPatientProgramSnapshot().clear();
+		submissionActions.setPatientProgramSnapshot(context.getPatientProgramSnapshot());
+		
 		if (hasPatientTag() && !hasEncouterTag()) {
 			try {
 				submissionActions.beginPerson(patient);
@@ -475,6 +543,27 @@ public class FormEntrySession {
 	 * @throws BadFormDesignException
 	 */
 	public void applyActions() throws BadFormDesignException {
+		try {
+			applySubmissionActions();
+		}
+		finally {
+			// the complex obs handlers have read what they need of any uploads by now, whether or not they closed them
+			if (submissionActions.getObsToCreate() != null) {
+				closeUploads(submissionActions.getObsToCreate());
+			}
+		}
+	}
+	
+	private void closeUploads(Collection<Obs> obs) {
+		for (Obs o : obs) {
+			ComplexObsUpload.close(o.getComplexData());
+			if (o.hasGroupMembers(true)) {
+				closeUploads(o.getGroupMembers(true));
+			}
+		}
+	}
+	
+	private void applySubmissionActions() throws BadFormDesignException {
 		// if any encounter to be created by this form is missing a required field, throw an error
 		// (If there's a widget but it was left blank, that would have been caught earlier--this
 		// is for when there was no widget in the first place.)
@@ -619,12 +708,13 @@ public class FormEntrySession {
 		// 1. if the patient is already enrolled on the given date, just skip this
 		// 2. if the patient is enrolled *after* the given date, shift the existing enrollment to start earlier. (TODO decide if this is right)
 		// 3. otherwise just enroll them as requested
+		PatientProgramSnapshot patientProgramSnapshot = context.getPatientProgramSnapshot();
 		if (submissionActions.getPatientProgramsToCreate() != null) {
 			for (PatientProgram toCreate : submissionActions.getPatientProgramsToCreate()) {
 				boolean skip = false;
 				PatientProgram earliestAfter = null;
-				List<PatientProgram> already = Context.getProgramWorkflowService().getPatientPrograms(toCreate.getPatient(),
-				    toCreate.getProgram(), null, null, null, null, false);
+				List<PatientProgram> already = patientProgramSnapshot.getPatientPrograms(toCreate.getPatient(),
+				    toCreate.getProgram(), null, null, null, null);
 				for (PatientProgram pp : already) {
 					if (pp.getActive(toCreate.getDateEnrolled())) {
 						skip = true;
@@ -648,6 +738,7 @@ public class FormEntrySession {
 				} else {
 					// just enroll as requested
 					Context.getProgramWorkflowService().savePatientProgram(toCreate);
+					patientProgramSnapshot.add(toCreate);
 				}
 			}
 		}
@@ -664,6 +755,7 @@ public class FormEntrySession {
 				Context.getProgramWorkflowService().savePatientProgram(patientProgram);
 			}
 		}
+		patientProgramSnapshot.clear();
 		
 		ObsService obsService = Context.getObsService();
 		
@@ -728,6 +820,7 @@ public class FormEntrySession {
 				hfes.exitFromCare(this.getPatient(), exitFromCareProperty.getDateOfExit(),
 				    exitFromCareProperty.getReasonExitConcept());
 			}
+			context.getPatientStatusSnapshot().clear();
 		}
 		
 		// handle any custom actions (for an example of a custom action, see: https://github.com/PIH/openmrs-module-appointmentschedulingui/commit/e2cda8de1caa8a45d319ae4fbf7714c90c9adb8b)
@@ -1129,6 +1222,17 @@ public class FormEntrySession {
 		velocityContext.put(key, value);
 	}
 	
+	/**
+	 * Adds a variable to the velocity context whose value is only computed the first time a template
+	 * refers to it. Use this for anything that needs a query or other expensive work to build.
+	 *
+	 * @param key the name of the variable
+	 * @param supplier supplies the value of the variable
+	 */
+	public void addLazyToVelocityContext(String key, Supplier<?> supplier) {
+		velocityContext.putLazy(key, supplier);
+	}
+	
 	public String getAfterSaveUrlTemplate() {
 		return afterSaveUrlTemplate;
 	}
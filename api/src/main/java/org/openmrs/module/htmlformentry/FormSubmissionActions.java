@@ -72,6 +72,8 @@ public class FormSubmissionActions {
 	
 	private List<CustomFormSubmissionAction> customFormSubmissionActions;
 	
+	private PatientProgramSnapshot patientProgramSnapshot = new PatientProgramSnapshot();
+	
 	/** The stack where state is stored */
 	private Stack<Object> stack = new Stack<Object>(); // a snapshot might look something like { Patient, Encounter, ObsGroup }
 	
@@ -427,10 +429,10 @@ public class FormSubmissionActions {
 			        "Cannot enroll in a program without specifying an Encounter Date or Enrollment Date");
 		
 		// only need to do some if the patient is not enrolled in the specified program on the specified date
-		if (!HtmlFormEntryUtil.isEnrolledInProgramOnDate(patient, program, enrollmentDate)) {
+		if (!patientProgramSnapshot.isEnrolledInProgramOnDate(patient, program, enrollmentDate)) {
 			
 			// see if the patient is enrolled in this program in the future
-			PatientProgram pp = HtmlFormEntryUtil.getClosestFutureProgramEnrollment(patient, program, enrollmentDate);
+			PatientProgram pp = patientProgramSnapshot.getClosestFutureProgramEnrollment(patient, program, enrollmentDate);
 			
 			if (pp != null) {
 				//set the start dates of all states with a start date equal to the enrollment date to the selected date
@@ -492,8 +494,8 @@ public class FormSubmissionActions {
 		if (encounter == null)
 			throw new IllegalArgumentException("Cannot end enrollment in a program outside of an Encounter");
 		
-		List<PatientProgram> pp = Context.getProgramWorkflowService().getPatientPrograms(patient, program, null,
-		    encounter.getEncounterDatetime(), new Date(), null, false);
+		List<PatientProgram> pp = patientProgramSnapshot.getPatientPrograms(patient, program, null,
+		    encounter.getEncounterDatetime(), new Date(), null);
 		
 		patientProgramsToComplete.addAll(pp);
 	}
@@ -510,7 +512,8 @@ public class FormSubmissionActions {
 			throw new IllegalArgumentException("Cannot change state without an Encounter");
 		
 		// fetch any existing patient program with a state from this workflow
-		PatientProgram patientProgram = HtmlFormEntryUtil.getPatientProgramByWorkflow(patient, state.getProgramWorkflow());
+		PatientProgram patientProgram = patientProgramSnapshot.getPatientProgramByWorkflow(patient,
+		    state.getProgramWorkflow());
 		
 		// if no existing patient program, see if a patient program for this program is already set to be created at part of this submission (HTML-416)
 		if (patientProgram == null) {
@@ -784,6 +787,16 @@ public class FormSubmissionActions {
 		this.relationshipsToEdit = relationshipsToEdit;
 	}
 	
+	/**
+	 * Sets where the actions look up the patient's existing program enrollments, normally the snapshot
+	 * of the form entry session (see {@link FormEntryContext#getPatientProgramSnapshot()})
+	 *
+	 * @param patientProgramSnapshot the snapshot to use
+	 */
+	public void setPatientProgramSnapshot(PatientProgramSnapshot patientProgramSnapshot) {
+		this.patientProgramSnapshot = patientProgramSnapshot;
+	}
+	
 	/**
 	 * @return the patientProgramsToUpdate
 	 */
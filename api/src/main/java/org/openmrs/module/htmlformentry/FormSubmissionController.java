@@ -14,6 +14,9 @@ import org.openmrs.api.APIException;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.htmlformentry.action.FormSubmissionControllerAction;
 import org.openmrs.module.htmlformentry.action.RepeatControllerAction;
+import org.openmrs.module.htmlformentry.metrics.FormTimings;
+import org.openmrs.module.htmlformentry.metrics.FormTimings.Phase;
+import org.openmrs.module.htmlformentry.metrics.FormTimings.Stage;
 
 /**
  * Encapsulates how to validate and submit a form.
@@ -78,6 +81,8 @@ public class FormSubmissionController {
 	 * @return list of all validation errors
 	 */
 	public List<FormSubmissionError> validateSubmission(FormEntryContext context, HttpServletRequest submission) {
+		FormTimings timings = context.startTimings(Phase.SUBMIT);
+		long start = System.nanoTime();
 		lastSubmission = submission;
 		lastSubmissionErrors = new ArrayList<FormSubmissionError>();
 		for (FormSubmissionControllerAction element : actions) {
@@ -87,6 +92,11 @@ public class FormSubmissionController {
 				lastSubmissionErrors.addAll(errs);
 			}
 		}
+		timings.addStageTime(Stage.VALIDATE_SUBMISSION, start);
+		// a submission with errors goes no further
+		if (!lastSubmissionErrors.isEmpty()) {
+			context.publishTimings();
+		}
 		return lastSubmissionErrors;
 	}
 	
@@ -100,6 +110,17 @@ public class FormSubmissionController {
 	 * @param submission
 	 */
 	public void handleFormSubmission(FormEntrySession session, HttpServletRequest submission) throws Exception {
+		FormTimings timings = session.getContext().getTimings(Phase.SUBMIT);
+		long start = System.nanoTime();
+		try {
+			handleSubmission(session, submission);
+		}
+		finally {
+			timings.addStageTime(Stage.HANDLE_SUBMISSION, start);
+		}
+	}
+	
+	private void handleSubmission(FormEntrySession session, HttpServletRequest submission) throws Exception {
 		lastSubmission = submission;
 		//Serialize when opted in.
 		String optedIn = Context.getAdministrationService().getGlobalProperty("htmlformentry.archiveHtmlForms", "No");
@@ -46,9 +46,17 @@ public class HtmlFormEntryActivator extends BaseModuleActivator {
 				 */
 			}
 		}
+		if (HtmlFormEntryGlobalProperties.RECORD_QUERY_COUNTS()) {
+			HtmlFormEntryUtil.getService().setQueryCountsEnabled(true);
+		}
 		log.info("Started HTML Form Entry Module");
 	}
 	
+	@Override
+	public void willStop() {
+		HtmlFormEntryUtil.getService().setQueryCountsEnabled(false);
+	}
+	
 	@Override
 	public void stopped() {
 		log.info("Stopped HTML Form Entry Module");
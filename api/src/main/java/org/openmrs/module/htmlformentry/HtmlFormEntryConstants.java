@@ -36,6 +36,12 @@ public class HtmlFormEntryConstants {
 	
 	public static final String GP_RESTRICT_ENCOUNTER_LOCATION_TO_CURRENT_VISIT_LOCATION = "htmlformentry.restrictEncounterLocationToCurrentVisitLocation";
 	
+	public static final String GP_COMPLEX_OBS_MAX_UPLOAD_SIZE = "htmlformentry.complexObs.maxUploadSize";
+	
+	public static final String GP_SLOW_FORM_THRESHOLD = "htmlformentry.slowFormThreshold";
+	
+	public static final String GP_RECORD_QUERY_COUNTS = "htmlformentry.recordQueryCounts";
+	
 	public static final String COMPLEX_UUID = "8d4a6242-c2cc-11de-8d13-0010c6dffd0f";
 	
 	public static final String ANSWER_LOCATION_TAGS = "answerLocationTags";
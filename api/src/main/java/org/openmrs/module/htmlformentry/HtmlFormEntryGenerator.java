@@ -17,10 +17,15 @@ import org.apache.commons.lang.StringUtils;
 import org.openmrs.Role;
 import org.openmrs.User;
 import org.openmrs.api.context.Context;
+import org.openmrs.module.htmlformentry.compiler.CompiledForm;
+import org.openmrs.module.htmlformentry.compiler.CompiledFormCache;
 import org.openmrs.module.htmlformentry.handler.AttributeDescriptor;
 import org.openmrs.module.htmlformentry.handler.IteratingTagHandler;
 import org.openmrs.module.htmlformentry.handler.TagHandler;
 import org.openmrs.module.htmlformentry.matching.ObsGroupEntity;
+import org.openmrs.module.htmlformentry.metrics.FormTimings;
+import org.openmrs.module.htmlformentry.metrics.FormTimings.Phase;
+import org.openmrs.module.htmlformentry.util.PreParseLexer;
 import org.w3c.dom.Document;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
@@ -33,6 +38,12 @@ import org.w3c.dom.NodeList;
  */
 public class HtmlFormEntryGenerator implements TagHandler {
 	
+	/**
+	 * Compiled forms shared by all sessions; the default tag handling of this class does not depend on
+	 * the instance, so a form compiled by one generator can be rendered by another
+	 */
+	private static final CompiledFormCache compiledForms = new CompiledFormCache();
+	
 	/**
 	 * @see #applyMacros(FormEntrySession, String) This method simply delegates to the
 	 *      applyMacros(FormEntrySession, String) method with a null FormEntry session. This is retained
@@ -294,6 +305,18 @@ public class HtmlFormEntryGenerator implements TagHandler {
 		return xml;
 	}
 	
+	/**
+	 * Applies {@link #substituteCharacterCodesWithAsciiCodes(String)}, {@link #stripComments(String)}
+	 * and {@link #convertSpecialCharactersWithinLogicAndVelocityTests(String)}, in that order, in a
+	 * single pass over the xml
+	 *
+	 * @param xml input string
+	 * @return the same result as calling the three methods in turn
+	 */
+	public String applyPreParseSubstitutions(String xml) {
+		return PreParseLexer.process(xml);
+	}
+	
 	/**
 	 * Takes an xml string, searches for 'comments' in the string using RegEx and filters out the
 	 * comments from the input string
@@ -582,13 +605,47 @@ public class HtmlFormEntryGenerator implements TagHandler {
 	 * @throws Exception
 	 */
 	public String applyTags(FormEntrySession session, String xml) throws Exception {
-		Document doc = HtmlFormEntryUtil.stringToDocument(xml);
-		Node content = HtmlFormEntryUtil.findChild(doc, "htmlform");
+		// not taken from the cache, since the caller may go on to use the nodes the handlers were given
+		CompiledForm compiledForm = CompiledForm.compile(xml, HtmlFormEntryUtil.getService().getHandlers(), this);
+		return applyTags(session, compiledForm);
+	}
+	
+	/**
+	 * Applies all the HTML Form Entry tags of a compiled form
+	 *
+	 * @param session the current form entry session context
+	 * @param compiledForm the compiled form, see {@link #borrowCompiledForm(String)}
+	 * @return the html after tag processing
+	 */
+	public String applyTags(FormEntrySession session, CompiledForm compiledForm) {
 		StringWriter out = new StringWriter();
-		applyTagsHelper(session, new PrintWriter(out), null, content, null);
+		PrintWriter pw = new PrintWriter(out);
+		compiledForm.render(session, pw, this);
+		pw.flush();
 		return out.toString();
 	}
 	
+	/**
+	 * Gets a compiled copy of a form that is ready to have its tags applied, reusing an idle copy
+	 * compiled earlier if there is one. The caller has exclusive use of it (including of the nodes
+	 * passed to tag handlers) until it calls {@link #releaseCompiledForm(CompiledForm)}.
+	 *
+	 * @param xml the xml of the form, after macros, pages, repeats and translations are applied
+	 * @return the compiled form
+	 */
+	public CompiledForm borrowCompiledForm(String xml) throws Exception {
+		return compiledForms.borrow(xml, HtmlFormEntryUtil.getService().getHandlers(), this);
+	}
+	
+	/**
+	 * Returns a compiled form obtained from {@link #borrowCompiledForm(String)} so it can be reused
+	 *
+	 * @param compiledForm the compiled form, which must not be used again by the caller
+	 */
+	public void releaseCompiledForm(CompiledForm compiledForm) {
+		compiledForms.release(compiledForm, HtmlFormEntryUtil.getService().getHandlers());
+	}
+	
 	private void applyTagsHelper(FormEntrySession session, PrintWriter out, Node parent, Node node,
 	        Map<String, TagHandler> tagHandlerCache) {
 		if (tagHandlerCache == null)
@@ -611,8 +668,14 @@ public class HtmlFormEntryGenerator implements TagHandler {
 		if (handler == null)
 			handler = this; // do default actions
 			
+		// only the registered handlers are timed, not the default handling of plain html
+		FormTimings timings = handler == this || session == null ? null : session.getContext().getTimings(Phase.RENDER);
 		try {
+			long start = System.nanoTime();
 			boolean handleContents = handler.doStartTag(session, out, parent, node);
+			if (timings != null) {
+				timings.addTagTime(node.getNodeName(), start, true);
+			}
 			
 			// Unless the handler told us to skip them, then iterate over any children
 			if (handleContents) {
@@ -634,7 +697,11 @@ public class HtmlFormEntryGenerator implements TagHandler {
 				}
 			}
 			
+			start = System.nanoTime();
 			handler.doEndTag(session, out, parent, node);
+			if (timings != null) {
+				timings.addTagTime(node.getNodeName(), start, false);
+			}
 		}
 		catch (BadFormDesignException e) {
 			out.print("<div class=\"error\">" + handler
@@ -1,16 +1,91 @@
 package org.openmrs.module.htmlformentry;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang.StringUtils;
 import org.openmrs.api.context.Context;
 
+/**
+ * The global properties the module reads while forms are rendered and submitted. Their values are
+ * read together into a snapshot the first time one of them is needed, and the snapshot is cleared
+ * by {@link HtmlFormEntryGlobalPropertyListener} whenever one of them is saved or deleted, so a form
+ * with many date fields no longer reads the same global properties for every field.
+ */
 public class HtmlFormEntryGlobalProperties {
 	
+	/**
+	 * The global properties held in the snapshot
+	 */
+	public static final List<String> SNAPSHOT_PROPERTIES = Collections.unmodifiableList(Arrays.asList(
+	    "htmlformentry.voidEncounterByHtmlFormSchema", "htmlformflowsheet.started",
+	    HtmlFormEntryConstants.GP_COMPLEX_OBS_MAX_UPLOAD_SIZE, HtmlFormEntryConstants.GP_DATE_FORMAT,
+	    HtmlFormEntryConstants.GP_TIME_FORMAT, HtmlFormEntryConstants.GP_SHOW_DATE_FORMAT,
+	    HtmlFormEntryConstants.GP_YEARS_RANGE, "coreapps.conditionListClasses",
+	    HtmlFormEntryConstants.GP_SLOW_FORM_THRESHOLD, HtmlFormEntryConstants.GP_RECORD_QUERY_COUNTS));
+	
+	private static volatile Map<String, String> snapshot;
+	
+	// incremented whenever the snapshot is cleared, so that a snapshot read before then is not kept
+	private static final AtomicInteger generation = new AtomicInteger();
+	
+	/**
+	 * @param name the name of the global property
+	 * @return the value of the global property, from the snapshot if it is one of the
+	 *         {@link #SNAPSHOT_PROPERTIES}
+	 */
+	public static String getGlobalProperty(String name) {
+		if (!SNAPSHOT_PROPERTIES.contains(name)) {
+			return Context.getAdministrationService().getGlobalProperty(name);
+		}
+		Map<String, String> values = snapshot;
+		if (values == null) {
+			int readGeneration = generation.get();
+			values = new HashMap<String, String>();
+			for (String property : SNAPSHOT_PROPERTIES) {
+				values.put(property, Context.getAdministrationService().getGlobalProperty(property));
+			}
+			values = Collections.unmodifiableMap(values);
+			synchronized (HtmlFormEntryGlobalProperties.class) {
+				if (generation.get() == readGeneration) {
+					snapshot = values;
+				}
+			}
+		}
+		return values.get(name);
+	}
+	
+	/**
+	 * @param name the name of the global property
+	 * @param defaultValue the value to return if the global property is not set
+	 * @return the value of the global property, or defaultValue if it is not set
+	 * @see #getGlobalProperty(String)
+	 */
+	public static String getGlobalProperty(String name, String defaultValue) {
+		String value = getGlobalProperty(name);
+		return value == null ? defaultValue : value;
+	}
+	
+	/**
+	 * Clears the snapshot, so the global properties are read again the next time they are needed
+	 */
+	public static void clearSnapshot() {
+		synchronized (HtmlFormEntryGlobalProperties.class) {
+			generation.incrementAndGet();
+			snapshot = null;
+		}
+	}
+	
 	/**
 	 * @return global property boolean that specifies whether or not to void encounter by html form
 	 *         schema returns null if property is null or is set to neither true or false
 	 */
 	public static final Boolean VOID_ENCOUNTER_BY_HTML_FORM_SCHEMA() {
-		String propertyValue = Context.getAdministrationService()
-		        .getGlobalProperty("htmlformentry.voidEncounterByHtmlFormSchema");
+		String propertyValue = getGlobalProperty("htmlformentry.voidEncounterByHtmlFormSchema");
 		if ("true".equalsIgnoreCase(propertyValue)) {
 			return true;
 		} else if ("false".equalsIgnoreCase(propertyValue)) {
@@ -24,11 +99,54 @@ public class HtmlFormEntryGlobalProperties {
 	 * @return boolean describing whether or not the html form flowsheet module has been started
 	 */
 	public static final Boolean HTML_FORM_FLOWSHEET_STARTED() {
-		String propertyValue = Context.getAdministrationService().getGlobalProperty("htmlformflowsheet.started");
+		String propertyValue = getGlobalProperty("htmlformflowsheet.started");
 		if ("true".equalsIgnoreCase(propertyValue)) {
 			return true;
 		} else {
 			return false;
 		}
 	}
+	
+	/**
+	 * @return the largest file, in bytes, that may be uploaded for a complex obs, or null if there is
+	 *         no limit
+	 */
+	public static final Long COMPLEX_OBS_MAX_UPLOAD_SIZE() {
+		String propertyValue = getGlobalProperty(HtmlFormEntryConstants.GP_COMPLEX_OBS_MAX_UPLOAD_SIZE);
+		if (StringUtils.isBlank(propertyValue)) {
+			return null;
+		}
+		try {
+			return Long.valueOf(propertyValue.trim());
+		}
+		catch (NumberFormatException ex) {
+			return null;
+		}
+	}
+	
+	/**
+	 * @return the time, in milliseconds, above which rendering or submitting a form is logged as
+	 *         slow, or null if slow forms are not logged
+	 */
+	public static final Long SLOW_FORM_THRESHOLD() {
+		String propertyValue = getGlobalProperty(HtmlFormEntryConstants.GP_SLOW_FORM_THRESHOLD);
+		if (StringUtils.isBlank(propertyValue)) {
+			return null;
+		}
+		try {
+			Long threshold = Long.valueOf(propertyValue.trim());
+			return threshold > 0 ? threshold : null;
+		}
+		catch (NumberFormatException ex) {
+			return null;
+		}
+	}
+	
+	/**
+	 * @return whether to count the database work of rendering and submitting each form
+	 */
+	public static final Boolean RECORD_QUERY_COUNTS() {
+		String propertyValue = getGlobalProperty(HtmlFormEntryConstants.GP_RECORD_QUERY_COUNTS);
+		return "true".equalsIgnoreCase(propertyValue);
+	}
 }
@@ -0,0 +1,49 @@
+package org.openmrs.module.htmlformentry;
+
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.GlobalPropertyListener;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Clears the snapshot of {@link HtmlFormEntryGlobalProperties} when one of the global properties in
+ * it is saved or deleted, and again once the transaction completes so that a concurrent reader
+ * cannot snapshot the value as it was before the transaction was committed. Also turns query counting on or off with
+ * {@link HtmlFormEntryConstants#GP_RECORD_QUERY_COUNTS}.
+ */
+public class HtmlFormEntryGlobalPropertyListener implements GlobalPropertyListener {
+	
+	@Override
+	public boolean supportsPropertyName(String propertyName) {
+		return HtmlFormEntryGlobalProperties.SNAPSHOT_PROPERTIES.contains(propertyName);
+	}
+	
+	@Override
+	public void globalPropertyChanged(GlobalProperty newValue) {
+		clearSnapshotOnCompletion();
+		if (HtmlFormEntryConstants.GP_RECORD_QUERY_COUNTS.equals(newValue.getProperty())) {
+			HtmlFormEntryUtil.getService().setQueryCountsEnabled("true".equalsIgnoreCase(newValue.getPropertyValue()));
+		}
+	}
+	
+	@Override
+	public void globalPropertyDeleted(String propertyName) {
+		clearSnapshotOnCompletion();
+		if (HtmlFormEntryConstants.GP_RECORD_QUERY_COUNTS.equals(propertyName)) {
+			HtmlFormEntryUtil.getService().setQueryCountsEnabled(false);
+		}
+	}
+	
+	private void clearSnapshotOnCompletion() {
+		HtmlFormEntryGlobalProperties.clearSnapshot();
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				
+				@Override
+				public void afterCompletion(int status) {
+					HtmlFormEntryGlobalProperties.clearSnapshot();
+				}
+			});
+		}
+	}
+}
@@ -1,5 +1,6 @@
 package org.openmrs.module.htmlformentry;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -7,15 +8,21 @@ import java.util.Set;
 
 import org.openmrs.Concept;
 import org.openmrs.Form;
+import org.openmrs.Obs;
 import org.openmrs.OpenmrsMetadata;
 import org.openmrs.OpenmrsObject;
 import org.openmrs.Patient;
 import org.openmrs.Person;
 import org.openmrs.Program;
+import org.openmrs.ProgramWorkflow;
+import org.openmrs.ProgramWorkflowState;
 import org.openmrs.api.APIException;
 import org.openmrs.api.OpenmrsService;
+import org.openmrs.module.htmlformentry.compiler.FormDataDependencies;
+import org.openmrs.module.htmlformentry.element.PersonSearchResult;
 import org.openmrs.module.htmlformentry.element.PersonStub;
 import org.openmrs.module.htmlformentry.handler.TagHandler;
+import org.openmrs.module.htmlformentry.metrics.QueryCounts;
 
 /**
  * Defines the services provided by the HTML Form Entry module
@@ -50,6 +57,33 @@ public interface HtmlFormEntryService extends OpenmrsService {
 	 */
 	List<HtmlForm> getAllHtmlForms();
 	
+	/**
+	 * Retrieves a lightweight summary of every HTML Form in the system, ordered by form name. This
+	 * never loads the xml of the forms, and the result is cached until an HTML Form is saved or purged,
+	 * a Form or encounter type is saved, retired or purged, or {@link #clearHtmlFormSummaryCache()} is
+	 * called.
+	 * 
+	 * @return an unmodifiable list of summaries of all HTML Forms in the system
+	 */
+	List<HtmlFormSummary> getAllHtmlFormSummaries();
+	
+	/**
+	 * Retrieves the distinct Forms that have an HTML Form, in the order of
+	 * {@link #getAllHtmlFormSummaries()}, without loading the xml of the HTML Forms
+	 * 
+	 * @param includeUnpublished whether to include forms that are not published
+	 * @return the Forms that have an HTML Form
+	 */
+	List<Form> getFormsWithHtmlForms(boolean includeUnpublished);
+	
+	/**
+	 * Clears the cached HTML Form summaries, now and again when the current transaction completes.
+	 * Changes made through the FormService and EncounterService clear them (see
+	 * {@link org.openmrs.module.htmlformentry.advice.HtmlFormSummaryAdvice}); call this if Forms are
+	 * modified some other way.
+	 */
+	void clearHtmlFormSummaryCache();
+	
 	/**
 	 * Saves the specified HTML Form to the database
 	 * 
@@ -82,7 +116,8 @@ public interface HtmlFormEntryService extends OpenmrsService {
 	TagHandler getHandlerByTagName(String tagName);
 	
 	/**
-	 * Returns a map of all tag handlers
+	 * Returns a map of all tag handlers. The map is an unmodifiable snapshot; use
+	 * {@link #addHandler(String, TagHandler)} to register a handler.
 	 * 
 	 * @return a map of all tag handlers
 	 */
@@ -128,6 +163,64 @@ public interface HtmlFormEntryService extends OpenmrsService {
 	 */
 	OpenmrsObject getItemByName(Class<? extends OpenmrsMetadata> type, String name);
 	
+	/**
+	 * Loads the metadata a form refers to into the current session, with a few queries for each kind
+	 * of metadata, so that the tags of the form find it there rather than each querying for their own.
+	 * Concepts are loaded with their names and answers. Only metadata the form refers to by id is
+	 * loaded, since that is what the tags look up in the session, and whatever the second-level cache
+	 * already holds is left to it.
+	 * 
+	 * @param dependencies the metadata the form refers to
+	 */
+	void preloadFormData(FormDataDependencies dependencies);
+	
+	/**
+	 * Gets the most recent non-voided obs of each of the concepts and coded values a person has in a
+	 * period. Obs of the same concept with different coded values are returned separately, so the most
+	 * recent obs with a particular answer is among them as well as the most recent obs of the concept.
+	 * 
+	 * @param person the person
+	 * @param concepts the question concepts
+	 * @param fromDate the start of the period
+	 * @param toDate the end of the period
+	 * @return the most recent obs of each concept and coded value, in no particular order
+	 */
+	List<Obs> getLatestObs(Person person, Collection<Concept> concepts, Date fromDate, Date toDate);
+	
+	/**
+	 * Returns how much database work has been done so far, from the statistics of the Hibernate
+	 * session factory. Subtract the counts read before some work from those read after it to get the
+	 * database work it did. The counts only advance while the statistics are on (see
+	 * {@link #setQueryCountsEnabled(boolean)} and {@link #startCountingQueries()}).
+	 * 
+	 * @return the database work done while the statistics were on
+	 */
+	QueryCounts getQueryCounts();
+	
+	/**
+	 * Applies {@link HtmlFormEntryConstants#GP_RECORD_QUERY_COUNTS}, turning the statistics of the
+	 * Hibernate session factory on, or back to how they were before they were turned on. Collecting
+	 * statistics slows every query down a little, so they are only on while the setting is true or
+	 * some caller is counting queries with {@link #startCountingQueries()}. Only the setting should
+	 * call this, so that it cannot turn off counting that others started.
+	 * 
+	 * @param enabled whether the setting is to count queries
+	 */
+	void setQueryCountsEnabled(boolean enabled);
+	
+	/**
+	 * Turns the statistics on until the matching {@link #stopCountingQueries()}, whatever the setting.
+	 * Calls may be nested; the statistics stay on until every caller has stopped. Call
+	 * stopCountingQueries in a finally block, so that a failure does not leave them on.
+	 */
+	void startCountingQueries();
+	
+	/**
+	 * Ends a {@link #startCountingQueries()}, leaving the statistics on if the setting or another
+	 * caller is still counting queries
+	 */
+	void stopCountingQueries();
+	
 	/**
 	 * Returns a list of Person ids of people having a given attribute type (passed in using the
 	 * person_attribute_id). The method also takes in a value of the attribute to match to, if left null
@@ -154,6 +247,50 @@ public interface HtmlFormEntryService extends OpenmrsService {
 	List<PersonStub> getPeopleAsPersonStubs(List<String> attributeIds, List<String> attributeValues, List<String> programIds,
 	        List<Person> personsToExclude);
 	
+	/**
+	 * Like {@link #getPeopleAsPersonStubs(List, List, List, List)}, but returns at most limit people.
+	 * The attribute and program filters are applied, and the names read, by a single query, so no
+	 * Person is loaded. The stubs are ordered by family name and given name.
+	 * 
+	 * @param attributeIds the optional list of names of person attribute types
+	 * @param attributeValues the list of optional values to match against the person attribute
+	 * @param programIds the optional list of program ids, uuids or names
+	 * @param personsToExclude optional list of persons to exclude from the results list
+	 * @param limit the largest number of stubs to return, all of them if null
+	 * @return the stubs of the matching people
+	 */
+	List<PersonStub> getPeopleAsPersonStubs(List<String> attributeIds, List<String> attributeValues, List<String> programIds,
+	        List<Person> personsToExclude, Integer limit);
+	
+	/**
+	 * Searches for people by name, or by patient identifier if the search phrase contains a number,
+	 * one page at a time. Every word of the search phrase must match the start of a given, middle or
+	 * family name. The attribute and program filters are applied by the same query, so only the
+	 * requested page of results is ever loaded.
+	 * 
+	 * @param searchPhrase the name, or patient identifier, to search for
+	 * @param attributes optional names of person attribute types the people must have
+	 * @param attributeValues optional values of the corresponding attributes; a null value matches any
+	 *            value
+	 * @param programs optional programs the people must have been enrolled in
+	 * @param start the index of the first result to return, 0 if null
+	 * @param length the largest number of results to return, all results if null
+	 * @return the ids of the matching people, without duplicates, ordered by name
+	 */
+	List<Integer> searchPersonIds(String searchPhrase, List<String> attributes, List<String> attributeValues,
+	        List<Program> programs, Integer start, Integer length);
+	
+	/**
+	 * Reads what the person search shows of each of the given people with a single query, rather than
+	 * loading each person or patient in turn: their preferred name, gender, birthdate and, for
+	 * patients, preferred identifier.
+	 * 
+	 * @param personIds the ids of the people, such as a page of
+	 *            {@link #searchPersonIds(String, List, List, List, Integer, Integer)}
+	 * @return the people, in the order of their ids, leaving out any that were not found
+	 */
+	List<PersonSearchResult> getPersonSearchResults(List<Integer> personIds);
+	
 	/**
 	 * Apply the actions in the FormEntrySession
 	 */
@@ -181,6 +318,40 @@ public interface HtmlFormEntryService extends OpenmrsService {
 	 */
 	void clearConceptMappingCache();
 	
+	/**
+	 * Finds a workflow of any program, retired or not, by its id, using a cached index of the programs
+	 * rather than walking every workflow of every program
+	 * 
+	 * @param workflowId the id of the workflow
+	 * @return the workflow, or null if there is none with the given id
+	 */
+	ProgramWorkflow getWorkflowById(Integer workflowId);
+	
+	/**
+	 * Finds the first workflow of a non-retired program whose concept is the given concept, using a
+	 * cached index of the programs
+	 * 
+	 * @param concept the concept of the workflow
+	 * @return the workflow, or null if there is none
+	 */
+	ProgramWorkflow getWorkflowByConcept(Concept concept);
+	
+	/**
+	 * Finds a state of any workflow, retired or not, by its id, using a cached index of the programs
+	 * 
+	 * @param stateId the id of the state
+	 * @return the state, or null if there is none with the given id
+	 */
+	ProgramWorkflowState getStateById(Integer stateId);
+	
+	/**
+	 * Clears the cached index of programs, workflows and states, now and again when the current
+	 * transaction completes. Programs saved, retired or purged through the ProgramWorkflowService clear
+	 * it (see {@link org.openmrs.module.htmlformentry.advice.ProgramMetadataAdvice}); call this if
+	 * programs are changed some other way.
+	 */
+	void clearProgramMetadataCache();
+	
 	/**
 	 * Return a List of patient ids who have ever been enrolled in the given program
 	 */
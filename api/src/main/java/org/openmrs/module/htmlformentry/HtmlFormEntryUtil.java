@@ -1,35 +1,23 @@
 package org.openmrs.module.htmlformentry;
 
 import javax.servlet.http.HttpServletRequest;
-import javax.xml.XMLConstants;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.StringReader;
-import java.io.StringWriter;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
-import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
@@ -38,7 +26,6 @@ import java.util.Set;
 import java.util.TreeSet;
 import java.util.UUID;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
@@ -79,13 +66,18 @@ import org.openmrs.module.htmlformentry.FormEntryContext.Mode;
 import org.openmrs.module.htmlformentry.action.FormSubmissionControllerAction;
 import org.openmrs.module.htmlformentry.action.ObsGroupAction;
 import org.openmrs.module.htmlformentry.compatibility.EncounterCompatibility;
+import org.openmrs.module.htmlformentry.compiler.CompiledForm;
 import org.openmrs.module.htmlformentry.element.GettingExistingOrder;
 import org.openmrs.module.htmlformentry.element.ObsSubmissionElement;
 import org.openmrs.module.htmlformentry.element.ProviderStub;
 import org.openmrs.module.htmlformentry.schema.HtmlFormSchema;
+import org.openmrs.module.htmlformentry.util.CachedDateFormat;
+import org.openmrs.module.htmlformentry.util.ComplexObsUpload;
 import org.openmrs.module.htmlformentry.util.MatchMode;
 import org.openmrs.module.htmlformentry.util.Predicate;
+import org.openmrs.module.htmlformentry.util.PropertyCopier;
 import org.openmrs.module.htmlformentry.util.ProviderTransformer;
+import org.openmrs.module.htmlformentry.util.XmlUtil;
 import org.openmrs.module.providermanagement.ProviderRole;
 import org.openmrs.module.providermanagement.api.ProviderManagementService;
 import org.openmrs.obs.ComplexData;
@@ -103,7 +95,6 @@ import org.w3c.dom.Document;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
 
 /**
  * HTML Form Entry utility methods
@@ -155,9 +146,7 @@ public class HtmlFormEntryUtil {
 		MultipartFile file = mRequest.getFile(name);
 		if (file != null && file.getSize() > 0) {
 			try {
-				byte[] bytes = IOUtils.toByteArray(file.getInputStream());
-				ByteArrayInputStream is = new ByteArrayInputStream(bytes);
-				return new ComplexData(file.getOriginalFilename(), is);
+				return ComplexObsUpload.toComplexData(file, HtmlFormEntryGlobalProperties.COMPLEX_OBS_MAX_UPLOAD_SIZE());
 			}
 			catch (IOException e) {
 				throw new IllegalArgumentException(e);
@@ -190,9 +179,7 @@ public class HtmlFormEntryUtil {
 		} else if (Date.class.isAssignableFrom(clazz)) {
 			// all HTML Form Entry dates should be submitted as yyyy-mm-dd
 			try {
-				DateFormat df = new SimpleDateFormat("yyyy-MM-dd");
-				df.setLenient(false);
-				return df.parse(val);
+				return CachedDateFormat.getInstance("yyyy-MM-dd", Locale.getDefault(), false).parse(val);
 			}
 			catch (ParseException e) {
 				throw new IllegalArgumentException(e);
@@ -322,17 +309,7 @@ public class HtmlFormEntryUtil {
 	 */
 	public static Document stringToDocument(String xml) throws Exception {
 		try {
-			DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-			
-			// Disable XXE: security measure to prevent DOS, arbitrary-file-read, and possibly RCE
-			dbf.setExpandEntityReferences(false);
-			dbf.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
-			dbf.setFeature("http://xml.org/sax/features/external-general-entities", false);
-			dbf.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
-			
-			DocumentBuilder db = dbf.newDocumentBuilder();
-			Document document = db.parse(new InputSource(new StringReader(xml)));
-			return document;
+			return XmlUtil.parse(xml);
 		}
 		catch (Exception e) {
 			log.error("Error converting String to Document:\n" + xml);
@@ -348,34 +325,20 @@ public class HtmlFormEntryUtil {
 	 * @throws Exception
 	 */
 	public static String documentToString(Document document) throws Exception {
-		//set up a transformer
-		Transformer trans = null;
-		TransformerFactory transfac = TransformerFactory.newInstance();
-		
-		try {
-			trans = transfac.newTransformer();
-		}
-		catch (TransformerException te) {
-			System.out.println(HtmlFormEntryConstants.ERROR_TRANSFORMER_1 + te);
-		}
-		trans.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, HtmlFormEntryConstants.CONSTANT_YES);
-		trans.setOutputProperty(OutputKeys.INDENT, HtmlFormEntryConstants.CONSTANT_YES);
-		trans.setOutputProperty(OutputKeys.METHOD, HtmlFormEntryConstants.CONSTANT_XML);
-		trans.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+		Map<String, String> outputProperties = new HashMap<String, String>();
+		outputProperties.put(OutputKeys.OMIT_XML_DECLARATION, HtmlFormEntryConstants.CONSTANT_YES);
+		outputProperties.put(OutputKeys.INDENT, HtmlFormEntryConstants.CONSTANT_YES);
+		outputProperties.put(OutputKeys.METHOD, HtmlFormEntryConstants.CONSTANT_XML);
+		outputProperties.put(OutputKeys.ENCODING, "UTF-8");
 		
 		//create string from xml tree
-		StringWriter sw = new StringWriter();
-		StreamResult result = new StreamResult(sw);
-		DOMSource source = new DOMSource(document);
 		try {
-			trans.transform(source, result);
+			return XmlUtil.toString(document, outputProperties);
 		}
 		catch (TransformerException te) {
 			System.out.println(HtmlFormEntryConstants.ERROR_TRANSFORMER_2 + te);
+			return "";
 		}
-		String xmlString = sw.toString();
-		
-		return xmlString;
 	}
 	
 	/**
@@ -427,6 +390,10 @@ public class HtmlFormEntryUtil {
 	 * @return a Map containing all the attributes of the Node
 	 */
 	public static Map<String, String> getNodeAttributes(Node node) {
+		Map<String, String> compiled = CompiledForm.getCompiledAttributes(node);
+		if (compiled != null) {
+			return new HashMap<String, String>(compiled);
+		}
 		Map<String, String> ret = new HashMap<String, String>();
 		NamedNodeMap atts = node.getAttributes();
 		for (int i = 0; i < atts.getLength(); i++) {
@@ -446,7 +413,8 @@ public class HtmlFormEntryUtil {
 	 * @return
 	 */
 	public static String getNodeAttribute(Node node, String attributeName, String defaultVal) {
-		String ret = getNodeAttributes(node).get(attributeName);
+		Map<String, String> compiled = CompiledForm.getCompiledAttributes(node);
+		String ret = compiled != null ? compiled.get(attributeName) : getNodeAttributes(node).get(attributeName);
 		return (ret == null ? defaultVal : ret);
 	}
 	
@@ -455,17 +423,15 @@ public class HtmlFormEntryUtil {
 	 * @return the contents of node as a String
 	 */
 	public static String getNodeContentsAsString(Node node) {
-		StringWriter sw = new StringWriter();
+		Map<String, String> outputProperties = new HashMap<String, String>();
+		outputProperties.put(OutputKeys.OMIT_XML_DECLARATION, "yes");
+		outputProperties.put(OutputKeys.INDENT, "yes");
 		try {
-			Transformer t = TransformerFactory.newInstance().newTransformer();
-			t.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
-			t.setOutputProperty(OutputKeys.INDENT, "yes");
-			t.transform(new DOMSource(node), new StreamResult(sw));
+			return XmlUtil.toString(node, outputProperties);
 		}
 		catch (TransformerException ex) {
 			throw new RuntimeException("Error transforming node", ex);
 		}
-		return sw.toString();
 	}
 	
 	/**
@@ -968,14 +934,7 @@ public class HtmlFormEntryUtil {
 	}
 	
 	public static ProgramWorkflow getWorkflow(Integer id) {
-		for (Program p : Context.getProgramWorkflowService().getAllPrograms()) {
-			for (ProgramWorkflow w : p.getAllWorkflows()) {
-				if (w.getProgramWorkflowId().equals(id)) {
-					return w;
-				}
-			}
-		}
-		return null;
+		return getService().getWorkflowById(id);
 	}
 	
 	/**
@@ -1015,15 +974,8 @@ public class HtmlFormEntryUtil {
 			if (index != -1) {
 				Concept concept = getConcept(identifier);
 				
-				// iterate through workflows until we see if we find a match
 				if (concept != null) {
-					for (Program program : Context.getProgramWorkflowService().getAllPrograms(false)) {
-						for (ProgramWorkflow w : program.getAllWorkflows()) {
-							if (w.getConcept().equals(concept)) {
-								return w;
-							}
-						}
-					}
+					return getService().getWorkflowByConcept(concept);
 				}
 			}
 		}
@@ -1201,27 +1153,8 @@ public class HtmlFormEntryUtil {
 		}
 	}
 	
-	private static List<ProgramWorkflowState> getStates(boolean includeRetired) {
-		List<ProgramWorkflowState> ret = new ArrayList<ProgramWorkflowState>();
-		for (Program p : Context.getProgramWorkflowService().getAllPrograms()) {
-			for (ProgramWorkflow w : p.getAllWorkflows()) {
-				for (ProgramWorkflowState s : w.getStates()) {
-					if (includeRetired || !s.isRetired()) {
-						ret.add(s);
-					}
-				}
-			}
-		}
-		return ret;
-	}
-	
 	private static ProgramWorkflowState getState(Integer id) {
-		for (ProgramWorkflowState s : getStates(true)) {
-			if (s.getProgramWorkflowStateId().equals(id)) {
-				return s;
-			}
-		}
-		return null;
+		return getService().getStateById(id);
 	}
 	
 	/**
@@ -1383,39 +1316,41 @@ public class HtmlFormEntryUtil {
 				}
 			}
 			
-			for (Obs o : e.getAllObs(false)) { //ignore voided obs
-				boolean matched = false;
-				for (Obs oMatched : matchedObs) {
-					if (replacementObs.get(oMatched) != null && replacementObs.get(oMatched).equals(o)) {
-						o.setVoided(true);
-						o.setVoidedBy(Context.getAuthenticatedUser());
-						o.setVoidReason(voidReason);
-						o.setDateVoided(new Date());
-						matched = true;
-						break;
-					}
+			// the source objects of the matched copies, so each obs and order of the encounter is a single lookup
+			Set<Obs> matchedSourceObs = new HashSet<Obs>();
+			for (Obs oMatched : matchedObs) {
+				if (replacementObs.get(oMatched) != null) {
+					matchedSourceObs.add(replacementObs.get(oMatched));
 				}
-				if (!matched)
+			}
+			Set<Order> matchedSourceOrders = new HashSet<Order>();
+			for (Order oMatched : matchedOrders) {
+				if (replacementOrders.get(oMatched) != null) {
+					matchedSourceOrders.add(replacementOrders.get(oMatched));
+				}
+			}
+			
+			for (Obs o : e.getAllObs(false)) { //ignore voided obs
+				if (matchedSourceObs.contains(o)) {
+					o.setVoided(true);
+					o.setVoidedBy(Context.getAuthenticatedUser());
+					o.setVoidReason(voidReason);
+					o.setDateVoided(new Date());
+				} else {
 					shouldVoidEncounter = false;
+				}
 			}
 			
 			for (Order o : e.getOrders()) {
 				if (!o.isVoided()) { //ignore voided orders
-					boolean matched = false;
-					for (Order oMatched : matchedOrders) {
-						//Order.equals only checks Id value
-						if (replacementOrders.get(oMatched) != null && replacementOrders.get(oMatched).equals(o)
-						        && !o.isVoided()) {
-							o.setVoided(true);
-							o.setVoidedBy(Context.getAuthenticatedUser());
-							o.setVoidReason(voidReason);
-							o.setDateVoided(new Date());
-							matched = true;
-							break;
-						}
-					}
-					if (!matched)
+					if (matchedSourceOrders.contains(o)) {
+						o.setVoided(true);
+						o.setVoidedBy(Context.getAuthenticatedUser());
+						o.setVoidReason(voidReason);
+						o.setDateVoided(new Date());
+					} else {
 						shouldVoidEncounter = false;
+					}
 				}
 			}
 			
@@ -1510,108 +1445,10 @@ public class HtmlFormEntryUtil {
 	 * @param source
 	 * @return A copy of an object
 	 * @throws Exception
+	 * @see PropertyCopier
 	 */
 	private static Object returnCopy(Object source) throws Exception {
-		Class<? extends Object> clazz = source.getClass();
-		Object ret = clazz.newInstance();
-		Set<String> fieldNames = new HashSet<String>();
-		List<Field> fields = new ArrayList<Field>();
-		addSuperclassFields(fields, clazz);
-		for (Field f : fields) {
-			fieldNames.add(f.getName());
-		}
-		for (String root : fieldNames) {
-			for (Method getter : clazz.getMethods()) {
-				if (getter.getName().toUpperCase().equals("GET" + root.toUpperCase())
-				        && getter.getParameterTypes().length == 0) {
-					Method setter = getSetter(clazz, getter, "SET" + root.toUpperCase());
-					//NOTE: Collection properties are not copied
-					if (setter != null && methodsSupportSameArgs(getter, setter)
-					        && !(getter.getReturnType().isInstance(Collection.class))) {
-						Object o = getter.invoke(source, Collections.EMPTY_LIST.toArray());
-						if (o != null) {
-							setter.invoke(ret, o);
-						}
-					}
-				}
-			}
-		}
-		return ret;
-	}
-	
-	/**
-	 * The Encounter.setProvider() contains the different overloaded methods and this filters the
-	 * correct setter from those
-	 *
-	 * @param clazz
-	 * @param getter
-	 * @param methodname
-	 * @return
-	 */
-	private static Method getSetter(Class<? extends Object> clazz, Method getter, String methodname) {
-		
-		List<Method> setterMethods = getMethodCaseInsensitive(clazz, methodname);
-		if (setterMethods != null && !setterMethods.isEmpty()) {
-			if (setterMethods.size() == 1) {
-				return setterMethods.get(0);
-			} else if (setterMethods.size() > 1) {
-				for (Method m : setterMethods) {
-					Class<?>[] parameters = m.getParameterTypes();
-					for (Class<?> parameter : parameters) {
-						if (getter.getReturnType().equals(parameter)) {
-							return m;
-						}
-					}
-				}
-			}
-		}
-		return null;
-	}
-	
-	/**
-	 * Performs a case insensitive search on a class for a method by name.
-	 *
-	 * @param clazz
-	 * @param methodName
-	 * @return the found Method
-	 */
-	private static List<Method> getMethodCaseInsensitive(Class<? extends Object> clazz, String methodName) {
-		
-		List<Method> methodList = new ArrayList<Method>();
-		for (Method m : clazz.getMethods()) {
-			if (m.getName().toUpperCase().equals(methodName.toUpperCase())) {
-				methodList.add(m);
-				
-			}
-		}
-		return methodList;
-	}
-	
-	/**
-	 * compares getter return types to setter parameter types
-	 *
-	 * @param getter
-	 * @param setter
-	 * @return true if getter return types are the same as setter parameter types. Else false.
-	 */
-	private static boolean methodsSupportSameArgs(Method getter, Method setter) {
-		if (getter != null && setter != null && setter.getParameterTypes() != null && setter.getParameterTypes().length == 1
-		        && getter.getReturnType() != null && getter.getReturnType().equals(setter.getParameterTypes()[0]))
-			return true;
-		return false;
-	}
-	
-	/**
-	 * recurses through all superclasses of a class and adds the fields from that superclass
-	 *
-	 * @param fields
-	 * @param clazz
-	 */
-	private static void addSuperclassFields(List<Field> fields, Class<? extends Object> clazz) {
-		fields.addAll(Arrays.asList(clazz.getDeclaredFields()));
-		if (clazz.getSuperclass() != null) {
-			addSuperclassFields(fields, clazz.getSuperclass());
-		}
+		return PropertyCopier.forClass(source.getClass()).copy(source);
 	}
 	
 	/**
@@ -1929,12 +1766,14 @@ public class HtmlFormEntryUtil {
 			Set<Obs> obsToRemove = new HashSet<Obs>();
 			for (Obs o : obsList) {
 				removeEmptyObs(o.getGroupMembers());
-				boolean valueEmpty = StringUtils.isEmpty(o.getValueAsString(Context.getLocale()));
 				boolean membersEmpty = o.getGroupMembers() == null || o.getGroupMembers().isEmpty();
-				if (valueEmpty && membersEmpty) {
+				if (membersEmpty && !hasValue(o)) {
 					obsToRemove.add(o);
 				}
 			}
+			if (obsToRemove.isEmpty()) {
+				return;
+			}
 			for (Obs o : obsToRemove) {
 				if (o.getObsGroup() != null) {
 					o.getObsGroup().removeGroupMember(o);
@@ -1944,9 +1783,57 @@ public class HtmlFormEntryUtil {
 					o.getEncounter().removeObs(o);
 					o.setEncounter(null);
 				}
-				obsList.remove(o);
+			}
+			// removing from a list one obs at a time shifts the rest of the list each time
+			if (obsList instanceof List) {
+				List<Obs> kept = new ArrayList<Obs>(obsList.size() - obsToRemove.size());
+				for (Obs o : obsList) {
+					if (!obsToRemove.contains(o)) {
+						kept.add(o);
+					}
+				}
+				obsList.clear();
+				obsList.addAll(kept);
+			} else {
+				for (Iterator<Obs> i = obsList.iterator(); i.hasNext();) {
+					if (obsToRemove.contains(i.next())) {
+						i.remove();
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Decides whether {@link Obs#getValueAsString(java.util.Locale)} would return a non-empty value,
+	 * by checking the value field it would format for the concept's datatype, without formatting it
+	 * or looking up names.
+	 */
+	private static boolean hasValue(Obs o) {
+		if (o.getConcept() != null && o.getConcept().getDatatype() != null) {
+			String abbrev = o.getConcept().getDatatype().getHl7Abbreviation();
+			if ("BIT".equals(abbrev)) {
+				return o.getValueAsBoolean() != null;
+			} else if ("CWE".equals(abbrev)) {
+				return o.getValueCoded() != null;
+			} else if ("NM".equals(abbrev) || "SN".equals(abbrev)) {
+				return o.getValueNumeric() != null;
+			} else if ("DT".equals(abbrev) || "TM".equals(abbrev) || "TS".equals(abbrev)) {
+				return o.getValueDatetime() != null;
+			} else if ("ST".equals(abbrev)) {
+				return StringUtils.isNotEmpty(o.getValueText());
+			} else if ("ED".equals(abbrev) && o.getValueComplex() != null) {
+				// the first non-empty part of the complex value is shown, trimmed
+				for (String part : o.getValueComplex().split("\\|")) {
+					if (StringUtils.isNotEmpty(part)) {
+						return part.trim().length() > 0;
+					}
+				}
 			}
 		}
+		// otherwise the first value that is set is shown
+		return o.getValueNumeric() != null || o.getValueCoded() != null || o.getValueDatetime() != null
+		        || StringUtils.isNotEmpty(o.getValueText());
 	}
 	
 	/**
@@ -0,0 +1,119 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.htmlformentry;
+
+import java.util.Date;
+
+/**
+ * A lightweight, read-only projection of an {@link HtmlForm} and its {@link org.openmrs.Form}, used
+ * for form lists. It never contains the xml of the form, so it is cheap to load and safe to cache.
+ *
+ * @see HtmlFormEntryService#getAllHtmlFormSummaries()
+ */
+public class HtmlFormSummary {
+	
+	private final Integer id;
+	
+	private final String uuid;
+	
+	private final Date dateChanged;
+	
+	private final Integer formId;
+	
+	private final String name;
+	
+	private final String version;
+	
+	private final boolean published;
+	
+	private final boolean retired;
+	
+	private final Integer encounterTypeId;
+	
+	private final String encounterTypeName;
+	
+	public HtmlFormSummary(Integer id, String uuid, Date dateCreated, Date dateChanged, Integer formId, String name,
+	    String version, Boolean published, Boolean retired, Integer encounterTypeId, String encounterTypeName) {
+		this.id = id;
+		this.uuid = uuid;
+		this.dateChanged = dateChanged == null ? dateCreated : dateChanged;
+		this.formId = formId;
+		this.name = name;
+		this.version = version;
+		this.published = Boolean.TRUE.equals(published);
+		this.retired = Boolean.TRUE.equals(retired);
+		this.encounterTypeId = encounterTypeId;
+		this.encounterTypeName = encounterTypeName;
+	}
+	
+	/**
+	 * @return the id of the HtmlForm
+	 */
+	public Integer getId() {
+		return id;
+	}
+	
+	/**
+	 * @return the uuid of the HtmlForm
+	 */
+	public String getUuid() {
+		return uuid;
+	}
+	
+	/**
+	 * @return the date the HtmlForm was last changed, or created if it has never been changed
+	 */
+	public Date getDateChanged() {
+		return dateChanged;
+	}
+	
+	public Integer getFormId() {
+		return formId;
+	}
+	
+	/**
+	 * @return the name of the underlying Form
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	public String getVersion() {
+		return version;
+	}
+	
+	public boolean isPublished() {
+		return published;
+	}
+	
+	/**
+	 * @return whether the underlying Form is retired
+	 */
+	public boolean isRetired() {
+		return retired;
+	}
+	
+	public Integer getEncounterTypeId() {
+		return encounterTypeId;
+	}
+	
+	public String getEncounterTypeName() {
+		return encounterTypeName;
+	}
+	
+	@Override
+	public String toString() {
+		return name + " (" + id + ")";
+	}
+}
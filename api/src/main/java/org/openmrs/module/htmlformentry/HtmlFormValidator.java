@@ -74,9 +74,7 @@ public class HtmlFormValidator implements Validator {
 				}
 				HtmlFormEntryGenerator htmlGenerator = new HtmlFormEntryGenerator();
 				String xml = hf.getXmlData();
-				xml = htmlGenerator.substituteCharacterCodesWithAsciiCodes(xml);
-				xml = htmlGenerator.stripComments(xml);
-				xml = htmlGenerator.convertSpecialCharactersWithinLogicAndVelocityTests(xml);
+				xml = htmlGenerator.applyPreParseSubstitutions(xml);
 				xml = htmlGenerator.applyRoleRestrictions(xml);
 				xml = htmlGenerator.applyMacros(session, xml);
 				xml = htmlGenerator.applyRepeats(xml);
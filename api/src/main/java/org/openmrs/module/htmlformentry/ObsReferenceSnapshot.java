@@ -0,0 +1,126 @@
+package org.openmrs.module.htmlformentry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.joda.time.DateTime;
+import org.openmrs.Concept;
+import org.openmrs.Obs;
+import org.openmrs.Patient;
+import org.openmrs.util.OpenmrsUtil;
+
+/**
+ * The obs that obs reference tags show from earlier the same day. Each {@code <obsreference>} tag
+ * used to run its own query for the most recent obs of its concept, so a vitals or triage section
+ * made a round trip per field before the form could be displayed.
+ * <p/>
+ * The concepts of all the tags are registered before the tags are applied, and the first tag to be
+ * rendered loads the most recent obs of each registered concept and coded value for the patient and
+ * day with one query. The rest are answered from those obs. A concept registered after its day was
+ * loaded is loaded with the next lookup.
+ *
+ * @see FormEntryContext#getObsReferenceSnapshot()
+ */
+public class ObsReferenceSnapshot {
+	
+	// most recent first, as ObsService sorts them
+	private static final Comparator<Obs> MOST_RECENT_FIRST = new Comparator<Obs>() {
+		
+		@Override
+		public int compare(Obs left, Obs right) {
+			int ret = OpenmrsUtil.compareWithNullAsEarliest(right.getObsDatetime(), left.getObsDatetime());
+			if (ret == 0) {
+				ret = OpenmrsUtil.compareWithNullAsLowest(right.getObsId(), left.getObsId());
+			}
+			return ret;
+		}
+	};
+	
+	private final Map<List<Object>, Set<Concept>> pendingConcepts = new HashMap<List<Object>, Set<Concept>>();
+	
+	private final Map<List<Object>, Map<Concept, List<Obs>>> loadedObs = new HashMap<List<Object>, Map<Concept, List<Obs>>>();
+	
+	/**
+	 * Notes that the obs of a concept on a day will be asked for
+	 *
+	 * @param patient the patient
+	 * @param date any time on the day
+	 * @param concept the question concept
+	 */
+	public void register(Patient patient, Date date, Concept concept) {
+		if (patient == null || patient.getPatientId() == null || date == null || concept == null) {
+			return;
+		}
+		List<Object> day = getDay(patient, date);
+		Map<Concept, List<Obs>> loaded = loadedObs.get(day);
+		if (loaded != null && loaded.containsKey(concept)) {
+			return;
+		}
+		Set<Concept> pending = pendingConcepts.get(day);
+		if (pending == null) {
+			pending = new LinkedHashSet<Concept>();
+			pendingConcepts.put(day, pending);
+		}
+		pending.add(concept);
+	}
+	
+	/**
+	 * @param patient the patient
+	 * @param date any time on the day
+	 * @param concept the question concept
+	 * @param answer if not null, only obs with this coded value are considered
+	 * @return the most recent non-voided obs of the concept on the day, or null if there is none
+	 */
+	public Obs getReferenceObs(Patient patient, Date date, Concept concept, Concept answer) {
+		if (patient == null || patient.getPatientId() == null || date == null || concept == null) {
+			return null;
+		}
+		register(patient, date, concept);
+		List<Object> day = getDay(patient, date);
+		Set<Concept> pending = pendingConcepts.remove(day);
+		if (pending != null) {
+			load(day, patient, date, pending);
+		}
+		List<Obs> candidates = loadedObs.get(day).get(concept);
+		for (Obs candidate : candidates) {
+			if (answer == null || answer.equals(candidate.getValueCoded())) {
+				return candidate;
+			}
+		}
+		return null;
+	}
+	
+	private void load(List<Object> day, Patient patient, Date date, Set<Concept> concepts) {
+		Map<Concept, List<Obs>> loaded = loadedObs.get(day);
+		if (loaded == null) {
+			loaded = new HashMap<Concept, List<Obs>>();
+			loadedObs.put(day, loaded);
+		}
+		for (Concept concept : concepts) {
+			loaded.put(concept, new ArrayList<Obs>());
+		}
+		List<Obs> obsList = HtmlFormEntryUtil.getService().getLatestObs(patient, concepts,
+		    new DateTime(date).withTime(0, 0, 0, 0).toDate(), new DateTime(date).withTime(23, 59, 59, 999).toDate());
+		for (Obs obs : obsList) {
+			List<Obs> forConcept = loaded.get(obs.getConcept());
+			if (forConcept != null) {
+				forConcept.add(obs);
+			}
+		}
+		for (Concept concept : concepts) {
+			Collections.sort(loaded.get(concept), MOST_RECENT_FIRST);
+		}
+	}
+	
+	private List<Object> getDay(Patient patient, Date date) {
+		return Arrays.<Object> asList(patient.getPatientId(), new DateTime(date).withTime(0, 0, 0, 0).toDate());
+	}
+}
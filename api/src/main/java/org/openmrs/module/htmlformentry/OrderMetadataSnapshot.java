@@ -0,0 +1,237 @@
+package org.openmrs.module.htmlformentry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openmrs.CareSetting;
+import org.openmrs.Concept;
+import org.openmrs.DrugOrder;
+import org.openmrs.OrderFrequency;
+import org.openmrs.OrderType;
+import org.openmrs.api.OrderService;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.htmlformentry.element.DrugOrderSubmissionElement;
+import org.openmrs.module.htmlformentry.widget.Option;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * The order metadata that drug order tags offer as choices: units, routes, frequencies and care
+ * settings. Each drug order tag of a form used to load all of these for itself, so a form with many
+ * drug orders ran the same queries many times over.
+ * <p/>
+ * The options shown for the metadata are built once per locale and shared by every form entry
+ * session for a few minutes, or until {@link #clearCache()} is called, which
+ * {@link org.openmrs.module.htmlformentry.advice.OrderMetadataAdvice} does when the metadata is
+ * saved. Each session reads them once, so all the drug order tags of a form show the same choices.
+ * The metadata chosen on submit is looked up by id, once per session.
+ *
+ * @see FormEntryContext#getOrderMetadataSnapshot()
+ */
+public class OrderMetadataSnapshot {
+	
+	private static final long TIME_TO_LIVE = TimeUnit.MINUTES.toMillis(5);
+	
+	private static final ConcurrentMap<Locale, OrderMetadataOptions> optionsByLocale = new ConcurrentHashMap<Locale, OrderMetadataOptions>();
+	
+	// advanced by every clear, so that options built while the cache was being cleared are not kept
+	private static final AtomicLong generation = new AtomicLong();
+	
+	private OrderMetadataOptions options;
+	
+	private final Map<Integer, Concept> conceptsById = new HashMap<Integer, Concept>();
+	
+	private final Map<Integer, CareSetting> careSettingsById = new HashMap<Integer, CareSetting>();
+	
+	private OrderType drugOrderType;
+	
+	/**
+	 * @return options for {@link OrderService#getDurationUnits()}
+	 */
+	public List<Option> getDurationUnitOptions() {
+		return copy(getOptions().durationUnits);
+	}
+	
+	/**
+	 * @return options for {@link OrderService#getDrugDispensingUnits()}
+	 */
+	public List<Option> getDispensingUnitOptions() {
+		return copy(getOptions().dispensingUnits);
+	}
+	
+	/**
+	 * @return options for {@link OrderService#getDrugDosingUnits()}
+	 */
+	public List<Option> getDosingUnitOptions() {
+		return copy(getOptions().dosingUnits);
+	}
+	
+	/**
+	 * @return options for {@link OrderService#getDrugRoutes()}
+	 */
+	public List<Option> getRouteOptions() {
+		return copy(getOptions().routes);
+	}
+	
+	/**
+	 * @return options for the non-retired order frequencies, whose values are the frequency ids
+	 */
+	public List<Option> getOrderFrequencyOptions() {
+		return copy(getOptions().orderFrequencies);
+	}
+	
+	/**
+	 * @param inpatientOnly whether to leave out care settings that are not of the inpatient type
+	 * @return options for the non-retired care settings, whose values are the care setting ids
+	 */
+	public List<Option> getCareSettingOptions(boolean inpatientOnly) {
+		return copy(inpatientOnly ? getOptions().inpatientCareSettings : getOptions().careSettings);
+	}
+	
+	/**
+	 * @param conceptId the id of a unit or route
+	 * @return the concept, which is loaded the first time it is asked for
+	 */
+	public Concept getConcept(Integer conceptId) {
+		if (!conceptsById.containsKey(conceptId)) {
+			conceptsById.put(conceptId, Context.getConceptService().getConcept(conceptId));
+		}
+		return conceptsById.get(conceptId);
+	}
+	
+	/**
+	 * @param careSettingId the id of a care setting
+	 * @return the care setting, which is loaded the first time it is asked for
+	 */
+	public CareSetting getCareSetting(Integer careSettingId) {
+		if (!careSettingsById.containsKey(careSettingId)) {
+			careSettingsById.put(careSettingId, Context.getOrderService().getCareSetting(careSettingId));
+		}
+		return careSettingsById.get(careSettingId);
+	}
+	
+	/**
+	 * @return the standard drug order type, or if there is none, the last order type for drug orders
+	 */
+	public OrderType getDrugOrderType() {
+		if (drugOrderType == null) {
+			OrderService os = Context.getOrderService();
+			drugOrderType = os.getOrderTypeByUuid(DrugOrderSubmissionElement.DRUG_ORDER_TYPE_UUID);
+			// TODO: Handle cases where an implementation might have multiple order types for Drug Order and want to choose
+			if (drugOrderType == null) {
+				for (OrderType orderType : os.getOrderTypes(false)) {
+					if (orderType.getJavaClass() == DrugOrder.class) {
+						drugOrderType = orderType;
+					}
+				}
+			}
+		}
+		return drugOrderType;
+	}
+	
+	/**
+	 * Forgets the options shared between sessions, so they are built again the next time they are
+	 * needed. Within a transaction they are forgotten again once it completes, as a session opened
+	 * before the commit may have built them from the old metadata.
+	 */
+	public static void clearCache() {
+		clear();
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				
+				@Override
+				public void afterCompletion(int status) {
+					clear();
+				}
+			});
+		}
+	}
+	
+	private static void clear() {
+		generation.incrementAndGet();
+		optionsByLocale.clear();
+	}
+	
+	private OrderMetadataOptions getOptions() {
+		if (options == null) {
+			Locale locale = Context.getLocale();
+			OrderMetadataOptions cached = optionsByLocale.get(locale);
+			if (cached == null || System.currentTimeMillis() - cached.created > TIME_TO_LIVE) {
+				long builtGeneration = generation.get();
+				cached = new OrderMetadataOptions(Context.getOrderService());
+				if (builtGeneration == generation.get()) {
+					optionsByLocale.put(locale, cached);
+				}
+			}
+			options = cached;
+		}
+		return options;
+	}
+	
+	/**
+	 * Widgets may change the options they are given, so each gets its own copy
+	 */
+	private static List<Option> copy(List<Option> options) {
+		List<Option> ret = new ArrayList<Option>(options.size());
+		for (Option option : options) {
+			ret.add(new Option(option.getLabel(), option.getValue(), false));
+		}
+		return ret;
+	}
+	
+	private static class OrderMetadataOptions {
+		
+		private final long created = System.currentTimeMillis();
+		
+		private final List<Option> durationUnits;
+		
+		private final List<Option> dispensingUnits;
+		
+		private final List<Option> dosingUnits;
+		
+		private final List<Option> routes;
+		
+		private final List<Option> orderFrequencies = new ArrayList<Option>();
+		
+		private final List<Option> careSettings = new ArrayList<Option>();
+		
+		private final List<Option> inpatientCareSettings = new ArrayList<Option>();
+		
+		public OrderMetadataOptions(OrderService os) {
+			durationUnits = toOptions(os.getDurationUnits());
+			dispensingUnits = toOptions(os.getDrugDispensingUnits());
+			dosingUnits = toOptions(os.getDrugDosingUnits());
+			routes = toOptions(os.getDrugRoutes());
+			for (OrderFrequency orderFrequency : os.getOrderFrequencies(false)) {
+				orderFrequencies.add(new Option(orderFrequency.getConcept().getName().getName(),
+				        orderFrequency.getId().toString(), false));
+			}
+			for (CareSetting careSetting : os.getCareSettings(false)) {
+				Option option = new Option(careSetting.getName(), careSetting.getId().toString(), false);
+				careSettings.add(option);
+				if (CareSetting.CareSettingType.INPATIENT.equals(careSetting.getCareSettingType())) {
+					inpatientCareSettings.add(option);
+				}
+			}
+		}
+		
+		private static List<Option> toOptions(List<Concept> concepts) {
+			if (concepts == null) {
+				return Collections.emptyList();
+			}
+			List<Option> ret = new ArrayList<Option>(concepts.size());
+			for (Concept concept : concepts) {
+				ret.add(new Option(concept.getName().getName(), concept.getId().toString(), false));
+			}
+			return ret;
+		}
+	}
+}
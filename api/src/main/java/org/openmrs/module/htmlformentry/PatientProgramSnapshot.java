@@ -0,0 +1,200 @@
+package org.openmrs.module.htmlformentry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openmrs.Patient;
+import org.openmrs.PatientProgram;
+import org.openmrs.PatientState;
+import org.openmrs.Program;
+import org.openmrs.ProgramWorkflow;
+import org.openmrs.api.APIException;
+import org.openmrs.api.context.Context;
+
+/**
+ * The program enrollments of the patients a {@link FormEntrySession} works with, loaded with one
+ * query per patient and then searched in memory. Workflow state, enroll-in-program and
+ * complete-program tags each need to know about the patient's enrollments, both when the form is
+ * rendered and when it is submitted; without this each of them ran its own queries.
+ * <p/>
+ * The methods match the same-named ones in {@link HtmlFormEntryUtil}. Since the snapshot holds the
+ * PatientPrograms themselves, changes made to them during a submission are seen by later lookups.
+ * Programs saved while applying the submission are added with {@link #add(PatientProgram)}, and the
+ * snapshot is cleared before a submission is processed and once its program changes are saved.
+ *
+ * @see FormEntryContext#getPatientProgramSnapshot()
+ */
+public class PatientProgramSnapshot {
+	
+	private final Map<Integer, List<PatientProgram>> patientProgramsByPatientId = new HashMap<Integer, List<PatientProgram>>();
+	
+	/**
+	 * @param patient the patient
+	 * @return the non-voided program enrollments of the patient, which are loaded the first time they
+	 *         are asked for
+	 */
+	public List<PatientProgram> getPatientPrograms(Patient patient) {
+		if (patient == null || patient.getPatientId() == null) {
+			return Collections.emptyList();
+		}
+		List<PatientProgram> patientPrograms = patientProgramsByPatientId.get(patient.getPatientId());
+		if (patientPrograms == null) {
+			patientPrograms = new ArrayList<PatientProgram>(Context.getProgramWorkflowService().getPatientPrograms(patient,
+			    null, null, null, null, null, false));
+			patientProgramsByPatientId.put(patient.getPatientId(), patientPrograms);
+		}
+		return patientPrograms;
+	}
+	
+	/**
+	 * Filters the program enrollments of a patient the way
+	 * {@link org.openmrs.api.ProgramWorkflowService#getPatientPrograms(Patient, Program, Date, Date, Date, Date, boolean)}
+	 * does, without voided enrollments
+	 *
+	 * @param patient the patient
+	 * @param program if not null, only enrollments in this program are returned
+	 * @param minEnrollmentDate if not null, only enrollments on or after this date are returned
+	 * @param maxEnrollmentDate if not null, only enrollments on or before this date are returned
+	 * @param minCompletionDate if not null, only enrollments that are not completed, or were completed on
+	 *            or after this date, are returned
+	 * @param maxCompletionDate if not null, only enrollments completed on or before this date are
+	 *            returned
+	 * @return the matching enrollments
+	 */
+	public List<PatientProgram> getPatientPrograms(Patient patient, Program program, Date minEnrollmentDate,
+	        Date maxEnrollmentDate, Date minCompletionDate, Date maxCompletionDate) {
+		List<PatientProgram> ret = new ArrayList<PatientProgram>();
+		for (PatientProgram pp : getPatientPrograms(patient)) {
+			if (pp.isVoided() || (program != null && !program.equals(pp.getProgram()))) {
+				continue;
+			}
+			if (minEnrollmentDate != null && compare(pp.getDateEnrolled(), minEnrollmentDate) < 0) {
+				continue;
+			}
+			if (maxEnrollmentDate != null && compare(maxEnrollmentDate, pp.getDateEnrolled()) < 0) {
+				continue;
+			}
+			if (minCompletionDate != null && pp.getDateCompleted() != null
+			        && pp.getDateCompleted().getTime() < minCompletionDate.getTime()) {
+				continue;
+			}
+			if (maxCompletionDate != null && compare(maxCompletionDate, pp.getDateCompleted()) < 0) {
+				continue;
+			}
+			ret.add(pp);
+		}
+		return ret;
+	}
+	
+	/**
+	 * @see HtmlFormEntryUtil#getPatientProgramByWorkflow(Patient, ProgramWorkflow)
+	 */
+	public PatientProgram getPatientProgramByWorkflow(Patient patient, ProgramWorkflow workflow) {
+		PatientProgram patientProgram = null;
+		for (PatientProgram eachPatientProgram : getPatientPrograms(patient, workflow.getProgram(), null, null, null,
+		    null)) {
+			boolean foundState = false;
+			for (PatientState patientState : eachPatientProgram.getStates()) {
+				if (patientState.getState().getProgramWorkflow().equals(workflow)) {
+					foundState = true;
+					break;
+				}
+			}
+			if (foundState) {
+				if (patientProgram != null) {
+					throw new IllegalStateException("Does not support multiple programs");
+				}
+				patientProgram = eachPatientProgram;
+			}
+		}
+		return patientProgram;
+	}
+	
+	/**
+	 * @see HtmlFormEntryUtil#getPatientProgramByProgramOnDate(Patient, Program, Date)
+	 */
+	public PatientProgram getPatientProgramByProgramOnDate(Patient patient, Program program, Date date) {
+		List<PatientProgram> patientPrograms = getPatientPrograms(patient, program, null, date, date, null);
+		if (patientPrograms.size() > 1) {
+			throw new APIException("Simultaneous program enrollments in same program not supported");
+		}
+		return patientPrograms.size() == 1 ? patientPrograms.get(0) : null;
+	}
+	
+	/**
+	 * @see HtmlFormEntryUtil#isEnrolledInProgramOnDate(Patient, Program, Date)
+	 */
+	public boolean isEnrolledInProgramOnDate(Patient patient, Program program, Date date) {
+		if (patient == null)
+			throw new IllegalArgumentException("patient should not be null");
+		if (program == null)
+			throw new IllegalArgumentException("program should not be null");
+		if (date == null)
+			throw new IllegalArgumentException("date should not be null");
+			
+		return getPatientPrograms(patient, program, null, date, date, null).size() > 0;
+	}
+	
+	/**
+	 * @see HtmlFormEntryUtil#getClosestFutureProgramEnrollment(Patient, Program, Date)
+	 */
+	public PatientProgram getClosestFutureProgramEnrollment(Patient patient, Program program, Date date) {
+		if (patient == null)
+			throw new IllegalArgumentException("patient should not be null");
+		if (program == null)
+			throw new IllegalArgumentException("program should not be null");
+		if (date == null)
+			throw new IllegalArgumentException("date should not be null");
+			
+		PatientProgram closestProgram = null;
+		for (PatientProgram pp : getPatientPrograms(patient, program, date, null, null, null)) {
+			if ((closestProgram == null || pp.getDateEnrolled().before(closestProgram.getDateEnrolled()))
+			        && pp.getDateEnrolled().after(date)) {
+				closestProgram = pp;
+			}
+		}
+		return closestProgram;
+	}
+	
+	/**
+	 * Adds a program enrollment that has just been saved, if the enrollments of its patient are loaded
+	 *
+	 * @param patientProgram the saved enrollment
+	 */
+	public void add(PatientProgram patientProgram) {
+		Patient patient = patientProgram.getPatient();
+		if (patient == null || patient.getPatientId() == null) {
+			return;
+		}
+		List<PatientProgram> patientPrograms = patientProgramsByPatientId.get(patient.getPatientId());
+		if (patientPrograms != null && !patientPrograms.contains(patientProgram)) {
+			patientPrograms.add(patientProgram);
+		}
+	}
+	
+	/**
+	 * Forgets all loaded enrollments, so they are loaded again the next time they are needed
+	 */
+	public void clear() {
+		patientProgramsByPatientId.clear();
+	}
+	
+	/**
+	 * Compares dates the way the database does, so a null date never satisfies a bound
+	 *
+	 * @return a negative number if d1 is before d2 or either is null, 0 if they are equal, a positive
+	 *         number otherwise
+	 */
+	private static int compare(Date d1, Date d2) {
+		if (d1 == null || d2 == null) {
+			return -1;
+		}
+		long t1 = d1.getTime();
+		long t2 = d2.getTime();
+		return t1 < t2 ? -1 : (t1 == t2 ? 0 : 1);
+	}
+}
@@ -0,0 +1,97 @@
+package org.openmrs.module.htmlformentry;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openmrs.Concept;
+import org.openmrs.Obs;
+import org.openmrs.Patient;
+import org.openmrs.api.context.Context;
+
+/**
+ * Whether the patients a {@link FormEntrySession} works with have exited from care or died, as
+ * recorded by their exit from care and cause of death obs. The exit from care tag needs these when
+ * the form is built, rendered and validated, and each of these used to read the global properties,
+ * look up their concepts and load the patient's whole history of these obs again.
+ * <p/>
+ * The concepts are looked up once, and the obs of each patient are loaded the first time they are
+ * asked for. The snapshot is cleared once a submission has exited a patient from care or marked
+ * them dead, so later lookups see the new obs.
+ *
+ * @see FormEntryContext#getPatientStatusSnapshot()
+ */
+public class PatientStatusSnapshot {
+	
+	public static final String GP_REASON_EXITED_CARE = "concept.reasonExitedCare";
+	
+	public static final String GP_CAUSE_OF_DEATH = "concept.causeOfDeath";
+	
+	public static final String GP_PATIENT_DIED = "concept.patientDied";
+	
+	public static final String GP_OTHER_NON_CODED = "concept.otherNonCoded";
+	
+	private final Map<String, String> globalProperties = new HashMap<String, String>();
+	
+	private final Map<String, Concept> conceptsByGlobalProperty = new HashMap<String, Concept>();
+	
+	private final Map<Patient, List<Obs>> exitFromCareObs = new HashMap<Patient, List<Obs>>();
+	
+	private final Map<Patient, List<Obs>> causeOfDeathObs = new HashMap<Patient, List<Obs>>();
+	
+	/**
+	 * @param name the name of a global property
+	 * @return its value, which is read the first time it is asked for
+	 */
+	public String getGlobalProperty(String name) {
+		if (!globalProperties.containsKey(name)) {
+			globalProperties.put(name, Context.getAdministrationService().getGlobalProperty(name));
+		}
+		return globalProperties.get(name);
+	}
+	
+	/**
+	 * @param name the name of a global property that holds a concept id
+	 * @return the concept, which is looked up the first time it is asked for
+	 */
+	public Concept getConcept(String name) {
+		if (!conceptsByGlobalProperty.containsKey(name)) {
+			conceptsByGlobalProperty.put(name, Context.getConceptService().getConcept(getGlobalProperty(name)));
+		}
+		return conceptsByGlobalProperty.get(name);
+	}
+	
+	/**
+	 * @param patient the patient
+	 * @return the patient's obs of the concept in GP concept.reasonExitedCare
+	 */
+	public List<Obs> getExitFromCareObs(Patient patient) {
+		if (!exitFromCareObs.containsKey(patient)) {
+			exitFromCareObs.put(patient, Context.getObsService().getObservationsByPersonAndConcept(patient,
+			    getConcept(GP_REASON_EXITED_CARE)));
+		}
+		return exitFromCareObs.get(patient);
+	}
+	
+	/**
+	 * @param patient the patient
+	 * @return the patient's obs of the concept in GP concept.causeOfDeath
+	 */
+	public List<Obs> getCauseOfDeathObs(Patient patient) {
+		if (!causeOfDeathObs.containsKey(patient)) {
+			causeOfDeathObs.put(patient, Context.getObsService().getObservationsByPersonAndConcept(patient,
+			    getConcept(GP_CAUSE_OF_DEATH)));
+		}
+		return causeOfDeathObs.get(patient);
+	}
+	
+	/**
+	 * Forgets everything loaded so far
+	 */
+	public void clear() {
+		globalProperties.clear();
+		conceptsByGlobalProperty.clear();
+		exitFromCareObs.clear();
+		causeOfDeathObs.clear();
+	}
+}
@@ -18,13 +18,11 @@ import org.openmrs.Obs;
 import org.openmrs.Patient;
 import org.openmrs.PatientProgram;
 import org.openmrs.PatientState;
-import org.openmrs.Program;
 import org.openmrs.ProgramWorkflow;
 import org.openmrs.api.AdministrationService;
 import org.openmrs.api.EncounterService;
 import org.openmrs.api.LocationService;
 import org.openmrs.api.ObsService;
-import org.openmrs.api.ProgramWorkflowService;
 import org.openmrs.api.context.Context;
 import org.openmrs.parameter.EncounterSearchCriteriaBuilder;
 import org.openmrs.util.LocaleUtility;
@@ -35,8 +33,6 @@ public class VelocityFunctions {
 	
 	private ObsService obsService;
 	
-	private ProgramWorkflowService programWorkflowService;
-	
 	private AdministrationService administrationService;
 	
 	private LocationService locationService;
@@ -51,12 +47,6 @@ public class VelocityFunctions {
 		return obsService;
 	}
 	
-	private ProgramWorkflowService getProgramWorkflowService() {
-		if (programWorkflowService == null)
-			programWorkflowService = Context.getProgramWorkflowService();
-		return programWorkflowService;
-	}
-	
 	private AdministrationService getAdministrationService() {
 		if (administrationService == null)
 			administrationService = Context.getAdministrationService();
@@ -208,14 +198,7 @@ public class VelocityFunctions {
 	}
 	
 	public ProgramWorkflow getWorkflow(Integer id) {
-		for (Program p : Context.getProgramWorkflowService().getAllPrograms()) {
-			for (ProgramWorkflow w : p.getAllWorkflows()) {
-				if (w.getProgramWorkflowId().equals(id)) {
-					return w;
-				}
-			}
-		}
-		return null;
+		return HtmlFormEntryUtil.getWorkflow(id);
 	}
 	
 	@SuppressWarnings("deprecation")
@@ -226,8 +209,8 @@ public class VelocityFunctions {
 		}
 		cannotBePreviewed();
 		ProgramWorkflow workflow = getWorkflow(programWorkflowId); // not sure if and how I want to reference the UUID
-		List<PatientProgram> pps = getProgramWorkflowService().getPatientPrograms(p, workflow.getProgram(), null, null, null,
-		    null, false);
+		List<PatientProgram> pps = session.getContext().getPatientProgramSnapshot().getPatientPrograms(p,
+		    workflow.getProgram(), null, null, null, null);
 		PatientProgram mostRecentPatientProgram = null;
 		for (PatientProgram pp : pps) {
 			// try to figure out which program enrollment is active or the most
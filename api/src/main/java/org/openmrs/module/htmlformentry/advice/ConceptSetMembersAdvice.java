@@ -0,0 +1,23 @@
+package org.openmrs.module.htmlformentry.advice;
+
+import java.lang.reflect.Method;
+
+import org.openmrs.module.htmlformentry.util.ConceptSetMembers;
+import org.springframework.aop.AfterReturningAdvice;
+
+/**
+ * Clears the cached members of concept sets when a concept is saved, retired or purged. A set may be
+ * nested in others, so the members of every set are cleared. Advises
+ * {@link org.openmrs.api.ConceptService}.
+ *
+ * @see ConceptSetMembers#clearCache()
+ */
+public class ConceptSetMembersAdvice implements AfterReturningAdvice {
+	
+	@Override
+	public void afterReturning(Object returnValue, Method method, Object[] args, Object target) throws Throwable {
+		if (method.getName().matches("(save|retire|unretire|purge)Concept")) {
+			ConceptSetMembers.clearCache();
+		}
+	}
+}
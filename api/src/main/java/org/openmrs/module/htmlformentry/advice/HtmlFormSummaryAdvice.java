@@ -0,0 +1,23 @@
+package org.openmrs.module.htmlformentry.advice;
+
+import java.lang.reflect.Method;
+
+import org.openmrs.module.htmlformentry.HtmlFormEntryUtil;
+import org.springframework.aop.AfterReturningAdvice;
+
+/**
+ * Clears the cached HTML Form summaries when a form or encounter type, whose names and published flag
+ * the summaries hold, is saved, retired or purged. Advises {@link org.openmrs.api.FormService} and
+ * {@link org.openmrs.api.EncounterService}.
+ *
+ * @see org.openmrs.module.htmlformentry.HtmlFormEntryService#clearHtmlFormSummaryCache()
+ */
+public class HtmlFormSummaryAdvice implements AfterReturningAdvice {
+	
+	@Override
+	public void afterReturning(Object returnValue, Method method, Object[] args, Object target) throws Throwable {
+		if (method.getName().matches("(save|retire|unretire|purge|duplicate)(Form|EncounterType)")) {
+			HtmlFormEntryUtil.getService().clearHtmlFormSummaryCache();
+		}
+	}
+}
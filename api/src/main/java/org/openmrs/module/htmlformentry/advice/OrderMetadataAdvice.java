@@ -0,0 +1,23 @@
+package org.openmrs.module.htmlformentry.advice;
+
+import java.lang.reflect.Method;
+
+import org.openmrs.module.htmlformentry.OrderMetadataSnapshot;
+import org.springframework.aop.AfterReturningAdvice;
+
+/**
+ * Clears the order metadata options that drug order tags share when order frequencies, order types
+ * or concepts (the units and routes are concepts) are saved, retired or purged. Advises
+ * {@link org.openmrs.api.OrderService} and {@link org.openmrs.api.ConceptService}.
+ *
+ * @see OrderMetadataSnapshot#clearCache()
+ */
+public class OrderMetadataAdvice implements AfterReturningAdvice {
+	
+	@Override
+	public void afterReturning(Object returnValue, Method method, Object[] args, Object target) throws Throwable {
+		if (method.getName().matches("(save|retire|unretire|purge)(Concept|OrderFrequency|OrderType|CareSetting)")) {
+			OrderMetadataSnapshot.clearCache();
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package org.openmrs.module.htmlformentry.advice;
+
+import java.lang.reflect.Method;
+
+import org.openmrs.module.htmlformentry.HtmlFormEntryUtil;
+import org.springframework.aop.AfterReturningAdvice;
+
+/**
+ * Clears the cached index of programs, workflows and states when a program, with its workflows and
+ * states, is saved, retired or purged. Advises {@link org.openmrs.api.ProgramWorkflowService}.
+ *
+ * @see org.openmrs.module.htmlformentry.HtmlFormEntryService#clearProgramMetadataCache()
+ */
+public class ProgramMetadataAdvice implements AfterReturningAdvice {
+	
+	@Override
+	public void afterReturning(Object returnValue, Method method, Object[] args, Object target) throws Throwable {
+		if (method.getName().matches("(save|retire|unretire|purge)Program")) {
+			HtmlFormEntryUtil.getService().clearProgramMetadataCache();
+		}
+	}
+}
@@ -0,0 +1,279 @@
+package org.openmrs.module.htmlformentry.compiler;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openmrs.module.htmlformentry.BadFormDesignException;
+import org.openmrs.module.htmlformentry.FormEntrySession;
+import org.openmrs.module.htmlformentry.HtmlFormEntryUtil;
+import org.openmrs.module.htmlformentry.handler.IteratingTagHandler;
+import org.openmrs.module.htmlformentry.handler.TagHandler;
+import org.openmrs.module.htmlformentry.metrics.FormTimings;
+import org.openmrs.module.htmlformentry.metrics.FormTimings.Phase;
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * The tag-processing stage of a form, worked out once so that it can be rendered many times. When a
+ * form is compiled, the handler for every node is looked up, the attributes of every element are
+ * read into a map, and every subtree that contains no tag with a handler is rendered to html up
+ * front. Rendering then only has to print that html and call the handlers of the tags that
+ * actually produce dynamic content.
+ * <p/>
+ * A compiled form owns the Document it was compiled from, and handlers are given (and may hold on
+ * to) its nodes. Reading a DOM is not thread-safe, so a compiled form must only be rendered by one
+ * session at a time; see {@link CompiledFormCache}.
+ */
+public class CompiledForm {
+	
+	private static final String ATTRIBUTES_KEY = CompiledForm.class.getName() + ".attributes";
+	
+	private final String xml;
+	
+	private final Map<String, TagHandler> handlers;
+	
+	private final Document document;
+	
+	private final Instruction root;
+	
+	private FormDataDependencies dataDependencies;
+	
+	private CompiledForm(String xml, Map<String, TagHandler> handlers, Document document, Instruction root) {
+		this.xml = xml;
+		this.handlers = handlers;
+		this.document = document;
+		this.root = root;
+	}
+	
+	/**
+	 * Compiles a form whose macros, pages, repeats and translations have already been applied
+	 *
+	 * @param xml the xml of the form
+	 * @param handlers the tag handlers to compile against, keyed by tag name
+	 * @param defaultHandler the handler for tags with no registered handler, which must not depend on
+	 *            the session
+	 * @return the compiled form
+	 */
+	public static CompiledForm compile(String xml, Map<String, TagHandler> handlers, TagHandler defaultHandler)
+	        throws Exception {
+		Document doc = HtmlFormEntryUtil.stringToDocument(xml);
+		Node content = HtmlFormEntryUtil.findChild(doc, "htmlform");
+		if (content == null) {
+			throw new BadFormDesignException("The form has no htmlform element");
+		}
+		Instruction root = compile(null, content, handlers, defaultHandler);
+		return new CompiledForm(xml, handlers, doc, root);
+	}
+	
+	private static Instruction compile(Node parent, Node node, Map<String, TagHandler> handlers,
+	        TagHandler defaultHandler) throws Exception {
+		String name = node.getNodeName();
+		TagHandler handler = name == null ? null : handlers.get(name);
+		
+		if (node.getNodeType() == Node.ELEMENT_NODE) {
+			node.setUserData(ATTRIBUTES_KEY, readAttributes(node), null);
+		}
+		
+		List<Instruction> children = new ArrayList<Instruction>();
+		boolean isStatic = handler == null;
+		NodeList list = node.getChildNodes();
+		for (int i = 0; i < list.getLength(); ++i) {
+			Instruction child = compile(node, list.item(i), handlers, defaultHandler);
+			isStatic = isStatic && child.html != null;
+			children.add(child);
+		}
+		
+		if (isStatic) {
+			StringWriter sw = new StringWriter();
+			PrintWriter out = new PrintWriter(sw);
+			defaultHandler.doStartTag(null, out, parent, node);
+			for (Instruction child : children) {
+				out.print(child.html);
+			}
+			defaultHandler.doEndTag(null, out, parent, node);
+			out.flush();
+			return new Instruction(sw.toString());
+		}
+		return new Instruction(parent, node, handler, mergeStaticSiblings(children));
+	}
+	
+	/**
+	 * Joins runs of consecutive static instructions into one, so rendering prints them in one go
+	 */
+	private static List<Instruction> mergeStaticSiblings(List<Instruction> children) {
+		List<Instruction> merged = new ArrayList<Instruction>(children.size());
+		StringBuilder html = null;
+		for (Instruction child : children) {
+			if (child.html != null) {
+				if (html == null) {
+					html = new StringBuilder();
+				}
+				html.append(child.html);
+			} else {
+				if (html != null) {
+					merged.add(new Instruction(html.toString()));
+					html = null;
+				}
+				merged.add(child);
+			}
+		}
+		if (html != null) {
+			merged.add(new Instruction(html.toString()));
+		}
+		return merged;
+	}
+	
+	private static Map<String, String> readAttributes(Node node) {
+		NamedNodeMap map = node.getAttributes();
+		if (map == null || map.getLength() == 0) {
+			return Collections.emptyMap();
+		}
+		Map<String, String> attributes = new HashMap<String, String>();
+		for (int i = 0; i < map.getLength(); ++i) {
+			Node attribute = map.item(i);
+			attributes.put(attribute.getNodeName(), attribute.getNodeValue());
+		}
+		return Collections.unmodifiableMap(attributes);
+	}
+	
+	/**
+	 * @param node a node
+	 * @return the attributes of the node read when its form was compiled, as an unmodifiable map, or
+	 *         null if the node does not belong to a compiled form
+	 */
+	@SuppressWarnings("unchecked")
+	public static Map<String, String> getCompiledAttributes(Node node) {
+		if (node == null || node.getNodeType() != Node.ELEMENT_NODE) {
+			return null;
+		}
+		return (Map<String, String>) node.getUserData(ATTRIBUTES_KEY);
+	}
+	
+	/**
+	 * Renders the form, calling the handlers of its dynamic tags
+	 *
+	 * @param session the current form entry session
+	 * @param out where to write the html
+	 * @param defaultHandler the handler for tags with no registered handler
+	 */
+	public void render(FormEntrySession session, PrintWriter out, TagHandler defaultHandler) {
+		root.render(session, out, defaultHandler);
+	}
+	
+	/**
+	 * @return the xml this form was compiled from
+	 */
+	public String getXml() {
+		return xml;
+	}
+	
+	/**
+	 * @return the tag handlers this form was compiled against
+	 */
+	public Map<String, TagHandler> getHandlers() {
+		return handlers;
+	}
+	
+	public Document getDocument() {
+		return document;
+	}
+	
+	/**
+	 * @return the metadata the tags of this form refer to, which is worked out the first time it is
+	 *         asked for
+	 */
+	public FormDataDependencies getDataDependencies() {
+		if (dataDependencies == null) {
+			dataDependencies = FormDataDependencies.analyze(this);
+		}
+		return dataDependencies;
+	}
+	
+	/**
+	 * Either a run of pre-rendered html, or a node whose handler has to be called at render time
+	 */
+	private static class Instruction {
+		
+		private final String html;
+		
+		private final Node parent;
+		
+		private final Node node;
+		
+		private final TagHandler handler;
+		
+		private final List<Instruction> children;
+		
+		Instruction(String html) {
+			this.html = html;
+			this.parent = null;
+			this.node = null;
+			this.handler = null;
+			this.children = null;
+		}
+		
+		Instruction(Node parent, Node node, TagHandler handler, List<Instruction> children) {
+			this.html = null;
+			this.parent = parent;
+			this.node = node;
+			this.handler = handler;
+			this.children = children;
+		}
+		
+		void render(FormEntrySession session, PrintWriter out, TagHandler defaultHandler) {
+			if (html != null) {
+				out.print(html);
+				return;
+			}
+			TagHandler handler = this.handler == null ? defaultHandler : this.handler;
+			// only the registered handlers are timed, not the default handling of plain html
+			FormTimings timings = this.handler == null || session == null ? null
+			        : session.getContext().getTimings(Phase.RENDER);
+			try {
+				long start = System.nanoTime();
+				boolean handleContents = handler.doStartTag(session, out, parent, node);
+				if (timings != null) {
+					timings.addTagTime(node.getNodeName(), start, true);
+				}
+				
+				// Unless the handler told us to skip them, then iterate over any children
+				if (handleContents) {
+					if (handler instanceof IteratingTagHandler) {
+						// recurse as many times as the tag wants
+						IteratingTagHandler iteratingHandler = (IteratingTagHandler) handler;
+						while (iteratingHandler.shouldRunAgain(session, out, parent, node)) {
+							renderChildren(session, out, defaultHandler);
+						}
+					} else {
+						renderChildren(session, out, defaultHandler);
+					}
+				}
+				
+				start = System.nanoTime();
+				handler.doEndTag(session, out, parent, node);
+				if (timings != null) {
+					timings.addTagTime(node.getNodeName(), start, false);
+				}
+			}
+			catch (BadFormDesignException e) {
+				out.print("<div class=\"error\">" + handler
+				        + " reported an error in the design of the form. Consult your administrator.<br/><pre>");
+				e.printStackTrace(out);
+				out.print("</pre></div>");
+			}
+		}
+		
+		private void renderChildren(FormEntrySession session, PrintWriter out, TagHandler defaultHandler) {
+			for (Instruction child : children) {
+				child.render(session, out, defaultHandler);
+			}
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package org.openmrs.module.htmlformentry.compiler;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.openmrs.module.htmlformentry.handler.TagHandler;
+
+/**
+ * Keeps compiled forms for reuse, keyed by the xml they were compiled from, so the same form (in the
+ * same locale, for users with the same roles) is only parsed and compiled again when every compiled
+ * copy of it is in use. A compiled form is borrowed for the duration of one render and then
+ * released; it is never shared by two sessions at the same time.
+ * <p/>
+ * The cache remembers which tag handlers its forms were compiled against. When a borrow or release
+ * sees a different set of handlers (the handler registry publishes a new map on every change), every
+ * cached form is discarded.
+ */
+public class CompiledFormCache {
+	
+	public static final int DEFAULT_MAX_FORMS = 32;
+	
+	public static final int DEFAULT_MAX_IDLE_PER_FORM = 4;
+	
+	private final int maxIdlePerForm;
+	
+	private final Map<String, Deque<CompiledForm>> idle;
+	
+	private Map<String, TagHandler> handlers;
+	
+	public CompiledFormCache() {
+		this(DEFAULT_MAX_FORMS, DEFAULT_MAX_IDLE_PER_FORM);
+	}
+	
+	/**
+	 * @param maxForms the number of distinct forms to keep, least recently used forms are dropped first
+	 * @param maxIdlePerForm the number of idle compiled copies to keep of each form
+	 */
+	public CompiledFormCache(final int maxForms, int maxIdlePerForm) {
+		this.maxIdlePerForm = maxIdlePerForm;
+		this.idle = new LinkedHashMap<String, Deque<CompiledForm>>(16, 0.75f, true) {
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Deque<CompiledForm>> eldest) {
+				return size() > maxForms;
+			}
+		};
+	}
+	
+	/**
+	 * Takes an idle compiled copy of the form out of the cache, or compiles a new one. The caller owns
+	 * the result until it passes it to {@link #release(CompiledForm, Map)}.
+	 *
+	 * @param xml the xml of the form
+	 * @param handlers the current tag handlers
+	 * @param defaultHandler the handler for tags with no registered handler
+	 * @return a compiled form that nobody else is using
+	 */
+	public CompiledForm borrow(String xml, Map<String, TagHandler> handlers, TagHandler defaultHandler)
+	        throws Exception {
+		synchronized (this) {
+			invalidateIfChanged(handlers);
+			Deque<CompiledForm> forms = idle.get(xml);
+			if (forms != null && !forms.isEmpty()) {
+				return forms.pop();
+			}
+		}
+		// compile outside the lock, so other forms can be borrowed meanwhile
+		return CompiledForm.compile(xml, handlers, defaultHandler);
+	}
+	
+	/**
+	 * Returns a borrowed compiled form to the cache. It is dropped if it was compiled against handlers
+	 * other than the current ones, or if enough idle copies of the form are already cached.
+	 *
+	 * @param form the compiled form, which the caller must not use any more
+	 * @param handlers the current tag handlers
+	 */
+	public synchronized void release(CompiledForm form, Map<String, TagHandler> handlers) {
+		invalidateIfChanged(handlers);
+		if (form.getHandlers() != handlers) {
+			return;
+		}
+		Deque<CompiledForm> forms = idle.get(form.getXml());
+		if (forms == null) {
+			forms = new ArrayDeque<CompiledForm>();
+			idle.put(form.getXml(), forms);
+		}
+		if (forms.size() < maxIdlePerForm) {
+			forms.push(form);
+		}
+	}
+	
+	/**
+	 * Discards every cached compiled form
+	 */
+	public synchronized void clear() {
+		idle.clear();
+	}
+	
+	/**
+	 * @return the number of idle compiled forms in the cache
+	 */
+	public synchronized int size() {
+		int size = 0;
+		for (Deque<CompiledForm> forms : idle.values()) {
+			size += forms.size();
+		}
+		return size;
+	}
+	
+	private void invalidateIfChanged(Map<String, TagHandler> currentHandlers) {
+		if (handlers != currentHandlers) {
+			idle.clear();
+			handlers = currentHandlers;
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package org.openmrs.module.htmlformentry.compiler;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+import org.openmrs.Concept;
+import org.openmrs.Drug;
+import org.openmrs.EncounterType;
+import org.openmrs.Location;
+import org.openmrs.OpenmrsObject;
+import org.openmrs.Program;
+import org.openmrs.module.htmlformentry.handler.AttributeDescriptor;
+import org.openmrs.module.htmlformentry.handler.ObsReferenceTagHandler;
+import org.openmrs.module.htmlformentry.handler.TagHandler;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * The metadata a compiled form refers to by id: its concepts and answers, drugs, locations, programs
+ * and encounter types. Tags look these up one at a time as they are applied, so a large
+ * form made a query for each of them; with the list worked out up front they can be loaded together
+ * first (see
+ * {@link org.openmrs.module.htmlformentry.HtmlFormEntryService#preloadFormData(FormDataDependencies)}).
+ * References by uuid are left out, as lookups by uuid query the database whatever the session holds.
+ * <p/>
+ * References are found through the {@link AttributeDescriptor}s of the tag handlers, as when a form
+ * is exported. References by name or concept mapping, and anything looked up by velocity
+ * expressions, are left to the tags.
+ */
+public class FormDataDependencies {
+	
+	/**
+	 * The kinds of metadata that are worth loading ahead of the tags. States are left out, as tags
+	 * find them through the workflows of their program rather than by id.
+	 */
+	public static final List<Class<? extends OpenmrsObject>> PRELOADED_TYPES = Collections
+	        .unmodifiableList(Arrays.<Class<? extends OpenmrsObject>> asList(Concept.class, Drug.class, Location.class,
+	            Program.class, EncounterType.class));
+	
+	private final Map<Class<?>, Set<Integer>> ids = new LinkedHashMap<Class<?>, Set<Integer>>();
+	
+	private final Set<String> obsReferenceConcepts = new LinkedHashSet<String>();
+	
+	private FormDataDependencies() {
+		for (Class<?> type : PRELOADED_TYPES) {
+			ids.put(type, new LinkedHashSet<Integer>());
+		}
+	}
+	
+	/**
+	 * @param form the compiled form
+	 * @return the metadata the tags of the form refer to
+	 */
+	public static FormDataDependencies analyze(CompiledForm form) {
+		FormDataDependencies ret = new FormDataDependencies();
+		ret.analyze(form.getDocument(), form.getHandlers());
+		return ret;
+	}
+	
+	private void analyze(Node node, Map<String, TagHandler> handlers) {
+		if (node.getNodeType() == Node.ELEMENT_NODE) {
+			TagHandler handler = handlers.get(node.getNodeName());
+			if (handler != null && handler.getAttributeDescriptors() != null) {
+				for (AttributeDescriptor descriptor : handler.getAttributeDescriptors()) {
+					if (ids.containsKey(descriptor.getClazz())) {
+						addReferences(descriptor.getClazz(), getAttribute(node, descriptor.getName()));
+					}
+				}
+			}
+			if (handler instanceof ObsReferenceTagHandler) {
+				String conceptId = getAttribute(node, "conceptId");
+				if (StringUtils.isNotBlank(conceptId)) {
+					obsReferenceConcepts.add(conceptId.trim());
+				}
+			}
+		}
+		NodeList children = node.getChildNodes();
+		for (int i = 0; i < children.getLength(); ++i) {
+			analyze(children.item(i), handlers);
+		}
+	}
+	
+	private static String getAttribute(Node node, String name) {
+		Map<String, String> compiled = CompiledForm.getCompiledAttributes(node);
+		if (compiled != null) {
+			return compiled.get(name);
+		}
+		Node attribute = node.getAttributes().getNamedItem(name);
+		return attribute == null ? null : attribute.getNodeValue();
+	}
+	
+	private void addReferences(Class<?> type, String value) {
+		if (StringUtils.isBlank(value)) {
+			return;
+		}
+		for (String reference : value.split(",")) {
+			reference = reference.trim();
+			if (StringUtils.isNumeric(reference) && reference.length() > 0 && reference.length() < 10) {
+				ids.get(type).add(Integer.valueOf(reference));
+			}
+		}
+	}
+	
+	/**
+	 * @param type one of {@link #PRELOADED_TYPES}
+	 * @return the ids by which the form refers to metadata of the type
+	 */
+	public Set<Integer> getIds(Class<? extends OpenmrsObject> type) {
+		Set<Integer> ret = ids.get(type);
+		return ret == null ? Collections.<Integer> emptySet() : Collections.unmodifiableSet(ret);
+	}
+	
+	/**
+	 * @return the concepts of the obsreference tags of the form, as they are written in the form
+	 */
+	public Set<String> getObsReferenceConcepts() {
+		return Collections.unmodifiableSet(obsReferenceConcepts);
+	}
+	
+	/**
+	 * @return whether the form refers to no metadata of the preloaded types
+	 */
+	public boolean isEmpty() {
+		for (Class<?> type : PRELOADED_TYPES) {
+			if (!ids.get(type).isEmpty()) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -1,15 +1,23 @@
 package org.openmrs.module.htmlformentry.db;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 import java.util.Set;
 
+import org.openmrs.Concept;
 import org.openmrs.Form;
+import org.openmrs.Obs;
 import org.openmrs.OpenmrsMetadata;
 import org.openmrs.OpenmrsObject;
+import org.openmrs.Person;
 import org.openmrs.Program;
 import org.openmrs.module.htmlformentry.HtmlForm;
 import org.openmrs.module.htmlformentry.HtmlFormEntryService;
+import org.openmrs.module.htmlformentry.HtmlFormSummary;
+import org.openmrs.module.htmlformentry.element.PersonSearchResult;
 import org.openmrs.module.htmlformentry.element.PersonStub;
+import org.openmrs.module.htmlformentry.metrics.QueryCounts;
 
 /**
  * Defines the methods that must be implemented by the Data Access Object
@@ -62,6 +70,21 @@ public interface HtmlFormEntryDAO {
 	 */
 	public List<HtmlForm> getAllHtmlForms();
 	
+	/**
+	 * Returns summaries of all HtmlForms in the database, without loading their xml
+	 * 
+	 * @return
+	 */
+	public List<HtmlFormSummary> getAllHtmlFormSummaries();
+	
+	/**
+	 * Returns the Forms with the given ids
+	 * 
+	 * @param formIds
+	 * @return
+	 */
+	public List<Form> getForms(Collection<Integer> formIds);
+	
 	/**
 	 * @see HtmlFormEntryService#needsNameAndDescriptionMigration()
 	 */
@@ -87,6 +110,37 @@ public interface HtmlFormEntryDAO {
 	 */
 	public OpenmrsObject getItemByName(Class<? extends OpenmrsMetadata> type, String name);
 	
+	/**
+	 * Loads the objects of a type with the given ids into the current session, skipping those already
+	 * in the second-level cache
+	 */
+	public void preloadItems(Class<? extends OpenmrsObject> type, Collection<Integer> ids);
+	
+	/**
+	 * @see HtmlFormEntryService#getLatestObs(Person, Collection, Date, Date)
+	 */
+	public List<Obs> getLatestObs(Person person, Collection<Concept> concepts, Date fromDate, Date toDate);
+	
+	/**
+	 * @see HtmlFormEntryService#getQueryCounts()
+	 */
+	public QueryCounts getQueryCounts();
+	
+	/**
+	 * @see HtmlFormEntryService#setQueryCountsEnabled(boolean)
+	 */
+	public void setQueryCountsEnabled(boolean enabled);
+	
+	/**
+	 * @see HtmlFormEntryService#startCountingQueries()
+	 */
+	public void startCountingQueries();
+	
+	/**
+	 * @see HtmlFormEntryService#stopCountingQueries()
+	 */
+	public void stopCountingQueries();
+	
 	/**
 	 * @see HtmlFormEntryService#getPersonIdsHavingAttributes(String attributeId, String attributeValue)
 	 */
@@ -96,4 +150,21 @@ public interface HtmlFormEntryDAO {
 	 * Return a List of patient ids who have ever been enrolled in the given program
 	 */
 	public Set<Integer> getPatientIdHavingEnrollments(Program program);
+	
+	/**
+	 * @see HtmlFormEntryService#searchPersonIds(String, List, List, List, Integer, Integer)
+	 */
+	public List<Integer> searchPersonIds(String searchPhrase, List<String> attributes, List<String> attributeValues,
+	        List<Program> programs, int start, int length);
+	
+	/**
+	 * @see HtmlFormEntryService#getPeopleAsPersonStubs(List, List, List, List, Integer)
+	 */
+	public List<PersonStub> getPeopleAsPersonStubs(List<String> attributes, List<String> attributeValues,
+	        List<Program> programs, Collection<Integer> personIdsToExclude, int length);
+	
+	/**
+	 * @see HtmlFormEntryService#getPersonSearchResults(List)
+	 */
+	public List<PersonSearchResult> getPersonSearchResults(List<Integer> personIds);
 }
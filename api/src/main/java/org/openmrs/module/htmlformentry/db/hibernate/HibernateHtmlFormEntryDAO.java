@@ -1,26 +1,42 @@
 package org.openmrs.module.htmlformentry.db.hibernate;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.hibernate.Cache;
 import org.hibernate.CacheMode;
 import org.hibernate.Criteria;
 import org.hibernate.Query;
+import org.hibernate.SessionFactory;
 import org.hibernate.criterion.Expression;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.stat.Statistics;
 import org.hibernate.transform.Transformers;
+import org.hibernate.type.StandardBasicTypes;
+import org.openmrs.Concept;
 import org.openmrs.Form;
+import org.openmrs.Obs;
 import org.openmrs.OpenmrsMetadata;
 import org.openmrs.OpenmrsObject;
+import org.openmrs.Person;
 import org.openmrs.Program;
 import org.openmrs.api.db.hibernate.DbSessionFactory;
 import org.openmrs.module.htmlformentry.HtmlForm;
+import org.openmrs.module.htmlformentry.HtmlFormSummary;
 import org.openmrs.module.htmlformentry.db.HtmlFormEntryDAO;
+import org.openmrs.module.htmlformentry.element.PersonSearchResult;
 import org.openmrs.module.htmlformentry.element.PersonStub;
+import org.openmrs.module.htmlformentry.metrics.QueryCounts;
 
 /**
  * Hibernate implementation of the Data Access Object
@@ -29,8 +45,20 @@ public class HibernateHtmlFormEntryDAO implements HtmlFormEntryDAO {
 	
 	private static Log log = LogFactory.getLog(HibernateHtmlFormEntryDAO.class);
 	
+	// kept well below the limits databases put on the number of values in an IN list
+	private static final int PRELOAD_BATCH_SIZE = 500;
+	
 	private DbSessionFactory sessionFactory;
 	
+	// whether the htmlformentry.recordQueryCounts setting has turned the statistics on
+	private boolean countingBySetting = false;
+	
+	// the number of callers between startCountingQueries and stopCountingQueries
+	private int temporaryCounters = 0;
+	
+	// whether the statistics were on before they were turned on here, or null if they are not turned on
+	private Boolean statisticsWereEnabled;
+	
 	public void setSessionFactory(DbSessionFactory sessionFactory) {
 		this.sessionFactory = sessionFactory;
 	}
@@ -64,6 +92,27 @@ public class HibernateHtmlFormEntryDAO implements HtmlFormEntryDAO {
 		return (List<HtmlForm>) query.list();
 	}
 	
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<HtmlFormSummary> getAllHtmlFormSummaries() {
+		Query query = sessionFactory.getCurrentSession()
+		        .createQuery("select new org.openmrs.module.htmlformentry.HtmlFormSummary(hf.id, hf.uuid, hf.dateCreated, "
+		                + "hf.dateChanged, f.formId, f.name, f.version, f.published, f.retired, et.encounterTypeId, et.name) "
+		                + "from HtmlForm hf join hf.form f left join f.encounterType et order by f.name asc");
+		return (List<HtmlFormSummary>) query.list();
+	}
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<Form> getForms(Collection<Integer> formIds) {
+		if (formIds == null || formIds.isEmpty()) {
+			return new ArrayList<Form>();
+		}
+		Criteria crit = sessionFactory.getCurrentSession().createCriteria(Form.class);
+		crit.add(Restrictions.in("formId", formIds));
+		return (List<Form>) crit.list();
+	}
+	
 	@Override
 	@SuppressWarnings("unchecked")
 	public HtmlForm getHtmlFormByForm(Form form) {
@@ -110,6 +159,109 @@ public class HibernateHtmlFormEntryDAO implements HtmlFormEntryDAO {
 		}
 	}
 	
+	@Override
+	public void preloadItems(Class<? extends OpenmrsObject> type, Collection<Integer> ids) {
+		SessionFactory factory = sessionFactory.getHibernateSessionFactory();
+		Cache cache = factory.getCache();
+		// the tags get metadata by id, which finds anything in the second-level cache without a query
+		List<Integer> missing = new ArrayList<Integer>();
+		for (Integer id : ids) {
+			if (!cache.containsEntity(type, id)) {
+				missing.add(id);
+			}
+		}
+		String idProperty = factory.getClassMetadata(type).getIdentifierPropertyName();
+		preloadItems("from " + type.getName() + " o where o." + idProperty + " in (:values)", missing);
+		if (Concept.class.equals(type)) {
+			// loading the names and answers with separate fetches keeps each query from multiplying the rows of the other
+			for (String collection : new String[] { "names", "answers" }) {
+				List<Integer> uncached = new ArrayList<Integer>();
+				for (Integer id : ids) {
+					if (!cache.containsCollection(Concept.class.getName() + "." + collection, id)) {
+						uncached.add(id);
+					}
+				}
+				String fetch = "select distinct c from Concept c left join fetch c." + collection + " where c.";
+				preloadItems(fetch + "conceptId in (:values)", uncached);
+			}
+		}
+	}
+	
+	/**
+	 * Runs a query that loads items into the session, a batch of values at a time
+	 */
+	private void preloadItems(String hql, Collection<?> values) {
+		List<?> list = new ArrayList<Object>(values);
+		for (int i = 0; i < list.size(); i += PRELOAD_BATCH_SIZE) {
+			Query query = sessionFactory.getCurrentSession().createQuery(hql);
+			query.setParameterList("values", list.subList(i, Math.min(i + PRELOAD_BATCH_SIZE, list.size())));
+			query.list();
+		}
+	}
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<Obs> getLatestObs(Person person, Collection<Concept> concepts, Date fromDate, Date toDate) {
+		if (concepts == null || concepts.isEmpty()) {
+			return new ArrayList<Obs>();
+		}
+		// an obs is the latest of its concept and coded value if none of the others in the period is later
+		String hql = "select o from Obs o where o.person = :person and o.concept in (:concepts) and o.voided = false "
+		        + "and o.obsDatetime between :fromDate and :toDate and o.obsDatetime = ("
+		        + "select max(later.obsDatetime) from Obs later where later.person = o.person "
+		        + "and later.concept = o.concept and later.voided = false "
+		        + "and later.obsDatetime between :fromDate and :toDate and (later.valueCoded = o.valueCoded "
+		        + "or (later.valueCoded is null and o.valueCoded is null)))";
+		Query query = sessionFactory.getCurrentSession().createQuery(hql);
+		query.setParameter("person", person);
+		query.setParameterList("concepts", concepts);
+		query.setTimestamp("fromDate", fromDate);
+		query.setTimestamp("toDate", toDate);
+		return (List<Obs>) query.list();
+	}
+	
+	@Override
+	public QueryCounts getQueryCounts() {
+		Statistics statistics = sessionFactory.getHibernateSessionFactory().getStatistics();
+		return new QueryCounts(statistics.getPrepareStatementCount(), statistics.getQueryExecutionCount(),
+		        statistics.getEntityLoadCount(), statistics.getEntityFetchCount(), statistics.getCollectionFetchCount());
+	}
+	
+	@Override
+	public synchronized void setQueryCountsEnabled(boolean enabled) {
+		countingBySetting = enabled;
+		updateStatistics();
+	}
+	
+	@Override
+	public synchronized void startCountingQueries() {
+		temporaryCounters++;
+		updateStatistics();
+	}
+	
+	@Override
+	public synchronized void stopCountingQueries() {
+		if (temporaryCounters > 0) {
+			temporaryCounters--;
+		}
+		updateStatistics();
+	}
+	
+	/**
+	 * Keeps the statistics on while the setting or any caller is counting queries, and puts them back
+	 * how they were once none is
+	 */
+	private void updateStatistics() {
+		Statistics statistics = sessionFactory.getHibernateSessionFactory().getStatistics();
+		boolean counting = countingBySetting || temporaryCounters > 0;
+		if (counting && statisticsWereEnabled == null) {
+			statisticsWereEnabled = statistics.isStatisticsEnabled();
+			statistics.setStatisticsEnabled(true);
+		} else if (!counting && statisticsWereEnabled != null) {
+			statistics.setStatisticsEnabled(statisticsWereEnabled);
+			statisticsWereEnabled = null;
+		}
+	}	
 	@Override
 	public OpenmrsObject getItemById(Class<? extends OpenmrsObject> type, Integer id) {
 		try {
@@ -165,4 +317,165 @@ public class HibernateHtmlFormEntryDAO implements HtmlFormEntryDAO {
 		query.setInteger("programId", program.getProgramId());
 		return new HashSet<Integer>(query.list());
 	}
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<Integer> searchPersonIds(String searchPhrase, List<String> attributes, List<String> attributeValues,
+	        List<Program> programs, int start, int length) {
+		Map<String, Object> params = new HashMap<String, Object>();
+		StringBuilder sql = new StringBuilder("select p.person_id from person p ");
+		sql.append(" inner join person_name pn on pn.person_id = p.person_id and pn.voided = false ");
+		sql.append(" where p.voided = false ");
+		
+		// every word has to match the start of one of the names
+		List<String> nameConditions = new ArrayList<String>();
+		String[] words = searchPhrase.trim().toLowerCase().split("\\s+");
+		for (int i = 0; i < words.length; i++) {
+			String param = ":name" + i;
+			nameConditions.add("(lower(pn.given_name) like " + param + " or lower(pn.middle_name) like " + param
+			        + " or lower(pn.family_name) like " + param + " or lower(pn.family_name2) like " + param + ")");
+			params.put("name" + i, words[i] + "%");
+		}
+		sql.append(" and ((").append(StringUtils.join(nameConditions, " and ")).append(")");
+		if (searchPhrase.matches(".*\\d+.*")) {
+			sql.append(" or exists (select pi.patient_id from patient_identifier pi where pi.patient_id = p.person_id ");
+			sql.append(" and pi.voided = false and pi.identifier = :identifier)");
+			params.put("identifier", searchPhrase.trim());
+		}
+		sql.append(") ");
+		appendPersonFilters(sql, params, attributes, attributeValues, programs);
+		sql.append(" group by p.person_id order by min(pn.family_name), min(pn.given_name), p.person_id ");
+		
+		Query query = sessionFactory.getCurrentSession().createSQLQuery(sql.toString());
+		query.setCacheMode(CacheMode.IGNORE);
+		for (Map.Entry<String, Object> param : params.entrySet()) {
+			query.setParameter(param.getKey(), param.getValue());
+		}
+		if (start > 0) {
+			query.setFirstResult(start);
+		}
+		if (length >= 0) {
+			query.setMaxResults(length);
+		}
+		
+		List<Integer> ret = new ArrayList<Integer>();
+		for (Object id : query.list()) {
+			ret.add(((Number) id).intValue());
+		}
+		return ret;
+	}
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<PersonStub> getPeopleAsPersonStubs(List<String> attributes, List<String> attributeValues,
+	        List<Program> programs, Collection<Integer> personIdsToExclude, int length) {
+		Map<String, Object> params = new HashMap<String, Object>();
+		StringBuilder sql = new StringBuilder("select p.person_id as id, pn.given_name as givenName, ");
+		sql.append(" pn.middle_name as middleName, pn.family_name as familyName, pn.family_name2 as familyName2 ");
+		sql.append(" from person p inner join person_name pn on pn.person_id = p.person_id and pn.voided = false ");
+		sql.append(" where p.voided = false ");
+		// one name per person, so that the limit counts people: the first preferred name, or the first name
+		// of a person who has no preferred name
+		sql.append(" and not exists (select pn2.person_name_id from person_name pn2 ");
+		sql.append(" where pn2.person_id = p.person_id and pn2.voided = false ");
+		sql.append(" and ((pn2.preferred = true and pn.preferred = false) ");
+		sql.append(" or (pn2.preferred = pn.preferred and pn2.person_name_id < pn.person_name_id))) ");
+		appendPersonFilters(sql, params, attributes, attributeValues, programs);
+		if (personIdsToExclude != null && !personIdsToExclude.isEmpty()) {
+			sql.append(" and p.person_id not in (:excluded) ");
+		}
+		sql.append(" order by pn.family_name, pn.given_name, p.person_id ");
+		
+		Query query = sessionFactory.getCurrentSession().createSQLQuery(sql.toString()).addScalar("id")
+		        .addScalar("givenName").addScalar("middleName").addScalar("familyName").addScalar("familyName2")
+		        .setResultTransformer(Transformers.aliasToBean(PersonStub.class));
+		query.setCacheMode(CacheMode.IGNORE);
+		for (Map.Entry<String, Object> param : params.entrySet()) {
+			query.setParameter(param.getKey(), param.getValue());
+		}
+		if (personIdsToExclude != null && !personIdsToExclude.isEmpty()) {
+			query.setParameterList("excluded", personIdsToExclude);
+		}
+		if (length >= 0) {
+			query.setMaxResults(length);
+		}
+		return (List<PersonStub>) query.list();
+	}
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<PersonSearchResult> getPersonSearchResults(List<Integer> personIds) {
+		if (personIds == null || personIds.isEmpty()) {
+			return new ArrayList<PersonSearchResult>();
+		}
+		StringBuilder sql = new StringBuilder("select p.person_id as id, pn.given_name as givenName, ");
+		sql.append(" pn.middle_name as middleName, pn.family_name as familyName, pn.family_name2 as familyName2, ");
+		sql.append(" p.gender as gender, p.birthdate as birthdate, p.birthdate_estimated as birthdateEstimated, ");
+		sql.append(" pi.identifier as identifier ");
+		sql.append(" from person p inner join person_name pn on pn.person_id = p.person_id and pn.voided = false ");
+		// the preferred identifier, or the first one of a patient who has no preferred identifier
+		sql.append(" left join patient_identifier pi on pi.patient_id = p.person_id and pi.voided = false ");
+		sql.append(" and not exists (select pi2.patient_identifier_id from patient_identifier pi2 ");
+		sql.append(" where pi2.patient_id = p.person_id and pi2.voided = false ");
+		sql.append(" and ((pi2.preferred = true and pi.preferred = false) ");
+		sql.append(" or (pi2.preferred = pi.preferred and pi2.patient_identifier_id < pi.patient_identifier_id))) ");
+		sql.append(" where p.person_id in (:personIds) ");
+		// one name per person, as in getPeopleAsPersonStubs
+		sql.append(" and not exists (select pn2.person_name_id from person_name pn2 ");
+		sql.append(" where pn2.person_id = p.person_id and pn2.voided = false ");
+		sql.append(" and ((pn2.preferred = true and pn.preferred = false) ");
+		sql.append(" or (pn2.preferred = pn.preferred and pn2.person_name_id < pn.person_name_id))) ");
+		
+		Query query = sessionFactory.getCurrentSession().createSQLQuery(sql.toString())
+		        .addScalar("id", StandardBasicTypes.INTEGER).addScalar("givenName").addScalar("middleName")
+		        .addScalar("familyName").addScalar("familyName2").addScalar("gender")
+		        .addScalar("birthdate", StandardBasicTypes.DATE)
+		        .addScalar("birthdateEstimated", StandardBasicTypes.BOOLEAN).addScalar("identifier")
+		        .setResultTransformer(Transformers.aliasToBean(PersonSearchResult.class));
+		query.setCacheMode(CacheMode.IGNORE);
+		query.setParameterList("personIds", personIds);
+		
+		// keep the order of the ids, which is the order of the search
+		Map<Integer, PersonSearchResult> found = new HashMap<Integer, PersonSearchResult>();
+		for (PersonSearchResult result : (List<PersonSearchResult>) query.list()) {
+			found.put(result.getId(), result);
+		}
+		List<PersonSearchResult> ret = new ArrayList<PersonSearchResult>();
+		for (Integer personId : personIds) {
+			if (found.containsKey(personId)) {
+				ret.add(found.get(personId));
+			}
+		}
+		return ret;
+	}
+	
+	/**
+	 * Adds a condition for each attribute and program the person, aliased as p, must have
+	 */
+	private void appendPersonFilters(StringBuilder sql, Map<String, Object> params, List<String> attributes,
+	        List<String> attributeValues, List<Program> programs) {
+		if (attributes != null) {
+			for (int i = 0; i < attributes.size(); i++) {
+				sql.append(" and exists (select pa.person_id from person_attribute pa ");
+				sql.append(" inner join person_attribute_type pat on pa.person_attribute_type_id = pat.person_attribute_type_id ");
+				sql.append(" where pa.person_id = p.person_id and pat.name = :attribute" + i);
+				params.put("attribute" + i, attributes.get(i));
+				String value = (attributeValues != null && attributeValues.size() > i) ? attributeValues.get(i) : null;
+				if (value != null) {
+					sql.append(" and pa.value = :attributeValue" + i);
+					params.put("attributeValue" + i, value);
+				}
+				sql.append(") ");
+			}
+		}
+		if (programs != null) {
+			for (int i = 0; i < programs.size(); i++) {
+				sql.append(" and exists (select pp.patient_id from patient_program pp ");
+				sql.append(" inner join patient pt on pp.patient_id = pt.patient_id and pt.voided = false ");
+				sql.append(" where pp.patient_id = p.person_id and pp.voided = false ");
+				sql.append(" and pp.program_id = :program" + i + ") ");
+				params.put("program" + i, programs.get(i).getProgramId());
+			}
+		}
+	}
 }
@@ -15,7 +15,6 @@ import java.util.UUID;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.openmrs.CareSetting;
 import org.openmrs.Concept;
 import org.openmrs.ConceptAnswer;
 import org.openmrs.DosingInstructions;
@@ -24,7 +23,6 @@ import org.openmrs.DrugOrder;
 import org.openmrs.EncounterProvider;
 import org.openmrs.Order;
 import org.openmrs.OrderFrequency;
-import org.openmrs.OrderType;
 import org.openmrs.SimpleDosingInstructions;
 import org.openmrs.api.APIException;
 import org.openmrs.api.ConceptService;
@@ -434,13 +432,7 @@ public class DrugOrderSubmissionElement implements HtmlGeneratorElement, FormSub
 	
 	private void createDurationUnitsWidget(FormEntryContext context) {
 		durationUnitsWidget = new DropdownWidget();
-		List<Option> options = new ArrayList<Option>();
-		List<Concept> durationUnits = Context.getOrderService().getDurationUnits();
-		for (Concept concept : durationUnits) {
-			options.add(new Option(concept.getName().getName(), concept.getId().toString(), false));
-		}
-		
-		setupDropdownWidget(context, durationUnitsWidget, options);
+		setupDropdownWidget(context, durationUnitsWidget, context.getOrderMetadataSnapshot().getDurationUnitOptions());
 	}
 	
 	private void createDurationWidget(FormEntryContext context) {
@@ -453,14 +445,7 @@ public class DrugOrderSubmissionElement implements HtmlGeneratorElement, FormSub
 	
 	private void createQuantityUnitsWidget(FormEntryContext context) {
 		quantityUnitsWidget = new DropdownWidget();
-		
-		List<Option> options = new ArrayList<Option>();
-		List<Concept> drugDispensingUnits = Context.getOrderService().getDrugDispensingUnits();
-		for (Concept concept : drugDispensingUnits) {
-			options.add(new Option(concept.getName().getName(), concept.getId().toString(), false));
-		}
-		
-		setupDropdownWidget(context, quantityUnitsWidget, options);
+		setupDropdownWidget(context, quantityUnitsWidget, context.getOrderMetadataSnapshot().getDispensingUnitOptions());
 	}
 	
 	private void createQuantityWidget(FormEntryContext context) {
@@ -492,14 +477,7 @@ public class DrugOrderSubmissionElement implements HtmlGeneratorElement, FormSub
 	
 	private void createDoseUnitsWidget(FormEntryContext context) {
 		doseUnitsWidget = new DropdownWidget();
-		List<Concept> concepts = Context.getOrderService().getDrugDosingUnits();
-		List<Option> options = new ArrayList<Option>();
-		
-		for (Concept concept : concepts) {
-			options.add(new Option(concept.getName().getName(), concept.getId().toString(), false));
-		}
-		
-		setupDropdownWidget(context, doseUnitsWidget, options);
+		setupDropdownWidget(context, doseUnitsWidget, context.getOrderMetadataSnapshot().getDosingUnitOptions());
 	}
 	
 	/**
@@ -619,17 +597,11 @@ public class DrugOrderSubmissionElement implements HtmlGeneratorElement, FormSub
 		frequencyWidget = new DropdownWidget();
 		frequencyErrorWidget = new ErrorWidget();
 		// fill frequency drop down lists (ENTER, EDIT)
-		List<OrderFrequency> orderFrequencies = Context.getOrderService().getOrderFrequencies(false);
-		
 		List<Option> freqOptions = new ArrayList<Option>();
 		if (context.getMode() != Mode.VIEW) {
-			for (OrderFrequency orderFrequency : orderFrequencies) {
-				freqOptions.add(
-				    new Option(orderFrequency.getConcept().getName().getName(), orderFrequency.getId().toString(), false));
-			}
-			
-			if (!orderFrequencies.isEmpty()) {
-				frequencyWidget.setInitialValue(orderFrequencies.get(0).getId());
+			freqOptions = context.getOrderMetadataSnapshot().getOrderFrequencyOptions();
+			if (!freqOptions.isEmpty()) {
+				frequencyWidget.setInitialValue(Integer.valueOf(freqOptions.get(0).getValue()));
 			}
 		}
 		frequencyWidget.setOptions(freqOptions);
@@ -860,14 +832,16 @@ public class DrugOrderSubmissionElement implements HtmlGeneratorElement, FormSub
 		
 		String doseUnitsValue = (String) doseUnitsWidget.getValue(session.getContext(), submission);
 		if (doseUnitsValue != null) {
-			orderTag.doseUnits = Context.getConceptService().getConcept(Integer.valueOf(doseUnitsValue));
+			orderTag.doseUnits = session.getContext().getOrderMetadataSnapshot()
+			        .getConcept(Integer.valueOf(doseUnitsValue));
 		}
 		
 		orderTag.quantity = quantityWidget.getValue(session.getContext(), submission);
 		
 		String quantityUnitsValue = (String) quantityUnitsWidget.getValue(session.getContext(), submission);
 		if (quantityUnitsValue != null) {
-			orderTag.quantityUnits = Context.getConceptService().getConcept(Integer.valueOf(quantityUnitsValue));
+			orderTag.quantityUnits = session.getContext().getOrderMetadataSnapshot()
+			        .getConcept(Integer.valueOf(quantityUnitsValue));
 		}
 		
 		Double drugOrderDuration = durationWidget.getValue(session.getContext(), submission);
@@ -877,7 +851,8 @@ public class DrugOrderSubmissionElement implements HtmlGeneratorElement, FormSub
 		
 		String durationUnitsValue = (String) durationUnitsWidget.getValue(session.getContext(), submission);
 		if (durationUnitsValue != null) {
-			orderTag.durationUnits = Context.getConceptService().getConcept(Integer.valueOf(durationUnitsValue));
+			orderTag.durationUnits = session.getContext().getOrderMetadataSnapshot()
+			        .getConcept(Integer.valueOf(durationUnitsValue));
 		}
 		
 		String careSettingValue = (String) careSettingWidget.getValue(session.getContext(), submission);
@@ -887,7 +862,7 @@ public class DrugOrderSubmissionElement implements HtmlGeneratorElement, FormSub
 		
 		String routeValue = (String) routeWidget.getValue(session.getContext(), submission);
 		if (routeValue != null) {
-			orderTag.route = Context.getConceptService().getConcept(Integer.valueOf(routeValue));
+			orderTag.route = session.getContext().getOrderMetadataSnapshot().getConcept(Integer.valueOf(routeValue));
 		}
 		
 		Double refillsValue = numRefillsWidget.getValue(session.getContext(), submission);
@@ -921,7 +896,8 @@ public class DrugOrderSubmissionElement implements HtmlGeneratorElement, FormSub
 			revisedOrder.setDuration(orderTag.duration);
 			revisedOrder.setDurationUnits(orderTag.durationUnits);
 			revisedOrder.setRoute(orderTag.route);
-			revisedOrder.setCareSetting(Context.getOrderService().getCareSetting(orderTag.careSettingId));
+			revisedOrder.setCareSetting(
+			    session.getContext().getOrderMetadataSnapshot().getCareSetting(orderTag.careSettingId));
 			OrderFrequency orderFrequency = Context.getOrderService().getOrderFrequency(Integer.valueOf(orderTag.frequency));
 			revisedOrder.setFrequency(orderFrequency);
 			revisedOrder.setDateActivated(orderTag.startDate);
@@ -986,7 +962,8 @@ public class DrugOrderSubmissionElement implements HtmlGeneratorElement, FormSub
 		drugOrder.setDuration(orderTag.duration);
 		drugOrder.setDurationUnits(orderTag.durationUnits);
 		drugOrder.setRoute(orderTag.route);
-		drugOrder.setCareSetting(Context.getOrderService().getCareSetting(orderTag.careSettingId));
+		drugOrder.setCareSetting(
+		    session.getContext().getOrderMetadataSnapshot().getCareSetting(orderTag.careSettingId));
 		OrderFrequency orderFrequency = Context.getOrderService().getOrderFrequency(Integer.valueOf(orderTag.frequency));
 		drugOrder.setFrequency(orderFrequency);
 		
@@ -1026,16 +1003,7 @@ public class DrugOrderSubmissionElement implements HtmlGeneratorElement, FormSub
 	}
 	
 	private void setOrderType(FormEntrySession session, DrugOrder drugOrder) {
-		OrderType ot = Context.getOrderService().getOrderTypeByUuid(DRUG_ORDER_TYPE_UUID);
-		// TODO: Handle cases where an implementation might have multiple order types for Drug Order and want to choose
-		if (ot == null) {
-			for (OrderType orderType : Context.getOrderService().getOrderTypes(false)) {
-				if (orderType.getJavaClass() == DrugOrder.class) {
-					ot = orderType;
-				}
-			}
-		}
-		drugOrder.setOrderType(ot);
+		drugOrder.setOrderType(session.getContext().getOrderMetadataSnapshot().getDrugOrderType());
 	}
 	
 	private void setOrderer(FormEntrySession session, DrugOrder drugOrder) {
@@ -1221,28 +1189,14 @@ public class DrugOrderSubmissionElement implements HtmlGeneratorElement, FormSub
 	
 	public static DropdownWidget createCareSettingWidget(FormEntryContext context, boolean inpatientOnly) {
 		DropdownWidget careSettingWidget = new DropdownWidget();
-		List<CareSetting> careSettings = Context.getOrderService().getCareSettings(false);
-		List<Option> options = new ArrayList<Option>();
-		for (CareSetting careSetting : careSettings) {
-			if (!inpatientOnly || careSetting.getCareSettingType().equals(CareSetting.CareSettingType.INPATIENT)) {
-				options.add(new Option(careSetting.getName(), careSetting.getId().toString(), false));
-			}
-		}
-		
-		setupDropdownWidget(context, careSettingWidget, options);
+		setupDropdownWidget(context, careSettingWidget,
+		    context.getOrderMetadataSnapshot().getCareSettingOptions(inpatientOnly));
 		
 		return careSettingWidget;
 	}
 	
 	private void createRouteWidget(FormEntryContext context) {
 		routeWidget = new DropdownWidget();
-		List<Concept> drugRoutes = Context.getOrderService().getDrugRoutes();
-		
-		List<Option> options = new ArrayList<Option>();
-		for (Concept route : drugRoutes) {
-			options.add(new Option(route.getName().getName(), route.getId().toString(), false));
-		}
-		
-		setupDropdownWidget(context, routeWidget, options);
+		setupDropdownWidget(context, routeWidget, context.getOrderMetadataSnapshot().getRouteOptions());
 	}
 }
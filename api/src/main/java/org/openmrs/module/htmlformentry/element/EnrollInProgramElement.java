@@ -71,7 +71,7 @@ public class EnrollInProgramElement implements HtmlGeneratorElement, FormSubmiss
 				Patient patient = context.getExistingPatient();
 				Date encounterDate = (Date) ObjectUtils.defaultIfNull(context.getPreviousEncounterDate(),
 				    ObjectUtils.defaultIfNull(context.getDefaultEncounterDate(), new Date()));
-				if (HtmlFormEntryUtil.isEnrolledInProgramOnDate(patient, program, encounterDate)) {
+				if (context.getPatientProgramSnapshot().isEnrolledInProgramOnDate(patient, program, encounterDate)) {
 					checkToEnrollWidget.setInitialValue("true");
 					checkToEnrollWidget.setDisabled(true);
 				}
@@ -16,6 +16,7 @@ import org.openmrs.module.htmlformentry.FormEntryContext;
 import org.openmrs.module.htmlformentry.FormEntrySession;
 import org.openmrs.module.htmlformentry.FormSubmissionError;
 import org.openmrs.module.htmlformentry.HtmlFormEntryUtil;
+import org.openmrs.module.htmlformentry.PatientStatusSnapshot;
 import org.openmrs.module.htmlformentry.action.FormSubmissionControllerAction;
 import org.openmrs.module.htmlformentry.widget.DateWidget;
 import org.openmrs.module.htmlformentry.widget.DropdownWidget;
@@ -66,11 +67,12 @@ public class ExitFromCareSubmissionElement implements HtmlGeneratorElement, Form
 		otherReasonWidget = new TextFieldWidget();
 		otherReasonErrorWidget = new ErrorWidget();
 		
+		PatientStatusSnapshot patientStatus = context.getPatientStatusSnapshot();
+		
 		// setting the initial values
-		String conceptId = Context.getAdministrationService().getGlobalProperty("concept.reasonExitedCare");
-		Concept reasonExitConcept = Context.getConceptService().getConcept(conceptId);
+		Concept reasonExitConcept = patientStatus.getConcept(PatientStatusSnapshot.GP_REASON_EXITED_CARE);
 		Concept initialAnswer = null;
-		List<Obs> obsList = Context.getObsService().getObservationsByPersonAndConcept(patient, reasonExitConcept);
+		List<Obs> obsList = patientStatus.getExitFromCareObs(patient);
 		if (obsList != null && obsList.size() == 1) {
 			dateWidget.setInitialValue(obsList.get(0).getObsDatetime());
 			initialAnswer = obsList.get(0).getValueCoded();
@@ -93,9 +95,8 @@ public class ExitFromCareSubmissionElement implements HtmlGeneratorElement, Form
 		
 		// set the cause for the death and reason for death fields if the reason for the patient's exit is, that the
 		// patient has died
-		String causeOfDeathConId = Context.getAdministrationService().getGlobalProperty("concept.causeOfDeath");
-		Concept causeOfDeathConcept = Context.getConceptService().getConcept(causeOfDeathConId);
-		List<Obs> obsDeath = Context.getObsService().getObservationsByPersonAndConcept(patient, causeOfDeathConcept);
+		Concept causeOfDeathConcept = patientStatus.getConcept(PatientStatusSnapshot.GP_CAUSE_OF_DEATH);
+		List<Obs> obsDeath = patientStatus.getCauseOfDeathObs(patient);
 		Concept initialCauseOfDeath = null;
 		
 		if (obsDeath != null && obsDeath.size() == 1) {
@@ -143,18 +144,12 @@ public class ExitFromCareSubmissionElement implements HtmlGeneratorElement, Form
 		Concept causeOfDeathAnswerConcept = null;
 		
 		Patient patient = context.getExistingPatient();
-		String reasonConId = Context.getAdministrationService().getGlobalProperty("concept.reasonExitedCare");
-		Concept reasonExitConcept = Context.getConceptService().getConcept(reasonConId);
-		List<Obs> obsList = Context.getObsService().getObservationsByPersonAndConcept(patient, reasonExitConcept);
-		
-		String causeOfDeathConId = Context.getAdministrationService().getGlobalProperty("concept.causeOfDeath");
-		Concept causeOfDeathConcept = Context.getConceptService().getConcept(causeOfDeathConId);
-		List<Obs> obsDeath = Context.getObsService().getObservationsByPersonAndConcept(patient, causeOfDeathConcept);
+		PatientStatusSnapshot patientStatus = context.getPatientStatusSnapshot();
+		List<Obs> obsList = patientStatus.getExitFromCareObs(patient);
+		List<Obs> obsDeath = patientStatus.getCauseOfDeathObs(patient);
 		
-		String patientDiedConId = Context.getAdministrationService().getGlobalProperty("concept.patientDied");
-		Concept patientDiedConcept = Context.getConceptService().getConcept(patientDiedConId);
-		String otherNonCodedConId = Context.getAdministrationService().getGlobalProperty("concept.otherNonCoded");
-		Concept otherNonCodedConcept = Context.getConceptService().getConcept(otherNonCodedConId);
+		Concept patientDiedConcept = patientStatus.getConcept(PatientStatusSnapshot.GP_PATIENT_DIED);
+		Concept otherNonCodedConcept = patientStatus.getConcept(PatientStatusSnapshot.GP_OTHER_NON_CODED);
 		
 		if (dateWidget != null) {
 			exitDate = dateWidget.getValue(context, submission);
@@ -317,23 +312,19 @@ public class ExitFromCareSubmissionElement implements HtmlGeneratorElement, Form
 		StringBuilder sb = new StringBuilder();
 		
 		Patient patient = context.getExistingPatient();
+		PatientStatusSnapshot patientStatus = context.getPatientStatusSnapshot();
 		
-		String patientDiedConId = Context.getAdministrationService().getGlobalProperty("concept.patientDied");
-		Concept patientDiedConcept = Context.getConceptService().getConcept(patientDiedConId);
-		String otherNonCodedConId = Context.getAdministrationService().getGlobalProperty("concept.otherNonCoded");
-		Concept otherNonCodedConcept = Context.getConceptService().getConcept(otherNonCodedConId);
+		String patientDiedConId = patientStatus.getGlobalProperty(PatientStatusSnapshot.GP_PATIENT_DIED);
+		Concept patientDiedConcept = patientStatus.getConcept(PatientStatusSnapshot.GP_PATIENT_DIED);
+		String otherNonCodedConId = patientStatus.getGlobalProperty(PatientStatusSnapshot.GP_OTHER_NON_CODED);
+		Concept otherNonCodedConcept = patientStatus.getConcept(PatientStatusSnapshot.GP_OTHER_NON_CODED);
 		
 		String reasonWidgetId = context.getFieldName(reasonForExitWidget);
 		String causeWidgetId = context.getFieldName(causeOfDeathWidget);
 		String otherTextWidgetId = context.getFieldName(otherReasonWidget);
 		
-		String reasonConId = Context.getAdministrationService().getGlobalProperty("concept.reasonExitedCare");
-		Concept reasonExitConcept = Context.getConceptService().getConcept(reasonConId);
-		List<Obs> obsList = Context.getObsService().getObservationsByPersonAndConcept(patient, reasonExitConcept);
-		
-		String causeOfDeathConId = Context.getAdministrationService().getGlobalProperty("concept.causeOfDeath");
-		Concept causeOfDeathConcept = Context.getConceptService().getConcept(causeOfDeathConId);
-		List<Obs> obsDeath = Context.getObsService().getObservationsByPersonAndConcept(patient, causeOfDeathConcept);
+		List<Obs> obsList = patientStatus.getExitFromCareObs(patient);
+		List<Obs> obsDeath = patientStatus.getCauseOfDeathObs(patient);
 		
 		if (reasonForExitWidget != null) {
 			if (context.getMode() == FormEntryContext.Mode.VIEW) {
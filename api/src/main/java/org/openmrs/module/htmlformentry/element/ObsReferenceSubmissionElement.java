@@ -1,21 +1,19 @@
 package org.openmrs.module.htmlformentry.element;
 
-import java.text.SimpleDateFormat;
-import java.util.Collections;
 import java.util.Date;
-import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
-import org.joda.time.DateTime;
 import org.openmrs.Concept;
 import org.openmrs.Obs;
-import org.openmrs.Person;
+import org.openmrs.Patient;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.htmlformentry.FormEntryContext;
 import org.openmrs.module.htmlformentry.HtmlFormEntryConstants;
+import org.openmrs.module.htmlformentry.HtmlFormEntryGlobalProperties;
 import org.openmrs.module.htmlformentry.HtmlFormEntryUtil;
 import org.openmrs.module.htmlformentry.schema.ObsField;
+import org.openmrs.module.htmlformentry.util.CachedDateFormat;
 import org.openmrs.module.htmlformentry.widget.CheckboxWidget;
 import org.openmrs.module.htmlformentry.widget.DateWidget;
 import org.openmrs.module.htmlformentry.widget.DropdownWidget;
@@ -33,6 +31,12 @@ public class ObsReferenceSubmissionElement extends ObsSubmissionElement {
 	
 	private Obs referenceObs = null;
 	
+	private Patient referencePatient;
+	
+	private Date referenceDate;
+	
+	private Concept referenceConcept;
+	
 	private String overrideLabel = "Override";
 	
 	private String tooltipTemplate = "({{encounterType}} on {{encounterDate}})";
@@ -41,9 +45,6 @@ public class ObsReferenceSubmissionElement extends ObsSubmissionElement {
 		
 		super(context, parameters);
 		
-		Date encounterDate = context.getExistingEncounter() != null ? context.getExistingEncounter().getEncounterDatetime()
-		        : context.getDefaultEncounterDate();
-		
 		if (StringUtils.isNotEmpty(parameters.get("tooltipTemplate"))) {
 			tooltipTemplate = parameters.get("tooltipTemplate");
 		}
@@ -64,24 +65,21 @@ public class ObsReferenceSubmissionElement extends ObsSubmissionElement {
 			concept = HtmlFormEntryUtil.getConcept(conceptId);
 		}
 		
-		// TODO handle error cases
-		if (concept != null && encounterDate != null) {
-			
-			// note that this may match obs from the existing encounter, but we don't worry about that, because if there's an existing match, we won't be using this functionality (because getInitialValue(valueWidget) should be null)
-			// also note that if an answer concept is present (ie it's a checkbox) we match on that as well
-			// note that we are passing in the value of "1" for
-			List<Obs> obsList = Context.getObsService().getObservations(
-			    Collections.singletonList((Person) context.getExistingPatient()), null, Collections.singletonList(concept),
-			    getAnswerConcept() != null ? Collections.singletonList(getAnswerConcept()) : null, null, null, null, 1, null,
-			    new DateTime(encounterDate).withTime(0, 0, 0, 0).toDate(),
-			    new DateTime(encounterDate).withTime(23, 59, 59, 999).toDate(), false);
-			
-			if (!obsList.isEmpty()) {
-				// we are restricting to a single answer, so we will only get one
-				// also note that by default it sorts by obsDatetime descending so it should return the most recent
-				referenceObs = obsList.get(0);
-			}
-		}
+		// note that this may match obs from the existing encounter, but we don't worry about that, because if there's an existing match, we won't be using this functionality (because getInitialValue(valueWidget) should be null)
+		// the obs of all the obs references of the form are loaded together, the first time one of them is rendered
+		this.referencePatient = context.getExistingPatient();
+		this.referenceDate = getReferenceDate(context);
+		this.referenceConcept = concept;
+		context.getObsReferenceSnapshot().register(referencePatient, referenceDate, referenceConcept);
+	}
+	
+	/**
+	 * @param context the context of the form
+	 * @return the date whose obs the obs references of the form show
+	 */
+	public static Date getReferenceDate(FormEntryContext context) {
+		return context.getExistingEncounter() != null ? context.getExistingEncounter().getEncounterDatetime()
+		        : context.getDefaultEncounterDate();
 	}
 	
 	@Override
@@ -94,6 +92,10 @@ public class ObsReferenceSubmissionElement extends ObsSubmissionElement {
 	@Override
 	public String generateHtml(FormEntryContext context) {
 		
+		// if an answer concept is present (ie it's a checkbox) we match on that as well
+		referenceObs = context.getObsReferenceSnapshot().getReferenceObs(referencePatient, referenceDate,
+		    referenceConcept, getAnswerConcept());
+		
 		// break these out in separate methods for VIEW and ENTER/EDIT for clarify
 		if (context.getMode().equals(FormEntryContext.Mode.VIEW)) {
 			return generateHtmlViewMode(context);
@@ -251,12 +253,12 @@ public class ObsReferenceSubmissionElement extends ObsSubmissionElement {
 		return null;
 	}
 	
-	private SimpleDateFormat dateFormat() {
-		String df = Context.getAdministrationService().getGlobalProperty(HtmlFormEntryConstants.GP_DATE_FORMAT);
+	private CachedDateFormat dateFormat() {
+		String df = HtmlFormEntryGlobalProperties.getGlobalProperty(HtmlFormEntryConstants.GP_DATE_FORMAT);
 		if (StringUtils.isNotEmpty(df)) {
-			return new SimpleDateFormat(df, Context.getLocale());
+			return CachedDateFormat.getInstance(df, Context.getLocale());
 		} else {
-			return Context.getDateFormat();
+			return CachedDateFormat.getInstance(Context.getDateFormat().toPattern(), Context.getLocale());
 		}
 	}
 }
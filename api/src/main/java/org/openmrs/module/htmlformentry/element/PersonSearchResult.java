@@ -0,0 +1,77 @@
+package org.openmrs.module.htmlformentry.element;
+
+import java.util.Calendar;
+import java.util.Date;
+
+/**
+ * A person found by the person search popup, with just the fields its result table shows, so that a
+ * page of results can be read with one query rather than loading each person and patient
+ */
+public class PersonSearchResult extends PersonStub {
+	
+	private String gender;
+	
+	private Date birthdate;
+	
+	private Boolean birthdateEstimated;
+	
+	private String identifier;
+	
+	public Integer getPersonId() {
+		return getId();
+	}
+	
+	public String getGender() {
+		return gender;
+	}
+	
+	public void setGender(String gender) {
+		this.gender = gender;
+	}
+	
+	public Date getBirthdate() {
+		return birthdate;
+	}
+	
+	public void setBirthdate(Date birthdate) {
+		this.birthdate = birthdate;
+	}
+	
+	public Boolean getBirthdateEstimated() {
+		return birthdateEstimated;
+	}
+	
+	public void setBirthdateEstimated(Boolean birthdateEstimated) {
+		this.birthdateEstimated = birthdateEstimated;
+	}
+	
+	/**
+	 * @return the preferred identifier of the person if they are a patient, or null
+	 */
+	public String getIdentifier() {
+		return identifier;
+	}
+	
+	public void setIdentifier(String identifier) {
+		this.identifier = identifier;
+	}
+	
+	/**
+	 * @return the age of the person in whole years, or null if the birthdate is not known
+	 */
+	public Integer getAge() {
+		if (birthdate == null) {
+			return null;
+		}
+		Calendar today = Calendar.getInstance();
+		Calendar birth = Calendar.getInstance();
+		birth.setTime(birthdate);
+		int age = today.get(Calendar.YEAR) - birth.get(Calendar.YEAR);
+		if (today.get(Calendar.MONTH) < birth.get(Calendar.MONTH)
+		        || (today.get(Calendar.MONTH) == birth.get(Calendar.MONTH)
+		                && today.get(Calendar.DAY_OF_MONTH) < birth.get(Calendar.DAY_OF_MONTH))) {
+			age--;
+		}
+		return age;
+	}
+}
@@ -52,6 +52,11 @@ public class RelationshipSubmissionElement implements HtmlGeneratorElement, Form
 	
 	private static String FIELD_LABEL_TEXT = "labelText";
 	
+	private static String FIELD_MAX_DROP_DOWN_OPTIONS = "maxDropDownOptions";
+	
+	// more people than this can't usefully be chosen from a drop down, and loading them all slows the form
+	private static int DEFAULT_MAX_DROP_DOWN_OPTIONS = 1000;
+	
 	private static String DISPLAY_SEARCH = "search";
 	
 	private static String DISPLAY_DROPDOWN = "dropDown";
@@ -72,6 +77,8 @@ public class RelationshipSubmissionElement implements HtmlGeneratorElement, Form
 	
 	private String labelText = null;
 	
+	private int maxDropDownOptions = DEFAULT_MAX_DROP_DOWN_OPTIONS;
+	
 	private List<RelationshipType> relationshipsToCreate = new ArrayList<RelationshipType>();
 	
 	private List<String> roleInRelationship = new ArrayList<String>();
@@ -152,6 +159,16 @@ public class RelationshipSubmissionElement implements HtmlGeneratorElement, Form
 		if (DISPLAY_DROPDOWN.equals(display)) {
 			personStubWidget = new PersonStubWidget();
 			context.registerWidget(personStubWidget);
+			String maxOptions = parameters.get(FIELD_MAX_DROP_DOWN_OPTIONS);
+			if (maxOptions != null && maxOptions.trim().length() > 0) {
+				try {
+					maxDropDownOptions = Integer.parseInt(maxOptions.trim());
+				}
+				catch (NumberFormatException ex) {
+					throw new IllegalArgumentException("Relationship tag " + FIELD_MAX_DROP_DOWN_OPTIONS
+					        + " parameter " + maxOptions + " is not a number.");
+				}
+			}
 		}
 		personErrorWidget = new ErrorWidget();
 		
@@ -264,7 +281,8 @@ public class RelationshipSubmissionElement implements HtmlGeneratorElement, Form
 				// exclude the exisiting patient from any results
 				personsToExclude.add(context.getExistingPatient());
 				personStubWidget.setOptions(Context.getService(HtmlFormEntryService.class)
-				        .getPeopleAsPersonStubs(searchAttributes, attributeValues, progIds, personsToExclude));
+				        .getPeopleAsPersonStubs(searchAttributes, attributeValues, progIds, personsToExclude,
+				            maxDropDownOptions));
 			}
 			
 			if (relationshipWidget != null) {
@@ -36,6 +36,7 @@ import org.openmrs.module.htmlformentry.FormEntryException;
 import org.openmrs.module.htmlformentry.FormEntrySession;
 import org.openmrs.module.htmlformentry.FormSubmissionError;
 import org.openmrs.module.htmlformentry.HtmlFormEntryUtil;
+import org.openmrs.module.htmlformentry.PatientProgramSnapshot;
 import org.openmrs.module.htmlformentry.action.FormSubmissionControllerAction;
 import org.openmrs.module.htmlformentry.tag.WorkflowStateTag;
 import org.openmrs.module.htmlformentry.widget.CheckboxWidget;
@@ -111,7 +112,7 @@ public class WorkflowStateSubmissionElement implements HtmlGeneratorElement, For
 		
 		ProgramWorkflowState currentState = null;
 		
-		activePatientState = getActivePatientState(context.getExistingPatient(), encounterDatetime, workflow);
+		activePatientState = getActivePatientState(context, context.getExistingPatient(), encounterDatetime, workflow);
 		if (activePatientState != null) {
 			currentState = activePatientState.getState();
 		}
@@ -178,12 +179,14 @@ public class WorkflowStateSubmissionElement implements HtmlGeneratorElement, For
 	
 	/**
 	 * @param context
+	 * @param patient
 	 * @param encounterDatetime
 	 * @param workflow
 	 * @return
 	 */
-	private PatientState getActivePatientState(Patient patient, Date encounterDatetime, ProgramWorkflow workflow) {
-		PatientProgram patientProgram = HtmlFormEntryUtil.getPatientProgramByWorkflow(patient, workflow);
+	private PatientState getActivePatientState(FormEntryContext context, Patient patient, Date encounterDatetime,
+	        ProgramWorkflow workflow) {
+		PatientProgram patientProgram = context.getPatientProgramSnapshot().getPatientProgramByWorkflow(patient, workflow);
 		if (patientProgram != null) {
 			for (PatientState patientState : patientProgram.statesInWorkflow(workflow, false)) {
 				if (patientState.getActive(encounterDatetime)) {
@@ -210,12 +213,14 @@ public class WorkflowStateSubmissionElement implements HtmlGeneratorElement, For
 	 */
 	@Override
 	public void handleSubmission(FormEntrySession session, HttpServletRequest submission) {
+		PatientProgramSnapshot patientPrograms = session.getContext().getPatientProgramSnapshot();
 		String stateUuid = (String) widget.getValue(session.getContext(), submission);
 		if (!StringUtils.isBlank(stateUuid)) {
 			if (Mode.EDIT.equals(session.getContext().getMode())) {
 				
 				ProgramWorkflowState newState = Context.getProgramWorkflowService().getStateByUuid(stateUuid);
-				PatientState oldPatientState = getActivePatientState(session.getContext().getExistingPatient(),
+				PatientState oldPatientState = getActivePatientState(session.getContext(),
+				    session.getContext().getExistingPatient(),
 				    session.getContext().getPreviousEncounterDate(), workflow);
 				
 				// if no old state, simply transition to this new state
@@ -223,7 +228,7 @@ public class WorkflowStateSubmissionElement implements HtmlGeneratorElement, For
 					
 					// if there is an active program enrollment in this program, add it to the programs to update (so that
 					// it is picked up by the FormSubmissionAction.transitionToState method and a new program is not created)
-					PatientProgram patientProgram = HtmlFormEntryUtil.getPatientProgramByProgramOnDate(session.getPatient(),
+					PatientProgram patientProgram = patientPrograms.getPatientProgramByProgramOnDate(session.getPatient(),
 					    newState.getProgramWorkflow().getProgram(), session.getEncounter().getEncounterDatetime());
 					
 					if (patientProgram != null) {
@@ -241,7 +246,7 @@ public class WorkflowStateSubmissionElement implements HtmlGeneratorElement, For
 						
 						// if there is an existing patient state on the new encounter date and it differs from the state on the old encounter date
 						// we need to end it
-						PatientState existingPatientStateOnNewEncounterDate = getActivePatientState(
+						PatientState existingPatientStateOnNewEncounterDate = getActivePatientState(session.getContext(),
 						    session.getContext().getExistingPatient(), newEncounterDate, workflow);
 						if (existingPatientStateOnNewEncounterDate != null
 						        && !existingPatientStateOnNewEncounterDate.equals(oldPatientState)) {
@@ -297,7 +302,7 @@ public class WorkflowStateSubmissionElement implements HtmlGeneratorElement, For
 				
 				// if there is an active program enrollment in the state, add it to the programs to update (so that
 				// it is picked up by the FormSubmissionAction.transitionToState method and a new program is not created)
-				PatientProgram patientProgram = HtmlFormEntryUtil.getPatientProgramByProgramOnDate(session.getPatient(),
+				PatientProgram patientProgram = patientPrograms.getPatientProgramByProgramOnDate(session.getPatient(),
 				    state.getProgramWorkflow().getProgram(), session.getEncounter().getEncounterDatetime());
 				
 				if (patientProgram != null) {
@@ -1,15 +1,7 @@
 package org.openmrs.module.htmlformentry.export;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-import java.io.StringWriter;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
@@ -36,6 +28,8 @@ import org.openmrs.module.htmlformentry.element.ObsSubmissionElement;
 import org.openmrs.module.htmlformentry.schema.HtmlFormField;
 import org.openmrs.module.htmlformentry.schema.HtmlFormSchema;
 import org.openmrs.module.htmlformentry.schema.ObsField;
+import org.openmrs.module.htmlformentry.util.CachedDateFormat;
+import org.openmrs.module.htmlformentry.util.XmlUtil;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NamedNodeMap;
@@ -46,7 +40,7 @@ public class HtmlFormEntryExportUtil {
 	
 	protected final static Log log = LogFactory.getLog(HtmlFormEntryExportUtil.class);
 	
-	private static DateFormat DATE_FORMATTER = new SimpleDateFormat("dd-MMM-yyyy");
+	private static final CachedDateFormat DATE_FORMATTER = CachedDateFormat.getInstance("dd-MMM-yyyy");
 	
 	private static final String DEFAULT_QUOTE = "\"";
 	
@@ -107,9 +101,7 @@ public class HtmlFormEntryExportUtil {
 			throw new RuntimeException("The section index that you've passed in is out of range.  There are only "
 			        + nl.getLength() + " section tags in the document and you requested section tag " + sectionIndex);
 		}
-		DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-		DocumentBuilder db = dbf.newDocumentBuilder();
-		Document doc2 = db.newDocument();
+		Document doc2 = XmlUtil.newDocument();
 		Node formRoot = doc2.createElement("htmlform");
 		doc2.appendChild(formRoot);
 		formRoot.appendChild(doc2.importNode(sectionNode, true));
@@ -131,13 +123,7 @@ public class HtmlFormEntryExportUtil {
 		doc2.normalize();
 		
 		try {
-			DOMSource domSource = new DOMSource(doc2);
-			StringWriter writer = new StringWriter();
-			StreamResult result = new StreamResult(writer);
-			TransformerFactory tf = TransformerFactory.newInstance();
-			Transformer transformer = tf.newTransformer();
-			transformer.transform(domSource, result);
-			return writer.toString();
+			return XmlUtil.toString(doc2, null);
 		}
 		catch (TransformerException ex) {
 			ex.printStackTrace();
@@ -189,36 +175,32 @@ public class HtmlFormEntryExportUtil {
 		//renders new encounter unsave-able:
 		ret.setEncounterId(e.getEncounterId());
 		
-		for (Obs oTest : e.getAllObs()) {
-			boolean found = false;
-			if (session.getContext().getExistingObs() != null && !oTest.isObsGrouping()) {
-				List<Obs> obsList = session.getContext().getExistingObs().get(oTest.getConcept());
-				if (obsList != null && obsList.size() > 0) {
-					for (Obs o : obsList) {
-						if (o.getObsId().equals(oTest.getObsId())) {
-							found = true;
-							continue;
-						}
-					}
+		// the obs the form did not use, collected once so that checking each obs of the encounter is a lookup
+		Set<Integer> unusedObsIds = new HashSet<Integer>();
+		if (session.getContext().getExistingObs() != null) {
+			for (List<Obs> obsList : session.getContext().getExistingObs().values()) {
+				for (Obs o : obsList) {
+					unusedObsIds.add(o.getObsId());
 				}
 			}
-			if (!found && session.getContext().getExistingObsInGroups() != null) {
-				for (Map.Entry<Obs, Set<Obs>> mapEntry : session.getContext().getExistingObsInGroups().entrySet()) {
-					if (mapEntry.getKey().equals(oTest)) {
-						found = true;
-						continue;
-					} else {
-						Set<Obs> oSet = mapEntry.getValue();
-						//note: oSet.contains fails for some reason
-						for (Obs o : oSet) {
-							if (o.getObsId().equals(oTest.getObsId())) {
-								found = true;
-								continue;
-							}
-						}
-					}
+		}
+		Set<Obs> unusedObsGroups = new HashSet<Obs>();
+		Set<Integer> unusedObsInGroupIds = new HashSet<Integer>();
+		if (session.getContext().getExistingObsInGroups() != null) {
+			for (Map.Entry<Obs, Set<Obs>> mapEntry : session.getContext().getExistingObsInGroups().entrySet()) {
+				unusedObsGroups.add(mapEntry.getKey());
+				//note: oSet.contains fails for some reason, so members are compared by id
+				for (Obs o : mapEntry.getValue()) {
+					unusedObsInGroupIds.add(o.getObsId());
 				}
 			}
+		}
+		
+		for (Obs oTest : e.getAllObs()) {
+			boolean found = !oTest.isObsGrouping() && unusedObsIds.contains(oTest.getObsId());
+			if (!found) {
+				found = unusedObsGroups.contains(oTest) || unusedObsInGroupIds.contains(oTest.getObsId());
+			}
 			if (!found)
 				ret.addObs(oTest);
 		}
@@ -499,8 +481,7 @@ public class HtmlFormEntryExportUtil {
 			if (abbrev.equals("DT")) {
 				return (o.getValueDatetime() == null ? "" : Context.getDateFormat().format(o.getValueDatetime()));
 			} else if (abbrev.equals("TS") && o.getValueDatetime() != null) {
-				SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-				return sdf.format(o.getValueDatetime());
+				return CachedDateFormat.getInstance("yyyy-MM-dd HH:mm:ss").format(o.getValueDatetime());
 			} else {
 				ret = o.getValueAsString(locale);
 			}
@@ -9,6 +9,7 @@ import java.util.Map;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.openmrs.module.htmlformentry.BadFormDesignException;
 import org.openmrs.module.htmlformentry.FormEntrySession;
+import org.openmrs.module.htmlformentry.compiler.CompiledForm;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 
@@ -66,6 +67,10 @@ public abstract class AbstractTagHandler implements TagHandler, TagValidator {
 	}
 	
 	public Map<String, String> getAttributes(Node node) {
+		Map<String, String> compiled = CompiledForm.getCompiledAttributes(node);
+		if (compiled != null) {
+			return new HashMap<String, String>(compiled);
+		}
 		Map<String, String> attributes = new HashMap<String, String>();
 		NamedNodeMap map = node.getAttributes();
 		for (int i = 0; i < map.getLength(); ++i) {
@@ -136,6 +136,9 @@ public class MarkPatientDeadTagHandler extends SubstitutionTagHandler {
 				patient.setCauseOfDeath(causeOfDeath);
 			}
 			patientService.savePatient(patient);
+			if (session.getContext() != null) {
+				session.getContext().getPatientStatusSnapshot().clear();
+			}
 		}
 		
 		private Concept findObsCodedValue(Encounter encounter, Concept concept) {
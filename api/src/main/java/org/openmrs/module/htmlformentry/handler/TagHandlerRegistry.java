@@ -0,0 +1,56 @@
+package org.openmrs.module.htmlformentry.handler;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Holds the tag handlers, keyed by tag name. Handlers are registered rarely (at startup, or when a
+ * module that contributes tags is started) but looked up for every node of every form rendered, so
+ * the registry is copy-on-write: each change publishes a new unmodifiable map, and readers never
+ * lock. Since every change produces a new map, the identity of {@link #getHandlers()} can be used
+ * to tell whether anything derived from the handlers, such as a compiled form, is out of date.
+ */
+public class TagHandlerRegistry {
+	
+	private volatile Map<String, TagHandler> handlers = Collections.emptyMap();
+	
+	/**
+	 * Registers a handler, replacing any handler already registered for the tag name
+	 *
+	 * @param tagName the tag name
+	 * @param handler the handler
+	 */
+	public synchronized void register(String tagName, TagHandler handler) {
+		Map<String, TagHandler> copy = new LinkedHashMap<String, TagHandler>(handlers);
+		copy.put(tagName, handler);
+		handlers = Collections.unmodifiableMap(copy);
+	}
+	
+	/**
+	 * Registers several handlers at once, replacing any handlers already registered for their tag
+	 * names
+	 *
+	 * @param handlersToRegister the handlers, keyed by tag name
+	 */
+	public synchronized void registerAll(Map<String, TagHandler> handlersToRegister) {
+		Map<String, TagHandler> copy = new LinkedHashMap<String, TagHandler>(handlers);
+		copy.putAll(handlersToRegister);
+		handlers = Collections.unmodifiableMap(copy);
+	}
+	
+	/**
+	 * @param tagName the tag name
+	 * @return the handler registered for the tag name, or null if there is none
+	 */
+	public TagHandler get(String tagName) {
+		return handlers.get(tagName);
+	}
+	
+	/**
+	 * @return an unmodifiable snapshot of the registered handlers, in registration order
+	 */
+	public Map<String, TagHandler> getHandlers() {
+		return handlers;
+	}
+}
@@ -2,14 +2,18 @@ package org.openmrs.module.htmlformentry.impl;
 
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.velocity.VelocityContext;
@@ -39,12 +43,23 @@ import org.openmrs.module.htmlformentry.FormEntrySession;
 import org.openmrs.module.htmlformentry.HtmlForm;
 import org.openmrs.module.htmlformentry.HtmlFormEntryService;
 import org.openmrs.module.htmlformentry.HtmlFormEntryUtil;
+import org.openmrs.module.htmlformentry.HtmlFormSummary;
 import org.openmrs.module.htmlformentry.SerializableFormObject;
+import org.openmrs.module.htmlformentry.compiler.FormDataDependencies;
 import org.openmrs.module.htmlformentry.db.HtmlFormEntryDAO;
+import org.openmrs.module.htmlformentry.element.PersonSearchResult;
 import org.openmrs.module.htmlformentry.element.PersonStub;
 import org.openmrs.module.htmlformentry.handler.TagHandler;
+import org.openmrs.module.htmlformentry.handler.TagHandlerRegistry;
+import org.openmrs.module.htmlformentry.metrics.FormTimings;
+import org.openmrs.module.htmlformentry.metrics.FormTimings.Phase;
+import org.openmrs.module.htmlformentry.metrics.FormTimings.Stage;
+import org.openmrs.module.htmlformentry.metrics.QueryCounts;
+import org.openmrs.module.htmlformentry.util.ProgramMetadataIndex;
 import org.openmrs.util.PrivilegeConstants;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 /**
  * Standard implementation of the HtmlFormEntryService
@@ -55,7 +70,7 @@ public class HtmlFormEntryServiceImpl extends BaseOpenmrsService implements Html
 	
 	private HtmlFormEntryDAO dao;
 	
-	private static Map<String, TagHandler> handlers = new LinkedHashMap<String, TagHandler>();
+	private static final TagHandlerRegistry handlers = new TagHandlerRegistry();
 	
 	private String basicFormXmlTemplate;
 	
@@ -70,9 +85,26 @@ public class HtmlFormEntryServiceImpl extends BaseOpenmrsService implements Html
 	 */
 	private boolean nameAndDescriptionMigrationDone = false;
 	
+	/*
+	 * Cached summaries of all html forms, used by form lists that would otherwise load the xml of
+	 * every form. Cleared whenever an html form is saved or purged; the generation counter stops a
+	 * load that raced with a clear from repopulating the cache with stale data.
+	 */
+	private volatile List<HtmlFormSummary> htmlFormSummaryCache;
+	
+	private final AtomicLong htmlFormSummaryGeneration = new AtomicLong();
+	
+	/*
+	 * Where each workflow and state lives within the programs, so finding one by id does not walk every
+	 * workflow of every program. It is cleared when programs change, so a lookup that misses misses.
+	 */
+	private volatile ProgramMetadataIndex programMetadataIndex;
+	
+	private final AtomicLong programMetadataGeneration = new AtomicLong();
+	
 	@Override
 	public void addHandler(String tagName, TagHandler handler) {
-		handlers.put(tagName, handler);
+		handlers.register(tagName, handler);
 	}
 	
 	@Override
@@ -82,14 +114,14 @@ public class HtmlFormEntryServiceImpl extends BaseOpenmrsService implements Html
 	
 	@Override
 	public Map<String, TagHandler> getHandlers() {
-		return handlers;
+		return handlers.getHandlers();
 	}
 	
 	/**
 	 * Sets the tag handlers
 	 */
 	public void setHandlers(Map<String, TagHandler> handlersToSet) {
-		handlers.putAll(handlersToSet);
+		handlers.registerAll(handlersToSet);
 	}
 	
 	/**
@@ -139,13 +171,16 @@ public class HtmlFormEntryServiceImpl extends BaseOpenmrsService implements Html
 			htmlForm.setDateChanged(new Date());
 		}
 		Context.getFormService().saveForm(htmlForm.getForm());
-		return dao.saveHtmlForm(htmlForm);
+		HtmlForm saved = dao.saveHtmlForm(htmlForm);
+		clearHtmlFormSummaryCache();
+		return saved;
 	}
 	
 	@Override
 	@Transactional
 	public void purgeHtmlForm(HtmlForm htmlForm) {
 		dao.deleteHtmlForm(htmlForm);
+		clearHtmlFormSummaryCache();
 	}
 	
 	@Override
@@ -154,6 +189,66 @@ public class HtmlFormEntryServiceImpl extends BaseOpenmrsService implements Html
 		return dao.getAllHtmlForms();
 	}
 	
+	@Override
+	@Transactional(readOnly = true)
+	public List<HtmlFormSummary> getAllHtmlFormSummaries() {
+		List<HtmlFormSummary> ret = htmlFormSummaryCache;
+		if (ret == null) {
+			long generation = htmlFormSummaryGeneration.get();
+			ret = Collections.unmodifiableList(dao.getAllHtmlFormSummaries());
+			if (generation == htmlFormSummaryGeneration.get()) {
+				htmlFormSummaryCache = ret;
+			}
+		}
+		return ret;
+	}
+	
+	@Override
+	@Transactional(readOnly = true)
+	public List<Form> getFormsWithHtmlForms(boolean includeUnpublished) {
+		Set<Integer> formIds = new LinkedHashSet<Integer>();
+		for (HtmlFormSummary summary : getAllHtmlFormSummaries()) {
+			if (includeUnpublished || summary.isPublished()) {
+				formIds.add(summary.getFormId());
+			}
+		}
+		Map<Integer, Form> formsById = new HashMap<Integer, Form>();
+		for (Form form : dao.getForms(formIds)) {
+			formsById.put(form.getFormId(), form);
+		}
+		List<Form> ret = new ArrayList<Form>();
+		for (Integer formId : formIds) {
+			Form form = formsById.get(formId);
+			if (form != null) {
+				ret.add(form);
+			}
+		}
+		return ret;
+	}
+	
+	/**
+	 * Clears the html form summaries now, and again once the current transaction completes so that a
+	 * concurrent reader cannot cache the data as it was before this transaction was committed
+	 */
+	@Override
+	public void clearHtmlFormSummaryCache() {
+		clearHtmlFormSummaries();
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				
+				@Override
+				public void afterCompletion(int status) {
+					clearHtmlFormSummaries();
+				}
+			});
+		}
+	}
+	
+	private void clearHtmlFormSummaries() {
+		htmlFormSummaryGeneration.incrementAndGet();
+		htmlFormSummaryCache = null;
+	}
+	
 	@Override
 	@Transactional(readOnly = true)
 	public HtmlForm getHtmlFormByForm(Form form) {
@@ -230,6 +325,43 @@ public class HtmlFormEntryServiceImpl extends BaseOpenmrsService implements Html
 		return dao.getItemByName(type, name);
 	}
 	
+	@Override
+	@Transactional(readOnly = true)
+	public void preloadFormData(FormDataDependencies dependencies) {
+		if (dependencies == null || dependencies.isEmpty()) {
+			return;
+		}
+		for (Class<? extends OpenmrsObject> type : FormDataDependencies.PRELOADED_TYPES) {
+			dao.preloadItems(type, dependencies.getIds(type));
+		}
+	}
+	
+	@Override
+	@Transactional(readOnly = true)
+	public List<Obs> getLatestObs(Person person, Collection<Concept> concepts, Date fromDate, Date toDate) {
+		return dao.getLatestObs(person, concepts, fromDate, toDate);
+	}
+	
+	@Override
+	public QueryCounts getQueryCounts() {
+		return dao.getQueryCounts();
+	}
+	
+	@Override
+	public void setQueryCountsEnabled(boolean enabled) {
+		dao.setQueryCountsEnabled(enabled);
+	}
+	
+	@Override
+	public void startCountingQueries() {
+		dao.startCountingQueries();
+	}
+	
+	@Override
+	public void stopCountingQueries() {
+		dao.stopCountingQueries();
+	}
+	
 	@Override
 	@Transactional(readOnly = true)
 	public List<Integer> getPersonIdsHavingAttributes(String attribute, String attributeValue) {
@@ -240,85 +372,71 @@ public class HtmlFormEntryServiceImpl extends BaseOpenmrsService implements Html
 	@Transactional(readOnly = true)
 	public List<PersonStub> getPeopleAsPersonStubs(List<String> attributes, List<String> attributeValues,
 	        List<String> programIds, List<Person> personsToExclude) {
-		List<PersonStub> stubs = new ArrayList<PersonStub>();
-		
-		Set<Integer> attributeMatches = null;
-		Set<Integer> programMatches = null;
-		
-		if (attributes != null) {
-			for (int i = 0; i < attributes.size(); i++) {
-				String attr = attributes.get(i);
-				String val = null;
-				if (attributeValues != null && attributeValues.size() > i) {
-					val = attributeValues.get(i);
-				}
-				
-				Set<Integer> setOfIds = new HashSet<Integer>(getPersonIdsHavingAttributes(attr, val));
-				if (attributeMatches != null) {
-					attributeMatches.retainAll(setOfIds);
-				} else {
-					attributeMatches = setOfIds;
-				}
-			}
-		}
-		
+		return getPeopleAsPersonStubs(attributes, attributeValues, programIds, personsToExclude, null);
+	}
+	
+	@Override
+	@Transactional(readOnly = true)
+	public List<PersonStub> getPeopleAsPersonStubs(List<String> attributes, List<String> attributeValues,
+	        List<String> programIds, List<Person> personsToExclude, Integer limit) {
+		List<Program> programs = new ArrayList<Program>();
 		if (programIds != null) {
 			for (String prog : programIds) {
 				if (prog != null && prog.trim().length() > 0) {
 					Program personProgram = HtmlFormEntryUtil.getProgram(prog);
-					
 					if (personProgram != null) {
-						Set<Integer> matchingEnrollments = dao.getPatientIdHavingEnrollments(personProgram);
-						if (programMatches != null) {
-							programMatches.retainAll(matchingEnrollments);
-						} else {
-							programMatches = matchingEnrollments;
-						}
+						programs.add(personProgram);
 					}
 				}
 			}
 		}
 		
-		Set<Integer> results;
-		
-		// if no attributes specified, just use to the program matches
-		if (attributes == null || attributes.isEmpty()) {
-			results = programMatches;
-		}
-		// if no programs specified, just use the attribute matches
-		else if (programIds == null || programIds.isEmpty()) {
-			results = attributeMatches;
-		}
-		// otherwise, intersect the results
-		else {
-			results = programMatches;
-			if (results != null) {
-				results.retainAll(attributeMatches);
-			}
+		// with no attributes the program filter has to match something, and programs that were asked
+		// for but don't exist match nobody
+		boolean noAttributes = attributes == null || attributes.isEmpty();
+		boolean noProgramIds = programIds == null || programIds.isEmpty();
+		if ((noAttributes || !noProgramIds) && programs.isEmpty()) {
+			return new ArrayList<PersonStub>();
 		}
 		
-		if (results != null) {
-			//now iterate through the results, returning person stubs
-			for (Integer id : results) {
-				Person person = Context.getPersonService().getPerson(id);
-				if (person != null && !personsToExclude.contains(person)) {
-					PersonStub pStub = new PersonStub();
-					pStub.setGivenName(person.getGivenName());
-					pStub.setFamilyName(person.getFamilyName());
-					pStub.setMiddleName(person.getMiddleName());
-					pStub.setId(id);
-					stubs.add(pStub);
+		Set<Integer> personIdsToExclude = new HashSet<Integer>();
+		if (personsToExclude != null) {
+			for (Person person : personsToExclude) {
+				if (person != null && person.getPersonId() != null) {
+					personIdsToExclude.add(person.getPersonId());
 				}
 			}
 		}
-		return stubs;
+		return dao.getPeopleAsPersonStubs(attributes, attributeValues, programs, personIdsToExclude,
+		    limit == null ? -1 : limit);
+	}
+	
+	@Override
+	@Transactional(readOnly = true)
+	public List<Integer> searchPersonIds(String searchPhrase, List<String> attributes, List<String> attributeValues,
+	        List<Program> programs, Integer start, Integer length) {
+		if (StringUtils.isBlank(searchPhrase)) {
+			return new ArrayList<Integer>();
+		}
+		return dao.searchPersonIds(searchPhrase, attributes, attributeValues, programs, start == null ? 0 : start,
+		    length == null ? -1 : length);
+	}
+	
+	@Override
+	@Transactional(readOnly = true)
+	public List<PersonSearchResult> getPersonSearchResults(List<Integer> personIds) {
+		return dao.getPersonSearchResults(personIds);
 	}
 	
 	@Override
 	@Transactional
 	public void applyActions(FormEntrySession session) throws BadFormDesignException {
 		// Wrapped in a transactional service method such that actions in it either pass or fail together. See TRUNK-3572
+		FormTimings timings = session.getContext().getTimings(Phase.SUBMIT);
+		long start = System.nanoTime();
 		session.applyActions();
+		timings.addStageTime(Stage.APPLY_ACTIONS, start);
+		session.getContext().publishTimings();
 	}
 	
 	@Override
@@ -381,6 +499,113 @@ public class HtmlFormEntryServiceImpl extends BaseOpenmrsService implements Html
 		conceptMappingCache = new HashMap<String, Integer>();
 	}
 	
+	@Override
+	@Transactional(readOnly = true)
+	public ProgramWorkflow getWorkflowById(Integer workflowId) {
+		if (workflowId == null) {
+			return null;
+		}
+		return findWorkflow(getProgramMetadataIndex(), workflowId);
+	}
+	
+	@Override
+	@Transactional(readOnly = true)
+	public ProgramWorkflow getWorkflowByConcept(Concept concept) {
+		if (concept == null) {
+			return null;
+		}
+		return findWorkflowByConcept(getProgramMetadataIndex(), concept);
+	}
+	
+	@Override
+	@Transactional(readOnly = true)
+	public ProgramWorkflowState getStateById(Integer stateId) {
+		if (stateId == null) {
+			return null;
+		}
+		return findState(getProgramMetadataIndex(), stateId);
+	}
+	
+	/**
+	 * Clears the index now, and again once the current transaction completes so that a concurrent
+	 * reader cannot index the programs as they were before this transaction was committed
+	 */
+	@Override
+	public void clearProgramMetadataCache() {
+		clearProgramMetadataIndex();
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				
+				@Override
+				public void afterCompletion(int status) {
+					clearProgramMetadataIndex();
+				}
+			});
+		}
+	}
+	
+	private void clearProgramMetadataIndex() {
+		programMetadataGeneration.incrementAndGet();
+		programMetadataIndex = null;
+	}
+	
+	private ProgramMetadataIndex getProgramMetadataIndex() {
+		ProgramMetadataIndex index = programMetadataIndex;
+		if (index == null) {
+			long generation = programMetadataGeneration.get();
+			index = ProgramMetadataIndex.build(Context.getProgramWorkflowService().getAllPrograms());
+			if (generation == programMetadataGeneration.get()) {
+				programMetadataIndex = index;
+			}
+		}
+		return index;
+	}
+	
+	private ProgramWorkflow findWorkflow(ProgramMetadataIndex index, Integer workflowId) {
+		Integer programId = index.getProgramIdForWorkflow(workflowId);
+		if (programId == null) {
+			return null;
+		}
+		Program program = Context.getProgramWorkflowService().getProgram(programId);
+		if (program != null) {
+			for (ProgramWorkflow workflow : program.getAllWorkflows()) {
+				if (workflowId.equals(workflow.getProgramWorkflowId())) {
+					return workflow;
+				}
+			}
+		}
+		return null;
+	}
+	
+	private ProgramWorkflow findWorkflowByConcept(ProgramMetadataIndex index, Concept concept) {
+		Integer workflowId = index.getWorkflowIdForConcept(concept.getConceptId());
+		if (workflowId == null) {
+			return null;
+		}
+		ProgramWorkflow workflow = findWorkflow(index, workflowId);
+		// the concept of the workflow, or the retired flag of its program, may have changed since the index was built
+		if (workflow == null || !concept.equals(workflow.getConcept()) || workflow.getProgram().isRetired()) {
+			return null;
+		}
+		return workflow;
+	}
+	
+	private ProgramWorkflowState findState(ProgramMetadataIndex index, Integer stateId) {
+		Integer workflowId = index.getWorkflowIdForState(stateId);
+		if (workflowId == null) {
+			return null;
+		}
+		ProgramWorkflow workflow = findWorkflow(index, workflowId);
+		if (workflow != null) {
+			for (ProgramWorkflowState state : workflow.getStates()) {
+				if (stateId.equals(state.getProgramWorkflowStateId())) {
+					return state;
+				}
+			}
+		}
+		return null;
+	}
+	
 	/**
 	 * @see HtmlFormEntryService#getPatientIdHavingEnrollments(Program)
 	 */
@@ -0,0 +1,19 @@
+package org.openmrs.module.htmlformentry.metrics;
+
+/**
+ * Receives the timings of every form that is rendered and every submission that is validated or
+ * processed. Implementations are found with
+ * {@link org.openmrs.api.context.Context#getRegisteredComponents(Class)}, so another module can
+ * send the timings elsewhere by declaring a bean that implements this interface. By default they are
+ * aggregated and exposed over JMX by {@link JmxFormEntryMetrics}.
+ * <p/>
+ * This is called on the thread of the request, so implementations should return quickly, and must
+ * not hold on to the timings, which belong to the session.
+ */
+public interface FormEntryMetrics {
+	
+	/**
+	 * @param timings the timings of a phase that has just finished
+	 */
+	void record(FormTimings timings);
+}
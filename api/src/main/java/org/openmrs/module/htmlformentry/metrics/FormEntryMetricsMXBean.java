@@ -0,0 +1,46 @@
+package org.openmrs.module.htmlformentry.metrics;
+
+import java.util.Map;
+
+/**
+ * The totals exposed over JMX by {@link JmxFormEntryMetrics}, since they were last reset. Times are
+ * in milliseconds, and maps are keyed by stage, tag or form name.
+ */
+public interface FormEntryMetricsMXBean {
+	
+	long getRenderCount();
+	
+	long getRenderTimeMillis();
+	
+	long getSubmitCount();
+	
+	long getSubmitTimeMillis();
+	
+	Map<String, Long> getStageTimeMillis();
+	
+	Map<String, Long> getTagHandlerCalls();
+	
+	Map<String, Long> getTagHandlerTimeMillis();
+	
+	Map<String, Long> getFormRenderCounts();
+	
+	Map<String, Long> getFormRenderTimeMillis();
+	
+	Map<String, Long> getFormSubmitCounts();
+	
+	Map<String, Long> getFormSubmitTimeMillis();
+	
+	/**
+	 * @return the average number of SQL statements of rendering each form, for the forms whose
+	 *         database work was counted
+	 */
+	Map<String, Long> getFormRenderStatements();
+	
+	/**
+	 * @return the average number of SQL statements of submitting each form, for the forms whose
+	 *         database work was counted
+	 */
+	Map<String, Long> getFormSubmitStatements();
+	
+	void reset();
+}
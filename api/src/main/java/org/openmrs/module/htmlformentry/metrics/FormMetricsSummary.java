@@ -0,0 +1,100 @@
+package org.openmrs.module.htmlformentry.metrics;
+
+import org.openmrs.module.htmlformentry.metrics.FormTimings.Phase;
+
+/**
+ * The totals of one phase of one form, as recorded by {@link JmxFormEntryMetrics}, for the form entry
+ * metrics report
+ */
+public class FormMetricsSummary {
+	
+	private final String formName;
+	
+	private final Phase phase;
+	
+	private final long count;
+	
+	private final long totalMillis;
+	
+	private final long maxMillis;
+	
+	private final long queryCountedCount;
+	
+	private final long totalStatements;
+	
+	private final long maxStatements;
+	
+	private final long totalEntityLoads;
+	
+	private final long totalEntityFetches;
+	
+	private final long totalCollectionFetches;
+	
+	public FormMetricsSummary(String formName, Phase phase, long count, long totalMillis, long maxMillis,
+	    long queryCountedCount, long totalStatements, long maxStatements, long totalEntityLoads, long totalEntityFetches,
+	    long totalCollectionFetches) {
+		this.formName = formName;
+		this.phase = phase;
+		this.count = count;
+		this.totalMillis = totalMillis;
+		this.maxMillis = maxMillis;
+		this.queryCountedCount = queryCountedCount;
+		this.totalStatements = totalStatements;
+		this.maxStatements = maxStatements;
+		this.totalEntityLoads = totalEntityLoads;
+		this.totalEntityFetches = totalEntityFetches;
+		this.totalCollectionFetches = totalCollectionFetches;
+	}
+	
+	public String getFormName() {
+		return formName;
+	}
+	
+	public Phase getPhase() {
+		return phase;
+	}
+	
+	public long getCount() {
+		return count;
+	}
+	
+	public long getAverageMillis() {
+		return average(totalMillis, count);
+	}
+	
+	public long getMaxMillis() {
+		return maxMillis;
+	}
+	
+	/**
+	 * @return how many times the database work of the phase was counted, which is less than
+	 *         {@link #getCount()} if htmlformentry.recordQueryCounts was off some of the time
+	 */
+	public long getQueryCountedCount() {
+		return queryCountedCount;
+	}
+	
+	public long getAverageStatements() {
+		return average(totalStatements, queryCountedCount);
+	}
+	
+	public long getMaxStatements() {
+		return maxStatements;
+	}
+	
+	public long getAverageEntityLoads() {
+		return average(totalEntityLoads, queryCountedCount);
+	}
+	
+	public long getAverageEntityFetches() {
+		return average(totalEntityFetches, queryCountedCount);
+	}
+	
+	public long getAverageCollectionFetches() {
+		return average(totalCollectionFetches, queryCountedCount);
+	}
+	
+	private static long average(long total, long count) {
+		return count == 0 ? 0 : Math.round((double) total / count);
+	}
+}
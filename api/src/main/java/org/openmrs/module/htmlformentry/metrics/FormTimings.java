@@ -0,0 +1,268 @@
+package org.openmrs.module.htmlformentry.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openmrs.module.htmlformentry.FormEntryContext.Mode;
+
+/**
+ * How long one phase of a form entry session took: either rendering the form, or validating and
+ * processing a submission of it. The time of each stage of the phase is recorded, and, while a form
+ * is rendered, the time and number of calls of each tag handler. When the
+ * htmlformentry.recordQueryCounts global property is on, the {@link QueryCounts} of the phase are
+ * recorded too.
+ * <p/>
+ * Timings belong to the context of a session, which is only used by one thread at a time, so they
+ * are not thread-safe. Once the phase is over they are passed to every {@link FormEntryMetrics}.
+ */
+public class FormTimings {
+	
+	public enum Phase {
+		RENDER, SUBMIT
+	}
+	
+	public enum Stage {
+		
+		PRE_PARSE_SUBSTITUTIONS(Phase.RENDER),
+		ROLE_RESTRICTIONS(Phase.RENDER),
+		MACROS(Phase.RENDER),
+		PAGES(Phase.RENDER),
+		REPEATS(Phase.RENDER),
+		TRANSLATIONS(Phase.RENDER),
+		COMPILE(Phase.RENDER),
+		PRELOAD(Phase.RENDER),
+		TAGS(Phase.RENDER),
+		UNMATCHED_TAGS(Phase.RENDER),
+		VALIDATE_SUBMISSION(Phase.SUBMIT),
+		HANDLE_SUBMISSION(Phase.SUBMIT),
+		APPLY_ACTIONS(Phase.SUBMIT);
+		
+		private final Phase phase;
+		
+		Stage(Phase phase) {
+			this.phase = phase;
+		}
+		
+		public Phase getPhase() {
+			return phase;
+		}
+	}
+	
+	private final Phase phase;
+	
+	private final String formName;
+	
+	private final Mode mode;
+	
+	private final long startNanos = System.nanoTime();
+	
+	private long totalNanos = -1;
+	
+	private final Map<Stage, Long> stageNanos = new EnumMap<Stage, Long>(Stage.class);
+	
+	private final Map<String, TagTiming> tagTimings = new HashMap<String, TagTiming>();
+	
+	private QueryCounts queryCountsAtStart;
+	
+	private QueryCounts queryCounts;
+	
+	public FormTimings(Phase phase, String formName, Mode mode) {
+		this.phase = phase;
+		this.formName = formName;
+		this.mode = mode;
+	}
+	
+	/**
+	 * Adds the time since a stage started to the time of that stage. Consecutive stages can be timed
+	 * by passing the return value of one call as the start of the next.
+	 *
+	 * @param stage the stage
+	 * @param startNanos when the stage started, from {@link System#nanoTime()}
+	 * @return the current {@link System#nanoTime()}
+	 */
+	public long addStageTime(Stage stage, long startNanos) {
+		long now = System.nanoTime();
+		Long time = stageNanos.get(stage);
+		stageNanos.put(stage, (time == null ? 0 : time) + now - startNanos);
+		return now;
+	}
+	
+	/**
+	 * Adds the time spent in a call to doStartTag or doEndTag of a tag handler. The time of the tags
+	 * nested in the tag is not included, as they are timed separately.
+	 *
+	 * @param tagName the name of the tag
+	 * @param startNanos when the call started, from {@link System#nanoTime()}
+	 * @param startTag whether this was the doStartTag call, which is counted as a call of the handler
+	 */
+	public void addTagTime(String tagName, long startNanos, boolean startTag) {
+		long time = System.nanoTime() - startNanos;
+		TagTiming timing = tagTimings.get(tagName);
+		if (timing == null) {
+			timing = new TagTiming(tagName);
+			tagTimings.put(tagName, timing);
+		}
+		timing.nanos += time;
+		if (startTag) {
+			timing.calls++;
+		}
+	}
+	
+	/**
+	 * Starts counting the database work of the phase
+	 *
+	 * @param counts the counts at the start of the phase
+	 */
+	public void startQueryCounts(QueryCounts counts) {
+		queryCountsAtStart = counts;
+	}
+	
+	/**
+	 * @return whether the database work of the phase is being counted
+	 */
+	public boolean isCountingQueries() {
+		return queryCountsAtStart != null;
+	}
+	
+	/**
+	 * Stops counting the database work of the phase
+	 *
+	 * @param counts the counts at the end of the phase
+	 */
+	public void finishQueryCounts(QueryCounts counts) {
+		if (queryCountsAtStart != null && queryCounts == null) {
+			queryCounts = counts.minus(queryCountsAtStart);
+		}
+	}
+	
+	/**
+	 * Ends the phase, fixing its total time
+	 */
+	public void finish() {
+		if (totalNanos < 0) {
+			totalNanos = System.nanoTime() - startNanos;
+		}
+	}
+	
+	public Phase getPhase() {
+		return phase;
+	}
+	
+	/**
+	 * @return the name of the form, which may be null for a form that has not been saved
+	 */
+	public String getFormName() {
+		return formName;
+	}
+	
+	public Mode getMode() {
+		return mode;
+	}
+	
+	/**
+	 * @return the time from the start of the phase until it was finished, or until now if it has not
+	 *         been finished yet
+	 */
+	public long getTotalNanos() {
+		return totalNanos < 0 ? System.nanoTime() - startNanos : totalNanos;
+	}
+	
+	/**
+	 * @return the database work of the phase, or null if it was not counted
+	 */
+	public QueryCounts getQueryCounts() {
+		return queryCounts;
+	}
+	
+	/**
+	 * @return the time of each stage that was timed, in the order the stages run in
+	 */
+	public Map<Stage, Long> getStageNanos() {
+		return Collections.unmodifiableMap(stageNanos);
+	}
+	
+	/**
+	 * @return the timings of the tag handlers, slowest first
+	 */
+	public List<TagTiming> getTagTimings() {
+		List<TagTiming> ret = new ArrayList<TagTiming>(tagTimings.values());
+		Collections.sort(ret, new Comparator<TagTiming>() {
+			
+			@Override
+			public int compare(TagTiming left, TagTiming right) {
+				return Long.compare(right.nanos, left.nanos);
+			}
+		});
+		return ret;
+	}
+	
+	/**
+	 * @return a one line summary of the timings, with the five slowest tag handlers
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(phase).append(" of form '").append(formName).append("' in ").append(mode).append(" mode took ")
+		        .append(millis(getTotalNanos())).append(" ms");
+		if (queryCounts != null) {
+			sb.append("; ").append(queryCounts);
+		}
+		if (!stageNanos.isEmpty()) {
+			sb.append("; stages:");
+			for (Map.Entry<Stage, Long> e : stageNanos.entrySet()) {
+				sb.append(" ").append(e.getKey()).append("=").append(millis(e.getValue())).append("ms");
+			}
+		}
+		List<TagTiming> tags = getTagTimings();
+		if (!tags.isEmpty()) {
+			sb.append("; slowest tags:");
+			for (TagTiming tag : tags.subList(0, Math.min(5, tags.size()))) {
+				sb.append(" ").append(tag);
+			}
+		}
+		return sb.toString();
+	}
+	
+	private static long millis(long nanos) {
+		return TimeUnit.NANOSECONDS.toMillis(nanos);
+	}
+	
+	/**
+	 * The time spent in the handler of one tag, over every occurrence of the tag in a form
+	 */
+	public static class TagTiming {
+		
+		private final String tagName;
+		
+		private int calls;
+		
+		private long nanos;
+		
+		TagTiming(String tagName) {
+			this.tagName = tagName;
+		}
+		
+		public String getTagName() {
+			return tagName;
+		}
+		
+		public int getCalls() {
+			return calls;
+		}
+		
+		public long getNanos() {
+			return nanos;
+		}
+		
+		@Override
+		public String toString() {
+			return tagName + "=" + millis(nanos) + "ms/" + calls;
+		}
+	}
+}
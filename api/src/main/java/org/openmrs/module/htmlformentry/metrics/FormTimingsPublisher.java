@@ -0,0 +1,43 @@
+package org.openmrs.module.htmlformentry.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.htmlformentry.HtmlFormEntryGlobalProperties;
+import org.openmrs.module.htmlformentry.HtmlFormEntryUtil;
+
+/**
+ * Passes the timings of a finished phase to every registered {@link FormEntryMetrics}, and logs them
+ * as a slow form if they took longer than the htmlformentry.slowFormThreshold global property
+ */
+public class FormTimingsPublisher {
+	
+	private static final Log log = LogFactory.getLog(FormTimingsPublisher.class);
+	
+	/**
+	 * @param timings the timings of the phase, which is finished by this
+	 */
+	public static void publish(FormTimings timings) {
+		if (timings.isCountingQueries()) {
+			timings.finishQueryCounts(HtmlFormEntryUtil.getService().getQueryCounts());
+		}
+		timings.finish();
+		
+		Long threshold = HtmlFormEntryGlobalProperties.SLOW_FORM_THRESHOLD();
+		if (threshold != null && TimeUnit.NANOSECONDS.toMillis(timings.getTotalNanos()) >= threshold) {
+			log.warn("Slow form: " + timings);
+		}
+		
+		for (FormEntryMetrics metrics : Context.getRegisteredComponents(FormEntryMetrics.class)) {
+			try {
+				metrics.record(timings);
+			}
+			catch (Exception e) {
+				// metrics must never stop a form from being displayed or saved
+				log.warn("Error recording form timings with " + metrics, e);
+			}
+		}
+	}
+}
@@ -0,0 +1,304 @@
+package org.openmrs.module.htmlformentry.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.module.htmlformentry.metrics.FormTimings.Phase;
+import org.openmrs.module.htmlformentry.metrics.FormTimings.Stage;
+import org.openmrs.module.htmlformentry.metrics.FormTimings.TagTiming;
+
+/**
+ * The default {@link FormEntryMetrics}, which adds up the timings of all sessions and exposes the
+ * totals as the {@value #OBJECT_NAME} MBean of the platform MBean server. The totals of each form
+ * are also shown by the form entry metrics report.
+ */
+public class JmxFormEntryMetrics implements FormEntryMetrics, FormEntryMetricsMXBean {
+	
+	public static final String OBJECT_NAME = "org.openmrs.module.htmlformentry:type=FormEntryMetrics";
+	
+	private static final String UNNAMED_FORM = "(unnamed)";
+	
+	private final Log log = LogFactory.getLog(getClass());
+	
+	private final Total renders = new Total();
+	
+	private final Total submits = new Total();
+	
+	private final ConcurrentMap<String, Total> stages = new ConcurrentHashMap<String, Total>();
+	
+	private final ConcurrentMap<String, Total> tagHandlers = new ConcurrentHashMap<String, Total>();
+	
+	private final ConcurrentMap<String, FormTotal> formRenders = new ConcurrentHashMap<String, FormTotal>();
+	
+	private final ConcurrentMap<String, FormTotal> formSubmits = new ConcurrentHashMap<String, FormTotal>();
+	
+	/**
+	 * Registers this as an MBean, replacing one registered by an earlier application context
+	 */
+	public void register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(this, name);
+		}
+		catch (Exception e) {
+			log.warn("Unable to register the form entry metrics MBean", e);
+		}
+	}
+	
+	public void unregister() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		}
+		catch (Exception e) {
+			log.warn("Unable to unregister the form entry metrics MBean", e);
+		}
+	}
+	
+	@Override
+	public void record(FormTimings timings) {
+		String formName = StringUtils.defaultIfEmpty(timings.getFormName(), UNNAMED_FORM);
+		long total = timings.getTotalNanos();
+		if (timings.getPhase() == Phase.RENDER) {
+			renders.add(1, total);
+			getFormTotal(formRenders, formName).add(timings);
+		} else {
+			submits.add(1, total);
+			getFormTotal(formSubmits, formName).add(timings);
+		}
+		for (Map.Entry<Stage, Long> e : timings.getStageNanos().entrySet()) {
+			getTotal(stages, e.getKey().name()).add(1, e.getValue());
+		}
+		for (TagTiming tag : timings.getTagTimings()) {
+			getTotal(tagHandlers, tag.getTagName()).add(tag.getCalls(), tag.getNanos());
+		}
+	}
+	
+	@Override
+	public long getRenderCount() {
+		return renders.count.get();
+	}
+	
+	@Override
+	public long getRenderTimeMillis() {
+		return renders.getMillis();
+	}
+	
+	@Override
+	public long getSubmitCount() {
+		return submits.count.get();
+	}
+	
+	@Override
+	public long getSubmitTimeMillis() {
+		return submits.getMillis();
+	}
+	
+	@Override
+	public Map<String, Long> getStageTimeMillis() {
+		return millis(stages);
+	}
+	
+	@Override
+	public Map<String, Long> getTagHandlerCalls() {
+		return counts(tagHandlers);
+	}
+	
+	@Override
+	public Map<String, Long> getTagHandlerTimeMillis() {
+		return millis(tagHandlers);
+	}
+	
+	@Override
+	public Map<String, Long> getFormRenderCounts() {
+		return counts(formRenders);
+	}
+	
+	@Override
+	public Map<String, Long> getFormRenderTimeMillis() {
+		return millis(formRenders);
+	}
+	
+	@Override
+	public Map<String, Long> getFormSubmitCounts() {
+		return counts(formSubmits);
+	}
+	
+	@Override
+	public Map<String, Long> getFormSubmitTimeMillis() {
+		return millis(formSubmits);
+	}
+	
+	@Override
+	public Map<String, Long> getFormRenderStatements() {
+		return statements(formRenders);
+	}
+	
+	@Override
+	public Map<String, Long> getFormSubmitStatements() {
+		return statements(formSubmits);
+	}
+	
+	/**
+	 * @param phase the phase
+	 * @return the totals of each form for the phase, with the forms that do the most database work,
+	 *         and then those that take longest, first
+	 */
+	public List<FormMetricsSummary> getFormSummaries(Phase phase) {
+		List<FormMetricsSummary> ret = new ArrayList<FormMetricsSummary>();
+		for (Map.Entry<String, FormTotal> e : (phase == Phase.RENDER ? formRenders : formSubmits).entrySet()) {
+			ret.add(e.getValue().summarize(e.getKey(), phase));
+		}
+		Collections.sort(ret, new Comparator<FormMetricsSummary>() {
+			
+			@Override
+			public int compare(FormMetricsSummary left, FormMetricsSummary right) {
+				int order = Long.compare(right.getAverageStatements(), left.getAverageStatements());
+				return order != 0 ? order : Long.compare(right.getAverageMillis(), left.getAverageMillis());
+			}
+		});
+		return ret;
+	}
+	
+	@Override
+	public void reset() {
+		renders.reset();
+		submits.reset();
+		stages.clear();
+		tagHandlers.clear();
+		formRenders.clear();
+		formSubmits.clear();
+	}
+	
+	private static Total getTotal(ConcurrentMap<String, Total> totals, String key) {
+		Total total = totals.get(key);
+		if (total == null) {
+			Total existing = totals.putIfAbsent(key, total = new Total());
+			if (existing != null) {
+				total = existing;
+			}
+		}
+		return total;
+	}
+	
+	private static FormTotal getFormTotal(ConcurrentMap<String, FormTotal> totals, String formName) {
+		FormTotal total = totals.get(formName);
+		if (total == null) {
+			FormTotal existing = totals.putIfAbsent(formName, total = new FormTotal());
+			if (existing != null) {
+				total = existing;
+			}
+		}
+		return total;
+	}
+	
+	private static Map<String, Long> counts(Map<String, ? extends Total> totals) {
+		Map<String, Long> ret = new TreeMap<String, Long>();
+		for (Map.Entry<String, Total> e : totals.entrySet()) {
+			ret.put(e.getKey(), e.getValue().count.get());
+		}
+		return ret;
+	}
+	
+	private static Map<String, Long> millis(Map<String, ? extends Total> totals) {
+		Map<String, Long> ret = new TreeMap<String, Long>();
+		for (Map.Entry<String, Total> e : totals.entrySet()) {
+			ret.put(e.getKey(), e.getValue().getMillis());
+		}
+		return ret;
+	}
+	
+	private static Map<String, Long> statements(Map<String, FormTotal> totals) {
+		Map<String, Long> ret = new TreeMap<String, Long>();
+		for (Map.Entry<String, FormTotal> e : totals.entrySet()) {
+			if (e.getValue().queryCounted.get() > 0) {
+				ret.put(e.getKey(), e.getValue().summarize(e.getKey(), null).getAverageStatements());
+			}
+		}
+		return ret;
+	}
+	
+	private static class Total {
+		
+		final AtomicLong count = new AtomicLong();
+		
+		final AtomicLong nanos = new AtomicLong();
+		
+		void add(long count, long nanos) {
+			this.count.addAndGet(count);
+			this.nanos.addAndGet(nanos);
+		}
+		
+		long getMillis() {
+			return TimeUnit.NANOSECONDS.toMillis(nanos.get());
+		}
+		
+		void reset() {
+			count.set(0);
+			nanos.set(0);
+		}
+	}
+	
+	/**
+	 * The totals of one phase of one form, with its database work when that was counted
+	 */
+	private static class FormTotal extends Total {
+		
+		private final AtomicLong maxNanos = new AtomicLong();
+		
+		private final AtomicLong queryCounted = new AtomicLong();
+		
+		private final AtomicLong statements = new AtomicLong();
+		
+		private final AtomicLong maxStatements = new AtomicLong();
+		
+		private final AtomicLong entityLoads = new AtomicLong();
+		
+		private final AtomicLong entityFetches = new AtomicLong();
+		
+		private final AtomicLong collectionFetches = new AtomicLong();
+		
+		void add(FormTimings timings) {
+			long total = timings.getTotalNanos();
+			add(1, total);
+			maxNanos.accumulateAndGet(total, Math::max);
+			QueryCounts queryCounts = timings.getQueryCounts();
+			if (queryCounts != null) {
+				queryCounted.incrementAndGet();
+				statements.addAndGet(queryCounts.getStatements());
+				maxStatements.accumulateAndGet(queryCounts.getStatements(), Math::max);
+				entityLoads.addAndGet(queryCounts.getEntityLoads());
+				entityFetches.addAndGet(queryCounts.getEntityFetches());
+				collectionFetches.addAndGet(queryCounts.getCollectionFetches());
+			}
+		}
+		
+		FormMetricsSummary summarize(String formName, Phase phase) {
+			return new FormMetricsSummary(formName, phase, count.get(), getMillis(),
+			        TimeUnit.NANOSECONDS.toMillis(maxNanos.get()), queryCounted.get(), statements.get(), maxStatements.get(),
+			        entityLoads.get(), entityFetches.get(), collectionFetches.get());
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package org.openmrs.module.htmlformentry.metrics;
+
+/**
+ * How much database work was done, as counted by the statistics of the Hibernate session factory.
+ * Counts read at two points in time are subtracted to get the work done in between.
+ * <p/>
+ * The statistics are shared by all threads, so the difference also includes the work of any other
+ * request that was running at the same time.
+ */
+public class QueryCounts {
+	
+	private final long statements;
+	
+	private final long queries;
+	
+	private final long entityLoads;
+	
+	private final long entityFetches;
+	
+	private final long collectionFetches;
+	
+	public QueryCounts(long statements, long queries, long entityLoads, long entityFetches, long collectionFetches) {
+		this.statements = statements;
+		this.queries = queries;
+		this.entityLoads = entityLoads;
+		this.entityFetches = entityFetches;
+		this.collectionFetches = collectionFetches;
+	}
+	
+	/**
+	 * @param earlier counts read before these
+	 * @return the work done between the earlier counts and these
+	 */
+	public QueryCounts minus(QueryCounts earlier) {
+		return new QueryCounts(statements - earlier.statements, queries - earlier.queries,
+		        entityLoads - earlier.entityLoads, entityFetches - earlier.entityFetches,
+		        collectionFetches - earlier.collectionFetches);
+	}
+	
+	/**
+	 * @return the number of JDBC statements prepared, which is every round trip to the database
+	 */
+	public long getStatements() {
+		return statements;
+	}
+	
+	/**
+	 * @return the number of HQL, criteria and SQL queries executed
+	 */
+	public long getQueries() {
+		return queries;
+	}
+	
+	/**
+	 * @return the number of entities loaded from the database, by any means
+	 */
+	public long getEntityLoads() {
+		return entityLoads;
+	}
+	
+	/**
+	 * @return the number of entities fetched one at a time, e.g. when a lazy association is first used
+	 */
+	public long getEntityFetches() {
+		return entityFetches;
+	}
+	
+	/**
+	 * @return the number of collections fetched one at a time, e.g. when a lazy collection is first used
+	 */
+	public long getCollectionFetches() {
+		return collectionFetches;
+	}
+	
+	@Override
+	public String toString() {
+		return statements + " statements, " + queries + " queries, " + entityLoads + " entity loads, " + entityFetches
+		        + " entity fetches, " + collectionFetches + " collection fetches";
+	}
+}
@@ -0,0 +1,113 @@
+package org.openmrs.module.htmlformentry.util;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An immutable date format for a pattern and locale, which can be shared between threads. Instances
+ * are cached by pattern, locale and leniency, so widgets that format a date on every render reuse
+ * the same format rather than building a new SimpleDateFormat each time. Formatting and parsing are
+ * done by a SimpleDateFormat that belongs to the calling thread, so results are exactly those of
+ * SimpleDateFormat.
+ */
+public final class CachedDateFormat {
+	
+	private static final ConcurrentMap<List<Object>, CachedDateFormat> instances = new ConcurrentHashMap<List<Object>, CachedDateFormat>();
+	
+	private final String pattern;
+	
+	private final Locale locale;
+	
+	private final boolean lenient;
+	
+	private final String localizedPattern;
+	
+	private final ThreadLocal<SimpleDateFormat> formats = new ThreadLocal<SimpleDateFormat>();
+	
+	private CachedDateFormat(String pattern, Locale locale, boolean lenient) {
+		this.pattern = pattern;
+		this.locale = locale;
+		this.lenient = lenient;
+		this.localizedPattern = newFormat().toLocalizedPattern();
+	}
+	
+	/**
+	 * @param pattern the SimpleDateFormat pattern
+	 * @param locale the locale
+	 * @param lenient whether parsing is lenient
+	 * @return the format for the pattern and locale
+	 */
+	public static CachedDateFormat getInstance(String pattern, Locale locale, boolean lenient) {
+		List<Object> key = Arrays.<Object> asList(pattern, locale, lenient);
+		CachedDateFormat format = instances.get(key);
+		if (format == null) {
+			format = new CachedDateFormat(pattern, locale, lenient);
+			CachedDateFormat existing = instances.putIfAbsent(key, format);
+			if (existing != null) {
+				format = existing;
+			}
+		}
+		return format;
+	}
+	
+	/**
+	 * @return the lenient format for the pattern and locale
+	 */
+	public static CachedDateFormat getInstance(String pattern, Locale locale) {
+		return getInstance(pattern, locale, true);
+	}
+	
+	/**
+	 * @return the lenient format for the pattern in the default locale, like new
+	 *         SimpleDateFormat(pattern)
+	 */
+	public static CachedDateFormat getInstance(String pattern) {
+		return getInstance(pattern, Locale.getDefault(), true);
+	}
+	
+	public String format(Date date) {
+		return getFormat().format(date);
+	}
+	
+	public Date parse(String source) throws ParseException {
+		return getFormat().parse(source);
+	}
+	
+	public String getPattern() {
+		return pattern;
+	}
+	
+	public String getLocalizedPattern() {
+		return localizedPattern;
+	}
+	
+	public Locale getLocale() {
+		return locale;
+	}
+	
+	/**
+	 * @return a new SimpleDateFormat for the pattern and locale, which the caller may change
+	 */
+	public SimpleDateFormat newFormat() {
+		SimpleDateFormat format = new SimpleDateFormat(pattern, locale);
+		format.setLenient(lenient);
+		return format;
+	}
+	
+	private SimpleDateFormat getFormat() {
+		SimpleDateFormat format = formats.get();
+		// a SimpleDateFormat keeps the time zone that was the default when it was made
+		if (format == null || !format.getTimeZone().equals(TimeZone.getDefault())) {
+			format = newFormat();
+			formats.set(format);
+		}
+		return format;
+	}
+}
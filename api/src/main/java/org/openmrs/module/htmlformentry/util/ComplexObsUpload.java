@@ -0,0 +1,161 @@
+package org.openmrs.module.htmlformentry.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.obs.ComplexData;
+import org.springframework.web.multipart.MultipartFile;
+
+/**
+ * Hands files uploaded for complex obs to the complex obs handler as a stream over the uploaded
+ * file, rather than reading the whole file into memory first. The multipart resolver already keeps
+ * small files in memory and spools larger ones to a temporary file, so the stream reads from
+ * whichever of these it chose, and no further copy of the file is made.
+ * <p/>
+ * Keeps count of the uploads that are being read by a handler, and of their total size, so that
+ * the memory and disk pressure of uploads can be watched.
+ */
+public class ComplexObsUpload {
+	
+	private static final Log log = LogFactory.getLog(ComplexObsUpload.class);
+	
+	private static final AtomicLong bytesInFlight = new AtomicLong();
+	
+	private static final AtomicInteger uploadsInFlight = new AtomicInteger();
+	
+	/**
+	 * @param file the uploaded file
+	 * @param maxSize the largest file allowed, in bytes, or null if there is no limit
+	 * @return complex data that reads the uploaded file
+	 * @throws UploadTooLargeException if the file is larger than maxSize
+	 * @throws IOException if the uploaded file cannot be read
+	 */
+	public static ComplexData toComplexData(MultipartFile file, Long maxSize) throws IOException {
+		long size = file.getSize();
+		if (maxSize != null && maxSize > 0 && size > maxSize) {
+			throw new UploadTooLargeException(Context.getMessageSourceService().getMessage(
+			    "htmlformentry.error.uploadTooLarge", new Object[] { FileUtils.byteCountToDisplaySize(maxSize) },
+			    Context.getLocale()));
+		}
+		return new ComplexData(file.getOriginalFilename(),
+		        new UploadInputStream(file.getInputStream(), file.getOriginalFilename(), size));
+	}
+	
+	/**
+	 * Closes the stream over an uploaded file once the obs has been saved, so that the upload stops
+	 * counting as in flight even if the complex obs handler read only part of it and left it open
+	 * 
+	 * @param complexData the complex data of an obs, which may be null or not an upload
+	 */
+	public static void close(ComplexData complexData) {
+		if (complexData != null && complexData.getData() instanceof UploadInputStream) {
+			IOUtils.closeQuietly((UploadInputStream) complexData.getData());
+		}
+	}
+	
+	/**
+	 * @return the total size, in bytes, of the uploaded files that are being read
+	 */
+	public static long getBytesInFlight() {
+		return bytesInFlight.get();
+	}
+	
+	/**
+	 * @return the number of uploaded files that are being read
+	 */
+	public static int getUploadsInFlight() {
+		return uploadsInFlight.get();
+	}
+	
+	/**
+	 * Thrown when an uploaded file is larger than allowed. The message is meant to be shown to the
+	 * user.
+	 */
+	public static class UploadTooLargeException extends IllegalArgumentException {
+		
+		private static final long serialVersionUID = 1L;
+		
+		public UploadTooLargeException(String message) {
+			super(message);
+		}
+	}
+	
+	/**
+	 * Counts an upload as in flight from the first read until it is read to the end or closed. A
+	 * stream that is never read, such as one made while validating a submission, is never counted.
+	 */
+	private static class UploadInputStream extends FilterInputStream {
+		
+		private final String filename;
+		
+		private final long size;
+		
+		private boolean started = false;
+		
+		private boolean finished = false;
+		
+		public UploadInputStream(InputStream in, String filename, long size) {
+			super(in);
+			this.filename = filename;
+			this.size = size;
+		}
+		
+		@Override
+		public int read() throws IOException {
+			start();
+			int b = super.read();
+			if (b < 0) {
+				finish();
+			}
+			return b;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			start();
+			int n = super.read(b, off, len);
+			if (n < 0) {
+				finish();
+			}
+			return n;
+		}
+		
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			}
+			finally {
+				finish();
+			}
+		}
+		
+		private void start() {
+			if (!started) {
+				started = true;
+				long total = bytesInFlight.addAndGet(size);
+				int count = uploadsInFlight.incrementAndGet();
+				if (log.isDebugEnabled()) {
+					log.debug("Reading upload " + filename + " (" + size + " bytes), " + count + " uploads with " + total
+					        + " bytes in flight");
+				}
+			}
+		}
+		
+		private void finish() {
+			if (started && !finished) {
+				finished = true;
+				bytesInFlight.addAndGet(-size);
+				uploadsInFlight.decrementAndGet();
+			}
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package org.openmrs.module.htmlformentry.util;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openmrs.Concept;
+import org.openmrs.api.context.Context;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * The ids of the concepts in a concept set, including the members of nested sets, held as a sorted
+ * array of ints. Concept search autocompletes restricted to a set test every search result against
+ * the set, and expanding a large set means loading every member concept, so the members of each set
+ * are cached for a few minutes rather than expanded on every keystroke. The cache is cleared when a
+ * concept is saved (see {@link org.openmrs.module.htmlformentry.advice.ConceptSetMembersAdvice}).
+ */
+public class ConceptSetMembers {
+	
+	private static final long TIME_TO_LIVE = TimeUnit.MINUTES.toMillis(5);
+	
+	private static final ConcurrentMap<Integer, ConceptSetMembers> cache = new ConcurrentHashMap<Integer, ConceptSetMembers>();
+	
+	// advanced by every clear, so that members loaded while the cache was being cleared are not kept
+	private static final AtomicLong generation = new AtomicLong();
+	
+	private final int[] conceptIds;
+	
+	private final long created = System.currentTimeMillis();
+	
+	private ConceptSetMembers(int[] conceptIds) {
+		this.conceptIds = conceptIds;
+		Arrays.sort(this.conceptIds);
+	}
+	
+	/**
+	 * @param conceptIds the ids to hold
+	 * @return a set of the given ids
+	 */
+	public static ConceptSetMembers of(Collection<Integer> conceptIds) {
+		int[] ids = new int[conceptIds.size()];
+		int i = 0;
+		for (Integer id : conceptIds) {
+			ids[i++] = id;
+		}
+		return new ConceptSetMembers(ids);
+	}
+	
+	/**
+	 * @param sets the concept sets
+	 * @return the members of all the sets, which are loaded if they are not cached
+	 */
+	public static ConceptSetMembers forSets(Collection<Concept> sets) {
+		if (sets.size() == 1) {
+			return forSet(sets.iterator().next());
+		}
+		int size = 0;
+		ConceptSetMembers[] members = new ConceptSetMembers[sets.size()];
+		int i = 0;
+		for (Concept set : sets) {
+			members[i] = forSet(set);
+			size += members[i++].size();
+		}
+		int[] ids = new int[size];
+		int pos = 0;
+		for (ConceptSetMembers m : members) {
+			System.arraycopy(m.conceptIds, 0, ids, pos, m.conceptIds.length);
+			pos += m.conceptIds.length;
+		}
+		return new ConceptSetMembers(ids);
+	}
+	
+	/**
+	 * @param set the concept set
+	 * @return the members of the set, which are loaded if they are not cached
+	 */
+	public static ConceptSetMembers forSet(Concept set) {
+		ConceptSetMembers members = cache.get(set.getConceptId());
+		if (members == null || System.currentTimeMillis() - members.created > TIME_TO_LIVE) {
+			long loadedGeneration = generation.get();
+			List<Concept> concepts = Context.getConceptService().getConceptsByConceptSet(set);
+			int[] ids = new int[concepts.size()];
+			for (int i = 0; i < ids.length; i++) {
+				ids[i] = concepts.get(i).getConceptId();
+			}
+			members = new ConceptSetMembers(ids);
+			if (loadedGeneration == generation.get()) {
+				cache.put(set.getConceptId(), members);
+			}
+		}
+		return members;
+	}
+	
+	/**
+	 * Forgets the cached members of every set, so they are loaded again the next time they are needed.
+	 * Within a transaction they are forgotten again once it completes, as a search made before the
+	 * commit may have cached the old members.
+	 */
+	public static void clearCache() {
+		clear();
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				
+				@Override
+				public void afterCompletion(int status) {
+					clear();
+				}
+			});
+		}
+	}
+	
+	private static void clear() {
+		generation.incrementAndGet();
+		cache.clear();
+	}
+	
+	/**
+	 * @param conceptId the id of a concept
+	 * @return whether the concept is a member
+	 */
+	public boolean contains(int conceptId) {
+		return Arrays.binarySearch(conceptIds, conceptId) >= 0;
+	}
+	
+	/**
+	 * @return the number of members, counting a concept that is in more than one set once per set
+	 */
+	public int size() {
+		return conceptIds.length;
+	}
+	
+	public boolean isEmpty() {
+		return conceptIds.length == 0;
+	}
+}
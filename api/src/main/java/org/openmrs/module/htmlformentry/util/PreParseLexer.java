@@ -0,0 +1,197 @@
+package org.openmrs.module.htmlformentry.util;
+
+/**
+ * Applies the text-level transformations that happen to a form before it is parsed as xml, in a
+ * single forward scan into a single output buffer. The result is identical to calling, in order,
+ * {@code HtmlFormEntryGenerator.substituteCharacterCodesWithAsciiCodes},
+ * {@code HtmlFormEntryGenerator.stripComments} and
+ * {@code HtmlFormEntryGenerator.convertSpecialCharactersWithinLogicAndVelocityTests}, without
+ * making a full copy of the form for each of them:
+ * <ol>
+ * <li>{@code &nbsp;} is replaced with {@code &#160;}</li>
+ * <li>comments are removed. A comment is {@code <!--}, then any characters except line terminators,
+ * then {@code -->}, where whitespace may appear between {@code <!} and {@code --} and between
+ * {@code --} and {@code >}</li>
+ * <li>within the value of each {@code velocityTest="..."} attribute, {@code &&}, {@code <} and
+ * {@code >} are escaped</li>
+ * </ol>
+ */
+public class PreParseLexer {
+	
+	private static final String NBSP = "&nbsp;";
+	
+	private static final String NBSP_REPLACEMENT = "&#160;";
+	
+	private static final String VELOCITY_TEST = "velocityTest=\"";
+	
+	private final String xml;
+	
+	private final StringBuilder out;
+	
+	// whether we are inside the value of a velocityTest attribute
+	private boolean inVelocityTest = false;
+	
+	// where the current velocityTest value starts in the output, and its untransformed text, in case it is never closed
+	private int velocityTestStart;
+	
+	private StringBuilder velocityTestRaw;
+	
+	// whether the previous character in a velocityTest value was an '&' that has not been written yet
+	private boolean pendingAmpersand = false;
+	
+	private PreParseLexer(String xml) {
+		this.xml = xml;
+		this.out = new StringBuilder(xml.length() + 16);
+	}
+	
+	/**
+	 * @param xml the raw xml of a form
+	 * @return the xml with the pre-parse transformations applied
+	 */
+	public static String process(String xml) {
+		if (xml == null) {
+			return null;
+		}
+		return new PreParseLexer(xml).run();
+	}
+	
+	private String run() {
+		int length = xml.length();
+		int i = 0;
+		while (i < length) {
+			char c = xml.charAt(i);
+			if (c == '<') {
+				int commentEnd = findCommentEnd(i);
+				if (commentEnd >= 0) {
+					i = commentEnd;
+					continue;
+				}
+			} else if (c == '&' && xml.startsWith(NBSP, i)) {
+				for (int j = 0; j < NBSP_REPLACEMENT.length(); j++) {
+					emit(NBSP_REPLACEMENT.charAt(j));
+				}
+				i += NBSP.length();
+				continue;
+			}
+			emit(c);
+			i++;
+		}
+		if (inVelocityTest) {
+			// an unterminated velocityTest value is left as it was
+			out.setLength(velocityTestStart);
+			out.append(velocityTestRaw);
+		}
+		return out.toString();
+	}
+	
+	/**
+	 * Writes a character that survived the first two transformations, escaping it if it is within a
+	 * velocityTest value
+	 */
+	private void emit(char c) {
+		if (!inVelocityTest) {
+			out.append(c);
+			if (c == '"' && endsWithVelocityTest()) {
+				inVelocityTest = true;
+				velocityTestStart = out.length();
+				velocityTestRaw = new StringBuilder();
+				pendingAmpersand = false;
+			}
+			return;
+		}
+		if (c == '"') {
+			flushPendingAmpersand();
+			out.append(c);
+			inVelocityTest = false;
+			return;
+		}
+		velocityTestRaw.append(c);
+		if (c == '&') {
+			if (pendingAmpersand) {
+				out.append("&amp;&amp;");
+				pendingAmpersand = false;
+			} else {
+				pendingAmpersand = true;
+			}
+			return;
+		}
+		flushPendingAmpersand();
+		if (c == '<') {
+			out.append("&lt;");
+		} else if (c == '>') {
+			out.append("&gt;");
+		} else {
+			out.append(c);
+		}
+	}
+	
+	private void flushPendingAmpersand() {
+		if (pendingAmpersand) {
+			out.append('&');
+			pendingAmpersand = false;
+		}
+	}
+	
+	private boolean endsWithVelocityTest() {
+		int start = out.length() - VELOCITY_TEST.length();
+		if (start < 0) {
+			return false;
+		}
+		for (int i = 0; i < VELOCITY_TEST.length(); i++) {
+			if (out.charAt(start + i) != VELOCITY_TEST.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * @param start the index of a '<' in the xml
+	 * @return the index just after the comment that starts at start, or -1 if no comment starts there
+	 */
+	private int findCommentEnd(int start) {
+		int length = xml.length();
+		int i = start + 1;
+		if (i >= length || xml.charAt(i) != '!') {
+			return -1;
+		}
+		i = skipWhitespace(i + 1);
+		if (!xml.startsWith("--", i)) {
+			return -1;
+		}
+		// the body is matched reluctantly, so the comment ends at the first "--" followed by optional whitespace and '>'
+		for (i += 2; i < length; i++) {
+			if (xml.startsWith("--", i)) {
+				int end = skipWhitespace(i + 2);
+				if (end < length && xml.charAt(end) == '>') {
+					return end + 1;
+				}
+			}
+			if (isLineTerminator(xml.charAt(i))) {
+				return -1;
+			}
+		}
+		return -1;
+	}
+	
+	private int skipWhitespace(int i) {
+		while (i < xml.length() && isWhitespace(xml.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+	
+	/**
+	 * @return whether c matches \s in a java regular expression
+	 */
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+	
+	/**
+	 * @return whether c is not matched by . in a java regular expression without DOTALL
+	 */
+	private static boolean isLineTerminator(char c) {
+		return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+	}
+}
@@ -0,0 +1,72 @@
+package org.openmrs.module.htmlformentry.util;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.openmrs.Program;
+import org.openmrs.ProgramWorkflow;
+import org.openmrs.ProgramWorkflowState;
+
+/**
+ * An index of where each workflow and state lives within the programs, so that finding one by id or
+ * by concept does not mean walking every workflow of every program. Only ids are kept, never the
+ * objects themselves, so the index can be shared between hibernate sessions; callers load the
+ * program by id and pick the workflow or state out of it. An index can become out of date when
+ * programs change, so callers should check what they load against what they asked for.
+ */
+public class ProgramMetadataIndex {
+	
+	private final Map<Integer, Integer> programIdByWorkflowId = new HashMap<Integer, Integer>();
+	
+	private final Map<Integer, Integer> workflowIdByStateId = new HashMap<Integer, Integer>();
+	
+	private final Map<Integer, Integer> workflowIdByConceptId = new HashMap<Integer, Integer>();
+	
+	/**
+	 * @param programs all programs, including retired ones
+	 * @return an index of the workflows and states of the programs
+	 */
+	public static ProgramMetadataIndex build(Collection<Program> programs) {
+		ProgramMetadataIndex index = new ProgramMetadataIndex();
+		for (Program program : programs) {
+			for (ProgramWorkflow workflow : program.getAllWorkflows()) {
+				index.programIdByWorkflowId.put(workflow.getProgramWorkflowId(), program.getProgramId());
+				// looking a workflow up by concept only considers non-retired programs, and the first match wins
+				if (!program.isRetired() && workflow.getConcept() != null
+				        && !index.workflowIdByConceptId.containsKey(workflow.getConcept().getConceptId())) {
+					index.workflowIdByConceptId.put(workflow.getConcept().getConceptId(), workflow.getProgramWorkflowId());
+				}
+				for (ProgramWorkflowState state : workflow.getStates()) {
+					index.workflowIdByStateId.put(state.getProgramWorkflowStateId(), workflow.getProgramWorkflowId());
+				}
+			}
+		}
+		return index;
+	}
+	
+	/**
+	 * @param workflowId the id of a workflow
+	 * @return the id of the program the workflow belongs to, or null if the workflow is not indexed
+	 */
+	public Integer getProgramIdForWorkflow(Integer workflowId) {
+		return programIdByWorkflowId.get(workflowId);
+	}
+	
+	/**
+	 * @param stateId the id of a state
+	 * @return the id of the workflow the state belongs to, or null if the state is not indexed
+	 */
+	public Integer getWorkflowIdForState(Integer stateId) {
+		return workflowIdByStateId.get(stateId);
+	}
+	
+	/**
+	 * @param conceptId the id of a concept
+	 * @return the id of the first workflow of a non-retired program that has the concept, or null if
+	 *         there is none
+	 */
+	public Integer getWorkflowIdForConcept(Integer conceptId) {
+		return workflowIdByConceptId.get(conceptId);
+	}
+}
@@ -0,0 +1,139 @@
+package org.openmrs.module.htmlformentry.util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Makes shallow copies of objects by calling each getter that has a matching setter. Finding the
+ * getter and setter pairs of a class takes a scan of its fields and methods, so it is done once per
+ * class and the resulting plan is reused for every object of that class that is copied. The pairs
+ * are the same ones the property-by-property copy in HtmlFormEntryUtil always used:
+ * <ul>
+ * <li>for each field of the class or its superclasses, every public no-argument method named get +
+ * the field name, ignoring case</li>
+ * <li>paired with the public method named set + the field name, ignoring case, or if there are
+ * several, the first one that takes the getter's return type</li>
+ * <li>as long as the setter takes exactly the getter's return type</li>
+ * </ul>
+ * Null values are not copied, and the copy is shallow, so collections are shared with the source.
+ */
+public class PropertyCopier {
+	
+	private static final ClassValue<PropertyCopier> copiers = new ClassValue<PropertyCopier>() {
+		
+		@Override
+		protected PropertyCopier computeValue(Class<?> type) {
+			return new PropertyCopier(type);
+		}
+	};
+	
+	private final Class<?> type;
+	
+	private final Method[] getters;
+	
+	private final Method[] setters;
+	
+	private PropertyCopier(Class<?> type) {
+		this.type = type;
+		
+		Map<String, List<Method>> methodsByName = new LinkedHashMap<String, List<Method>>();
+		for (Method m : type.getMethods()) {
+			String name = m.getName().toUpperCase();
+			List<Method> methods = methodsByName.get(name);
+			if (methods == null) {
+				methods = new ArrayList<Method>();
+				methodsByName.put(name, methods);
+			}
+			methods.add(m);
+		}
+		
+		Set<String> fieldNames = new HashSet<String>();
+		for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+			for (Field f : c.getDeclaredFields()) {
+				fieldNames.add(f.getName());
+			}
+		}
+		
+		List<Method> getterList = new ArrayList<Method>();
+		List<Method> setterList = new ArrayList<Method>();
+		for (String root : fieldNames) {
+			List<Method> candidateGetters = methodsByName.get("GET" + root.toUpperCase());
+			if (candidateGetters == null) {
+				continue;
+			}
+			for (Method getter : candidateGetters) {
+				if (getter.getParameterTypes().length != 0) {
+					continue;
+				}
+				Method setter = getSetter(methodsByName.get("SET" + root.toUpperCase()), getter);
+				//NOTE: kept as it always was; this tests the Collection class object, so collection properties are shared
+				if (setter != null && setter.getParameterTypes().length == 1
+				        && getter.getReturnType().equals(setter.getParameterTypes()[0])
+				        && !(getter.getReturnType().isInstance(Collection.class))) {
+					getterList.add(getter);
+					setterList.add(setter);
+				}
+			}
+		}
+		this.getters = getterList.toArray(new Method[getterList.size()]);
+		this.setters = setterList.toArray(new Method[setterList.size()]);
+	}
+	
+	/**
+	 * Picks the setter for a getter, since a property may have overloaded setters (e.g.
+	 * Encounter.setProvider)
+	 */
+	private static Method getSetter(List<Method> setterMethods, Method getter) {
+		if (setterMethods == null || setterMethods.isEmpty()) {
+			return null;
+		}
+		if (setterMethods.size() == 1) {
+			return setterMethods.get(0);
+		}
+		for (Method m : setterMethods) {
+			for (Class<?> parameter : m.getParameterTypes()) {
+				if (getter.getReturnType().equals(parameter)) {
+					return m;
+				}
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * @param type the class of the objects to copy
+	 * @return the copier for the class, which is created the first time it is asked for
+	 */
+	public static PropertyCopier forClass(Class<?> type) {
+		return copiers.get(type);
+	}
+	
+	/**
+	 * @param source the object to copy, which must be of exactly the class of this copier
+	 * @return a new instance of the class, with the properties of source copied onto it
+	 */
+	public Object copy(Object source) throws Exception {
+		Object ret = type.newInstance();
+		for (int i = 0; i < getters.length; i++) {
+			Object value = getters[i].invoke(source);
+			if (value != null) {
+				setters[i].invoke(ret, value);
+			}
+		}
+		return ret;
+	}
+	
+	/**
+	 * @return the number of properties this copier copies
+	 */
+	public int getPropertyCount() {
+		return getters.length;
+	}
+}
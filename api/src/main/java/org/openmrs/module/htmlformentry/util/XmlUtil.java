@@ -0,0 +1,118 @@
+package org.openmrs.module.htmlformentry.util;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Map;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * Parses and serializes xml for the module. Looking up and configuring a DocumentBuilderFactory or
+ * TransformerFactory goes through the service loader, which is expensive, and forms are parsed and
+ * serialized several times per render, so the factories are created once and each thread reuses its
+ * own DocumentBuilder and Transformer, which are reset before every use.
+ */
+public class XmlUtil {
+	
+	private static final DocumentBuilderFactory documentBuilderFactory = newSecureDocumentBuilderFactory();
+	
+	private static final TransformerFactory transformerFactory = TransformerFactory.newInstance();
+	
+	private static final ThreadLocal<DocumentBuilder> documentBuilders = new ThreadLocal<DocumentBuilder>();
+	
+	private static final ThreadLocal<Transformer> transformers = new ThreadLocal<Transformer>();
+	
+	/**
+	 * Parses an xml string into a Document, with external entities disabled
+	 *
+	 * @param xml the xml to parse
+	 * @return the parsed Document
+	 */
+	public static Document parse(String xml) throws ParserConfigurationException, SAXException, IOException {
+		return getDocumentBuilder().parse(new InputSource(new StringReader(xml)));
+	}
+	
+	/**
+	 * @return a new, empty Document
+	 */
+	public static Document newDocument() throws ParserConfigurationException {
+		return getDocumentBuilder().newDocument();
+	}
+	
+	/**
+	 * Serializes a node with an identity transform
+	 *
+	 * @param node the node to serialize
+	 * @param outputProperties output properties (see {@link javax.xml.transform.OutputKeys}) to apply,
+	 *            may be null
+	 * @return the serialized node
+	 */
+	public static String toString(Node node, Map<String, String> outputProperties) throws TransformerException {
+		Transformer transformer = getTransformer();
+		if (outputProperties != null) {
+			for (Map.Entry<String, String> e : outputProperties.entrySet()) {
+				transformer.setOutputProperty(e.getKey(), e.getValue());
+			}
+		}
+		StringWriter sw = new StringWriter();
+		transformer.transform(new DOMSource(node), new StreamResult(sw));
+		return sw.toString();
+	}
+	
+	private static DocumentBuilder getDocumentBuilder() throws ParserConfigurationException {
+		DocumentBuilder db = documentBuilders.get();
+		if (db == null) {
+			// factories are not guaranteed to be thread-safe
+			synchronized (documentBuilderFactory) {
+				db = documentBuilderFactory.newDocumentBuilder();
+			}
+			documentBuilders.set(db);
+		} else {
+			db.reset();
+		}
+		return db;
+	}
+	
+	private static Transformer getTransformer() throws TransformerConfigurationException {
+		Transformer transformer = transformers.get();
+		if (transformer == null) {
+			synchronized (transformerFactory) {
+				transformer = transformerFactory.newTransformer();
+			}
+			transformers.set(transformer);
+		} else {
+			transformer.reset();
+		}
+		return transformer;
+	}
+	
+	private static DocumentBuilderFactory newSecureDocumentBuilderFactory() {
+		DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+		
+		// Disable XXE: security measure to prevent DOS, arbitrary-file-read, and possibly RCE
+		dbf.setExpandEntityReferences(false);
+		try {
+			dbf.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+			dbf.setFeature("http://xml.org/sax/features/external-general-entities", false);
+			dbf.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+		}
+		catch (ParserConfigurationException e) {
+			throw new IllegalStateException("Unable to configure a secure xml parser", e);
+		}
+		return dbf;
+	}
+}
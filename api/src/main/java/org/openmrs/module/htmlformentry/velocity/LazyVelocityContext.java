@@ -0,0 +1,96 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.htmlformentry.velocity;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.apache.velocity.VelocityContext;
+
+/**
+ * A {@link VelocityContext} whose entries may be registered as suppliers that are only evaluated the
+ * first time a template references them. This lets a {@link org.openmrs.module.htmlformentry.FormEntrySession}
+ * offer expensive variables (relationships, person attributes, etc) without paying for them on
+ * forms that never use velocity.
+ */
+public class LazyVelocityContext extends VelocityContext {
+	
+	private final Map<String, Supplier<?>> suppliers = new LinkedHashMap<String, Supplier<?>>();
+	
+	/**
+	 * Registers a supplier for the given key. The supplier is called at most once, the first time the
+	 * key is looked up, and its result then behaves exactly like a value added with
+	 * {@link #put(String, Object)}. A later put (or putLazy) with the same key replaces it.
+	 *
+	 * @param key the name of the variable
+	 * @param supplier supplies the value of the variable
+	 */
+	public void putLazy(String key, Supplier<?> supplier) {
+		if (key == null) {
+			return;
+		}
+		super.internalRemove(key);
+		suppliers.put(key, supplier);
+	}
+	
+	/**
+	 * @return true if the given key is registered but has not been evaluated yet
+	 */
+	public boolean isPending(String key) {
+		return suppliers.containsKey(key);
+	}
+	
+	@Override
+	public Object internalGet(String key) {
+		Supplier<?> supplier = suppliers.remove(key);
+		if (supplier != null) {
+			Object value = supplier.get();
+			super.internalPut(key, value);
+			return value;
+		}
+		return super.internalGet(key);
+	}
+	
+	@Override
+	public Object internalPut(String key, Object value) {
+		suppliers.remove(key);
+		return super.internalPut(key, value);
+	}
+	
+	@Override
+	public boolean internalContainsKey(Object key) {
+		return suppliers.containsKey(key) || super.internalContainsKey(key);
+	}
+	
+	@Override
+	public Object[] internalGetKeys() {
+		Set<Object> keys = new LinkedHashSet<Object>();
+		for (Object key : super.internalGetKeys()) {
+			keys.add(key);
+		}
+		keys.addAll(suppliers.keySet());
+		return keys.toArray();
+	}
+	
+	@Override
+	public Object internalRemove(Object key) {
+		if (suppliers.remove(key) != null) {
+			return null;
+		}
+		return super.internalRemove(key);
+	}
+}
@@ -23,7 +23,10 @@ import org.openmrs.module.htmlformentry.FormEntrySession;
 public interface VelocityContextContentProvider {
 	
 	/**
-	 * Called by {@link FormEntrySession} after instantiating and populating a velocity context
+	 * Called by {@link FormEntrySession} after instantiating and populating a velocity context. This
+	 * runs for every session, whether or not the form uses velocity, so providers whose content needs
+	 * a query should register it with {@link FormEntrySession#addLazyToVelocityContext} instead of
+	 * putting it directly
 	 * 
 	 * @param session
 	 * @param velocityContext
@@ -1,7 +1,6 @@
 package org.openmrs.module.htmlformentry.widget;
 
 import javax.servlet.http.HttpServletRequest;
-import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
 
@@ -9,7 +8,9 @@ import org.openmrs.api.context.Context;
 import org.openmrs.module.htmlformentry.FormEntryContext;
 import org.openmrs.module.htmlformentry.FormEntryContext.Mode;
 import org.openmrs.module.htmlformentry.HtmlFormEntryConstants;
+import org.openmrs.module.htmlformentry.HtmlFormEntryGlobalProperties;
 import org.openmrs.module.htmlformentry.HtmlFormEntryUtil;
+import org.openmrs.module.htmlformentry.util.CachedDateFormat;
 import org.springframework.util.StringUtils;
 
 /**
@@ -29,22 +30,22 @@ public class DateWidget implements Widget {
 	public DateWidget() {
 	}
 	
-	private SimpleDateFormat dateFormat() {
+	private CachedDateFormat dateFormat() {
 		String df = dateFormat != null ? dateFormat
-		        : Context.getAdministrationService().getGlobalProperty(HtmlFormEntryConstants.GP_DATE_FORMAT);
+		        : HtmlFormEntryGlobalProperties.getGlobalProperty(HtmlFormEntryConstants.GP_DATE_FORMAT);
 		if (StringUtils.hasText(df)) {
-			return new SimpleDateFormat(df, Context.getLocale());
+			return CachedDateFormat.getInstance(df, Context.getLocale());
 		} else {
-			return Context.getDateFormat();
+			return CachedDateFormat.getInstance(Context.getDateFormat().toPattern(), Context.getLocale());
 		}
 	}
 	
 	public String getYearsRange() {
-		return Context.getAdministrationService().getGlobalProperty(HtmlFormEntryConstants.GP_YEARS_RANGE, "110,20");
+		return HtmlFormEntryGlobalProperties.getGlobalProperty(HtmlFormEntryConstants.GP_YEARS_RANGE, "110,20");
 	}
 	
 	public String jsDateFormat() {
-		String ret = dateFormat().toPattern();
+		String ret = dateFormat().getPattern();
 		if (ret.contains("yyyy"))
 			ret = ret.replaceAll("yyyy", "yy"); // jquery uses yy for 4-digit years
 		else if (ret.contains("yy"))
@@ -92,20 +93,20 @@ public class DateWidget implements Widget {
 			}
 			if (hidden && initialValue != null) {
 				// set the value here, since it won't be set by the ui widget
-				sb.append(" value=\"" + new SimpleDateFormat("yyyy-MM-dd").format(initialValue) + "\"");
+				sb.append(" value=\"" + CachedDateFormat.getInstance("yyyy-MM-dd").format(initialValue) + "\"");
 			}
 			sb.append(" />");
 			
 			if (!hidden) {
 				if ("true".equals(
-				    Context.getAdministrationService().getGlobalProperty(HtmlFormEntryConstants.GP_SHOW_DATE_FORMAT))) {
-					sb.append(" (" + dateFormat().toLocalizedPattern().toLowerCase() + ")");
+				    HtmlFormEntryGlobalProperties.getGlobalProperty(HtmlFormEntryConstants.GP_SHOW_DATE_FORMAT))) {
+					sb.append(" (" + dateFormat().getLocalizedPattern().toLowerCase() + ")");
 				}
 				
 				sb.append("<script>setupDatePicker('" + jsDateFormat() + "', '" + getYearsRange() + "','"
 				        + getLocaleForJquery() + "', '#" + fieldName + "-display', '#" + fieldName + "'");
 				if (initialValue != null)
-					sb.append(", '" + new SimpleDateFormat("yyyy-MM-dd").format(initialValue) + "'");
+					sb.append(", '" + CachedDateFormat.getInstance("yyyy-MM-dd").format(initialValue) + "'");
 				sb.append(")</script>");
 			}
 			return sb.toString();
@@ -1,7 +1,6 @@
 package org.openmrs.module.htmlformentry.widget;
 
 import javax.servlet.http.HttpServletRequest;
-import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
 
@@ -9,7 +8,9 @@ import org.openmrs.api.context.Context;
 import org.openmrs.module.htmlformentry.FormEntryContext;
 import org.openmrs.module.htmlformentry.FormEntryContext.Mode;
 import org.openmrs.module.htmlformentry.HtmlFormEntryConstants;
+import org.openmrs.module.htmlformentry.HtmlFormEntryGlobalProperties;
 import org.openmrs.module.htmlformentry.HtmlFormEntryUtil;
+import org.openmrs.module.htmlformentry.util.CachedDateFormat;
 import org.springframework.util.StringUtils;
 
 /**
@@ -32,13 +33,13 @@ public class TimeWidget implements Widget {
 		
 	}
 	
-	private SimpleDateFormat timeFormat() {
+	private CachedDateFormat timeFormat() {
 		String df = timeFormat != null ? timeFormat
-		        : Context.getAdministrationService().getGlobalProperty(HtmlFormEntryConstants.GP_TIME_FORMAT);
+		        : HtmlFormEntryGlobalProperties.getGlobalProperty(HtmlFormEntryConstants.GP_TIME_FORMAT);
 		if (!StringUtils.hasText(df)) {
 			df = DEFAULT_TIME_FORMAT;
 		}
-		return new SimpleDateFormat(df, Context.getLocale());
+		return CachedDateFormat.getInstance(df, Context.getLocale());
 	}
 	
 	/**
@@ -70,13 +71,15 @@ public class TimeWidget implements Widget {
 			
 			if (hidden) {
 				sb.append("<input type=\"hidden\" class=\"hfe-hours\" name=\"").append(context.getFieldName(this))
-				        .append("hours").append("\" value=\"" + new SimpleDateFormat("HH").format(initialValue) + "\"/>");
+				        .append("hours")
+				        .append("\" value=\"" + CachedDateFormat.getInstance("HH").format(initialValue) + "\"/>");
 				sb.append("<input type=\"hidden\" class=\"hfe-minutes\" name=\"").append(context.getFieldName(this))
-				        .append("minutes").append("\" value=\"" + new SimpleDateFormat("mm").format(initialValue) + "\"/>");
+				        .append("minutes")
+				        .append("\" value=\"" + CachedDateFormat.getInstance("mm").format(initialValue) + "\"/>");
 				if (!hideSeconds) {
 					sb.append("<input type=\"hidden\" class=\"hfe-seconds\" name=\"").append(context.getFieldName(this))
 					        .append("seconds")
-					        .append("\" value=\"" + new SimpleDateFormat("ss").format(initialValue) + "\"/>");
+					        .append("\" value=\"" + CachedDateFormat.getInstance("ss").format(initialValue) + "\"/>");
 				}
 			} else {
 				sb.append("<select class=\"hfe-hours\" name=\"").append(context.getFieldName(this)).append("hours")
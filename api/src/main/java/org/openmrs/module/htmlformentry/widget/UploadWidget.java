@@ -6,6 +6,7 @@ import org.openmrs.Obs;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.htmlformentry.FormEntryContext;
 import org.openmrs.module.htmlformentry.HtmlFormEntryUtil;
+import org.openmrs.module.htmlformentry.util.ComplexObsUpload.UploadTooLargeException;
 import org.openmrs.obs.ComplexData;
 
 /**
@@ -66,6 +67,9 @@ public class UploadWidget implements Widget {
 			return (ComplexData) HtmlFormEntryUtil.getParameterAsType(request, context.getFieldName(this),
 			    ComplexData.class);
 		}
+		catch (UploadTooLargeException ex) {
+			throw ex;
+		}
 		catch (Exception ex) {
 			throw new IllegalArgumentException("Illegal value");
 		}
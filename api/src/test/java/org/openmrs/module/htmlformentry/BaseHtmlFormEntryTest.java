@@ -10,6 +10,7 @@ import org.dbunit.dataset.IDataSet;
 import org.dbunit.dataset.ReplacementDataSet;
 import org.dbunit.dataset.xml.FlatXmlDataSet;
 import org.dbunit.dataset.xml.FlatXmlProducer;
+import org.junit.Before;
 import org.openmrs.module.ModuleUtil;
 import org.openmrs.test.BaseModuleContextSensitiveTest;
 import org.openmrs.util.OpenmrsClassLoader;
@@ -23,6 +24,18 @@ public abstract class BaseHtmlFormEntryTest extends BaseModuleContextSensitiveTe
 	
 	static Map<String, IDataSet> cachedDataSets = new HashMap<>();
 	
+	@Before
+	public void clearGlobalPropertySnapshot() {
+		// global properties restored by a rolled back transaction, or loaded from a dataset, are not seen by the listener
+		HtmlFormEntryGlobalProperties.clearSnapshot();
+	}
+	
+	@Before
+	public void clearOrderMetadataCache() {
+		// order metadata added by a dataset is not seen by options cached in an earlier test
+		OrderMetadataSnapshot.clearCache();
+	}
+	
 	public void executeVersionedDataSet(String datasetName) throws Exception {
 		IDataSet dataSet = cachedDataSets.get(datasetName);
 		if (dataSet == null) {
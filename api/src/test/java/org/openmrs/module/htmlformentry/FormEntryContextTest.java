@@ -1,10 +1,20 @@
 package org.openmrs.module.htmlformentry;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.openmrs.Concept;
+import org.openmrs.Drug;
+import org.openmrs.Encounter;
+import org.openmrs.Obs;
 import org.openmrs.module.htmlformentry.widget.DateWidget;
 import org.openmrs.module.htmlformentry.widget.DropdownWidget;
 import org.openmrs.module.htmlformentry.widget.ErrorWidget;
@@ -45,4 +55,67 @@ public class FormEntryContextTest {
 		assertNotNull(context.getErrorDivIds());
 	}
 	
+	@Test
+	public void removeExistingObs_shouldRemoveEachObsWithTheAnswerOnce() {
+		Concept question = new Concept(1);
+		Obs first = codedObs(question, new Concept(10));
+		Obs second = codedObs(question, new Concept(10));
+		Obs other = codedObs(question, new Concept(11));
+		context.setupExistingData(encounterWith(first, second, other));
+		
+		Obs removed1 = context.removeExistingObs(question, new Concept(10));
+		Obs removed2 = context.removeExistingObs(question, new Concept(10));
+		assertEquals(new HashSet<Obs>(Arrays.asList(first, second)), new HashSet<Obs>(Arrays.asList(removed1, removed2)));
+		assertNull(context.removeExistingObs(question, new Concept(10)));
+		assertNull(context.removeExistingObs(new Concept(2), new Concept(11)));
+		
+		List<Obs> remaining = context.getExistingObs().get(question);
+		assertEquals(1, remaining.size());
+		assertTrue(remaining.contains(other));
+		assertEquals(other, context.removeExistingObs(Arrays.asList(new Concept(2), question), new Concept(11)));
+		assertNull(context.getExistingObs().get(question));
+	}
+	
+	@Test
+	public void removeExistingObs_shouldFindObsByDrugAndNumericAnswers() {
+		Concept question = new Concept(1);
+		Drug drug = new Drug(5);
+		Obs drugObs = codedObs(question, new Concept(10));
+		drugObs.setValueDrug(drug);
+		Obs numericObs = new Obs();
+		numericObs.setConcept(question);
+		numericObs.setValueNumeric(2d);
+		context.setupExistingData(encounterWith(drugObs, numericObs));
+		
+		assertNull(context.removeExistingObs(question, "3"));
+		assertEquals(numericObs, context.removeExistingObs(question, "2.0"));
+		assertEquals(drugObs, context.removeExistingObs(question, new Drug(5)));
+		// the obs has gone, whatever answer it is looked up by
+		assertNull(context.removeExistingObs(question, new Concept(10)));
+		assertNull(context.removeExistingObs(question, (Concept) null));
+	}
+	
+	@Test
+	public void getSnapshot_shouldReturnTheSnapshotSetForTheType() {
+		assertNull(context.getSnapshot(StringBuilder.class));
+		StringBuilder snapshot = new StringBuilder();
+		context.setSnapshot(StringBuilder.class, snapshot);
+		assertTrue(snapshot == context.getSnapshot(StringBuilder.class));
+		assertNull(new FormEntryContext(FormEntryContext.Mode.ENTER).getSnapshot(StringBuilder.class));
+	}
+	
+	private Obs codedObs(Concept question, Concept answer) {
+		Obs obs = new Obs();
+		obs.setConcept(question);
+		obs.setValueCoded(answer);
+		return obs;
+	}
+	
+	private Encounter encounterWith(Obs... obs) {
+		Encounter encounter = new Encounter();
+		for (Obs o : obs) {
+			encounter.addObs(o);
+		}
+		return encounter;
+	}
 }
@@ -31,6 +31,7 @@ import org.openmrs.Person;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.ModuleUtil;
 import org.openmrs.module.htmlformentry.FormEntryContext.Mode;
+import org.openmrs.module.htmlformentry.metrics.QueryCounts;
 import org.openmrs.util.OpenmrsConstants;
 import org.openmrs.util.OpenmrsUtil;
 import org.springframework.mock.web.MockHttpServletRequest;
@@ -41,6 +42,10 @@ public abstract class RegressionTestHelper {
 	
 	private static final String XML_DATASET_PATH = "org/openmrs/module/htmlformentry/include/";
 	
+	private long renderStatements = 0;
+	
+	private long submitStatements = 0;
+	
 	/**
 	 * @return will be used to look up the file test/.../include/{formName}.xml
 	 */
@@ -252,6 +257,40 @@ public abstract class RegressionTestHelper {
 	public void testFormEditSessionAttribute(FormEntrySession formEntrySession) {
 	}
 	
+	/**
+	 * Override this to fail the test if opening the form in any mode issues more SQL statements than
+	 * this, e.g. because a tag queries once for each concept or obs it refers to.
+	 * 
+	 * @return the most SQL statements opening the form may issue, or null to not count them
+	 */
+	public Integer getRenderStatementBudget() {
+		return null;
+	}
+	
+	/**
+	 * Override this to fail the test if validating and saving a submission of the form issues more
+	 * SQL statements than this.
+	 * 
+	 * @return the most SQL statements submitting the form may issue, or null to not count them
+	 */
+	public Integer getSubmitStatementBudget() {
+		return null;
+	}
+	
+	/**
+	 * @return the most SQL statements opening the form took in any mode, if they were counted
+	 */
+	public long getRenderStatements() {
+		return renderStatements;
+	}
+	
+	/**
+	 * @return the SQL statements the first submission of the form took, if they were counted
+	 */
+	public long getSubmitStatements() {
+		return submitStatements;
+	}
+	
 	public void run() throws Exception {
 		// setup the blank form for the specified patient
 		Patient patient = getPatient();
@@ -440,11 +479,19 @@ public abstract class RegressionTestHelper {
 		fakeForm.setXmlData(xml);
 		fakeForm.setForm(new Form(1));
 		fakeForm.getForm().setEncounterType(new EncounterType(1));
-		FormEntrySession session = new FormEntrySession(patient, null, FormEntryContext.Mode.ENTER, fakeForm,
-		        new MockHttpSession());
-		session.setAttributes(getFormEntrySessionAttributes());
-		session.getHtmlToDisplay();
-		return session;
+		QueryCounts before = countQueries(getRenderStatementBudget());
+		try {
+			FormEntrySession session = new FormEntrySession(patient, null, FormEntryContext.Mode.ENTER, fakeForm,
+			        new MockHttpSession());
+			session.setAttributes(getFormEntrySessionAttributes());
+			session.getHtmlToDisplay();
+			renderStatements = Math.max(renderStatements,
+			    assertWithinStatementBudget("Opening", getRenderStatementBudget(), before));
+			return session;
+		}
+		finally {
+			stopCountingQueries(before);
+		}
 	}
 	
 	private FormEntrySession setupFormViewSession(Patient patient, Encounter encounter, String filename) throws Exception {
@@ -454,11 +501,19 @@ public abstract class RegressionTestHelper {
 		fakeForm.setXmlData(xml);
 		fakeForm.setForm(new Form(1));
 		fakeForm.getForm().setEncounterType(new EncounterType(1));
-		FormEntrySession session = new FormEntrySession(patient, encounter, FormEntryContext.Mode.VIEW, fakeForm,
-		        new MockHttpSession());
-		session.setAttributes(getFormEntrySessionAttributes());
-		session.getHtmlToDisplay();
-		return session;
+		QueryCounts before = countQueries(getRenderStatementBudget());
+		try {
+			FormEntrySession session = new FormEntrySession(patient, encounter, FormEntryContext.Mode.VIEW, fakeForm,
+			        new MockHttpSession());
+			session.setAttributes(getFormEntrySessionAttributes());
+			session.getHtmlToDisplay();
+			renderStatements = Math.max(renderStatements,
+			    assertWithinStatementBudget("Opening", getRenderStatementBudget(), before));
+			return session;
+		}
+		finally {
+			stopCountingQueries(before);
+		}
 	}
 	
 	private FormEntrySession setupFormEditSession(Patient patient, Encounter encounter, String filename) throws Exception {
@@ -468,11 +523,19 @@ public abstract class RegressionTestHelper {
 		fakeForm.setXmlData(xml);
 		fakeForm.setForm(new Form(1));
 		fakeForm.getForm().setEncounterType(new EncounterType(1));
-		FormEntrySession session = new FormEntrySession(patient, encounter, FormEntryContext.Mode.EDIT, fakeForm,
-		        new MockHttpSession());
-		session.setAttributes(getFormEntrySessionAttributes());
-		session.getHtmlToDisplay();
-		return session;
+		QueryCounts before = countQueries(getRenderStatementBudget());
+		try {
+			FormEntrySession session = new FormEntrySession(patient, encounter, FormEntryContext.Mode.EDIT, fakeForm,
+			        new MockHttpSession());
+			session.setAttributes(getFormEntrySessionAttributes());
+			session.getHtmlToDisplay();
+			renderStatements = Math.max(renderStatements,
+			    assertWithinStatementBudget("Opening", getRenderStatementBudget(), before));
+			return session;
+		}
+		finally {
+			stopCountingQueries(before);
+		}
 	}
 	
 	private String loadXmlFromFile(String filename) throws Exception {
@@ -549,24 +612,66 @@ public abstract class RegressionTestHelper {
 	
 	private SubmissionResults doSubmission(FormEntrySession session, HttpServletRequest request) throws Exception {
 		SubmissionResults results = new SubmissionResults();
-		session.prepareForSubmit();
-		List<FormSubmissionError> validationErrors = session.getSubmissionController()
-		        .validateSubmission(session.getContext(), request);
-		if (validationErrors != null && validationErrors.size() > 0) {
-			results.setValidationErrors(validationErrors);
+		QueryCounts before = countQueries(getSubmitStatementBudget());
+		try {
+			session.prepareForSubmit();
+			List<FormSubmissionError> validationErrors = session.getSubmissionController()
+			        .validateSubmission(session.getContext(), request);
+			if (validationErrors != null && validationErrors.size() > 0) {
+				results.setValidationErrors(validationErrors);
+				return results;
+			}
+			session.getSubmissionController().handleFormSubmission(session, request);
+			
+			if (session.getContext().getMode() == Mode.ENTER && session.hasEncouterTag()
+			        && (session.getSubmissionActions().getEncountersToCreate() == null
+			                || session.getSubmissionActions().getEncountersToCreate().size() == 0))
+				throw new IllegalArgumentException("This form is not going to create an encounter");
+			Context.getService(HtmlFormEntryService.class).applyActions(session);
+			if (before != null) {
+				// the test transaction is not committed, so flush to count the inserts and updates
+				Context.flushSession();
+				submitStatements = assertWithinStatementBudget("Submitting", getSubmitStatementBudget(), before);
+			}
+			results.setPatient(session.getPatient());
+			results.setEncounterCreated(session.getEncounter());
+			results.setFormEntrySession(session);
 			return results;
 		}
-		session.getSubmissionController().handleFormSubmission(session, request);
-		
-		if (session.getContext().getMode() == Mode.ENTER && session.hasEncouterTag()
-		        && (session.getSubmissionActions().getEncountersToCreate() == null
-		                || session.getSubmissionActions().getEncountersToCreate().size() == 0))
-			throw new IllegalArgumentException("This form is not going to create an encounter");
-		Context.getService(HtmlFormEntryService.class).applyActions(session);
-		results.setPatient(session.getPatient());
-		results.setEncounterCreated(session.getEncounter());
-		results.setFormEntrySession(session);
-		return results;
+		finally {
+			stopCountingQueries(before);
+		}
+	}
+	
+	private QueryCounts countQueries(Integer statementBudget) {
+		if (statementBudget == null) {
+			return null;
+		}
+		HtmlFormEntryUtil.getService().startCountingQueries();
+		return HtmlFormEntryUtil.getService().getQueryCounts();
+	}
+	
+	/**
+	 * Ends the counting started by {@link #countQueries(Integer)}, if it started any
+	 */
+	private void stopCountingQueries(QueryCounts before) {
+		if (before != null) {
+			HtmlFormEntryUtil.getService().stopCountingQueries();
+		}
+	}
+	
+	/**
+	 * @return the number of statements used since before
+	 */
+	private long assertWithinStatementBudget(String what, Integer statementBudget, QueryCounts before) {
+		if (before == null) {
+			return 0;
+		}
+		QueryCounts used = HtmlFormEntryUtil.getService().getQueryCounts().minus(before);
+		String message = what + " " + getFormName() + " took " + used + ", over the budget of " + statementBudget
+		        + " statements";
+		Assert.assertTrue(message, used.getStatements() <= statementBudget);
+		return used.getStatements();
 	}
 	
 	public class SubmissionResults {
@@ -0,0 +1,143 @@
+package org.openmrs.module.htmlformentry.compiler;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.module.htmlformentry.FormEntrySession;
+import org.openmrs.module.htmlformentry.HtmlFormEntryGenerator;
+import org.openmrs.module.htmlformentry.handler.AttributeDescriptor;
+import org.openmrs.module.htmlformentry.handler.TagHandler;
+import org.w3c.dom.Node;
+
+public class CompiledFormCacheTest {
+	
+	private static final String XML = "<htmlform><h1 class=\"title\">Title</h1><br/>"
+	        + "<p>Weight: <weight units=\"kg\"/></p></htmlform>";
+	
+	private HtmlFormEntryGenerator defaultHandler;
+	
+	private CountingHandler weightHandler;
+	
+	private Map<String, TagHandler> handlers;
+	
+	@Before
+	public void setUp() {
+		defaultHandler = new HtmlFormEntryGenerator();
+		weightHandler = new CountingHandler();
+		Map<String, TagHandler> map = new HashMap<String, TagHandler>();
+		map.put("weight", weightHandler);
+		handlers = Collections.unmodifiableMap(map);
+	}
+	
+	@Test
+	public void render_shouldRenderStaticContentAndCallHandlersOfDynamicTags() throws Exception {
+		CompiledForm form = CompiledForm.compile(XML, handlers, defaultHandler);
+		
+		assertThat(render(form), is("<htmlform><h1 class=\"title\">Title</h1><br/><p>Weight: [kg]</p></htmlform>"));
+		assertThat(render(form), is("<htmlform><h1 class=\"title\">Title</h1><br/><p>Weight: [kg]</p></htmlform>"));
+		assertThat(weightHandler.count, is(2));
+	}
+	
+	@Test
+	public void compile_shouldKeepTheAttributesOfEachElement() throws Exception {
+		CompiledForm form = CompiledForm.compile(XML, handlers, defaultHandler);
+		
+		Node weight = form.getDocument().getElementsByTagName("weight").item(0);
+		assertThat(CompiledForm.getCompiledAttributes(weight).get("units"), is("kg"));
+		assertNull(CompiledForm.getCompiledAttributes(weight.getParentNode().getFirstChild()));
+	}
+	
+	@Test
+	public void borrow_shouldReuseAReleasedCompiledForm() throws Exception {
+		CompiledFormCache cache = new CompiledFormCache();
+		
+		CompiledForm first = cache.borrow(XML, handlers, defaultHandler);
+		CompiledForm second = cache.borrow(XML, handlers, defaultHandler);
+		assertThat(second, not(sameInstance(first)));
+		
+		cache.release(first, handlers);
+		assertThat(cache.borrow(XML, handlers, defaultHandler), sameInstance(first));
+	}
+	
+	@Test
+	public void borrow_shouldRecompileWhenTheHandlersChange() throws Exception {
+		CompiledFormCache cache = new CompiledFormCache();
+		CompiledForm form = cache.borrow(XML, handlers, defaultHandler);
+		cache.release(form, handlers);
+		
+		Map<String, TagHandler> changed = new HashMap<String, TagHandler>(handlers);
+		changed.remove("weight");
+		CompiledForm recompiled = cache.borrow(XML, changed, defaultHandler);
+		
+		assertThat(recompiled, not(sameInstance(form)));
+		assertThat(render(recompiled), is(
+		    "<htmlform><h1 class=\"title\">Title</h1><br/><p>Weight: <weight units=\"kg\"></weight></p></htmlform>"));
+		assertThat(cache.size(), is(0));
+	}
+	
+	@Test
+	public void release_shouldDropFormsCompiledAgainstOldHandlers() throws Exception {
+		CompiledFormCache cache = new CompiledFormCache();
+		CompiledForm form = cache.borrow(XML, handlers, defaultHandler);
+		
+		cache.release(form, new HashMap<String, TagHandler>(handlers));
+		
+		assertThat(cache.size(), is(0));
+	}
+	
+	@Test
+	public void release_shouldKeepAtMostTheMaximumNumberOfIdleCopies() throws Exception {
+		CompiledFormCache cache = new CompiledFormCache(1, 1);
+		CompiledForm first = cache.borrow(XML, handlers, defaultHandler);
+		CompiledForm second = cache.borrow(XML, handlers, defaultHandler);
+		cache.release(first, handlers);
+		cache.release(second, handlers);
+		assertThat(cache.size(), is(1));
+		
+		CompiledForm other = cache.borrow("<htmlform/>", handlers, defaultHandler);
+		cache.release(other, handlers);
+		assertThat(cache.size(), is(1));
+		assertThat(cache.borrow("<htmlform/>", handlers, defaultHandler), sameInstance(other));
+	}
+	
+	private String render(CompiledForm form) {
+		StringWriter sw = new StringWriter();
+		PrintWriter out = new PrintWriter(sw);
+		form.render(null, out, defaultHandler);
+		out.flush();
+		return sw.toString();
+	}
+	
+	private static class CountingHandler implements TagHandler {
+		
+		private int count = 0;
+		
+		@Override
+		public List<AttributeDescriptor> getAttributeDescriptors() {
+			return null;
+		}
+		
+		@Override
+		public boolean doStartTag(FormEntrySession session, PrintWriter out, Node parent, Node node) {
+			count++;
+			out.print("[" + CompiledForm.getCompiledAttributes(node).get("units") + "]");
+			return false;
+		}
+		
+		@Override
+		public void doEndTag(FormEntrySession session, PrintWriter out, Node parent, Node node) {
+		}
+	}
+}
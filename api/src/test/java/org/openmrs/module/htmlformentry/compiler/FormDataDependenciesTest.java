@@ -0,0 +1,56 @@
+package org.openmrs.module.htmlformentry.compiler;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.openmrs.Concept;
+import org.openmrs.Drug;
+import org.openmrs.Location;
+import org.openmrs.module.htmlformentry.HtmlFormEntryGenerator;
+import org.openmrs.module.htmlformentry.handler.EncounterLocationHandler;
+import org.openmrs.module.htmlformentry.handler.ObsGroupTagHandler;
+import org.openmrs.module.htmlformentry.handler.ObsTagHandler;
+import org.openmrs.module.htmlformentry.handler.TagHandler;
+
+public class FormDataDependenciesTest {
+	
+	private static final String GROUP_UUID = "9b5b2cb4-4e9c-4d8e-b8a6-0d7c3a5a3a77";
+	
+	@Test
+	public void analyze_shouldFindTheMetadataReferencedById() throws Exception {
+		String xml = "<htmlform><obs conceptId=\"5089\" answerConceptIds=\"1065, 1066,CIEL:1067\"/>"
+		        + "<obsgroup groupingConceptId=\"" + GROUP_UUID + "\"><p><obs conceptId=\"5497\" answerDrugId=\"2\"/></p>"
+		        + "</obsgroup><encounterLocation default=\"2\" order=\"1,Outpatient Clinic\"/></htmlform>";
+		Map<String, TagHandler> handlers = new HashMap<String, TagHandler>();
+		handlers.put("obs", new ObsTagHandler());
+		handlers.put("obsgroup", new ObsGroupTagHandler());
+		handlers.put("encounterLocation", new EncounterLocationHandler());
+		CompiledForm form = CompiledForm.compile(xml, handlers, new HtmlFormEntryGenerator());
+		
+		FormDataDependencies dependencies = form.getDataDependencies();
+		assertThat(dependencies.getIds(Concept.class), contains(5089, 1065, 1066, 5497));
+		assertThat(dependencies.getIds(Drug.class), contains(2));
+		assertThat(dependencies.getIds(Location.class), contains(2, 1));
+	}
+	
+	@Test
+	public void analyze_shouldFindNothingInAFormWithoutTags() throws Exception {
+		CompiledForm form = CompiledForm.compile("<htmlform><p>Nothing here</p></htmlform>",
+		    new HashMap<String, TagHandler>(), new HtmlFormEntryGenerator());
+		assertThat(form.getDataDependencies().isEmpty(), is(true));
+	}
+	
+	@Test
+	public void analyze_shouldFindNothingInAFormThatOnlyRefersToMetadataByUuid() throws Exception {
+		Map<String, TagHandler> handlers = new HashMap<String, TagHandler>();
+		handlers.put("obs", new ObsTagHandler());
+		CompiledForm form = CompiledForm.compile("<htmlform><obs conceptId=\"" + GROUP_UUID + "\"/></htmlform>", handlers,
+		    new HtmlFormEntryGenerator());
+		assertThat(form.getDataDependencies().isEmpty(), is(true));
+	}
+}
@@ -0,0 +1,137 @@
+package org.openmrs.module.htmlformentry.metrics;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.module.htmlformentry.FormEntryContext.Mode;
+import org.openmrs.module.htmlformentry.metrics.FormTimings.Phase;
+import org.openmrs.module.htmlformentry.metrics.FormTimings.Stage;
+import org.openmrs.module.htmlformentry.metrics.FormTimings.TagTiming;
+
+public class JmxFormEntryMetricsTest {
+	
+	private JmxFormEntryMetrics metrics;
+	
+	@Before
+	public void setUp() {
+		metrics = new JmxFormEntryMetrics();
+	}
+	
+	@Test
+	public void getTagTimings_shouldCountOnlyStartTagsAsCalls() {
+		FormTimings timings = new FormTimings(Phase.RENDER, "Vitals", Mode.ENTER);
+		long start = System.nanoTime();
+		timings.addTagTime("obs", start, true);
+		timings.addTagTime("obs", start, false);
+		timings.addTagTime("obs", start, true);
+		timings.addTagTime("obs", start, false);
+		timings.addTagTime("section", start, true);
+		
+		List<TagTiming> tags = timings.getTagTimings();
+		assertThat(tags.size(), is(2));
+		for (TagTiming tag : tags) {
+			assertThat(tag.getCalls(), is("obs".equals(tag.getTagName()) ? 2 : 1));
+		}
+	}
+	
+	@Test
+	public void addStageTime_shouldAddUpRepeatedStages() {
+		FormTimings timings = new FormTimings(Phase.RENDER, "Vitals", Mode.ENTER);
+		long start = timings.addStageTime(Stage.TAGS, System.nanoTime());
+		timings.addStageTime(Stage.TAGS, start);
+		
+		assertThat(timings.getStageNanos().size(), is(1));
+		assertTrue(timings.getStageNanos().containsKey(Stage.TAGS));
+	}
+	
+	@Test
+	public void record_shouldAddUpTheTimingsOfEachPhaseAndForm() {
+		metrics.record(render("Vitals"));
+		metrics.record(render("Vitals"));
+		metrics.record(render(null));
+		metrics.record(new FormTimings(Phase.SUBMIT, "Vitals", Mode.ENTER));
+		
+		assertThat(metrics.getRenderCount(), is(3L));
+		assertThat(metrics.getSubmitCount(), is(1L));
+		assertThat(metrics.getFormRenderCounts().get("Vitals"), is(2L));
+		assertThat(metrics.getFormRenderCounts().get("(unnamed)"), is(1L));
+		assertThat(metrics.getFormSubmitCounts().get("Vitals"), is(1L));
+		assertThat(metrics.getTagHandlerCalls().get("obs"), is(3L));
+		assertTrue(metrics.getStageTimeMillis().containsKey("TAGS"));
+	}
+	
+	@Test
+	public void getFormSummaries_shouldPutTheFormsWithTheMostStatementsFirst() {
+		metrics.record(render("Vitals", 10));
+		metrics.record(render("Intake", 40));
+		metrics.record(render("Intake", 60));
+		metrics.record(render("Unmeasured"));
+		
+		List<FormMetricsSummary> summaries = metrics.getFormSummaries(Phase.RENDER);
+		assertThat(summaries.size(), is(3));
+		assertThat(summaries.get(0).getFormName(), is("Intake"));
+		assertThat(summaries.get(0).getAverageStatements(), is(50L));
+		assertThat(summaries.get(0).getMaxStatements(), is(60L));
+		assertThat(summaries.get(1).getFormName(), is("Vitals"));
+		assertThat(summaries.get(2).getFormName(), is("Unmeasured"));
+		assertThat(summaries.get(2).getQueryCountedCount(), is(0L));
+		assertThat(metrics.getFormRenderStatements().size(), is(2));
+		assertTrue(metrics.getFormSummaries(Phase.SUBMIT).isEmpty());
+	}
+	
+	@Test
+	public void reset_shouldClearAllTotals() {
+		metrics.record(render("Vitals"));
+		metrics.reset();
+		
+		assertThat(metrics.getRenderCount(), is(0L));
+		assertTrue(metrics.getFormRenderCounts().isEmpty());
+		assertTrue(metrics.getTagHandlerCalls().isEmpty());
+		assertTrue(metrics.getStageTimeMillis().isEmpty());
+	}
+	
+	@Test
+	public void register_shouldReplaceAnEarlierMBean() throws Exception {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(JmxFormEntryMetrics.OBJECT_NAME);
+		JmxFormEntryMetrics earlier = new JmxFormEntryMetrics();
+		earlier.register();
+		metrics.register();
+		try {
+			metrics.record(render("Vitals"));
+			assertThat((Long) server.getAttribute(name, "RenderCount"), is(1L));
+		}
+		finally {
+			metrics.unregister();
+		}
+		assertFalse(server.isRegistered(name));
+	}
+	
+	private FormTimings render(String formName) {
+		FormTimings timings = new FormTimings(Phase.RENDER, formName, Mode.ENTER);
+		long start = System.nanoTime();
+		timings.addTagTime("obs", start, true);
+		timings.addTagTime("obs", start, false);
+		timings.addStageTime(Stage.TAGS, start);
+		timings.finish();
+		return timings;
+	}
+	
+	private FormTimings render(String formName, long statements) {
+		FormTimings timings = new FormTimings(Phase.RENDER, formName, Mode.ENTER);
+		timings.startQueryCounts(new QueryCounts(100, 10, 50, 5, 5));
+		timings.finishQueryCounts(new QueryCounts(100 + statements, 10, 50, 5, 5));
+		timings.finish();
+		return timings;
+	}
+}
@@ -0,0 +1,76 @@
+package org.openmrs.module.htmlformentry.util;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class CachedDateFormatTest {
+	
+	@Test
+	public void getInstance_shouldReturnTheSameFormatForAPatternAndLocale() throws Exception {
+		CachedDateFormat format = CachedDateFormat.getInstance("dd/MMM/yyyy", Locale.ENGLISH);
+		
+		assertThat(CachedDateFormat.getInstance("dd/MMM/yyyy", Locale.ENGLISH), sameInstance(format));
+		assertThat(CachedDateFormat.getInstance("dd/MMM/yyyy", Locale.FRENCH), not(sameInstance(format)));
+		assertThat(CachedDateFormat.getInstance("dd/MMM/yyyy", Locale.ENGLISH, false), not(sameInstance(format)));
+	}
+	
+	@Test
+	public void format_shouldMatchSimpleDateFormat() throws Exception {
+		Date date = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse("2012-01-31 18:09:35");
+		CachedDateFormat format = CachedDateFormat.getInstance("dd/MMM/yyyy h:mm a", Locale.ENGLISH);
+		
+		assertThat(format.format(date), is(new SimpleDateFormat("dd/MMM/yyyy h:mm a", Locale.ENGLISH).format(date)));
+		assertThat(format.getLocalizedPattern(),
+		    is(new SimpleDateFormat("dd/MMM/yyyy h:mm a", Locale.ENGLISH).toLocalizedPattern()));
+	}
+	
+	@Test(expected = ParseException.class)
+	public void parse_shouldRejectInvalidDatesIfNotLenient() throws Exception {
+		CachedDateFormat.getInstance("yyyy-MM-dd", Locale.ENGLISH, false).parse("2012-02-31");
+	}
+	
+	@Test
+	public void format_shouldBeSafeToShareBetweenThreads() throws Exception {
+		final CachedDateFormat format = CachedDateFormat.getInstance("yyyy-MM-dd", Locale.ENGLISH);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+			for (int i = 0; i < 8; i++) {
+				final String expected = "20" + (10 + i) + "-0" + (1 + i) + "-1" + i;
+				results.add(executor.submit(new Callable<Boolean>() {
+					
+					@Override
+					public Boolean call() throws Exception {
+						for (int j = 0; j < 1000; j++) {
+							if (!expected.equals(format.format(format.parse(expected)))) {
+								return false;
+							}
+						}
+						return true;
+					}
+				}));
+			}
+			for (Future<Boolean> result : results) {
+				assertThat(result.get(), is(true));
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+}
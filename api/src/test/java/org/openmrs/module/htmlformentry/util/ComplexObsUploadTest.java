@@ -0,0 +1,56 @@
+package org.openmrs.module.htmlformentry.util;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.openmrs.obs.ComplexData;
+import org.springframework.mock.web.MockMultipartFile;
+
+public class ComplexObsUploadTest {
+	
+	private static final byte[] CONTENT = "scanned document".getBytes();
+	
+	@Test
+	public void toComplexData_shouldStreamTheUploadedFile() throws Exception {
+		MockMultipartFile file = new MockMultipartFile("upload", "scan.pdf", "application/pdf", CONTENT);
+		
+		ComplexData complexData = ComplexObsUpload.toComplexData(file, (long) CONTENT.length);
+		
+		assertThat(complexData.getTitle(), is("scan.pdf"));
+		assertThat(IOUtils.toByteArray((InputStream) complexData.getData()), is(CONTENT));
+	}
+	
+	@Test
+	public void toComplexData_shouldCountAnUploadAsInFlightWhileItIsRead() throws Exception {
+		MockMultipartFile file = new MockMultipartFile("upload", "scan.pdf", "application/pdf", CONTENT);
+		long before = ComplexObsUpload.getBytesInFlight();
+		
+		InputStream in = (InputStream) ComplexObsUpload.toComplexData(file, null).getData();
+		assertThat(ComplexObsUpload.getBytesInFlight(), is(before));
+		
+		in.read();
+		assertThat(ComplexObsUpload.getBytesInFlight(), is(before + CONTENT.length));
+		
+		IOUtils.toByteArray(in);
+		assertThat(ComplexObsUpload.getBytesInFlight(), is(before));
+		in.close();
+		assertThat(ComplexObsUpload.getBytesInFlight(), is(before));
+	}
+	
+	@Test
+	public void close_shouldStopCountingAnUploadThatWasOnlyPartlyRead() throws Exception {
+		MockMultipartFile file = new MockMultipartFile("upload", "scan.pdf", "application/pdf", CONTENT);
+		long before = ComplexObsUpload.getBytesInFlight();
+		
+		ComplexData complexData = ComplexObsUpload.toComplexData(file, null);
+		((InputStream) complexData.getData()).read();
+		assertThat(ComplexObsUpload.getBytesInFlight(), is(before + CONTENT.length));
+		
+		ComplexObsUpload.close(complexData);
+		assertThat(ComplexObsUpload.getBytesInFlight(), is(before));
+	}
+}
@@ -0,0 +1,56 @@
+package org.openmrs.module.htmlformentry.util;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.commons.lang.reflect.FieldUtils;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public class ConceptSetMembersTest {
+	
+	@Test
+	public void contains_shouldFindOnlyTheGivenIds() throws Exception {
+		ConceptSetMembers members = ConceptSetMembers.of(Arrays.asList(5089, 3, 18, 1000));
+		assertThat(members.size(), is(4));
+		for (int id : new int[] { 3, 18, 1000, 5089 }) {
+			assertThat(members.contains(id), is(true));
+		}
+		for (int id : new int[] { 0, 4, 19, 5090 }) {
+			assertThat(members.contains(id), is(false));
+		}
+	}
+	
+	@Test
+	public void isEmpty_shouldReturnTrueIfThereAreNoIds() throws Exception {
+		ConceptSetMembers members = ConceptSetMembers.of(Collections.<Integer> emptyList());
+		assertThat(members.isEmpty(), is(true));
+		assertThat(members.contains(1), is(false));
+	}
+	
+	@Test
+	@SuppressWarnings("unchecked")
+	public void clearCache_shouldClearTheCacheAgainWhenTheTransactionCompletes() throws Exception {
+		Map<Integer, ConceptSetMembers> cache = (Map<Integer, ConceptSetMembers>) FieldUtils
+		        .readStaticField(ConceptSetMembers.class, "cache", true);
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			ConceptSetMembers.clearCache();
+			// a search before the commit caches the members as they were
+			cache.put(1, ConceptSetMembers.of(Arrays.asList(2, 3)));
+			
+			for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+				synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+			}
+			assertThat(cache.isEmpty(), is(true));
+		}
+		finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package org.openmrs.module.htmlformentry.util;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.Date;
+
+import org.junit.Test;
+import org.openmrs.Concept;
+import org.openmrs.Encounter;
+import org.openmrs.Location;
+import org.openmrs.Obs;
+
+public class PropertyCopierTest {
+	
+	@Test
+	public void forClass_shouldReturnTheSameCopierForAClass() throws Exception {
+		assertThat(PropertyCopier.forClass(Obs.class), sameInstance(PropertyCopier.forClass(Obs.class)));
+		assertThat(PropertyCopier.forClass(Obs.class), not(sameInstance(PropertyCopier.forClass(Encounter.class))));
+	}
+	
+	@Test
+	public void copy_shouldCopyThePropertiesOfAnObs() throws Exception {
+		Obs obs = new Obs();
+		obs.setObsId(7);
+		obs.setConcept(new Concept(5089));
+		obs.setValueNumeric(70d);
+		obs.setObsDatetime(new Date());
+		obs.setComment("a comment");
+		
+		Obs copy = (Obs) PropertyCopier.forClass(Obs.class).copy(obs);
+		
+		assertThat(copy, not(sameInstance(obs)));
+		assertThat(copy.getObsId(), is(7));
+		assertThat(copy.getUuid(), is(obs.getUuid()));
+		assertThat(copy.getConcept(), sameInstance(obs.getConcept()));
+		assertThat(copy.getValueNumeric(), is(70d));
+		assertThat(copy.getObsDatetime(), is(obs.getObsDatetime()));
+		assertThat(copy.getComment(), is("a comment"));
+		assertThat(copy.getValueText(), nullValue());
+	}
+	
+	@Test
+	public void copy_shouldCopyAnEncounterWithOverloadedSetters() throws Exception {
+		Encounter encounter = new Encounter(3);
+		encounter.setEncounterDatetime(new Date());
+		encounter.setLocation(new Location(2));
+		
+		Encounter copy = (Encounter) PropertyCopier.forClass(Encounter.class).copy(encounter);
+		
+		assertThat(copy.getEncounterId(), is(3));
+		assertThat(copy.getEncounterDatetime(), is(encounter.getEncounterDatetime()));
+		assertThat(copy.getLocation(), sameInstance(encounter.getLocation()));
+	}
+}
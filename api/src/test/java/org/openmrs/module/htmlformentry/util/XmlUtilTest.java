@@ -0,0 +1,54 @@
+package org.openmrs.module.htmlformentry.util;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import javax.xml.transform.OutputKeys;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+public class XmlUtilTest {
+	
+	@Test
+	public void parse_shouldParseRepeatedlyOnTheSameThread() throws Exception {
+		Document first = XmlUtil.parse("<htmlform><obs conceptId=\"1\"/></htmlform>");
+		Document second = XmlUtil.parse("<htmlform><section/></htmlform>");
+		
+		assertThat(first.getElementsByTagName("obs").getLength(), is(1));
+		assertThat(second.getElementsByTagName("section").getLength(), is(1));
+		assertThat(second.getElementsByTagName("obs").getLength(), is(0));
+	}
+	
+	@Test
+	public void parse_shouldRecoverAfterInvalidXml() throws Exception {
+		try {
+			XmlUtil.parse("<htmlform><obs></htmlform>");
+		}
+		catch (Exception expected) {}
+		
+		Document doc = XmlUtil.parse("<htmlform/>");
+		assertThat(doc.getDocumentElement().getNodeName(), is("htmlform"));
+	}
+	
+	@Test
+	public void toString_shouldNotKeepOutputPropertiesBetweenCalls() throws Exception {
+		Document doc = XmlUtil.parse("<htmlform/>");
+		
+		String withoutDeclaration = XmlUtil.toString(doc,
+		    Collections.singletonMap(OutputKeys.OMIT_XML_DECLARATION, "yes"));
+		assertThat(withoutDeclaration, not(containsString("<?xml")));
+		
+		String withDeclaration = XmlUtil.toString(doc, null);
+		assertThat(withDeclaration, containsString("<?xml"));
+	}
+	
+	@Test
+	public void newDocument_shouldReturnAnEmptyDocument() throws Exception {
+		Document doc = XmlUtil.newDocument();
+		assertThat(doc.getDocumentElement() == null, is(true));
+	}
+}
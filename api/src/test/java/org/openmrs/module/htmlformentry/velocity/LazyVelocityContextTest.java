@@ -0,0 +1,59 @@
+package org.openmrs.module.htmlformentry.velocity;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class LazyVelocityContextTest {
+	
+	@Test
+	public void get_shouldOnlyEvaluateSupplierOnFirstAccess() throws Exception {
+		final AtomicInteger calls = new AtomicInteger();
+		LazyVelocityContext context = new LazyVelocityContext();
+		context.putLazy("relationshipList", () -> "value" + calls.incrementAndGet());
+		
+		assertThat(calls.get(), is(0));
+		assertThat(context.containsKey("relationshipList"), is(true));
+		assertThat(context.isPending("relationshipList"), is(true));
+		
+		assertThat((String) context.get("relationshipList"), is("value1"));
+		assertThat((String) context.get("relationshipList"), is("value1"));
+		assertThat(calls.get(), is(1));
+		assertThat(context.isPending("relationshipList"), is(false));
+	}
+	
+	@Test
+	public void put_shouldReplacePendingSupplier() throws Exception {
+		LazyVelocityContext context = new LazyVelocityContext();
+		context.putLazy("visit", () -> {
+			throw new IllegalStateException("should not be called");
+		});
+		context.put("visit", "explicit");
+		
+		assertThat((String) context.get("visit"), is("explicit"));
+	}
+	
+	@Test
+	public void getKeys_shouldIncludePendingKeys() throws Exception {
+		LazyVelocityContext context = new LazyVelocityContext();
+		context.put("patient", "p");
+		context.putLazy("personAttributes", () -> "a");
+		
+		assertThat(Arrays.asList(context.getKeys()).contains("patient"), is(true));
+		assertThat(Arrays.asList(context.getKeys()).contains("personAttributes"), is(true));
+	}
+	
+	@Test
+	public void remove_shouldDropPendingSupplier() throws Exception {
+		LazyVelocityContext context = new LazyVelocityContext();
+		context.putLazy("patientIdentifiers", () -> "ids");
+		context.remove("patientIdentifiers");
+		
+		assertThat(context.containsKey("patientIdentifiers"), is(false));
+		assertThat(context.get("patientIdentifiers") == null, is(true));
+	}
+}
@@ -0,0 +1,74 @@
+package org.openmrs.module.htmlformentry.benchmark;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+
+/**
+ * Compares two JSON result files written by the benchmarks, e.g. those of two releases, and prints
+ * the change in score of every benchmark they both ran. Usage:
+ *
+ * <pre>
+ * java -classpath ... org.openmrs.module.htmlformentry.benchmark.CompareResults baseline.json current.json
+ * </pre>
+ */
+public class CompareResults {
+	
+	public static void main(String[] args) throws Exception {
+		if (args.length != 2) {
+			System.err.println("Usage: CompareResults <baseline.json> <current.json>");
+			System.exit(1);
+		}
+		compare(readScores(new File(args[0])), readScores(new File(args[1])), System.out);
+	}
+	
+	/**
+	 * Prints the scores of the benchmarks in both files, and how much the current score differs from
+	 * the baseline. All the benchmarks measure average time, so a positive change is a slow down.
+	 */
+	public static void compare(Map<String, JsonNode> baseline, Map<String, JsonNode> current, PrintStream out) {
+		out.println(String.format("%-90s %14s %14s %9s", "Benchmark", "Baseline", "Current", "Change"));
+		for (Map.Entry<String, JsonNode> e : current.entrySet()) {
+			JsonNode before = baseline.get(e.getKey());
+			if (before == null) {
+				continue;
+			}
+			double beforeScore = before.get("score").getDoubleValue();
+			double currentScore = e.getValue().get("score").getDoubleValue();
+			String unit = e.getValue().get("scoreUnit").getTextValue();
+			out.println(String.format("%-90s %14s %14s %+8.1f%%", e.getKey(), format(beforeScore, unit),
+			    format(currentScore, unit), (currentScore - beforeScore) * 100 / beforeScore));
+		}
+	}
+	
+	/**
+	 * @param file a JMH result file in JSON format
+	 * @return the primary metric of each benchmark, keyed by its name and parameters
+	 */
+	public static Map<String, JsonNode> readScores(File file) throws Exception {
+		Map<String, JsonNode> ret = new TreeMap<String, JsonNode>();
+		for (JsonNode result : new ObjectMapper().readTree(file)) {
+			StringBuilder key = new StringBuilder(result.get("benchmark").getTextValue());
+			JsonNode params = result.get("params");
+			if (params != null) {
+				Map<String, String> values = new TreeMap<String, String>();
+				for (Iterator<String> i = params.getFieldNames(); i.hasNext();) {
+					String name = i.next();
+					values.put(name, params.get(name).getTextValue());
+				}
+				key.append(values);
+			}
+			ret.put(key.toString(), result.get("primaryMetric"));
+		}
+		return ret;
+	}
+	
+	private static String format(double score, String unit) {
+		return String.format("%.3f %s", score, unit);
+	}
+}
@@ -0,0 +1,133 @@
+package org.openmrs.module.htmlformentry.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openmrs.Concept;
+import org.openmrs.Encounter;
+import org.openmrs.Obs;
+import org.openmrs.module.htmlformentry.FormEntryContext;
+import org.openmrs.module.htmlformentry.ObsGroupComponent;
+import org.openmrs.module.htmlformentry.benchmark.FormFixtures.FormSize;
+
+/**
+ * Matching the obs of an existing encounter to the tags of a form, as viewing or editing an encounter
+ * does. The encounter is built in memory, with a weight, a coded obs and an obs group for each section
+ * of a form of the given size.
+ * <p/>
+ * Matching removes the obs that are found from the context, so each invocation sets up a new context
+ * and then matches every obs of the encounter. {@link #setupExistingData()} measures the set up on its
+ * own.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Benchmark)
+public class FormEntryContextBenchmark {
+	
+	private static final String OBS_GROUP_PATH = "/70000";
+	
+	@Param({ "SMALL", "MEDIUM", "HUGE" })
+	public FormSize formSize;
+	
+	private Encounter encounter;
+	
+	private Concept weight;
+	
+	private Concept coded;
+	
+	private List<Double> weightAnswers = new ArrayList<Double>();
+	
+	private List<Concept> codedAnswers = new ArrayList<Concept>();
+	
+	private List<List<ObsGroupComponent>> obsGroupComponents = new ArrayList<List<ObsGroupComponent>>();
+	
+	@Setup
+	public void setUp() {
+		weight = new Concept(5089);
+		coded = new Concept(1000);
+		Concept allergyGroup = new Concept(70000);
+		Concept allergy = new Concept(80000);
+		Concept allergyType = coded;
+		Date date = new Date();
+		
+		encounter = new Encounter();
+		for (int i = 1; i <= formSize.getSections(); i++) {
+			double weightAnswer = 50 + i;
+			Obs weightObs = new Obs();
+			weightObs.setConcept(weight);
+			weightObs.setValueNumeric(weightAnswer);
+			weightObs.setObsDatetime(date);
+			encounter.addObs(weightObs);
+			weightAnswers.add(weightAnswer);
+			
+			Concept codedAnswer = new Concept(10000 + i);
+			Obs codedObs = new Obs();
+			codedObs.setConcept(coded);
+			codedObs.setValueCoded(codedAnswer);
+			codedObs.setObsDatetime(date);
+			encounter.addObs(codedObs);
+			codedAnswers.add(codedAnswer);
+			
+			// the coded member tells the groups apart, like answerConceptId does in a form
+			Concept allergyTypeAnswer = new Concept(20000 + i);
+			Obs group = new Obs();
+			group.setConcept(allergyGroup);
+			group.setObsDatetime(date);
+			Obs allergyObs = new Obs();
+			allergyObs.setConcept(allergy);
+			allergyObs.setValueText("Allergy " + i);
+			allergyObs.setObsDatetime(date);
+			group.addGroupMember(allergyObs);
+			Obs allergyTypeObs = new Obs();
+			allergyTypeObs.setConcept(allergyType);
+			allergyTypeObs.setValueCoded(allergyTypeAnswer);
+			allergyTypeObs.setObsDatetime(date);
+			group.addGroupMember(allergyTypeObs);
+			encounter.addObs(group);
+			obsGroupComponents.add(Arrays.asList(new ObsGroupComponent(allergy, null),
+			    new ObsGroupComponent(allergyType, allergyTypeAnswer)));
+		}
+	}
+	
+	@Benchmark
+	public FormEntryContext setupExistingData() {
+		FormEntryContext context = new FormEntryContext(FormEntryContext.Mode.EDIT);
+		context.setupExistingData(encounter);
+		return context;
+	}
+	
+	@Benchmark
+	public void findBestMatchingObsGroup(Blackhole blackhole) {
+		FormEntryContext context = setupExistingData();
+		for (List<ObsGroupComponent> components : obsGroupComponents) {
+			blackhole.consume(context.findBestMatchingObsGroup(components, "70000", OBS_GROUP_PATH));
+		}
+	}
+	
+	@Benchmark
+	public void removeExistingObs(Blackhole blackhole) {
+		FormEntryContext context = setupExistingData();
+		for (int i = 0; i < codedAnswers.size(); i++) {
+			blackhole.consume(context.removeExistingObs(coded, codedAnswers.get(i)));
+			blackhole.consume(context.removeExistingObs(weight, weightAnswers.get(i).toString()));
+		}
+	}
+}
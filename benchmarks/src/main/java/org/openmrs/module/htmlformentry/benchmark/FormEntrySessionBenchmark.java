@@ -0,0 +1,167 @@
+package org.openmrs.module.htmlformentry.benchmark;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.Encounter;
+import org.openmrs.Patient;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.htmlformentry.FormEntryContext;
+import org.openmrs.module.htmlformentry.FormEntrySession;
+import org.openmrs.module.htmlformentry.FormSubmissionError;
+import org.openmrs.module.htmlformentry.HtmlFormEntryUtil;
+import org.openmrs.module.htmlformentry.benchmark.FormFixtures.FormSize;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpSession;
+
+/**
+ * Rendering, validating and submitting a form end to end, against the in-memory database of the
+ * api-tests. Submissions are rolled back, so every invocation submits to the same database.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class FormEntrySessionBenchmark {
+	
+	private static final int PATIENT_ID = 2;
+	
+	@Param({ "SMALL", "MEDIUM", "HUGE" })
+	public FormSize formSize;
+	
+	private InMemoryDatabase database;
+	
+	private Integer encounterId;
+	
+	@Setup
+	public void setUp() throws Exception {
+		database = new InMemoryDatabase();
+		database.start();
+		
+		// an encounter to view and edit, created by submitting the form once
+		encounterId = database.inTransaction(new Callable<Integer>() {
+			
+			@Override
+			public Integer call() throws Exception {
+				FormEntrySession session = newSession(FormEntryContext.Mode.ENTER, null);
+				submit(session, FormFixtures.submission(formSize, session.getHtmlToDisplay()));
+				return session.getEncounter().getEncounterId();
+			}
+		});
+		database.clearSession();
+	}
+	
+	@TearDown
+	public void tearDown() {
+		database.stop();
+	}
+	
+	@Benchmark
+	public String renderForEntry() throws Exception {
+		try {
+			return newSession(FormEntryContext.Mode.ENTER, null).getHtmlToDisplay();
+		}
+		finally {
+			database.clearSession();
+		}
+	}
+	
+	@Benchmark
+	public String renderForView() throws Exception {
+		try {
+			return newSession(FormEntryContext.Mode.VIEW, getEncounter()).getHtmlToDisplay();
+		}
+		finally {
+			database.clearSession();
+		}
+	}
+	
+	@Benchmark
+	public String renderForEdit() throws Exception {
+		try {
+			return newSession(FormEntryContext.Mode.EDIT, getEncounter()).getHtmlToDisplay();
+		}
+		finally {
+			database.clearSession();
+		}
+	}
+	
+	@Benchmark
+	public List<FormSubmissionError> validate(RenderedForm form) throws Exception {
+		form.session.prepareForSubmit();
+		return form.session.getSubmissionController().validateSubmission(form.session.getContext(), form.request);
+	}
+	
+	@Benchmark
+	public Encounter submit(final RenderedForm form) throws Exception {
+		return database.inRolledBackTransaction(new Callable<Encounter>() {
+			
+			@Override
+			public Encounter call() throws Exception {
+				submit(form.session, form.request);
+				return form.session.getEncounter();
+			}
+		});
+	}
+	
+	private Encounter getEncounter() {
+		return Context.getEncounterService().getEncounter(encounterId);
+	}
+	
+	private FormEntrySession newSession(FormEntryContext.Mode mode, Encounter encounter) throws Exception {
+		Patient patient = Context.getPatientService().getPatient(PATIENT_ID);
+		return new FormEntrySession(patient, encounter, mode, FormFixtures.htmlForm(formSize), new MockHttpSession());
+	}
+	
+	/**
+	 * Submits a form the way RegressionTestHelper does
+	 */
+	private void submit(FormEntrySession session, MockHttpServletRequest request) throws Exception {
+		session.prepareForSubmit();
+		List<FormSubmissionError> errors = session.getSubmissionController().validateSubmission(session.getContext(),
+		    request);
+		if (errors != null && !errors.isEmpty()) {
+			throw new IllegalStateException("The benchmark form did not validate: " + errors.get(0).getError());
+		}
+		session.getSubmissionController().handleFormSubmission(session, request);
+		HtmlFormEntryUtil.getService().applyActions(session);
+	}
+	
+	/**
+	 * A form rendered in enter mode, and a submission that fills it in, for each invocation
+	 */
+	@State(Scope.Thread)
+	public static class RenderedForm {
+		
+		private FormEntrySession session;
+		
+		private MockHttpServletRequest request;
+		
+		@Setup(Level.Invocation)
+		public void render(FormEntrySessionBenchmark benchmark) throws Exception {
+			session = benchmark.newSession(FormEntryContext.Mode.ENTER, null);
+			request = FormFixtures.submission(benchmark.formSize, session.getHtmlToDisplay());
+		}
+		
+		@TearDown(Level.Invocation)
+		public void clearSession(FormEntrySessionBenchmark benchmark) {
+			benchmark.database.clearSession();
+		}
+	}
+}
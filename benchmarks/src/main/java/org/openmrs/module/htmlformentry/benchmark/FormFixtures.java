@@ -0,0 +1,138 @@
+package org.openmrs.module.htmlformentry.benchmark;
+
+import org.openmrs.EncounterType;
+import org.openmrs.Form;
+import org.openmrs.module.htmlformentry.HtmlForm;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+/**
+ * Synthetic forms used by the benchmarks. Every form uses macros, a repeat, translations, sections,
+ * obs groups and coded obs, and only refers to metadata in the regression test dataset, so it can be
+ * rendered and submitted against the in-memory database.
+ */
+public class FormFixtures {
+	
+	public static final String ENCOUNTER_DATE = "2020-06-15";
+	
+	public static final String LOCATION_ID = "2";
+	
+	public static final String PROVIDER_ID = "502";
+	
+	/**
+	 * The sizes of the synthetic forms, as a number of repeated sections of five obs each
+	 */
+	public enum FormSize {
+		
+		SMALL(2), MEDIUM(20), HUGE(150);
+		
+		private final int sections;
+		
+		FormSize(int sections) {
+			this.sections = sections;
+		}
+		
+		public int getSections() {
+			return sections;
+		}
+	}
+	
+	/**
+	 * @param size the size of the form
+	 * @return the xml of a form with the given number of sections
+	 */
+	public static String formXml(FormSize size) {
+		StringBuilder xml = new StringBuilder();
+		xml.append("<htmlform>\n");
+		xml.append("\t<macros>\n");
+		xml.append("\t\tweight=5089\n");
+		xml.append("\t\tallergyGroup=70000\n");
+		xml.append("\t\tallergy=80000\n");
+		xml.append("\t\tallergyDate=1119\n");
+		xml.append("\t\tcoded=1000\n");
+		xml.append("\t\tcodedAnswers=1001,1002,1003\n");
+		xml.append("\t</macros>\n");
+		xml.append("\t<translations defaultLocale=\"en\">\n");
+		appendTranslation(xml, "benchmark.weight", "Weight", "Poids");
+		appendTranslation(xml, "benchmark.allergy", "Allergy", "Allergie");
+		appendTranslation(xml, "benchmark.allergyDate", "Allergy date", "Date de l'allergie");
+		appendTranslation(xml, "benchmark.coded", "Coded answer", "Reponse codee");
+		xml.append("\t</translations>\n");
+		xml.append("\tDate: <encounterDate/>\n");
+		xml.append("\tLocation: <encounterLocation/>\n");
+		xml.append("\tProvider: <encounterProvider role=\"Provider\"/>\n");
+		xml.append("\t<repeat>\n");
+		xml.append("\t\t<template>\n");
+		xml.append("\t\t\t<section headerLabel=\"Section {n}\">\n");
+		xml.append("\t\t\t\tWeight {n}: <obs conceptId=\"$weight\" labelCode=\"benchmark.weight\"/>\n");
+		xml.append("\t\t\t\tCoded {n}: <obs conceptId=\"$coded\" answerConceptIds=\"$codedAnswers\""
+		        + " labelCode=\"benchmark.coded\"/>\n");
+		xml.append("\t\t\t\t<obsgroup groupingConceptId=\"$allergyGroup\">\n");
+		xml.append("\t\t\t\t\tAllergy {n}: <obs conceptId=\"$allergy\" labelCode=\"benchmark.allergy\"/>\n");
+		xml.append("\t\t\t\t\tAllergy Date {n}: <obs conceptId=\"$allergyDate\" labelCode=\"benchmark.allergyDate\"/>\n");
+		xml.append("\t\t\t\t</obsgroup>\n");
+		xml.append("\t\t\t</section>\n");
+		xml.append("\t\t</template>\n");
+		for (int i = 1; i <= size.getSections(); i++) {
+			xml.append("\t\t<render n=\"").append(i).append("\"/>\n");
+		}
+		xml.append("\t</repeat>\n");
+		xml.append("\t<submit/>\n");
+		xml.append("</htmlform>\n");
+		return xml.toString();
+	}
+	
+	/**
+	 * @param size the size of the form
+	 * @return an unsaved html form with the given number of sections, like the ones the regression
+	 *         tests use
+	 */
+	public static HtmlForm htmlForm(FormSize size) {
+		HtmlForm htmlForm = new HtmlForm();
+		htmlForm.setXmlData(formXml(size));
+		htmlForm.setForm(new Form(1));
+		htmlForm.getForm().setEncounterType(new EncounterType(1));
+		return htmlForm;
+	}
+	
+	/**
+	 * Builds a submission of the rendered html of a form created by {@link #formXml(FormSize)}, filling
+	 * in every field of every section
+	 *
+	 * @param size the size the form was created with
+	 * @param html the rendered form
+	 * @return the request to submit
+	 */
+	public static MockHttpServletRequest submission(FormSize size, String html) {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addParameter(widgetAfter(html, "Date:"), ENCOUNTER_DATE);
+		request.addParameter(widgetAfter(html, "Location:"), LOCATION_ID);
+		request.addParameter(widgetAfter(html, "Provider:"), PROVIDER_ID);
+		for (int i = 1; i <= size.getSections(); i++) {
+			request.addParameter(widgetAfter(html, "Weight " + i + ":"), String.valueOf(50 + i % 50));
+			request.addParameter(widgetAfter(html, "Coded " + i + ":"), String.valueOf(1001 + i % 3));
+			request.addParameter(widgetAfter(html, "Allergy " + i + ":"), "Allergy " + i);
+			request.addParameter(widgetAfter(html, "Allergy Date " + i + ":"), ENCOUNTER_DATE);
+		}
+		return request;
+	}
+	
+	/**
+	 * Finds the name of the first widget after a label, like RegressionTestHelper does
+	 */
+	private static String widgetAfter(String html, String label) {
+		int index = html.indexOf(label);
+		if (index < 0) {
+			throw new IllegalArgumentException("The form has no " + label + " label");
+		}
+		index = html.indexOf("name=\"w", index);
+		index = html.indexOf('"', index) + 1;
+		return html.substring(index, html.indexOf('"', index));
+	}
+	
+	private static void appendTranslation(StringBuilder xml, String code, String en, String fr) {
+		xml.append("\t\t<code name=\"").append(code).append("\">\n");
+		xml.append("\t\t\t<variant locale=\"en\" value=\"").append(en).append("\"/>\n");
+		xml.append("\t\t\t<variant locale=\"fr\" value=\"").append(fr).append("\"/>\n");
+		xml.append("\t\t</code>\n");
+	}
+}
@@ -0,0 +1,124 @@
+package org.openmrs.module.htmlformentry.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.htmlformentry.FormEntryContext;
+import org.openmrs.module.htmlformentry.FormEntrySession;
+import org.openmrs.module.htmlformentry.HtmlFormEntryGenerator;
+import org.openmrs.module.htmlformentry.benchmark.FormFixtures.FormSize;
+import org.openmrs.module.htmlformentry.compiler.CompiledForm;
+import org.springframework.mock.web.MockHttpSession;
+
+/**
+ * The stages {@link FormEntrySession} puts the xml of a form through before it is displayed. Each
+ * stage is given the output of the stages before it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Benchmark)
+public class GeneratorBenchmark {
+	
+	@Param({ "SMALL", "MEDIUM", "HUGE" })
+	public FormSize formSize;
+	
+	private HtmlFormEntryGenerator generator;
+	
+	private String xml;
+	
+	private String xmlWithMacros;
+	
+	private String xmlWithRepeats;
+	
+	private String xmlWithTranslations;
+	
+	@Setup
+	public void setUp() throws Exception {
+		generator = new HtmlFormEntryGenerator();
+		xml = FormFixtures.formXml(formSize);
+		xmlWithMacros = generator.applyMacros(xml);
+		xmlWithRepeats = generator.applyRepeats(xmlWithMacros);
+		xmlWithTranslations = generator.applyTranslations(xmlWithRepeats, new FormEntryContext(FormEntryContext.Mode.ENTER));
+	}
+	
+	@Benchmark
+	public String applyMacros() throws Exception {
+		return generator.applyMacros(xml);
+	}
+	
+	@Benchmark
+	public String applyRepeats() throws Exception {
+		return generator.applyRepeats(xmlWithMacros);
+	}
+	
+	@Benchmark
+	public String applyTranslations() throws Exception {
+		return generator.applyTranslations(xmlWithRepeats, new FormEntryContext(FormEntryContext.Mode.ENTER));
+	}
+	
+	/**
+	 * Applies the tags of a compiled form to a new session, as {@link FormEntrySession} does when it
+	 * renders the form in enter mode
+	 */
+	@Benchmark
+	public String applyTags(TagsState state) throws Exception {
+		CompiledForm compiledForm = generator.borrowCompiledForm(xmlWithTranslations);
+		try {
+			return generator.applyTags(state.session, compiledForm);
+		}
+		finally {
+			generator.releaseCompiledForm(compiledForm);
+		}
+	}
+	
+	/**
+	 * A new session for each invocation of {@link #applyTags(TagsState)}, since applying the tags
+	 * registers the widgets of the form with the session
+	 */
+	@State(Scope.Thread)
+	public static class TagsState {
+		
+		private InMemoryDatabase database;
+		
+		private FormEntrySession session;
+		
+		@Setup
+		public void startDatabase() throws Exception {
+			database = new InMemoryDatabase();
+			database.start();
+		}
+		
+		@Setup(Level.Invocation)
+		public void createSession(GeneratorBenchmark benchmark) throws Exception {
+			session = new FormEntrySession(Context.getPatientService().getPatient(2), null, FormEntryContext.Mode.ENTER,
+			        FormFixtures.htmlForm(benchmark.formSize), new MockHttpSession());
+			benchmark.generator.applyTranslations(benchmark.xmlWithRepeats, session.getContext());
+		}
+		
+		@TearDown(Level.Invocation)
+		public void clearSession() {
+			database.clearSession();
+		}
+		
+		@TearDown
+		public void stopDatabase() {
+			database.stop();
+		}
+	}
+}
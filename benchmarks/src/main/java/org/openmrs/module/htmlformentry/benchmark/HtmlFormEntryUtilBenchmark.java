@@ -0,0 +1,97 @@
+package org.openmrs.module.htmlformentry.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.Concept;
+import org.openmrs.module.htmlformentry.HtmlFormEntryGenerator;
+import org.openmrs.module.htmlformentry.HtmlFormEntryUtil;
+import org.openmrs.module.htmlformentry.benchmark.FormFixtures.FormSize;
+import org.w3c.dom.Document;
+
+/**
+ * The {@link HtmlFormEntryUtil} methods that every stage and tag of a form calls
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class HtmlFormEntryUtilBenchmark {
+	
+	@Benchmark
+	public Document stringToDocument(FormState state) throws Exception {
+		return HtmlFormEntryUtil.stringToDocument(state.xml);
+	}
+	
+	/**
+	 * Looks up a concept the way the tags of a form refer to them, once the concept is in the Hibernate
+	 * session
+	 */
+	@Benchmark
+	public Concept getConcept(ConceptState state) {
+		return HtmlFormEntryUtil.getConcept(state.conceptId);
+	}
+	
+	/**
+	 * Looks up a concept the way the tags of a form refer to them, as the first tag of a form to refer
+	 * to it does
+	 */
+	@Benchmark
+	public Concept getConceptWithClearedSession(ConceptState state) {
+		state.database.clearSession();
+		return HtmlFormEntryUtil.getConcept(state.conceptId);
+	}
+	
+	/**
+	 * The xml of a form once its macros and repeats are applied, as most stages parse it
+	 */
+	@State(Scope.Benchmark)
+	public static class FormState {
+		
+		@Param({ "SMALL", "MEDIUM", "HUGE" })
+		public FormSize formSize;
+		
+		private String xml;
+		
+		@Setup
+		public void setUp() throws Exception {
+			HtmlFormEntryGenerator generator = new HtmlFormEntryGenerator();
+			xml = generator.applyRepeats(generator.applyMacros(FormFixtures.formXml(formSize)));
+		}
+	}
+	
+	@State(Scope.Thread)
+	public static class ConceptState {
+		
+		/**
+		 * A concept id and a concept uuid, from the regression test dataset
+		 */
+		@Param({ "5089", "32296060-03aa-102d-b0e3-001ec94a0cc4" })
+		public String conceptId;
+		
+		private InMemoryDatabase database;
+		
+		@Setup
+		public void startDatabase() throws Exception {
+			database = new InMemoryDatabase();
+			database.start();
+		}
+		
+		@TearDown
+		public void stopDatabase() {
+			database.stop();
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package org.openmrs.module.htmlformentry.benchmark;
+
+import java.util.concurrent.Callable;
+
+import org.openmrs.api.context.Context;
+import org.openmrs.module.htmlformentry.BaseHtmlFormEntryTest;
+import org.springframework.test.context.TestContextManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+/**
+ * The in-memory database and application context of the api-tests, started outside of JUnit so that
+ * benchmarks can use them. The standard test data and the regression test dataset are committed once,
+ * and the work of each benchmark is rolled back so every invocation sees the same data.
+ * <p/>
+ * Like an OpenMRS web request, the Hibernate session and the authenticated user belong to the thread
+ * that started the database, so it has to be started by the benchmark thread.
+ */
+public class InMemoryDatabase extends BaseHtmlFormEntryTest {
+	
+	public static final String REGRESSION_TEST_DATASET = "org/openmrs/module/htmlformentry/data/"
+	        + "RegressionTest-data-openmrs-2.1.xml";
+	
+	private PlatformTransactionManager transactionManager;
+	
+	/**
+	 * Creates the application context, loads the test data and authenticates as admin
+	 */
+	public void start() throws Exception {
+		new TestContextManager(getClass()).prepareTestInstance(this);
+		baseSetupWithStandardDataAndAuthentication();
+		executeVersionedDataSet(REGRESSION_TEST_DATASET);
+		getConnection().commit();
+		clearGlobalPropertySnapshot();
+		clearOrderMetadataCache();
+		Context.clearSession();
+		transactionManager = applicationContext.getBean("transactionManager", PlatformTransactionManager.class);
+	}
+	
+	/**
+	 * Does some work in a transaction that is committed, e.g. to create the data an edit benchmark
+	 * needs
+	 */
+	public <T> T inTransaction(Callable<T> work) throws Exception {
+		TransactionStatus status = transactionManager.getTransaction(new DefaultTransactionDefinition());
+		try {
+			T ret = work.call();
+			transactionManager.commit(status);
+			return ret;
+		}
+		catch (Exception e) {
+			transactionManager.rollback(status);
+			throw e;
+		}
+	}
+	
+	/**
+	 * Does some work in a transaction that is always rolled back. Nested service calls join the
+	 * transaction, so nothing they save is committed.
+	 */
+	public <T> T inRolledBackTransaction(Callable<T> work) throws Exception {
+		TransactionStatus status = transactionManager.getTransaction(new DefaultTransactionDefinition());
+		try {
+			return work.call();
+		}
+		finally {
+			transactionManager.rollback(status);
+		}
+	}
+	
+	/**
+	 * Clears the Hibernate session, so objects loaded by one invocation don't accumulate
+	 */
+	public void clearSession() {
+		Context.clearSession();
+	}
+	
+	public void stop() {
+		Context.logout();
+		Context.closeSession();
+	}
+}
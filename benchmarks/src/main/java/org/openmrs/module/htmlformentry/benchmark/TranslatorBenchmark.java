@@ -0,0 +1,63 @@
+package org.openmrs.module.htmlformentry.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.module.htmlformentry.Translator;
+
+/**
+ * Translating a code the form defines, which every labelCode and translated attribute of a form does
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Benchmark)
+public class TranslatorBenchmark {
+	
+	/**
+	 * The locale of the user; the code has no fr_CA variant, so fr_CA falls back to fr
+	 */
+	@Param({ "en", "fr", "fr_CA" })
+	public String locale;
+	
+	/**
+	 * The number of codes the form defines
+	 */
+	@Param({ "10", "500" })
+	public int codes;
+	
+	private Translator translator;
+	
+	private String code;
+	
+	@Setup
+	public void setUp() {
+		translator = new Translator();
+		translator.setDefaultLocaleStr("en");
+		for (int i = 0; i < codes; i++) {
+			translator.addTranslation("en", "benchmark.code" + i, "Label " + i);
+			translator.addTranslation("fr", "benchmark.code" + i, "Libellé " + i);
+			if (i % 2 == 0) {
+				translator.addTranslation("fr_CA", "benchmark.code" + i, "Étiquette " + i);
+			}
+		}
+		code = "benchmark.code" + (codes - 1);
+	}
+	
+	@Benchmark
+	public String translate() {
+		return translator.translate(locale, code);
+	}
+}
@@ -0,0 +1,58 @@
+package org.openmrs.module.htmlformentry.web.controller;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openmrs.api.context.Context;
+import org.openmrs.module.htmlformentry.HtmlFormEntryGlobalProperties;
+import org.openmrs.module.htmlformentry.metrics.FormMetricsSummary;
+import org.openmrs.module.htmlformentry.metrics.FormTimings.Phase;
+import org.openmrs.module.htmlformentry.metrics.JmxFormEntryMetrics;
+import org.openmrs.util.PrivilegeConstants;
+import org.springframework.stereotype.Controller;
+import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+
+/**
+ * Shows how long rendering and submitting each form takes, and how much database work it does, with
+ * the worst offenders first.
+ * <p/>
+ * Handles {@code formEntryMetrics.form} requests. Renders view {@code formEntryMetrics.jsp}.
+ */
+@Controller
+@RequestMapping("/module/htmlformentry/formEntryMetrics")
+public class FormEntryMetricsController {
+	
+	@RequestMapping(method = RequestMethod.GET)
+	public void showMetrics(Model model) {
+		Context.requirePrivilege(PrivilegeConstants.MANAGE_FORMS);
+		
+		JmxFormEntryMetrics metrics = getMetrics();
+		Map<String, List<FormMetricsSummary>> summaries = new LinkedHashMap<String, List<FormMetricsSummary>>();
+		summaries.put("htmlformentry.metrics.render",
+		    metrics == null ? new ArrayList<FormMetricsSummary>() : metrics.getFormSummaries(Phase.RENDER));
+		summaries.put("htmlformentry.metrics.submit",
+		    metrics == null ? new ArrayList<FormMetricsSummary>() : metrics.getFormSummaries(Phase.SUBMIT));
+		model.addAttribute("summaries", summaries);
+		model.addAttribute("recordQueryCounts", HtmlFormEntryGlobalProperties.RECORD_QUERY_COUNTS());
+	}
+	
+	@RequestMapping(method = RequestMethod.POST)
+	public String resetMetrics() {
+		Context.requirePrivilege(PrivilegeConstants.MANAGE_FORMS);
+		
+		JmxFormEntryMetrics metrics = getMetrics();
+		if (metrics != null) {
+			metrics.reset();
+		}
+		return "redirect:formEntryMetrics.form";
+	}
+	
+	private JmxFormEntryMetrics getMetrics() {
+		List<JmxFormEntryMetrics> metrics = Context.getRegisteredComponents(JmxFormEntryMetrics.class);
+		return metrics.isEmpty() ? null : metrics.get(0);
+	}
+}
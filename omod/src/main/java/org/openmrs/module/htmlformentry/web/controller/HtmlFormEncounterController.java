@@ -21,6 +21,7 @@ import org.openmrs.module.htmlformentry.schema.HtmlFormSchema;
 import org.openmrs.module.htmlformentry.schema.HtmlFormSection;
 import org.openmrs.module.htmlformentry.schema.ObsField;
 import org.openmrs.module.htmlformentry.schema.ObsGroup;
+import org.openmrs.module.htmlformentry.util.CachedDateFormat;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.util.StringUtils;
@@ -40,12 +41,33 @@ public class HtmlFormEncounterController {
 	private LocationService locationService;
 	
 	// ISO standard date formats
+	/**
+	 * @deprecated a SimpleDateFormat is not safe to share between threads, and this controller no
+	 *             longer uses it
+	 */
+	@Deprecated
 	public static final SimpleDateFormat datetimeFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
 	
+	/**
+	 * @deprecated a SimpleDateFormat is not safe to share between threads, and this controller no
+	 *             longer uses it
+	 */
+	@Deprecated
 	public static final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
 	
+	/**
+	 * @deprecated a SimpleDateFormat is not safe to share between threads, and this controller no
+	 *             longer uses it
+	 */
+	@Deprecated
 	public static final SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss.SSSZ");
 	
+	private static final CachedDateFormat isoDatetimeFormat = CachedDateFormat.getInstance("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+	
+	private static final CachedDateFormat isoDateFormat = CachedDateFormat.getInstance("yyyy-MM-dd");
+	
+	private static final CachedDateFormat isoTimeFormat = CachedDateFormat.getInstance("HH:mm:ss.SSSZ");
+	
 	// TODO does not handle DrugOrder and Regimen schema objects--currently only works for obs and obsgroups
 	// TODO schema display still works?
 	@RequestMapping(value = "/module/htmlformentry/encounter.json", method = RequestMethod.GET)
@@ -147,15 +169,15 @@ public class HtmlFormEncounterController {
 			ConceptDatatype datatype = field.getQuestion().getDatatype();
 			if (datatype.isDateTime()) {
 				value = field.getExistingObs().getValueDate() != null
-				        ? datetimeFormat.format(field.getExistingObs().getValueDate())
+				        ? isoDatetimeFormat.format(field.getExistingObs().getValueDate())
 				        : "";
 			} else if (datatype.isDate()) {
 				value = field.getExistingObs().getValueDate() != null
-				        ? dateFormat.format(field.getExistingObs().getValueDate())
+				        ? isoDateFormat.format(field.getExistingObs().getValueDate())
 				        : "";
 			} else if (datatype.isTime()) {
 				value = field.getExistingObs().getValueDate() != null
-				        ? timeFormat.format(field.getExistingObs().getValueDate())
+				        ? isoTimeFormat.format(field.getExistingObs().getValueDate())
 				        : "";
 			} else if (datatype.isNumeric()) {
 				value = field.getExistingObs().getValueNumeric() != null
@@ -58,8 +58,9 @@ public class HtmlFormEntryController {
 	public final static String FORM_PATH = "/module/htmlformentry/htmlFormEntry";
 	
 	// A place to store data that will persist longer than a session, but won't
-	// persist beyond application restart
-	private static Map<User, Map<String, Object>> volatileUserData = new WeakHashMap<User, Map<String, Object>>();
+	// persist beyond application restart. Every request thread uses it, so it is synchronized.
+	private static final Map<User, Map<String, Object>> volatileUserData = Collections
+	        .synchronizedMap(new WeakHashMap<User, Map<String, Object>>());
 	
 	@RequestMapping(method = RequestMethod.GET, value = FORM_PATH)
 	public void showForm() {
@@ -254,10 +255,13 @@ public class HtmlFormEntryController {
 		if (u == null) {
 			throw new APIAuthenticationException();
 		}
-		Map<String, Object> myData = volatileUserData.get(u);
-		if (myData == null) {
-			myData = new HashMap<String, Object>();
-			volatileUserData.put(u, myData);
+		Map<String, Object> myData;
+		synchronized (volatileUserData) {
+			myData = volatileUserData.get(u);
+			if (myData == null) {
+				myData = Collections.synchronizedMap(new HashMap<String, Object>());
+				volatileUserData.put(u, myData);
+			}
 		}
 		myData.put(key, value);
 	}
@@ -14,7 +14,7 @@ public class HtmlFormListController extends SimpleFormController {
 	
 	@Override
 	protected Object formBackingObject(HttpServletRequest request) throws Exception {
-		return HtmlFormEntryUtil.getService().getAllHtmlForms();
+		return HtmlFormEntryUtil.getService().getAllHtmlFormSummaries();
 	}
 	
 }
@@ -4,10 +4,9 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.lang.reflect.Method;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
@@ -16,6 +15,8 @@ import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.Vector;
 
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.openmrs.Concept;
 import org.openmrs.ConceptClass;
@@ -24,9 +25,9 @@ import org.openmrs.Drug;
 import org.openmrs.api.ConceptService;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.htmlformentry.HtmlFormEntryUtil;
+import org.openmrs.module.htmlformentry.util.ConceptSetMembers;
 import org.openmrs.propertyeditor.ConceptClassEditor;
 import org.openmrs.propertyeditor.ConceptEditor;
-import org.openmrs.util.OpenmrsConstants;
 import org.openmrs.web.WebUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
@@ -39,6 +40,22 @@ import org.springframework.web.bind.annotation.RequestParam;
 @Controller
 public class HtmlFormSearchController {
 	
+	private static final int DEFAULT_PAGE_SIZE = 100;
+	
+	private static final int MAX_PAGE_SIZE = 500;
+	
+	private static final int SEARCH_BATCH_SIZE = 200;
+	
+	private static final int MAX_SEARCH_BATCHES = 10;
+	
+	/**
+	 * The response header that holds the start of the next page of concept search results, when there
+	 * may be more of them
+	 */
+	public static final String NEXT_START_HEADER = "X-Next-Start";
+	
+	private static final JsonFactory jsonFactory = new ObjectMapper().getJsonFactory();
+	
 	@Autowired
 	private ConceptService conceptService;
 	
@@ -49,106 +66,162 @@ public class HtmlFormSearchController {
 	}
 	
 	/**
-	 * Concept Search
+	 * Concept Search. Results are searched for a batch at a time and written as they are found, so
+	 * they are never all held in memory at once.
+	 * <p/>
+	 * Without start or limit, every allowed match is returned, as the autocomplete widgets expect. With
+	 * either of them, one page is returned: a search restricted to a few answers stops as soon as a
+	 * page of allowed results has been found, and reads at most ten batches per request, so a term that
+	 * matches many concepts outside the allowed answers can't make one request scan them all. The
+	 * start parameter is a position in the unrestricted search results. If there may be more results,
+	 * the position to continue from is returned in the {@link #NEXT_START_HEADER} header.
 	 */
 	@RequestMapping("/module/htmlformentry/conceptSearch")
 	public void conceptSearch(ModelMap model, HttpServletRequest request, HttpServletResponse response,
 	        @RequestParam(required = true, value = "term") String query,
 	        @RequestParam(required = false, value = "answerids") String allowedconceptids,
 	        @RequestParam(required = false, value = "answerclasses") String answerclasses,
-	        @RequestParam(required = false, value = "answerSetIds") String answerSetIds) throws Exception {
-		
-		response.setContentType("application/json");
-		response.setCharacterEncoding("UTF-8");
-		PrintWriter out = response.getWriter();
+	        @RequestParam(required = false, value = "answerSetIds") String answerSetIds,
+	        @RequestParam(required = false, value = "start") Integer start,
+	        @RequestParam(required = false, value = "limit") Integer limit) throws Exception {
 		
 		List<Locale> l = new Vector<Locale>();
 		l.add(Context.getLocale());
 		
 		List<ConceptClass> cptClassList = new ArrayList<ConceptClass>();
-		Set<Integer> allowedConceptsIdSet = new HashSet<Integer>();
+		ConceptSetMembers allowedConcepts = null;
 		if (!"null".equals(allowedconceptids) && !"".equals(allowedconceptids)) {
 			// we filter this by conceptids
+			Set<Integer> allowedConceptsIdSet = new HashSet<Integer>();
 			for (StringTokenizer st = new StringTokenizer(allowedconceptids, ","); st.hasMoreTokens();) {
 				allowedConceptsIdSet.add(Integer.parseInt(st.nextToken()));
 			}
+			allowedConcepts = ConceptSetMembers.of(allowedConceptsIdSet);
 		} else if (!"null".equals(answerclasses) && !"".equals(answerclasses)) {
 			for (StringTokenizer st = new StringTokenizer(answerclasses, ","); st.hasMoreTokens();) {
 				cptClassList.add(conceptService.getConceptClassByName(st.nextToken()));
 			}
 		} else if (!"null".equals(answerSetIds) && !"".equals(answerSetIds)) {
+			List<Concept> answerConceptSets = new ArrayList<Concept>();
 			for (StringTokenizer st = new StringTokenizer(answerSetIds, ","); st.hasMoreTokens();) {
 				Concept answerConceptSet = HtmlFormEntryUtil.getConcept(st.nextToken());
-				List<Concept> answerConcepts = conceptService.getConceptsByConceptSet(answerConceptSet);
-				for (Concept conceptInSet : answerConcepts) {
-					allowedConceptsIdSet.add(conceptInSet.getConceptId());
+				if (answerConceptSet != null) {
+					answerConceptSets.add(answerConceptSet);
 				}
 			}
+			allowedConcepts = ConceptSetMembers.forSets(answerConceptSets);
 		} else {
 			throw new Exception("You must specify either answerconceptids, answerclasses, or answerSetIds");
 		}
+		// as before, an empty list of allowed concepts does not restrict the search
+		if (allowedConcepts != null && allowedConcepts.isEmpty()) {
+			allowedConcepts = null;
+		}
 		
-		List<ConceptSearchResult> results = conceptService.getConcepts(query, l, false, cptClassList, null, null, null, null,
-		    null, null);
-		if (!allowedConceptsIdSet.isEmpty()) {
-			for (Iterator<ConceptSearchResult> it = results.iterator(); it.hasNext();) {
-				if (!allowedConceptsIdSet.contains(it.next().getConcept().getConceptId())) {
-					it.remove();
-				}
-			}
+		boolean paged = start != null || limit != null;
+		int offset = (start == null || start < 0) ? 0 : start;
+		int pageSize = (limit == null || limit <= 0) ? DEFAULT_PAGE_SIZE : Math.min(limit, MAX_PAGE_SIZE);
+		int maxBatches = MAX_SEARCH_BATCHES;
+		if (!paged) {
+			pageSize = Integer.MAX_VALUE;
+			maxBatches = Integer.MAX_VALUE;
 		}
 		
+		// written to a buffer, as the header has to be set before the response is committed
+		StringWriter body = new StringWriter();
+		PrintWriter out = new PrintWriter(body);
+		
 		// return in JSON object list format
 		//[ { "id": "Dromas ardeola", "label": "Crab-Plover", "value":"Crab-Plover" },
 		out.print("[");
-		for (Iterator<ConceptSearchResult> i = results.iterator(); i.hasNext();) {
-			ConceptSearchResult res = i.next();
-			String ds = res.getConcept().getDisplayString();
-			out.print("{ \"value\":\"");
-			if (res.getConceptName().isPreferred() || res.getConceptName().getName().equalsIgnoreCase(ds)) {
-				out.print(WebUtil.escapeQuotes(res.getConceptName().getName()));
-			} else {
-				out.print(WebUtil.escapeQuotes(res.getConcept().getDisplayString()));
+		int written = 0;
+		boolean exhausted = false;
+		for (int batches = 0; written < pageSize && batches < maxBatches && !exhausted; batches++) {
+			int batchSize = (allowedConcepts == null && paged) ? pageSize - written : SEARCH_BATCH_SIZE;
+			List<ConceptSearchResult> results = conceptService.getConcepts(query, l, false, cptClassList, null, null, null,
+			    null, offset, batchSize);
+			int read = 0;
+			for (ConceptSearchResult res : results) {
+				if (written >= pageSize) {
+					break;
+				}
+				read++;
+				if (allowedConcepts != null && !allowedConcepts.contains(res.getConcept().getConceptId())) {
+					continue;
+				}
+				if (written > 0) {
+					out.print(",");
+				}
+				writeConceptSearchResult(out, res);
+				written++;
 			}
-			out.print("\",\"id\"");
-			out.print(":\"" + res.getConcept().getId());
-			out.print("\"}");
-			if (i.hasNext())
-				out.print(",");
+			offset += read;
+			exhausted = results.size() < batchSize && read == results.size();
 		}
 		out.print("]");
+		out.flush();
+		
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+		if (!exhausted) {
+			response.setHeader(NEXT_START_HEADER, String.valueOf(offset));
+		}
+		response.getWriter().print(body.toString());
 	}
 	
-	@RequestMapping("/module/htmlformentry/drugSearch")
-	public void drugSearch(@RequestParam("term") String query, HttpServletResponse response) throws IOException {
-		
-		List<Drug> drugs;
-		
-		// we want to use a later API method from 1.8+ if it is available, so we need to access it via reflection
-		if (OpenmrsConstants.OPENMRS_VERSION_SHORT.startsWith("1.6")
-		        || OpenmrsConstants.OPENMRS_VERSION_SHORT.startsWith("1.7")) {
-			drugs = conceptService.getDrugs(query); // this method returns retired drugs, so it is not ideal
+	private void writeConceptSearchResult(PrintWriter out, ConceptSearchResult res) {
+		String ds = res.getConcept().getDisplayString();
+		out.print("{ \"value\":\"");
+		if (res.getConceptName().isPreferred() || res.getConceptName().getName().equalsIgnoreCase(ds)) {
+			out.print(WebUtil.escapeQuotes(res.getConceptName().getName()));
 		} else {
-			try {
-				Object conceptService = Context.getService(Context.loadClass("org.openmrs.api.ConceptService"));
-				Method getDrugsMethod = conceptService.getClass().getMethod("getDrugs", String.class, Concept.class,
-				    boolean.class, boolean.class, boolean.class, Integer.class, Integer.class);
-				
-				drugs = (List<Drug>) getDrugsMethod.invoke(conceptService, query, null, true, false, true, 0, 100); // this method excludes retired drugs
-				
-			}
-			catch (Exception ex) {
-				throw new RuntimeException("Unable to access ConceptService getDrugs method via reflection", ex);
-			}
+			out.print(WebUtil.escapeQuotes(ds));
 		}
+		out.print("\",\"id\"");
+		out.print(":\"" + res.getConcept().getId());
+		out.print("\"}");
+	}
+	
+	/**
+	 * Drug Search. Retired drugs are left out by the search itself, and each drug is written straight
+	 * to the response in the same form as {@link #simplify(List)}.
+	 */
+	@RequestMapping("/module/htmlformentry/drugSearch")
+	public void drugSearch(@RequestParam("term") String query,
+	        @RequestParam(required = false, value = "start") Integer start,
+	        @RequestParam(required = false, value = "limit") Integer limit, HttpServletResponse response)
+	        throws IOException {
 		
-		List<Map<String, Object>> simplified = simplify(drugs);
+		int first = (start == null || start < 0) ? 0 : start;
+		int pageSize = (limit == null || limit <= 0) ? DEFAULT_PAGE_SIZE : Math.min(limit, MAX_PAGE_SIZE);
+		List<Drug> drugs = conceptService.getDrugs(query, null, true, false, false, first, pageSize);
 		
 		response.setContentType("application/json");
 		response.setCharacterEncoding("UTF-8");
-		PrintWriter out = response.getWriter();
 		
-		new ObjectMapper().writeValue(out, simplified);
+		Locale locale = Context.getLocale();
+		JsonGenerator json = jsonFactory.createJsonGenerator(response.getWriter());
+		json.writeStartArray();
+		for (Drug drug : drugs) {
+			json.writeStartObject();
+			json.writeNumberField("id", drug.getId());
+			json.writeStringField("name", drug.getName());
+			json.writeBooleanField("retired", drug.getRetired().booleanValue());
+			if (drug.getDosageForm() != null) {
+				json.writeStringField("dosageForm", drug.getDosageForm().getName(locale).getName());
+			}
+			if (drug.getCombination() != null) {
+				json.writeBooleanField("combination", drug.getCombination());
+			} else {
+				json.writeNullField("combination");
+			}
+			if (drug.getConcept() != null) {
+				json.writeStringField("concept", drug.getConcept().getName(locale).getName());
+			}
+			json.writeEndObject();
+		}
+		json.writeEndArray();
+		json.flush();
 	}
 	
 	public List<Map<String, Object>> simplify(List<Drug> drugs) {
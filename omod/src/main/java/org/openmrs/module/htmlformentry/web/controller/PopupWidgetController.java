@@ -1,19 +1,12 @@
 package org.openmrs.module.htmlformentry.web.controller;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
-import org.openmrs.Cohort;
-import org.openmrs.Patient;
-import org.openmrs.Person;
 import org.openmrs.Program;
-import org.openmrs.api.PatientService;
-import org.openmrs.api.PersonService;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.htmlformentry.HtmlFormEntryService;
-import org.openmrs.web.dwr.PersonListItem;
+import org.openmrs.module.htmlformentry.HtmlFormEntryUtil;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.ModelMap;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -22,115 +15,82 @@ import org.springframework.web.bind.annotation.RequestParam;
 @Controller
 public class PopupWidgetController {
 	
+	/**
+	 * The number of people returned by a person search when the page size is not given
+	 */
+	public static final int DEFAULT_PAGE_SIZE = 100;
+	
+	/**
+	 * The largest number of people a person search returns at once
+	 */
+	public static final int MAX_PAGE_SIZE = 500;
+	
 	@RequestMapping("/module/htmlformentry/personSearch")
 	public void patientSearch(ModelMap model) throws Exception {
 		
 	}
 	
-	@SuppressWarnings("unchecked")
 	@RequestMapping("/module/htmlformentry/personResultTable")
 	public void personSearch(ModelMap model, @RequestParam(value = "pSearch", required = false) String searchPhrase,
 	        @RequestParam(value = "pAttribute", required = false) String searchAttribute,
 	        @RequestParam(value = "pAttributeValue", required = false) String attributeValue,
-	        @RequestParam(value = "pProgram", required = false) String searchProgram) throws Exception {
-		
-		List<Integer> personId = new ArrayList<Integer>();
-		List<Object> personList = new ArrayList<Object>();
+	        @RequestParam(value = "pProgram", required = false) String searchProgram,
+	        @RequestParam(value = "pStart", required = false) Integer start,
+	        @RequestParam(value = "pLength", required = false) Integer length) throws Exception {
 		
-		//first we are going to search by name for patients
-		PatientService patientService = Context.getPatientService();
-		for (Patient p : patientService.getPatients(searchPhrase, null, null, false)) {
-			personList.add(PersonListItem.createBestMatch(p));
-			personId.add(p.getId());
-		}
-		
-		// now we check for persons (that won't be brought back by the patient search)
-		PersonService ps = Context.getPersonService();
-		for (Person p : ps.getPeople(searchPhrase, null)) {
-			
-			if (!personId.contains(p.getId())) {
-				personList.add(PersonListItem.createBestMatch(p));
-			}
-		}
-		
-		// also search on patient identifier if the query contains a number
-		if (searchPhrase.matches(".*\\d+.*")) {
-			patientService = Context.getPatientService();
-			for (Patient p : patientService.getPatients(null, searchPhrase, null, false)) {
-				if (!personId.contains(p.getId())) {
-					personList.add(PersonListItem.createBestMatch(p));
-				}
-			}
-		}
-		
-		Cohort cohort = null;
+		List<String> attributes = null;
+		List<String> attributeValues = null;
 		if (searchAttribute != null) {
-			String[] attributes = searchAttribute.split(",");
+			attributes = new ArrayList<String>();
+			attributeValues = new ArrayList<String>();
+			String[] attrs = searchAttribute.split(",");
 			String[] attrValues = null;
 			if (attributeValue != null) {
-				attrValues = searchAttribute.split(",");
+				attrValues = attributeValue.split(",");
 			}
 			
-			for (int i = 0; i < attributes.length; i++) {
-				String attr = attributes[i];
+			for (int i = 0; i < attrs.length; i++) {
+				String attr = attrs[i];
 				String val = null;
-				if (attrValues != null && attrValues[i].trim().length() > 0) {
+				if (attrValues != null && attrValues.length > i && attrValues[i].trim().length() > 0) {
 					val = attrValues[i];
 				}
 				if (attr != null && attr.trim().length() > 0) {
-					List<Integer> ids = Context.getService(HtmlFormEntryService.class).getPersonIdsHavingAttributes(attr,
-					    val);
-					Set<Integer> setOfIds = new HashSet<Integer>();
-					setOfIds.addAll(ids);
-					
-					Cohort pp = new Cohort();
-					pp.setMemberIds(setOfIds);
-					
-					if (cohort != null) {
-						cohort = Cohort.intersect(cohort, pp);
-					} else {
-						cohort = pp;
-					}
+					attributes.add(attr);
+					attributeValues.add(val);
 				}
 			}
 		}
 		
+		List<Program> programs = null;
 		if (searchProgram != null) {
-			String[] programs = searchProgram.split(",");
-			
-			for (int i = 0; i < programs.length; i++) {
-				String prog = programs[i];
+			programs = new ArrayList<Program>();
+			for (String prog : searchProgram.split(",")) {
 				if (prog != null && prog.trim().length() > 0) {
-					Program personProgram = Context.getProgramWorkflowService().getProgramByUuid(prog);
-					if (personProgram == null) {
-						personProgram = Context.getProgramWorkflowService().getProgram(Integer.parseInt(prog));
-					}
+					Program personProgram = HtmlFormEntryUtil.getProgram(prog);
 					if (personProgram != null) {
-						HtmlFormEntryService hfes = Context.getService(HtmlFormEntryService.class);
-						Set<Integer> pp = hfes.getPatientIdHavingEnrollments(personProgram);
-						if (cohort != null) {
-							pp.retainAll(cohort.getMemberIds());
-						}
-						cohort = new Cohort(pp);
+						programs.add(personProgram);
 					}
 				}
 			}
 		}
-		//not iterate through the person list and filter based on the cohort
-		if (cohort != null) {
-			List<Object> filteredList = new ArrayList<Object>();
-			for (Object o : personList) {
-				PersonListItem pli = (PersonListItem) o;
-				
-				if (cohort.getMemberIds().contains(pli.getPersonId())) {
-					filteredList.add(o);
-				}
-			}
-			personList = filteredList;
-		}
 		
-		model.put("people", personList);
+		int first = (start == null || start < 0) ? 0 : start;
+		int pageSize = (length == null || length <= 0) ? DEFAULT_PAGE_SIZE : Math.min(length, MAX_PAGE_SIZE);
+		
+		// ask for one more than a page, to know whether there are more results
+		List<Integer> personIds = Context.getService(HtmlFormEntryService.class).searchPersonIds(searchPhrase,
+		    attributes, attributeValues, programs, first, pageSize + 1);
+		boolean hasMore = personIds.size() > pageSize;
+		if (hasMore) {
+			personIds = personIds.subList(0, pageSize);
+		}
 		
+		// the fields shown for the page are read with one query rather than loading each person
+		model.put("people", Context.getService(HtmlFormEntryService.class).getPersonSearchResults(personIds));
+		model.put("start", first);
+		model.put("length", pageSize);
+		model.put("hasMore", hasMore);
 	}
 	
 }
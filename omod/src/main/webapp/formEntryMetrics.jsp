@@ -0,0 +1,69 @@
+<%@ include file="/WEB-INF/template/include.jsp" %>
+
+<openmrs:require privilege="Manage Forms" otherwise="/login.htm" redirect="/module/htmlformentry/formEntryMetrics.form" />
+
+<%@ include file="/WEB-INF/template/header.jsp" %>
+<%@ include file="localHeader.jsp" %>
+
+<h2><spring:message code="htmlformentry.metrics" /></h2>
+
+<c:if test="${!recordQueryCounts}">
+	<p><spring:message code="htmlformentry.metrics.queryCountsOff" /></p>
+</c:if>
+
+<form method="post">
+	<input type="submit" value="<spring:message code="htmlformentry.metrics.reset"/>"/>
+</form>
+
+<br />
+
+<c:forEach var="phase" items="${summaries}">
+	<div class="boxHeader">
+		<b><spring:message code="${phase.key}" /></b>
+	</div>
+	<div class="box">
+		<c:choose>
+			<c:when test="${fn:length(phase.value) == 0}">
+				<spring:message code="htmlformentry.metrics.none" />
+			</c:when>
+			<c:otherwise>
+				<table cellpadding="2" cellspacing="0" width="98%">
+					<tr>
+						<th> <spring:message code="htmlformentry.metrics.form" /> </th>
+						<th> <spring:message code="htmlformentry.metrics.count" /> </th>
+						<th> <spring:message code="htmlformentry.metrics.averageMillis" /> </th>
+						<th> <spring:message code="htmlformentry.metrics.maxMillis" /> </th>
+						<th> <spring:message code="htmlformentry.metrics.averageStatements" /> </th>
+						<th> <spring:message code="htmlformentry.metrics.maxStatements" /> </th>
+						<th> <spring:message code="htmlformentry.metrics.averageEntityLoads" /> </th>
+						<th> <spring:message code="htmlformentry.metrics.averageEntityFetches" /> </th>
+						<th> <spring:message code="htmlformentry.metrics.averageCollectionFetches" /> </th>
+					</tr>
+					<c:forEach var="summary" items="${phase.value}" varStatus="status">
+						<tr class='${status.index % 2 == 0 ? "evenRow" : "oddRow"}'>
+							<td valign="top" style="white-space: nowrap"><c:out value="${summary.formName}"/></td>
+							<td valign="top">${summary.count}</td>
+							<td valign="top">${summary.averageMillis}</td>
+							<td valign="top">${summary.maxMillis}</td>
+							<c:choose>
+								<c:when test="${summary.queryCountedCount > 0}">
+									<td valign="top">${summary.averageStatements}</td>
+									<td valign="top">${summary.maxStatements}</td>
+									<td valign="top">${summary.averageEntityLoads}</td>
+									<td valign="top">${summary.averageEntityFetches}</td>
+									<td valign="top">${summary.averageCollectionFetches}</td>
+								</c:when>
+								<c:otherwise>
+									<td valign="top" colspan="5"></td>
+								</c:otherwise>
+							</c:choose>
+						</tr>
+					</c:forEach>
+				</table>
+			</c:otherwise>
+		</c:choose>
+	</div>
+	<br />
+</c:forEach>
+
+<%@ include file="/WEB-INF/template/footer.jsp"%>
@@ -1,6 +1,7 @@
 <%@ include file="/WEB-INF/template/include.jsp" %>
 
 <%@ taglib uri="http://java.sun.com/jsp/jstl/fmt" prefix="fmt" %>
+<%@ taglib uri="http://java.sun.com/jsp/jstl/functions" prefix="fn" %>
 <script>
 var $j = jQuery.noConflict();
 $j('#personTable').load('load', function() {
@@ -47,11 +48,7 @@ $j('#personTable').load('load', function() {
 			
 			<tr class="<c:choose><c:when test="${rowStatus.index % 2 == 0}">evenRow</c:when><c:otherwise>oddRow</c:otherwise></c:choose>">
 				<c:set var="fullName" value="${collection.givenName} ${collection.familyName}" />  
-				<td>
-				<c:if test="${collection['class'].name eq 'org.openmrs.web.dwr.PatientListItem'}">
-				<c:out value="${collection.identifier}"/>
-				</c:if>
-				</td>
+				<td><c:out value="${collection.identifier}"/></td>
 				<td><a href='javascript:void(0)' onClick='callSetParentValue("${collection.personId}", "${fullName}", "${param.prefix}")'><c:out value="${collection.givenName}"/></a></td>
 				<td><a href='javascript:void(0)' onClick='callSetParentValue("${collection.personId}", "${fullName}", "${param.prefix}")'><c:out value="${collection.familyName}"/></a></td>
 				<td class="personAge">
@@ -72,3 +69,14 @@ $j('#personTable').load('load', function() {
 		</c:forEach>
 		</tbody>
 					</table>
+		<c:if test="${start > 0 || hasMore}">
+			<div id="personSearchPages">
+				<spring:message code="htmlformentry.personSearch.showing" arguments="${start + 1},${start + fn:length(people)}"/>
+				<c:if test="${start > 0}">
+					<a href="javascript:void(0)" onClick="showPage(${start - length > 0 ? start - length : 0})"><spring:message code="htmlformentry.personSearch.previous"/></a>
+				</c:if>
+				<c:if test="${hasMore}">
+					<a href="javascript:void(0)" onClick="showPage(${start + length})"><spring:message code="htmlformentry.personSearch.next"/></a>
+				</c:if>
+			</div>
+		</c:if>
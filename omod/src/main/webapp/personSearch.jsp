@@ -16,10 +16,17 @@ function submitForm()
 {
 	if(document.getElementById("pSearch").value.length > 3)
 	{
+		document.getElementById("pStart").value = 0;
 		processAjax();
 	}
 }
 
+function showPage(start)
+{
+	document.getElementById("pStart").value = start;
+	processAjax();
+}
+
 function processAjax()
 {
 	if(ajaxCall != undefined)
@@ -74,6 +81,7 @@ $j(document).ready(function() {
 							<input id="pProgram" name="pProgram" type="hidden" value="${param.searchProgram}">
 						</c:if>		
 						<input id="prefix" name="prefix" type="hidden" value="${param.prefix}">
+						<input id="pStart" name="pStart" type="hidden" value="0">
 						<div class="loading" id="loading">loading...</div>
 						<br></br>
 						<div id="table">
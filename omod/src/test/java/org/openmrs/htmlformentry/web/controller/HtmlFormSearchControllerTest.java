@@ -0,0 +1,126 @@
+package org.openmrs.htmlformentry.web.controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.commons.lang.reflect.FieldUtils;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openmrs.Concept;
+import org.openmrs.ConceptClass;
+import org.openmrs.ConceptDatatype;
+import org.openmrs.ConceptName;
+import org.openmrs.ConceptSearchResult;
+import org.openmrs.api.ConceptService;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.htmlformentry.web.controller.HtmlFormSearchController;
+import org.openmrs.web.test.BaseModuleWebContextSensitiveTest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.ui.ModelMap;
+
+public class HtmlFormSearchControllerTest extends BaseModuleWebContextSensitiveTest {
+	
+	private static final List<String> ALLOWED_IDS = Arrays.asList("18", "20", "21");
+	
+	private HtmlFormSearchController controller;
+	
+	@Before
+	public void setUp() throws Exception {
+		updateSearchIndex();
+		controller = new HtmlFormSearchController();
+		FieldUtils.writeField(controller, "conceptService", Context.getConceptService(), true);
+	}
+	
+	@Test
+	public void conceptSearch_shouldOnlyReturnTheAllowedAnswers() throws Exception {
+		List<String> ids = getIds(search("food", null, 100));
+		Assert.assertFalse(ids.isEmpty());
+		Assert.assertTrue(ALLOWED_IDS.containsAll(ids));
+	}
+	
+	@Test
+	public void conceptSearch_shouldPageThroughTheAllowedAnswersWithTheNextStart() throws Exception {
+		List<String> all = getIds(search("food", null, 100));
+		
+		List<String> paged = new ArrayList<String>();
+		Integer start = null;
+		for (int pages = 0; pages <= all.size(); pages++) {
+			MockHttpServletResponse response = search("food", start, 1);
+			List<String> page = getIds(response);
+			Assert.assertTrue(page.size() <= 1);
+			paged.addAll(page);
+			String next = response.getHeader(HtmlFormSearchController.NEXT_START_HEADER);
+			if (next == null) {
+				break;
+			}
+			start = Integer.valueOf(next);
+		}
+		Assert.assertEquals(all, paged);
+	}
+	
+	@Test
+	public void conceptSearch_shouldNotReturnANextStartWhenTheResultsAreExhausted() throws Exception {
+		MockHttpServletResponse response = search("food", null, 100);
+		Assert.assertNull(response.getHeader(HtmlFormSearchController.NEXT_START_HEADER));
+	}
+	
+	@Test
+	public void conceptSearch_shouldFindAnAllowedAnswerPastTheFirstPagesWhenNotPaged() throws Exception {
+		// a term matching many concepts, of which only one far down the results is allowed
+		final int matches = 2500;
+		ConceptService conceptService = Mockito.mock(ConceptService.class);
+		Mockito.doAnswer(new Answer<List<ConceptSearchResult>>() {
+			
+			@Override
+			public List<ConceptSearchResult> answer(InvocationOnMock invocation) {
+				int start = (Integer) invocation.getArguments()[8];
+				int size = (Integer) invocation.getArguments()[9];
+				List<ConceptSearchResult> results = new ArrayList<ConceptSearchResult>();
+				for (int id = start + 1; id <= Math.min(start + size, matches); id++) {
+					Concept concept = new Concept(id);
+					ConceptName name = new ConceptName("common " + id, Context.getLocale());
+					concept.addName(name);
+					results.add(new ConceptSearchResult("common", concept, name));
+				}
+				return results;
+			}
+		}).when(conceptService).getConcepts(Mockito.anyString(), Mockito.<List<Locale>> any(), Mockito.anyBoolean(),
+		    Mockito.<List<ConceptClass>> any(), Mockito.<List<ConceptClass>> any(),
+		    Mockito.<List<ConceptDatatype>> any(), Mockito.<List<ConceptDatatype>> any(), Mockito.<Concept> any(),
+		    Mockito.<Integer> any(), Mockito.<Integer> any());
+		FieldUtils.writeField(controller, "conceptService", conceptService, true);
+		
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		controller.conceptSearch(new ModelMap(), new MockHttpServletRequest(), response, "common", "2300", null, null,
+		    null, null);
+		
+		Assert.assertEquals(Arrays.asList("2300"), getIds(response));
+		Assert.assertNull(response.getHeader(HtmlFormSearchController.NEXT_START_HEADER));
+	}
+	
+	private MockHttpServletResponse search(String term, Integer start, Integer limit) throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		controller.conceptSearch(new ModelMap(), new MockHttpServletRequest(), response, term,
+		    String.join(",", ALLOWED_IDS), null, null, start, limit);
+		return response;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private List<String> getIds(MockHttpServletResponse response) throws Exception {
+		List<String> ids = new ArrayList<String>();
+		List<Map<String, Object>> results = new ObjectMapper().readValue(response.getContentAsString(), List.class);
+		for (Map<String, Object> result : results) {
+			ids.add((String) result.get("id"));
+		}
+		return ids;
+	}
+}